@@ -39,6 +39,7 @@ public class CountAtPercentileExtractionBenchmark {
         Histogram histogram = new Histogram(1000, 3600L * 1_000_000_000L, 2);
         static double[] DEFAULT_PERCENTILES_7 = new double[]{0.5, 0.75, 0.9, 0.95, 0.98, 0.99, 0.999};
         static double[] DEFAULT_PERCENTILES_1 = new double[]{0.999};
+        RichSnapshot snapshot;
 
         @Setup
         public void setup() {
@@ -49,6 +50,7 @@ public class CountAtPercentileExtractionBenchmark {
                     histogram.recordValue(randomNanos);
                 }
             }
+            snapshot = (RichSnapshot) HdrReservoir.takeSmartSnapshot(DEFAULT_PERCENTILES_7, histogram);
         }
     }
 
@@ -62,6 +64,16 @@ public class CountAtPercentileExtractionBenchmark {
         return HdrReservoir.takeSmartSnapshot(HistogramState.DEFAULT_PERCENTILES_1, state.histogram);
     }
 
+    @Benchmark
+    public long countAtOrBelow(HistogramState state) {
+        return state.snapshot.getCountAtOrBelow(15_000_000);
+    }
+
+    @Benchmark
+    public double percentileAtValue(HistogramState state) {
+        return state.snapshot.getPercentileAtValue(15_000_000);
+    }
+
     public static class OneThread {
         public static void main(String[] args) throws RunnerException {
             Options opt = new OptionsBuilder()
@@ -0,0 +1,108 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram.util;
+
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures merge of one chunk into snapshot histogram, which dominates snapshot extraction for reservoirs reset by chunks.
+ * The target has grown once for one-hour latency, the source contains one second of traffic between 1ms and 20ms.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistogramMergeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class MergeState {
+
+        @Param({"2", "3"})
+        int digits;
+
+        Histogram target;
+        Histogram misalignedSource;
+        Histogram alignedSource;
+        Histogram fixedRangeTarget;
+        Histogram fixedRangeSource;
+
+        @Setup
+        public void setup() {
+            target = new Histogram(digits);
+            target.recordValue(TimeUnit.HOURS.toNanos(1));
+            misalignedSource = new Histogram(digits);
+            alignedSource = new Histogram(digits);
+            HistogramUtil.resetAndAlignLayout(alignedSource, target);
+            fixedRangeTarget = new Histogram(TimeUnit.HOURS.toNanos(1), digits);
+            fixedRangeSource = new Histogram(TimeUnit.HOURS.toNanos(1), digits);
+
+            for (int i = 0; i < 1000; i++) {
+                long randomNanos = ThreadLocalRandom.current().nextLong(19_000_000) + 1_000_000;
+                misalignedSource.recordValue(randomNanos);
+                alignedSource.recordValue(randomNanos);
+                fixedRangeSource.recordValue(randomNanos);
+            }
+        }
+    }
+
+    @Benchmark
+    public Histogram mergeMisalignedAutoResizedLayouts(MergeState state) {
+        HistogramUtil.reset(state.target);
+        HistogramUtil.addSecondToFirst(state.target, state.misalignedSource);
+        return state.target;
+    }
+
+    @Benchmark
+    public Histogram mergeAlignedAutoResizedLayouts(MergeState state) {
+        HistogramUtil.reset(state.target);
+        HistogramUtil.addSecondToFirst(state.target, state.alignedSource);
+        return state.target;
+    }
+
+    @Benchmark
+    public Histogram mergeFixedRangeLayouts(MergeState state) {
+        HistogramUtil.reset(state.fixedRangeTarget);
+        HistogramUtil.addSecondToFirst(state.fixedRangeTarget, state.fixedRangeSource);
+        return state.fixedRangeTarget;
+    }
+
+    public static class OneThread {
+        public static void main(String[] args) throws RunnerException {
+            Options opt = new OptionsBuilder()
+                    .include(((Class) HistogramMergeBenchmark.class).getSimpleName())
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .threads(1)
+                    .forks(1)
+                    .build();
+            try {
+                new Runner(opt).run();
+            } catch (RunnerException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
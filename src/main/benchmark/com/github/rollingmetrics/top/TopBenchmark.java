@@ -18,7 +18,9 @@
 package com.github.rollingmetrics.top;
 
 
+import com.github.rollingmetrics.util.Clock;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -28,6 +30,7 @@ import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @BenchmarkMode({Mode.Throughput, Mode.AverageTime})
 @OutputTimeUnit(TimeUnit.MICROSECONDS)
@@ -77,6 +80,43 @@ public class TopBenchmark {
                 .build();
     }
 
+    @State(Scope.Benchmark)
+    public static class FullArchiveState {
+
+        // time is frozen, so archived chunks are never expired during measurement
+        final AtomicLong currentTimeMillis = new AtomicLong();
+
+        final Top chunkedTop_1000 = buildChunkedTop(1000);
+        final Top chunkedTop_10000 = buildChunkedTop(TopBuilder.MAX_POSITION_COUNT);
+
+        @Setup
+        public void fillArchive() {
+            for (int chunk = 0; chunk <= TopBuilder.MAX_CHUNKS; chunk++) {
+                for (int i = 0; i < TopBuilder.MAX_POSITION_COUNT; i++) {
+                    long latency = getRandomValue();
+                    chunkedTop_1000.update(currentTimeMillis.get(), latency, TimeUnit.NANOSECONDS, () -> "Some query to something");
+                    chunkedTop_10000.update(currentTimeMillis.get(), latency, TimeUnit.NANOSECONDS, () -> "Some query to something");
+                }
+                currentTimeMillis.addAndGet(TopBuilder.MIN_CHUNK_RESETTING_INTERVAL_MILLIS);
+            }
+        }
+
+        private Top buildChunkedTop(int size) {
+            return Top.builder(size)
+                    .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(TopBuilder.MAX_CHUNKS), TopBuilder.MAX_CHUNKS)
+                    .withSnapshotCachingDuration(Duration.ZERO)
+                    .withClock(Clock.mock(currentTimeMillis))
+                    .withBackgroundExecutor(Runnable::run)
+                    .build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class QueryState {
+        final String sql = "SELECT * FROM SOMETHING WHERE ID = ?";
+        final long id = ThreadLocalRandom.current().nextLong();
+    }
+
     @Benchmark
     public long baseLine() {
         return getRandomValue();
@@ -194,6 +234,30 @@ public class TopBenchmark {
         return state.uniformTop_10.getPositionsInDescendingOrder();
     }
 
+    @Benchmark
+    public void update_chunkedTop_10_capturingSupplier(TopState state, QueryState query) {
+        state.chunkedTop_10.update(System.currentTimeMillis(), getRandomValue(), TimeUnit.NANOSECONDS, () -> describe(query));
+    }
+
+    @Benchmark
+    public void update_chunkedTop_10_primitive(TopState state, QueryState query) {
+        state.chunkedTop_10.update(System.currentTimeMillis(), getRandomValue(), query, TopBenchmark::describe);
+    }
+
+    @Benchmark
+    public List<Position> getSnapshot_chunkedTop_1000_fullArchive(FullArchiveState state) {
+        return state.chunkedTop_1000.getPositionsInDescendingOrder();
+    }
+
+    @Benchmark
+    public List<Position> getSnapshot_chunkedTop_10000_fullArchive(FullArchiveState state) {
+        return state.chunkedTop_10000.getPositionsInDescendingOrder();
+    }
+
+    private static String describe(QueryState query) {
+        return query.sql + " [" + query.id + "]";
+    }
+
     private static long getRandomValue() {
         return ThreadLocalRandom.current().nextLong(15_000_000) + 5_000_000;
     }
@@ -215,4 +279,18 @@ public class TopBenchmark {
         }
     }
 
+    public static class AllocationProfiling {
+        public static void main(String[] args) throws RunnerException {
+            Options opt = new OptionsBuilder()
+                    .include(((Class) TopBenchmark.class).getSimpleName() + ".update_chunkedTop_10_.*")
+                    .addProfiler(GCProfiler.class)
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .threads(4)
+                    .forks(1)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+
 }
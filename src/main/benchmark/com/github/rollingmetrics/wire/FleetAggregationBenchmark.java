@@ -0,0 +1,114 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FleetAggregationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class MessagesState {
+
+        @Param({"10000", "50000", "100000"})
+        int snapshotCount;
+
+        List<ByteBuffer> messages;
+        FleetAggregator aggregator = new FleetAggregator(2);
+
+        @Setup
+        public void setup() {
+            WireWriter writer = new WireWriter();
+            Histogram histogram = new Histogram(2);
+            ByteBuffer allMessages = ByteBuffer.allocateDirect(snapshotCount * 2048);
+            messages = new ArrayList<>(snapshotCount);
+            for (int i = 0; i < snapshotCount; i++) {
+                histogram.reset();
+                for (int j = 0; j < 1000; j++) {
+                    // generate latency between 5ms and 20ms with rare outliers up to 1s
+                    long randomNanos = ThreadLocalRandom.current().nextLong(15_000_000) + 5_000_000;
+                    if (j % 100 == 0) {
+                        randomNanos = ThreadLocalRandom.current().nextLong(1_000_000_000);
+                    }
+                    histogram.recordValue(randomNanos);
+                }
+                int start = allMessages.position();
+                writer.writeHistogram(RichSnapshot.fromHistogram(histogram), allMessages);
+                ByteBuffer message = allMessages.duplicate();
+                message.position(start);
+                message.limit(allMessages.position());
+                messages.add(message.slice());
+            }
+        }
+
+        void rewind() {
+            for (ByteBuffer message : messages) {
+                message.rewind();
+            }
+        }
+    }
+
+    @Benchmark
+    public RichSnapshot sequentialMerge(MessagesState state) {
+        state.rewind();
+        MergedHistogram merged = new MergedHistogram(2);
+        for (ByteBuffer message : state.messages) {
+            merged.merge(message);
+        }
+        return merged.getSnapshot();
+    }
+
+    @Benchmark
+    public RichSnapshot forkJoinMerge(MessagesState state) {
+        state.rewind();
+        return state.aggregator.mergeHistograms(state.messages);
+    }
+
+    public static class OneThread {
+        public static void main(String[] args) throws RunnerException {
+            Options opt = new OptionsBuilder()
+                    .include(((Class) FleetAggregationBenchmark.class).getSimpleName())
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .threads(1)
+                    .forks(1)
+                    .build();
+            try {
+                new Runner(opt).run();
+            } catch (RunnerException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.checkpoint;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Saves and restores the state of many {@link Checkpointable} metrics through single memory-mapped file,
+ * so checkpointing of thousands metrics costs the time of copying their chunks to the page cache.
+ *
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  Map<String, Checkpointable> metrics = new HashMap<>();
+ *  metrics.put("requests", requestCounter); // SmoothlyDecayingRollingCounter
+ *  metrics.put("latency", Checkpointable.of(latencyReservoir)); // reservoir built by HdrBuilder
+ *  metrics.put("slow-queries", Checkpointable.of(top)); // top built by TopBuilder
+ *
+ *  // at startup
+ *  if (Files.exists(checkpointPath)) {
+ *      CheckpointFile.restore(checkpointPath, metrics);
+ *  }
+ *
+ *  // at shutdown or periodically
+ *  CheckpointFile.write(checkpointPath, metrics);
+ * }</pre>
+ *
+ * <p>
+ * The file is written to temporary sibling file which atomically replaces the target file, so the crash in the middle of writing does not corrupt previous checkpoint.
+ * The file contains the header followed by the named entries, metrics are matched by names on restoring,
+ * so the entries which do not have correspondent metric are ignored as well as metrics which do not have correspondent entry.
+ */
+public class CheckpointFile {
+
+    static final int MAGIC = 0x524D4350;
+    static final byte FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 4;
+
+    private CheckpointFile() {
+        // utility class
+    }
+
+    /**
+     * Writes the state of metrics to the file, previous content of file is replaced.
+     *
+     * @param file the file to write
+     * @param metrics the metrics by names
+     *
+     * @throws IOException if any problem with file occurs
+     */
+    public static void write(Path file, Map<String, ? extends Checkpointable> metrics) throws IOException {
+        int entryCount = metrics.size();
+        byte[][] names = new byte[entryCount][];
+        Checkpointable[] checkpointables = new Checkpointable[entryCount];
+        long[] remainingSizeEstimations = new long[entryCount + 1];
+        int i = 0;
+        for (Map.Entry<String, ? extends Checkpointable> entry : metrics.entrySet()) {
+            names[i] = entry.getKey().getBytes(UTF_8);
+            checkpointables[i] = entry.getValue();
+            i++;
+        }
+        for (i = entryCount - 1; i >= 0; i--) {
+            remainingSizeEstimations[i] = remainingSizeEstimations[i + 1] + 4 + names[i].length + 4 + checkpointables[i].getMaxCheckpointSizeInBytes();
+        }
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            long regionOffset = 0;
+            // single mapping can not exceed Integer.MAX_VALUE, the rest of file is mapped on overflow
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionOffset, Math.min(Integer.MAX_VALUE, HEADER_SIZE + remainingSizeEstimations[0]));
+            buffer.putInt(MAGIC);
+            buffer.put(FORMAT_VERSION);
+            buffer.putInt(entryCount);
+            for (i = 0; i < entryCount; i++) {
+                int entryPosition = buffer.position();
+                while (true) {
+                    try {
+                        writeEntry(buffer, names[i], checkpointables[i]);
+                        break;
+                    } catch (BufferOverflowException e) {
+                        // values were recorded after size estimation, so map the rest of file with reserve and write entry again
+                        buffer.force();
+                        regionOffset += entryPosition;
+                        long regionSize = Math.min(Integer.MAX_VALUE, Math.max(remainingSizeEstimations[i], buffer.capacity() - entryPosition) * 2);
+                        buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionOffset, regionSize);
+                        entryPosition = 0;
+                    }
+                }
+            }
+            buffer.force();
+            channel.truncate(regionOffset + buffer.position());
+        }
+
+        try {
+            Files.move(temporaryFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile, file, REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Restores the state of metrics from the file.
+     *
+     * @param file the file which was previously written by {@link #write(Path, Map)}
+     * @param metrics the metrics by names
+     *
+     * @return the count of restored metrics
+     *
+     * @throws IOException if any problem with file occurs
+     * @throws IllegalArgumentException if file has unknown format
+     */
+    public static int restore(Path file, Map<String, ? extends Checkpointable> metrics) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a checkpoint file");
+            }
+            byte formatVersion = buffer.get();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported version of checkpoint format " + formatVersion);
+            }
+
+            int entryCount = buffer.getInt();
+            int restoredCount = 0;
+            for (int i = 0; i < entryCount; i++) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                int checkpointSize = buffer.getInt();
+                ByteBuffer checkpoint = buffer.slice();
+                checkpoint.limit(checkpointSize);
+                buffer.position(buffer.position() + checkpointSize);
+
+                Checkpointable metric = metrics.get(new String(name, UTF_8));
+                if (metric != null) {
+                    metric.restoreFromCheckpoint(checkpoint);
+                    restoredCount++;
+                }
+            }
+            return restoredCount;
+        }
+    }
+
+    private static void writeEntry(ByteBuffer buffer, byte[] name, Checkpointable metric) {
+        buffer.putInt(name.length);
+        buffer.put(name);
+        int sizePosition = buffer.position();
+        buffer.putInt(0);
+        metric.writeCheckpoint(buffer);
+        buffer.putInt(sizePosition, buffer.position() - sizePosition - 4);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.checkpoint;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper for encoding the list of chunks which is shared by all {@link Checkpointable} metrics.
+ * Each checkpoint starts from the byte which identifies the kind of metric, then the count of chunks follows.
+ * The layout of chunk is specific for each kind of metric, but each chunk starts from the timestamp of its invalidation.
+ *
+ * This is not part of public API.
+ */
+public class CheckpointFormat {
+
+    public static final byte COUNTER = 1;
+    public static final byte HIT_RATIO = 2;
+    public static final byte HISTOGRAM = 3;
+    public static final byte TOP = 4;
+
+    public static final int HEADER_SIZE = 1 + 4;
+
+    /**
+     * Writes the kind of metric and placeholder for count of chunks.
+     *
+     * @return the position of placeholder which should be passed to {@link #finishChunks(ByteBuffer, int, int)}
+     */
+    public static int startChunks(ByteBuffer target, byte kind) {
+        target.put(kind);
+        int countPosition = target.position();
+        target.putInt(0);
+        return countPosition;
+    }
+
+    public static void finishChunks(ByteBuffer target, int countPosition, int chunkCount) {
+        target.putInt(countPosition, chunkCount);
+    }
+
+    /**
+     * Reads the header of checkpoint.
+     *
+     * @return the count of chunks, zero for empty source
+     */
+    public static int readChunkCount(ByteBuffer source, byte expectedKind) {
+        if (!source.hasRemaining()) {
+            return 0;
+        }
+        byte kind = source.get();
+        if (kind != expectedKind) {
+            throw new IllegalArgumentException("Checkpoint of metric kind " + kind + " can not be restored to metric of kind " + expectedKind);
+        }
+        int chunkCount = source.getInt();
+        if (chunkCount < 0) {
+            throw new IllegalArgumentException("Negative count of chunks " + chunkCount);
+        }
+        return chunkCount;
+    }
+
+}
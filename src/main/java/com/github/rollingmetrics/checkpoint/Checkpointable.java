@@ -0,0 +1,120 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.checkpoint;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The metric which is able to save the state of its rolling time window and to restore that state after restart of application.
+ *
+ * <p>
+ * The state is saved as the list of chunks, each chunk remembers the absolute time at which it should be invalidated.
+ * So the restored values are taken into account exactly until the moment when they would be invalidated if application was not restarted,
+ * independently of the time when restoring metric has been created. The values recorded after restoring are accumulated by metric in regular way.
+ * Metrics which do not have time-bounded state save nothing and ignore restoring.
+ *
+ * <p>
+ * The checkpoints are designed to be written and read through {@link CheckpointFile},
+ * writing of checkpoint concurrently with restoring of same metric is not supported.
+ *
+ * @see CheckpointFile
+ */
+public interface Checkpointable {
+
+    /**
+     * The state which saves nothing and ignores restoring.
+     */
+    Checkpointable EMPTY = new Checkpointable() {
+        @Override
+        public int getMaxCheckpointSizeInBytes() {
+            return 0;
+        }
+
+        @Override
+        public void writeCheckpoint(ByteBuffer target) {
+            // nothing to save
+        }
+
+        @Override
+        public void restoreFromCheckpoint(ByteBuffer source) {
+            // nothing to restore
+        }
+    };
+
+    /**
+     * Returns the estimation of bytes which will be written by {@link #writeCheckpoint(ByteBuffer)}.
+     * The estimation can be lesser than actual size if values were recorded between estimation and writing.
+     *
+     * @return the estimation of checkpoint size
+     */
+    int getMaxCheckpointSizeInBytes();
+
+    /**
+     * Writes the chunks which are not invalidated yet to the current position of {@code target}.
+     *
+     * @param target the buffer to write checkpoint
+     *
+     * @throws java.nio.BufferOverflowException if remaining space in buffer is not enough
+     */
+    void writeCheckpoint(ByteBuffer target);
+
+    /**
+     * Restores the chunks from remaining bytes of {@code source} which were previously written by {@link #writeCheckpoint(ByteBuffer)}.
+     * The chunks which already invalidated are skipped.
+     *
+     * @param source the buffer which contains checkpoint
+     *
+     * @throws IllegalArgumentException if checkpoint was written by metric of different type or by incompatible version of library
+     */
+    void restoreFromCheckpoint(ByteBuffer source);
+
+    /**
+     * Returns the metric itself if it implements {@link Checkpointable}, else returns {@link #EMPTY}.
+     * This method is useful for decorators which wrap metrics of arbitrary type.
+     *
+     * <p>
+     * Reservoirs, histograms and timers built by {@link com.github.rollingmetrics.histogram.HdrBuilder}, and tops built by {@link com.github.rollingmetrics.top.TopBuilder}
+     * implement {@link Checkpointable}, but for metrics created by other libraries this method silently returns {@link #EMPTY},
+     * use {@link #required(Object)} when metric is expected to be checkpointable.
+     *
+     * @param metric the metric
+     *
+     * @return checkpointable view of metric
+     */
+    static Checkpointable of(Object metric) {
+        return metric instanceof Checkpointable ? (Checkpointable) metric : EMPTY;
+    }
+
+    /**
+     * Returns the metric itself if it implements {@link Checkpointable}, else throws exception.
+     *
+     * @param metric the metric
+     *
+     * @return checkpointable view of metric
+     *
+     * @throws IllegalArgumentException if metric does not implement {@link Checkpointable}
+     */
+    static Checkpointable required(Object metric) {
+        if (!(metric instanceof Checkpointable)) {
+            throw new IllegalArgumentException(metric + " does not support checkpoints");
+        }
+        return (Checkpointable) metric;
+    }
+
+}
@@ -35,7 +35,8 @@ import java.util.concurrent.atomic.AtomicLong;
  *     <li>When you do not need in "rolling time window" semantic. Else use {@link SmoothlyDecayingRollingCounter}</li>
  *     <li>When you need in 100 percents guarantee that one measure can not be reported twice.</li>
  *     <li>Only if one kind of reader interests in value of counter.
- *     Usage of this implementation for case of multiple readers will be a bad idea because of readers will steal data from each other.
+ *     Usage of this implementation for case of multiple readers will be a bad idea because of readers will steal data from each other,
+ *     register additional readers via {@link #newConsumer()} instead.
  *     </li>
  * </ul>
  *
@@ -43,24 +44,68 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class ResetOnSnapshotCounter implements WindowCounter {
 
-    private final AtomicLong value = new AtomicLong();
+    // the total is never reset, each reader remembers the total observed at its previous snapshot
+    private final AtomicLong total = new AtomicLong();
+    private long reportedTotal;
 
     @Override
     public void add(long delta) {
-        this.value.addAndGet(delta);
+        this.total.addAndGet(delta);
     }
 
     @Override
     synchronized public long getSum() {
-        long sum = value.get();
-        value.addAndGet(-sum);
+        long currentTotal = total.get();
+        long sum = currentTotal - reportedTotal;
+        reportedTotal = currentTotal;
         return sum;
     }
 
+    /**
+     * Registers new reader which receives the sum of values added since its own previous invocation of {@link WindowCounter#getSum()},
+     * independently of other readers. Values added through any reader are added to the same counter.
+     *
+     * @return the counter for additional reader
+     */
+    public WindowCounter newConsumer() {
+        return new Consumer(total.get());
+    }
+
+    private final class Consumer implements WindowCounter {
+
+        private long reportedTotal;
+
+        Consumer(long reportedTotal) {
+            this.reportedTotal = reportedTotal;
+        }
+
+        @Override
+        public void add(long delta) {
+            ResetOnSnapshotCounter.this.add(delta);
+        }
+
+        @Override
+        synchronized public long getSum() {
+            long currentTotal = total.get();
+            long sum = currentTotal - reportedTotal;
+            reportedTotal = currentTotal;
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            return "ResetOnSnapshotCounter.Consumer{" +
+                    "reportedTotal=" + reportedTotal +
+                    ", counter=" + ResetOnSnapshotCounter.this +
+                    '}';
+        }
+    }
+
     @Override
     public String toString() {
         return "ResetOnSnapshotCounter{" +
-                "value=" + value +
+                "total=" + total +
+                ", reportedTotal=" + reportedTotal +
                 '}';
     }
 }
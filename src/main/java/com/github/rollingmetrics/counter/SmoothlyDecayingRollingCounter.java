@@ -17,10 +17,15 @@
 
 package com.github.rollingmetrics.counter;
 
+import com.github.rollingmetrics.checkpoint.CheckpointFormat;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.histogram.util.Printer;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
@@ -67,18 +72,25 @@ import java.util.concurrent.atomic.LongAdder;
  *         counter.add(42);
  *     </code>
  * </pre>
+ *
+ * <p>
+ * The state of counter can be saved and restored after restart via {@link com.github.rollingmetrics.checkpoint.CheckpointFile},
+ * restored chunks are decayed and invalidated at the same moments as they would be in the counter which saved them.
  */
-public class SmoothlyDecayingRollingCounter implements WindowCounter {
+public class SmoothlyDecayingRollingCounter implements WindowCounter, Checkpointable {
 
     // meaningful limits to disallow user to kill performance(or memory footprint) by mistake
     static final int MAX_CHUNKS = 1000;
     static final long MIN_CHUNK_RESETTING_INTERVAL_MILLIS = 100;
 
+    private static final int CHECKPOINT_CHUNK_SIZE = 8 + 8;
+
     private final long intervalBetweenResettingMillis;
     private final Clock clock;
     private final long creationTimestamp;
 
     private final Chunk[] chunks;
+    private volatile Phase[] restoredPhases = new Phase[0];
 
     /**
      * Constructs the chunked counter divided by {@code numberChunks}.
@@ -166,9 +178,53 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
             Chunk chunk = chunks[i];
             sum += chunk.getSum(currentTimeMillis);
         }
+        for (Phase restoredPhase : restoredPhases) {
+            sum += restoredPhase.getSum(currentTimeMillis);
+        }
         return sum;
     }
 
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return CheckpointFormat.HEADER_SIZE + (chunks.length + restoredPhases.length) * CHECKPOINT_CHUNK_SIZE;
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer target) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int countPosition = CheckpointFormat.startChunks(target, CheckpointFormat.COUNTER);
+        int chunkCount = 0;
+        for (Chunk chunk : chunks) {
+            chunkCount += chunk.currentPhaseRef.get().writeCheckpoint(target, currentTimeMillis);
+        }
+        for (Phase restoredPhase : restoredPhases) {
+            chunkCount += restoredPhase.writeCheckpoint(target, currentTimeMillis);
+        }
+        CheckpointFormat.finishChunks(target, countPosition, chunkCount);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer source) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int chunkCount = CheckpointFormat.readChunkCount(source, CheckpointFormat.COUNTER);
+        List<Phase> phases = new ArrayList<>();
+        for (Phase restoredPhase : restoredPhases) {
+            if (restoredPhase.proposedInvalidationTimestamp > currentTimeMillis) {
+                phases.add(restoredPhase);
+            }
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            long proposedInvalidationTimestamp = source.getLong();
+            long sum = source.getLong();
+            if (proposedInvalidationTimestamp > currentTimeMillis) {
+                Phase phase = new Phase(proposedInvalidationTimestamp);
+                phase.adder.add(sum);
+                phases.add(phase);
+            }
+        }
+        this.restoredPhases = phases.toArray(new Phase[phases.size()]);
+    }
+
     private final class Chunk {
 
         final Phase left;
@@ -261,6 +317,21 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
             return sum;
         }
 
+        int writeCheckpoint(ByteBuffer target, long currentTimeMillis) {
+            long proposedInvalidationTimestamp = this.proposedInvalidationTimestamp;
+            if (currentTimeMillis >= proposedInvalidationTimestamp || proposedInvalidationTimestamp == Long.MAX_VALUE) {
+                // the phase is expired or in the middle of rotation
+                return 0;
+            }
+            long sum = adder.sum();
+            if (sum == 0) {
+                return 0;
+            }
+            target.putLong(proposedInvalidationTimestamp);
+            target.putLong(sum);
+            return 1;
+        }
+
         @Override
         public String toString() {
             final StringBuilder sb = new StringBuilder("Phase{");
@@ -278,6 +349,7 @@ public class SmoothlyDecayingRollingCounter implements WindowCounter {
                 ", clock=" + clock +
                 ", creationTimestamp=" + creationTimestamp +
                 ", chunks=" + Printer.printArray(chunks, "chunk") +
+                ", restoredPhases=" + Printer.printArray(restoredPhases, "phase") +
                 '}';
     }
 
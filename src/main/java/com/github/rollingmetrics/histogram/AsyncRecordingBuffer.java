@@ -0,0 +1,172 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of single-producer single-consumer ring buffers, one per writer thread,
+ * which allows to postpone recording of values into shared histogram memory.
+ *
+ * <p>
+ * Writer thread touches only its own ring, the position of ring is published by ordered store, so there is no cross-core traffic on the hot path.
+ * When ring is full, the value is dropped and counted.
+ * Rings are drained by single consumer, the rings of terminated threads are forgotten after draining.
+ * </p>
+ *
+ * This class is not the part of rolling-metrics public API and should not be used by user directly.
+ */
+class AsyncRecordingBuffer {
+
+    private final int ringCapacity;
+    private final ThreadLocal<Ring> rings = ThreadLocal.withInitial(this::registerRing);
+    private final List<Ring> registeredRings = new ArrayList<>();
+    private final AtomicBoolean drainingScheduled = new AtomicBoolean();
+    private long droppedValuesOfForgottenRings;
+
+    /**
+     * @param bufferSizePerThread the capacity of ring per writer thread, will be rounded up to the power of two
+     */
+    AsyncRecordingBuffer(int bufferSizePerThread) {
+        if (bufferSizePerThread < 2) {
+            throw new IllegalArgumentException("bufferSizePerThread should be >= 2");
+        }
+        if (bufferSizePerThread > 1 << 30) {
+            throw new IllegalArgumentException("bufferSizePerThread should be <= " + (1 << 30));
+        }
+        this.ringCapacity = Integer.highestOneBit(bufferSizePerThread - 1) << 1;
+    }
+
+    /**
+     * Writes value to the ring of current thread.
+     *
+     * @return true if ring of current thread is at least half full and caller is responsible to schedule draining
+     */
+    boolean write(long value) {
+        Ring ring = rings.get();
+        if (ring.offer(value)) {
+            return false;
+        }
+        return !drainingScheduled.get() && drainingScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Moves all written values to the sink, this method should not be called concurrently with itself.
+     */
+    synchronized void drain(LongConsumer sink) {
+        drainingScheduled.set(false);
+        Iterator<Ring> iterator = registeredRings.iterator();
+        while (iterator.hasNext()) {
+            Ring ring = iterator.next();
+            boolean ownerTerminated = ring.isOwnerTerminated();
+            // values written by terminated thread are visible because termination happens-before isAlive returns false
+            ring.drainTo(sink);
+            if (ownerTerminated) {
+                droppedValuesOfForgottenRings += ring.droppedValues;
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized long getDroppedValueCount() {
+        long droppedValues = droppedValuesOfForgottenRings;
+        for (Ring ring : registeredRings) {
+            droppedValues += ring.droppedValues;
+        }
+        return droppedValues;
+    }
+
+    int getRingCapacity() {
+        return ringCapacity;
+    }
+
+    private synchronized Ring registerRing() {
+        Ring ring = new Ring(ringCapacity, Thread.currentThread());
+        registeredRings.add(ring);
+        return ring;
+    }
+
+    private static final class Ring {
+
+        private static final AtomicLongFieldUpdater<Ring> HEAD = AtomicLongFieldUpdater.newUpdater(Ring.class, "head");
+        private static final AtomicLongFieldUpdater<Ring> TAIL = AtomicLongFieldUpdater.newUpdater(Ring.class, "tail");
+        private static final AtomicLongFieldUpdater<Ring> DROPPED_VALUES = AtomicLongFieldUpdater.newUpdater(Ring.class, "droppedValues");
+
+        private final long[] values;
+        private final int mask;
+        private final int halfCapacity;
+        private final WeakReference<Thread> owner;
+
+        // written only by consumer
+        private volatile long head;
+
+        // written only by producer
+        private volatile long tail;
+        private volatile long droppedValues;
+        private long cachedHead;
+
+        Ring(int capacity, Thread owner) {
+            this.values = new long[capacity];
+            this.mask = capacity - 1;
+            this.halfCapacity = capacity >> 1;
+            this.owner = new WeakReference<>(owner);
+        }
+
+        /**
+         * @return true if ring is less than half full after writing, false if ring needs to be drained or value was dropped
+         */
+        boolean offer(long value) {
+            long currentTail = tail;
+            if (currentTail - cachedHead >= halfCapacity) {
+                // consumer progress is read only when ring looks half full
+                cachedHead = head;
+                if (currentTail - cachedHead >= values.length) {
+                    DROPPED_VALUES.lazySet(this, droppedValues + 1);
+                    return false;
+                }
+            }
+            values[(int) currentTail & mask] = value;
+            TAIL.lazySet(this, currentTail + 1);
+            return currentTail + 1 - cachedHead < halfCapacity;
+        }
+
+        void drainTo(LongConsumer sink) {
+            long currentHead = head;
+            long currentTail = tail;
+            while (currentHead < currentTail) {
+                sink.accept(values[(int) currentHead & mask]);
+                currentHead++;
+            }
+            HEAD.lazySet(this, currentHead);
+        }
+
+        boolean isOwnerTerminated() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The {@link Histogram} which delegates checkpointing to its reservoir,
+ * so histogram registered in {@link com.codahale.metrics.MetricRegistry} can be passed to {@link com.github.rollingmetrics.checkpoint.CheckpointFile} directly.
+ *
+ * @see HdrBuilder#buildHistogram()
+ */
+class CheckpointableHistogram extends Histogram implements Checkpointable {
+
+    private final Reservoir reservoir;
+
+    CheckpointableHistogram(Reservoir reservoir) {
+        super(reservoir);
+        this.reservoir = reservoir;
+    }
+
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(reservoir).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer target) {
+        Checkpointable.of(reservoir).writeCheckpoint(target);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer source) {
+        Checkpointable.of(reservoir).restoreFromCheckpoint(source);
+    }
+
+}
@@ -21,16 +21,23 @@ import com.codahale.metrics.*;
 import com.github.rollingmetrics.histogram.accumulator.Accumulator;
 import com.github.rollingmetrics.histogram.accumulator.ResetByChunksAccumulator;
 import com.github.rollingmetrics.histogram.accumulator.ResetOnSnapshotAccumulator;
+import com.github.rollingmetrics.histogram.log.IntervalLogWriter;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
 import com.github.rollingmetrics.util.ResilientExecutionUtil;
 import com.github.rollingmetrics.histogram.accumulator.UniformAccumulator;
 import org.HdrHistogram.Recorder;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -218,6 +225,14 @@ public class HdrBuilder {
     /**
      * Configures the highest value to be tracked by the histogram.
      *
+     * <p>
+     * The count of values which exceeded highestTrackableValue is exposed by gauge with suffix
+     * {@code overflow.skippedValues}, {@code overflow.reducedValues} or {@code overflow.passedThruValues} depending on {@code overflowResolver},
+     * the gauge is registered by {@link #buildAndRegisterHistogram(MetricRegistry, String)}, {@link #buildAndRegisterTimer(MetricRegistry, String)}
+     * and {@link #buildAndRegisterHdrTimer(MetricRegistry, String)} near the metric itself.
+     * Watch this gauge to check that highestTrackableValue is sized correctly.
+     * </p>
+     *
      * @param highestTrackableValue highest value to be tracked by the histogram. Must be a positive integer that is {@literal >=} (2 * lowestDiscernibleValue)
      * @param overflowResolver      specifies behavior which should be applied when writing to reservoir value which greater than highestTrackableValue
      * @return this builder instance
@@ -241,6 +256,14 @@ public class HdrBuilder {
      * for more explanations about coordinated omission and expected interval correction.
      * </p>
      *
+     * <p>
+     * Auto-generated values are grouped by histogram buckets and each group is recorded at once,
+     * so the cost of correction grows logarithmically with the size of outlier, the counts recorded to histogram are the same as per-value correction produces.
+     * The amount of applied correction is exposed by gauges with suffixes {@code coordinatedOmission.correctedSamples} and {@code coordinatedOmission.syntheticValues}
+     * which are registered by {@link #buildAndRegisterHistogram(MetricRegistry, String)}, {@link #buildAndRegisterTimer(MetricRegistry, String)}
+     * and {@link #buildAndRegisterHdrTimer(MetricRegistry, String)} near the metric itself.
+     * </p>
+     *
      * @param expectedIntervalBetweenValueSamples If expectedIntervalBetweenValueSamples is larger than 0,
      *                                            then each time on value writing, reservoir will add auto-generated value records as appropriate if value is larger
      *                                            than expectedIntervalBetweenValueSamples
@@ -270,6 +293,59 @@ public class HdrBuilder {
         return this;
     }
 
+    /**
+     * Configures the period with which snapshot will be recomputed by {@link ResilientExecutionUtil#getBackgroundScheduler() shared background scheduler}.
+     *
+     * <p>
+     * In this mode {@link Reservoir#getSnapshot()} just returns the snapshot which was precomputed and published through volatile field,
+     * so merging of chunks and calculation of percentiles is never performed by reporter thread, except very first invocation.
+     * The recomputation is performed periodically regardless of readers, so snapshot can be stale at most by refresh period plus time of recomputation.
+     * </p>
+     *
+     * <p>
+     * This mode can not be combined with {@link #withSnapshotCachingDuration(Duration)}, because published snapshot is already cached,
+     * and with {@link #resetReservoirOnSnapshot()}, because values of snapshot which was replaced before anybody read it would be lost,
+     * otherwise IllegalStateException will be thrown during reservoir construction.
+     * </p>
+     *
+     * <p>
+     * When combined with {@link #withoutSnapshotOptimization()} each published snapshot holds own copy of histogram,
+     * so readers are not affected by recomputation which happens concurrently. If recomputation fails then previously published snapshot is kept,
+     * and failure is reported to {@link InstrumentationListener#onBackgroundTaskFailure(Throwable)} of listener configured via {@link #withInstrumentationListener(InstrumentationListener)}.
+     * </p>
+     *
+     * @param refreshPeriod the period with which snapshot will be recomputed, should be a positive duration, zero duration disables this mode.
+     * @return this builder instance
+     * @see #withBackgroundSnapshotPrecomputation(Duration, ScheduledExecutorService)
+     */
+    public HdrBuilder withBackgroundSnapshotPrecomputation(Duration refreshPeriod) {
+        if (refreshPeriod.isNegative()) {
+            throw new IllegalArgumentException(refreshPeriod + " is negative");
+        }
+        if (refreshPeriod.isZero()) {
+            this.snapshotPrecomputationPeriodMillis = Optional.empty();
+        } else {
+            this.snapshotPrecomputationPeriodMillis = Optional.of(refreshPeriod.toMillis());
+        }
+        return this;
+    }
+
+    /**
+     * The same as {@link #withBackgroundSnapshotPrecomputation(Duration)}, but snapshot will be recomputed by provided scheduler.
+     *
+     * @param refreshPeriod the period with which snapshot will be recomputed, should be a positive duration, zero duration disables this mode.
+     * @param scheduler the scheduler which will perform recomputation
+     * @return this builder instance
+     */
+    public HdrBuilder withBackgroundSnapshotPrecomputation(Duration refreshPeriod, ScheduledExecutorService scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("scheduler must not be null");
+        }
+        withBackgroundSnapshotPrecomputation(refreshPeriod);
+        this.snapshotPrecomputationScheduler = Optional.of(scheduler);
+        return this;
+    }
+
     /**
      * Configures list of percentiles which you plan to store in monitoring database.
      * <p>
@@ -336,6 +412,77 @@ public class HdrBuilder {
         return this;
     }
 
+    /**
+     * Configures asynchronous recording, so thread which updates the reservoir never touches shared histogram memory.
+     *
+     * <p>
+     * Each writer thread stores values into its own single-producer ring buffer, writing costs one plain store and one ordered store of ring position.
+     * Values are moved to histogram in batches by background executor when ring becomes half full, and before each snapshot, so snapshot always contains all written values.
+     * When ring is full, the value is dropped, the count of dropped values is exposed by gauge {@code name.asyncRecording.droppedValues}
+     * if metric is registered via {@link #buildAndRegisterHistogram(MetricRegistry, String)}, {@link #buildAndRegisterTimer(MetricRegistry, String)} or {@link #buildAndRegisterHdrTimer(MetricRegistry, String)}.
+     * </p>
+     *
+     * <p>
+     * Note that for {@link #resetReservoirPeriodically(Duration)} and {@link #resetReservoirPeriodicallyByChunks(Duration, int)} the value belongs to the chunk which is current at the moment of draining,
+     * so values can be accounted a bit later than they were written.
+     * </p>
+     *
+     * @param bufferSizePerThread the capacity of ring buffer per writer thread, will be rounded up to the power of two
+     * @return this builder instance
+     */
+    public HdrBuilder withAsynchronousRecording(int bufferSizePerThread) {
+        if (bufferSizePerThread < 2) {
+            throw new IllegalArgumentException("bufferSizePerThread should be >= 2");
+        }
+        if (bufferSizePerThread > 1 << 30) {
+            throw new IllegalArgumentException("bufferSizePerThread should be <= " + (1 << 30));
+        }
+        this.asyncRecordingBufferSize = Optional.of(bufferSizePerThread);
+        return this;
+    }
+
+    /**
+     * Configures the listener which will be notified about how long snapshot extraction and rotation of chunks take.
+     *
+     * <p>
+     * By default nothing is measured. When snapshot caching is enabled, the listener is notified only about recomputation of cached snapshot.
+     * </p>
+     *
+     * @param instrumentationListener the listener, for example {@link com.github.rollingmetrics.instrumentation.InstrumentationMetricSet}
+     *
+     * @return this builder instance
+     */
+    public HdrBuilder withInstrumentationListener(InstrumentationListener instrumentationListener) {
+        if (instrumentationListener == null) {
+            throw new IllegalArgumentException("instrumentationListener must not be null");
+        }
+        this.instrumentationListener = Optional.of(instrumentationListener);
+        return this;
+    }
+
+    /**
+     * Configures the writer which appends each completed chunk to HdrHistogram interval log,
+     * it takes effect only for {@link #resetReservoirPeriodically(Duration)} and {@link #resetReservoirPeriodicallyByChunks(Duration, int)}.
+     *
+     * <p>
+     * Rotation only copies completed chunk into bounded queue of the writer, encoding and file I/O are done by writing thread,
+     * so neither recording nor rotation waits for the disk. Dropped and failed chunks are reported by gauges
+     * {@code <name>.intervalLog.droppedChunks} and {@code <name>.intervalLog.failedChunks} registered by {@code buildAndRegister*} methods.
+     * Each writer should be used by single histogram, because the log format has no way to distinguish histograms.
+     * </p>
+     *
+     * @param intervalLogWriter the writer of completed chunks
+     *
+     * @return this builder instance
+     */
+    public HdrBuilder withIntervalLogWriter(IntervalLogWriter intervalLogWriter) {
+        if (intervalLogWriter == null) {
+            throw new IllegalArgumentException("intervalLogWriter must not be null");
+        }
+        this.intervalLogWriter = Optional.of(intervalLogWriter);
+        return this;
+    }
+
     /**
      * Builds reservoir which can be useful for building monitoring primitives with higher level of abstraction.
      *
@@ -348,17 +495,46 @@ public class HdrBuilder {
     }
 
     /**
-     * Builds histogram.
+     * Builds reservoirs for several independent readers, for example for Graphite reporter and JMX console
+     * which read the same data from different registries.
+     *
+     * <p>
+     * All returned reservoirs share single recorder, so value written through any of them is recorded only once and becomes visible for all readers.
+     * This method is useful in conjunction with {@link #resetReservoirOnSnapshot()}, in this case each reader receives values recorded since its own previous snapshot,
+     * instead of stealing data from other readers. For other strategies snapshot does not clear data, so all readers just see the same data.
+     * </p>
+     *
+     * @param numberOfConsumers the number of independent readers
+     * @return reservoirs, one per reader
+     */
+    public List<Reservoir> buildReservoirsForIndependentConsumers(int numberOfConsumers) {
+        if (numberOfConsumers < 1) {
+            throw new IllegalArgumentException("numberOfConsumers should be >= 1");
+        }
+        validateParameters();
+        Accumulator accumulator = accumulationFactory.createAccumulator(this::buildRecorder, clock);
+        // ring buffers are shared, so value written through any reservoir becomes visible for all readers after draining
+        Optional<AsyncRecordingBuffer> asyncRecordingBuffer = buildAsyncRecordingBuffer();
+        List<Reservoir> reservoirs = new ArrayList<>(numberOfConsumers);
+        for (int i = 0; i < numberOfConsumers; i++) {
+            Accumulator consumerAccumulator = i == 0 ? accumulator : accumulator.newConsumer();
+            reservoirs.add(wrapAroundByDecorators(buildHdrReservoir(consumerAccumulator, asyncRecordingBuffer)));
+        }
+        return reservoirs;
+    }
+
+    /**
+     * Builds histogram. The returned histogram implements {@link com.github.rollingmetrics.checkpoint.Checkpointable}.
      *
      * @return an instance of {@link com.codahale.metrics.Histogram}
      * @see #buildAndRegisterHistogram(MetricRegistry, String)
      */
     public Histogram buildHistogram() {
-        return new Histogram(buildReservoir());
+        return new CheckpointableHistogram(buildReservoir());
     }
 
     /**
-     * Builds and registers histogram.
+     * Builds and registers histogram. The returned histogram implements {@link com.github.rollingmetrics.checkpoint.Checkpointable}.
      *
      * @param registry metric registry in which constructed histogram will be registered
      * @param name     the name under with constructed histogram will be registered in the {@code registry}
@@ -366,23 +542,25 @@ public class HdrBuilder {
      * @see #buildHistogram()
      */
     public Histogram buildAndRegisterHistogram(MetricRegistry registry, String name) {
-        Histogram histogram = buildHistogram();
+        HdrReservoir hdrReservoir = buildHdrReservoir();
+        Histogram histogram = new CheckpointableHistogram(wrapAroundByDecorators(hdrReservoir));
         registry.register(name, histogram);
+        registerCompanionGauges(registry, name, hdrReservoir);
         return histogram;
     }
 
     /**
-     * Builds timer.
+     * Builds timer. The returned timer implements {@link com.github.rollingmetrics.checkpoint.Checkpointable}.
      *
      * @return an instance of {@link com.codahale.metrics.Timer}
      * @see #buildAndRegisterTimer(MetricRegistry, String)
      */
     public Timer buildTimer() {
-        return new Timer(buildReservoir());
+        return new CheckpointableTimer(buildReservoir());
     }
 
     /**
-     * Builds and registers timer.
+     * Builds and registers timer. The returned timer implements {@link com.github.rollingmetrics.checkpoint.Checkpointable}.
      *
      * @param registry metric registry in which constructed histogram will be registered
      * @param name     the name under with constructed timer will be registered in the {@code registry}
@@ -390,8 +568,36 @@ public class HdrBuilder {
      * @see #buildTimer()
      */
     public Timer buildAndRegisterTimer(MetricRegistry registry, String name) {
-        Timer timer = buildTimer();
+        HdrReservoir hdrReservoir = buildHdrReservoir();
+        Timer timer = new CheckpointableTimer(wrapAroundByDecorators(hdrReservoir));
+        registry.register(name, timer);
+        registerCompanionGauges(registry, name, hdrReservoir);
+        return timer;
+    }
+
+    /**
+     * Builds timer which supports garbage free recording.
+     *
+     * @return an instance of {@link HdrTimer}
+     * @see #buildAndRegisterHdrTimer(MetricRegistry, String)
+     */
+    public HdrTimer buildHdrTimer() {
+        return buildHdrTimer(buildHdrReservoir());
+    }
+
+    /**
+     * Builds and registers timer which supports garbage free recording.
+     *
+     * @param registry metric registry in which constructed timer will be registered
+     * @param name     the name under with constructed timer will be registered in the {@code registry}
+     * @return an instance of {@link HdrTimer}
+     * @see #buildHdrTimer()
+     */
+    public HdrTimer buildAndRegisterHdrTimer(MetricRegistry registry, String name) {
+        HdrReservoir hdrReservoir = buildHdrReservoir();
+        HdrTimer timer = buildHdrTimer(hdrReservoir);
         registry.register(name, timer);
+        registerCompanionGauges(registry, name, hdrReservoir);
         return timer;
     }
 
@@ -412,7 +618,7 @@ public class HdrBuilder {
      */
     public HdrBuilder deepCopy() {
         return new HdrBuilder(clock, accumulationFactory, numberOfSignificantValueDigits, predefinedPercentiles, lowestDiscernibleValue,
-                highestTrackableValue, overflowResolver, snapshotCachingDurationMillis, expectedIntervalBetweenValueSamples, backgroundExecutor);
+                highestTrackableValue, overflowResolver, snapshotCachingDurationMillis, snapshotPrecomputationPeriodMillis, snapshotPrecomputationScheduler, expectedIntervalBetweenValueSamples, backgroundExecutor, instrumentationListener, intervalLogWriter, asyncRecordingBufferSize);
     }
 
     @Override
@@ -424,6 +630,9 @@ public class HdrBuilder {
                 ", highestTrackableValue=" + highestTrackableValue +
                 ", overflowResolver=" + overflowResolver +
                 ", snapshotCachingDurationMillis=" + snapshotCachingDurationMillis +
+                ", snapshotPrecomputationPeriodMillis=" + snapshotPrecomputationPeriodMillis +
+                ", snapshotPrecomputationScheduler=" + snapshotPrecomputationScheduler +
+                ", asyncRecordingBufferSize=" + asyncRecordingBufferSize +
                 ", predefinedPercentiles=" + Arrays.toString(predefinedPercentiles.orElse(new double[0])) +
                 '}';
     }
@@ -434,14 +643,19 @@ public class HdrBuilder {
     private Optional<Long> highestTrackableValue;
     private Optional<OverflowResolver> overflowResolver;
     private Optional<Long> snapshotCachingDurationMillis;
+    private Optional<Long> snapshotPrecomputationPeriodMillis;
+    private Optional<ScheduledExecutorService> snapshotPrecomputationScheduler;
     private Optional<double[]> predefinedPercentiles;
     private Optional<Long> expectedIntervalBetweenValueSamples;
     private Optional<Executor> backgroundExecutor;
+    private Optional<InstrumentationListener> instrumentationListener;
+    private Optional<IntervalLogWriter> intervalLogWriter;
+    private Optional<Integer> asyncRecordingBufferSize;
 
     private com.github.rollingmetrics.util.Clock clock;
 
     public HdrBuilder(com.github.rollingmetrics.util.Clock clock) {
-        this(clock, DEFAULT_ACCUMULATION_STRATEGY, DEFAULT_NUMBER_OF_SIGNIFICANT_DIGITS, Optional.of(DEFAULT_PERCENTILES), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+        this(clock, DEFAULT_ACCUMULATION_STRATEGY, DEFAULT_NUMBER_OF_SIGNIFICANT_DIGITS, Optional.of(DEFAULT_PERCENTILES), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
     }
 
     private HdrBuilder(com.github.rollingmetrics.util.Clock clock,
@@ -452,8 +666,13 @@ public class HdrBuilder {
                        Optional<Long> highestTrackableValue,
                        Optional<OverflowResolver> overflowResolver,
                        Optional<Long> snapshotCachingDurationMillis,
+                       Optional<Long> snapshotPrecomputationPeriodMillis,
+                       Optional<ScheduledExecutorService> snapshotPrecomputationScheduler,
                        Optional<Long> expectedIntervalBetweenValueSamples,
-                       Optional<Executor> backgroundExecutor) {
+                       Optional<Executor> backgroundExecutor,
+                       Optional<InstrumentationListener> instrumentationListener,
+                       Optional<IntervalLogWriter> intervalLogWriter,
+                       Optional<Integer> asyncRecordingBufferSize) {
         this.clock = clock;
         this.accumulationFactory = accumulationFactory;
         this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
@@ -461,9 +680,14 @@ public class HdrBuilder {
         this.highestTrackableValue = highestTrackableValue;
         this.overflowResolver = overflowResolver;
         this.snapshotCachingDurationMillis = snapshotCachingDurationMillis;
+        this.snapshotPrecomputationPeriodMillis = snapshotPrecomputationPeriodMillis;
+        this.snapshotPrecomputationScheduler = snapshotPrecomputationScheduler;
         this.predefinedPercentiles = predefinedPercentiles;
         this.expectedIntervalBetweenValueSamples = expectedIntervalBetweenValueSamples;
         this.backgroundExecutor = backgroundExecutor;
+        this.instrumentationListener = instrumentationListener;
+        this.intervalLogWriter = intervalLogWriter;
+        this.asyncRecordingBufferSize = asyncRecordingBufferSize;
     }
 
     private HdrBuilder resetReservoirPeriodicallyByChunks(long resettingPeriodMillis, int numberHistoryChunks) {
@@ -474,10 +698,18 @@ public class HdrBuilder {
             throw new IllegalArgumentException("Interval between resetting must be >= " + MIN_CHUNK_RESETTING_INTERVAL_MILLIS + " millis");
         }
 
-        accumulationFactory = (recorder, clock) -> new ResetByChunksAccumulator(recorder, numberHistoryChunks, resettingPeriodMillis, clock, getExecutor());
+        accumulationFactory = (recorder, clock) -> new ResetByChunksAccumulator(recorder, numberHistoryChunks, resettingPeriodMillis, clock, getExecutor(),
+                instrumentationListener.orElse(InstrumentationListener.NOOP), getCompletedChunkConsumer());
         return this;
     }
 
+    private Consumer<org.HdrHistogram.Histogram> getCompletedChunkConsumer() {
+        if (intervalLogWriter.isPresent()) {
+            return intervalLogWriter.get();
+        }
+        return ResetByChunksAccumulator.IGNORE_COMPLETED_CHUNK;
+    }
+
     private Executor getExecutor() {
         return backgroundExecutor.orElseGet(ResilientExecutionUtil.getInstance()::getBackgroundExecutor);
     }
@@ -485,7 +717,21 @@ public class HdrBuilder {
     private HdrReservoir buildHdrReservoir() {
         validateParameters();
         Accumulator accumulator = accumulationFactory.createAccumulator(this::buildRecorder, clock);
-        return new HdrReservoir(accumulator, predefinedPercentiles, highestTrackableValue, overflowResolver, expectedIntervalBetweenValueSamples);
+        return buildHdrReservoir(accumulator);
+    }
+
+    private HdrReservoir buildHdrReservoir(Accumulator accumulator) {
+        return buildHdrReservoir(accumulator, buildAsyncRecordingBuffer());
+    }
+
+    private HdrReservoir buildHdrReservoir(Accumulator accumulator, Optional<AsyncRecordingBuffer> asyncRecordingBuffer) {
+        Executor drainingExecutor = asyncRecordingBuffer.isPresent() ? getExecutor() : null;
+        return new HdrReservoir(accumulator, predefinedPercentiles, highestTrackableValue, overflowResolver, expectedIntervalBetweenValueSamples,
+                asyncRecordingBuffer, drainingExecutor, snapshotPrecomputationPeriodMillis.isPresent());
+    }
+
+    private Optional<AsyncRecordingBuffer> buildAsyncRecordingBuffer() {
+        return asyncRecordingBufferSize.map(AsyncRecordingBuffer::new);
     }
 
     private void validateParameters() {
@@ -496,6 +742,14 @@ public class HdrBuilder {
         if (lowestDiscernibleValue.isPresent() && !highestTrackableValue.isPresent()) {
             throw new IllegalStateException("lowestDiscernibleValue is specified but highestTrackableValue undefined");
         }
+
+        if (snapshotPrecomputationPeriodMillis.isPresent() && snapshotCachingDurationMillis.isPresent()) {
+            throw new IllegalStateException("snapshot caching can not be combined with background snapshot precomputation");
+        }
+
+        if (snapshotPrecomputationPeriodMillis.isPresent() && accumulationFactory == AccumulationFactory.RESET_ON_SNAPSHOT) {
+            throw new IllegalStateException("resetting reservoir on snapshot can not be combined with background snapshot precomputation");
+        }
     }
 
     private Recorder buildRecorder() {
@@ -508,7 +762,35 @@ public class HdrBuilder {
         return new Recorder(numberOfSignificantValueDigits);
     }
 
+    private HdrTimer buildHdrTimer(HdrReservoir hdrReservoir) {
+        Reservoir reservoir = wrapAroundByDecorators(hdrReservoir);
+        return new HdrTimer(hdrReservoir, reservoir, Clock.defaultClock());
+    }
+
+    private void registerCompanionGauges(MetricRegistry registry, String name, HdrReservoir hdrReservoir) {
+        for (Map.Entry<String, Metric> entry : hdrReservoir.getCompanionGauges().entrySet()) {
+            registry.register(name + "." + entry.getKey(), entry.getValue());
+        }
+        if (intervalLogWriter.isPresent()) {
+            IntervalLogWriter writer = intervalLogWriter.get();
+            registry.register(name + ".intervalLog.droppedChunks", (Gauge<Long>) writer::getDroppedChunkCount);
+            registry.register(name + ".intervalLog.failedChunks", (Gauge<Long>) writer::getFailedChunkCount);
+        }
+    }
+
     private Reservoir wrapAroundByDecorators(Reservoir reservoir) {
+        // wrap around by decorator if instrumentationListener was specified
+        if (instrumentationListener.isPresent()) {
+            reservoir = new InstrumentedReservoir(reservoir, instrumentationListener.get());
+        }
+
+        // wrap around by decorator if snapshotPrecomputationPeriodMillis was specified, combination with caching is rejected by validateParameters
+        if (snapshotPrecomputationPeriodMillis.isPresent()) {
+            ScheduledExecutorService scheduler = snapshotPrecomputationScheduler.orElseGet(ResilientExecutionUtil.getInstance()::getBackgroundScheduler);
+            return PrecomputedSnapshotReservoir.startRefreshing(reservoir, snapshotPrecomputationPeriodMillis.get(), scheduler,
+                    instrumentationListener.orElse(InstrumentationListener.NOOP));
+        }
+
         // wrap around by decorator if snapshotCachingDurationMillis was specified
         if (snapshotCachingDurationMillis.isPresent()) {
             reservoir = new SnapshotCachingReservoir(reservoir, snapshotCachingDurationMillis.get(), clock);
@@ -18,16 +18,27 @@
 
 package com.github.rollingmetrics.histogram;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
 import com.github.rollingmetrics.histogram.accumulator.Accumulator;
+import com.github.rollingmetrics.histogram.util.OccupiedBucketsHistogram;
+import com.github.rollingmetrics.util.ResilientExecutionUtil;
 import org.HdrHistogram.Histogram;
 import org.HdrHistogram.HistogramIterationValue;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -38,16 +49,35 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  *
  * @see HdrBuilder
  */
-class HdrReservoir implements Reservoir {
+class HdrReservoir implements Reservoir, Checkpointable {
 
     private final Accumulator accumulator;
     private final Function<Histogram, Snapshot> snapshotTaker;
     private final long highestTrackableValue;
     private final OverflowResolver overflowResolver;
     private final long expectedIntervalBetweenValueSamples;
+    private final AsyncRecordingBuffer asyncRecordingBuffer;
+    private final Executor backgroundExecutor;
+    private final LongConsumer synchronousRecorder = this::recordSynchronously;
+    private final Runnable asyncRecordingBufferDrainer = this::drainAsyncRecordingBuffer;
+
+    private final LongAdder overflowedValues = new LongAdder();
+    private final LongAdder correctedSamples = new LongAdder();
+    private final LongAdder syntheticValues = new LongAdder();
 
     HdrReservoir(Accumulator accumulator, Optional<double[]> predefinedPercentiles, Optional<Long> highestTrackableValue, Optional<OverflowResolver> overflowResolver, Optional<Long> expectedIntervalBetweenValueSamples) {
+        this(accumulator, predefinedPercentiles, highestTrackableValue, overflowResolver, expectedIntervalBetweenValueSamples, Optional.empty(), null, false);
+    }
+
+    /**
+     * @param detachFullSnapshots when true the full snapshot is backed by copy of histogram instead of histogram reused by accumulator,
+     *                            it is required when snapshot is published to readers while next snapshot is being taken
+     */
+    HdrReservoir(Accumulator accumulator, Optional<double[]> predefinedPercentiles, Optional<Long> highestTrackableValue, Optional<OverflowResolver> overflowResolver, Optional<Long> expectedIntervalBetweenValueSamples,
+                 Optional<AsyncRecordingBuffer> asyncRecordingBuffer, Executor backgroundExecutor, boolean detachFullSnapshots) {
         this.accumulator = accumulator;
+        this.asyncRecordingBuffer = asyncRecordingBuffer.orElse(null);
+        this.backgroundExecutor = backgroundExecutor;
         this.highestTrackableValue = highestTrackableValue.orElse(Long.MAX_VALUE);
         this.overflowResolver = overflowResolver.orElse(null);
         this.expectedIntervalBetweenValueSamples = expectedIntervalBetweenValueSamples.orElse(0L);
@@ -55,6 +85,8 @@ class HdrReservoir implements Reservoir {
         if (predefinedPercentiles.isPresent()) {
             double[] percentiles = predefinedPercentiles.get();
             snapshotTaker = histogram -> takeSmartSnapshot(percentiles, histogram);
+        } else if (detachFullSnapshots) {
+            snapshotTaker = histogram -> takeFullSnapshot(histogram.copy());
         } else {
             snapshotTaker = HdrReservoir::takeFullSnapshot;
         }
@@ -65,23 +97,64 @@ class HdrReservoir implements Reservoir {
         throw new UnsupportedOperationException("You should not use this method https://github.com/dropwizard/metrics/issues/874");
     }
 
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(accumulator).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer target) {
+        drainAsyncRecordingBuffer();
+        Checkpointable.of(accumulator).writeCheckpoint(target);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer source) {
+        Checkpointable.of(accumulator).restoreFromCheckpoint(source);
+    }
+
     @Override
     public void update(long value) {
+        if (asyncRecordingBuffer != null) {
+            if (asyncRecordingBuffer.write(value)) {
+                ResilientExecutionUtil.getInstance().execute(backgroundExecutor, asyncRecordingBufferDrainer);
+            }
+            return;
+        }
+        recordSynchronously(value);
+    }
+
+    private void recordSynchronously(long value) {
         if (value > highestTrackableValue) {
+            overflowedValues.increment();
             switch (overflowResolver) {
                 case SKIP: return;
                 case PASS_THRU: break;
                 case REDUCE_TO_HIGHEST_TRACKABLE: value = highestTrackableValue;
             }
         }
+        if (expectedIntervalBetweenValueSamples > 0) {
+            long intervals = value / expectedIntervalBetweenValueSamples;
+            if (intervals > 1) {
+                correctedSamples.increment();
+                syntheticValues.add(intervals - 1);
+            }
+        }
         accumulator.recordSingleValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
     }
 
     @Override
     public Snapshot getSnapshot() {
+        drainAsyncRecordingBuffer();
         return accumulator.getSnapshot(snapshotTaker);
     }
 
+    private void drainAsyncRecordingBuffer() {
+        if (asyncRecordingBuffer != null) {
+            asyncRecordingBuffer.drain(synchronousRecorder);
+        }
+    }
+
     /**
      * Provide a (conservatively high) estimate of the Reservoir's total footprint in bytes
      *
@@ -91,25 +164,111 @@ class HdrReservoir implements Reservoir {
         return accumulator.getEstimatedFootprintInBytes();
     }
 
+    /**
+     * @return the count of values which were greater than highestTrackableValue and were resolved by overflowResolver
+     */
+    long getOverflowedValueCount() {
+        return overflowedValues.sum();
+    }
+
+    /**
+     * @return the count of recorded values which were larger than expectedIntervalBetweenValueSamples and caused coordinated omission correction
+     */
+    long getCorrectedSampleCount() {
+        return correctedSamples.sum();
+    }
+
+    /**
+     * @return the total count of values which were auto-generated by coordinated omission correction
+     */
+    long getSyntheticValueCount() {
+        return syntheticValues.sum();
+    }
+
+    /**
+     * @return the count of values which were dropped because ring buffer of writer thread was full
+     */
+    long getDroppedValueCount() {
+        return asyncRecordingBuffer == null ? 0 : asyncRecordingBuffer.getDroppedValueCount();
+    }
+
+    /**
+     * Returns gauges which describe internal behavior of this reservoir, the keys are name suffixes.
+     * The gauge for overflow is provided only when highestTrackableValue is configured,
+     * the gauges for coordinated omission correction are provided only when expectedIntervalBetweenValueSamples is configured,
+     * the gauge for dropped values is provided only when asynchronous recording is configured.
+     *
+     * @return gauges which describe internal behavior of this reservoir
+     */
+    Map<String, Metric> getCompanionGauges() {
+        Map<String, Metric> gauges = new HashMap<>();
+        if (overflowResolver != null) {
+            gauges.put("overflow." + getOverflowGaugeName(overflowResolver), (Gauge<Long>) this::getOverflowedValueCount);
+        }
+        if (expectedIntervalBetweenValueSamples > 0) {
+            gauges.put("coordinatedOmission.correctedSamples", (Gauge<Long>) this::getCorrectedSampleCount);
+            gauges.put("coordinatedOmission.syntheticValues", (Gauge<Long>) this::getSyntheticValueCount);
+        }
+        if (asyncRecordingBuffer != null) {
+            gauges.put("asyncRecording.droppedValues", (Gauge<Long>) this::getDroppedValueCount);
+        }
+        return gauges;
+    }
+
+    private static String getOverflowGaugeName(OverflowResolver overflowResolver) {
+        switch (overflowResolver) {
+            case SKIP: return "skippedValues";
+            case REDUCE_TO_HIGHEST_TRACKABLE: return "reducedValues";
+            case PASS_THRU: return "passedThruValues";
+            default: throw new IllegalStateException("Unknown overflowResolver " + overflowResolver);
+        }
+    }
+
     static Snapshot takeSmartSnapshot(final double[] predefinedQuantiles, Histogram histogram) {
         final long max = histogram.getMaxValue();
         final long min = histogram.getMinValue();
-        final double mean = histogram.getMean();
-        final double median = histogram.getValueAtPercentile(50.0);
-        final double stdDeviation = histogram.getStdDeviation();
+
+        // single pass through occupied buckets instead of separate passes through counts for mean, deviation and each percentile
+        final RecordedBuckets buckets = new RecordedBuckets(histogram);
+        final double mean = buckets.getMean();
+        final double median = buckets.getValueAtPercentile(50.0);
+        final double stdDeviation = buckets.getStdDeviation(mean);
 
         final double[] values = new double[predefinedQuantiles.length];
         for (int i = 0; i < predefinedQuantiles.length; i++) {
             double quantile = predefinedQuantiles[i];
             double percentile = quantile * 100.0;
-            values[i] = histogram.getValueAtPercentile(percentile);
+            values[i] = buckets.getValueAtPercentile(percentile);
         }
 
-        return createSmartSnapshot(predefinedQuantiles, max, min, mean, median, stdDeviation, values);
+        return createSmartSnapshot(predefinedQuantiles, max, min, mean, median, stdDeviation, values, buckets);
     }
 
-    static Snapshot createSmartSnapshot(final double[] predefinedQuantiles, final long max, final long min, final double mean, final double median, final double stdDeviation, final double[] values) {
-        return new Snapshot() {
+    static Snapshot createSmartSnapshot(final double[] predefinedQuantiles, final long max, final long min, final double mean, final double median,
+                                        final double stdDeviation, final double[] values, final RecordedBuckets buckets) {
+        return new RichSnapshot() {
+            @Override
+            public long getCount() {
+                return buckets.getTotalCount();
+            }
+
+            @Override
+            public long getCountAtOrBelow(long value) {
+                return buckets.getCountAtOrBelow(value);
+            }
+
+            @Override
+            public long getCountBetween(long lowValue, long highValue) {
+                checkBounds(lowValue, highValue);
+                return buckets.getCountAtOrBelow(highValue) - buckets.getCountBelow(lowValue);
+            }
+
+            @Override
+            public void forEachRecordedBucket(BucketConsumer consumer) {
+                buckets.forEach(consumer);
+            }
+
+
             @Override
             public double getValue(double quantile) {
                 for (int i = 0; i < predefinedQuantiles.length; i++) {
@@ -184,8 +343,64 @@ class HdrReservoir implements Reservoir {
         };
     }
 
-    private static Snapshot takeFullSnapshot(final Histogram histogram) {
-        return new Snapshot() {
+    static RichSnapshot takeFullSnapshot(final Histogram histogram) {
+        return new RichSnapshot() {
+            @Override
+            public long getCount() {
+                return histogram.getTotalCount();
+            }
+
+            @Override
+            public long getCountAtOrBelow(long value) {
+                if (value < 0) {
+                    return 0;
+                }
+                return histogram.getCountBetweenValues(0, value);
+            }
+
+            @Override
+            public long getCountBetween(long lowValue, long highValue) {
+                checkBounds(lowValue, highValue);
+                if (highValue < 0) {
+                    return 0;
+                }
+                return histogram.getCountBetweenValues(Math.max(0, lowValue), highValue);
+            }
+
+            @Override
+            public void forEachRecordedBucket(BucketConsumer consumer) {
+                if (histogram.getTotalCount() == 0) {
+                    return;
+                }
+                // buckets are walked by values instead of recordedValues() to avoid allocation of iterator
+                long maxValue = histogram.getMaxValue();
+                for (long value = histogram.lowestEquivalentValue(histogram.getMinValue()); value <= maxValue; value = histogram.nextNonEquivalentValue(value)) {
+                    long count = histogram.getCountAtValue(value);
+                    if (count > 0) {
+                        consumer.accept(histogram.highestEquivalentValue(value), count);
+                    }
+                }
+            }
+
+            @Override
+            public void getCountsAtOrBelow(long[] sortedValues, long[] counts) {
+                // each bucket is visited once, because each range starts right after the bucket where previous range ended
+                long count = 0;
+                long nextRangeStart = 0;
+                long maxValue = histogram.getMaxValue();
+                for (int i = 0; i < sortedValues.length; i++) {
+                    long value = sortedValues[i];
+                    if (value >= maxValue) {
+                        count = histogram.getTotalCount();
+                    } else if (value >= nextRangeStart) {
+                        count += histogram.getCountBetweenValues(nextRangeStart, value);
+                        nextRangeStart = histogram.highestEquivalentValue(value) + 1;
+                    }
+                    counts[i] = count;
+                }
+            }
+
+
             @Override
             public double getValue(double quantile) {
                 double percentile = quantile * 100.0;
@@ -254,6 +469,176 @@ class HdrReservoir implements Reservoir {
         };
     }
 
+    /**
+     * Compact representation of non-empty buckets of histogram, which is used to answer rank queries after the histogram is reused.
+     *
+     * <p>
+     * When histogram is {@link OccupiedBucketsHistogram}, which is the case for snapshots of histograms reset by chunks,
+     * the representation is built from index of occupied buckets, so its cost is proportional to the number of occupied buckets.
+     * Otherwise building walks through the whole counts array once via {@link Histogram#recordedValues()}.
+     * In both cases mean, standard deviation and each percentile are answered from this representation instead of separate passes through counts.
+     */
+    static final class RecordedBuckets {
+
+        private long[] lowestValues;
+        private long[] highestValues;
+        private long[] cumulativeCounts;
+        private int size;
+
+        RecordedBuckets(Histogram histogram) {
+            if (histogram instanceof OccupiedBucketsHistogram) {
+                long[] occupiedValues = ((OccupiedBucketsHistogram) histogram).getOccupiedValuesInAscendingOrder();
+                allocate(occupiedValues.length);
+                long cumulativeCount = 0;
+                for (long lowestValue : occupiedValues) {
+                    long count = histogram.getCountAtValue(lowestValue);
+                    if (count > 0) {
+                        cumulativeCount += count;
+                        append(lowestValue, histogram.highestEquivalentValue(lowestValue), cumulativeCount);
+                    }
+                }
+            } else {
+                allocate(64);
+                for (HistogramIterationValue value : histogram.recordedValues()) {
+                    long highestValue = value.getValueIteratedTo();
+                    append(histogram.lowestEquivalentValue(highestValue), highestValue, value.getTotalCountToThisValue());
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            capacity = Math.max(capacity, 1);
+            lowestValues = new long[capacity];
+            highestValues = new long[capacity];
+            cumulativeCounts = new long[capacity];
+        }
+
+        private void append(long lowestValue, long highestValue, long cumulativeCount) {
+            if (size == lowestValues.length) {
+                lowestValues = Arrays.copyOf(lowestValues, size * 2);
+                highestValues = Arrays.copyOf(highestValues, size * 2);
+                cumulativeCounts = Arrays.copyOf(cumulativeCounts, size * 2);
+            }
+            lowestValues[size] = lowestValue;
+            highestValues[size] = highestValue;
+            cumulativeCounts[size] = cumulativeCount;
+            size++;
+        }
+
+        long getTotalCount() {
+            return size == 0 ? 0 : cumulativeCounts[size - 1];
+        }
+
+        /**
+         * Has the same semantic as {@link Histogram#getValueAtPercentile(double)},
+         * but uses binary search through non-empty buckets instead of linear scan of counts.
+         */
+        long getValueAtPercentile(double percentile) {
+            double requestedPercentile = Math.min(percentile, 100.0);
+            long countAtPercentile = (long) (((requestedPercentile / 100.0) * getTotalCount()) + 0.5);
+            countAtPercentile = Math.max(countAtPercentile, 1);
+
+            // binary search of the first bucket which cumulative count is greater than or equal to countAtPercentile
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulativeCounts[middle] < countAtPercentile) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if (low == size) {
+                return 0;
+            }
+            return percentile == 0.0 ? lowestValues[low] : highestValues[low];
+        }
+
+        /**
+         * Has the same semantic as {@link Histogram#getMean()}.
+         */
+        double getMean() {
+            long totalCount = getTotalCount();
+            if (totalCount == 0) {
+                return 0.0;
+            }
+            double totalValue = 0;
+            for (int i = 0; i < size; i++) {
+                totalValue += getMedianEquivalentValue(i) * (cumulativeCounts[i] - getCountBeforeBucket(i));
+            }
+            return totalValue / totalCount;
+        }
+
+        /**
+         * Has the same semantic as {@link Histogram#getStdDeviation()}.
+         */
+        double getStdDeviation(double mean) {
+            long totalCount = getTotalCount();
+            if (totalCount == 0) {
+                return 0.0;
+            }
+            double geometricDeviationTotal = 0.0;
+            for (int i = 0; i < size; i++) {
+                double deviation = getMedianEquivalentValue(i) - mean;
+                geometricDeviationTotal += (deviation * deviation) * (cumulativeCounts[i] - getCountBeforeBucket(i));
+            }
+            return Math.sqrt(geometricDeviationTotal / totalCount);
+        }
+
+        private long getMedianEquivalentValue(int bucketIndex) {
+            long sizeOfEquivalentValueRange = highestValues[bucketIndex] - lowestValues[bucketIndex] + 1;
+            return lowestValues[bucketIndex] + (sizeOfEquivalentValueRange >> 1);
+        }
+
+        /**
+         * @return the count of values in buckets which lowest equivalent value is less than or equal to {@code value}
+         */
+        long getCountAtOrBelow(long value) {
+            // binary search of the first bucket which lowest equivalent value is greater than value
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (lowestValues[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return getCountBeforeBucket(low);
+        }
+
+        /**
+         * @return the count of values in buckets which highest equivalent value is less than {@code value}
+         */
+        long getCountBelow(long value) {
+            // binary search of the first bucket which highest equivalent value is greater than or equal to value
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (highestValues[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return getCountBeforeBucket(low);
+        }
+
+        void forEach(RichSnapshot.BucketConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(highestValues[i], cumulativeCounts[i] - getCountBeforeBucket(i));
+            }
+        }
+
+        private long getCountBeforeBucket(int bucketIndex) {
+            return bucketIndex == 0 ? 0 : cumulativeCounts[bucketIndex - 1];
+        }
+
+    }
+
     @Override
     public String toString() {
         return "HdrReservoir{" +
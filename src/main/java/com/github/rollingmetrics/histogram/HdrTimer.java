@@ -0,0 +1,180 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Timer} which provides garbage free recording API in addition to standard API inherited from {@link Timer}.
+ *
+ * <p>
+ * The standard {@link Timer#time()} allocates {@link Timer.Context} on each invocation,
+ * this timer allows to avoid such allocation through primitive API:
+ * <pre><code>
+ *         HdrTimer timer = new HdrBuilder().buildAndRegisterHdrTimer(registry, "my-timer");
+ *
+ *         long startNanos = timer.start();
+ *         try {
+ *             doSomething();
+ *         } finally {
+ *             timer.stop(startNanos);
+ *         }
+ *     </code>
+ * </pre>
+ * Recorded values are written directly to underlying reservoir, and the timer is still registered in {@link com.codahale.metrics.MetricRegistry} as regular {@link Timer}.
+ * Checkpointing is delegated to the reservoir, rates of timer are not saved.
+ *
+ * @see HdrBuilder#buildHdrTimer()
+ * @see HdrBuilder#buildAndRegisterHdrTimer(com.codahale.metrics.MetricRegistry, String)
+ */
+public class HdrTimer extends Timer implements Checkpointable {
+
+    private final Reservoir recordingReservoir;
+    private final Reservoir snapshotReservoir;
+    private final Meter meter;
+    private final Clock clock;
+
+    HdrTimer(Reservoir recordingReservoir, Reservoir snapshotReservoir, Clock clock) {
+        super(snapshotReservoir, clock);
+        this.recordingReservoir = recordingReservoir;
+        this.snapshotReservoir = snapshotReservoir;
+        this.meter = new Meter(clock);
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the start point of measurement which should be passed to {@link #stop(long)} when measured action is completed.
+     *
+     * @return the current value of nanosecond tick
+     */
+    public long start() {
+        return clock.getTick();
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}.
+     *
+     * @param startNanos the value previously returned by {@link #start()}
+     */
+    public void stop(long startNanos) {
+        record(clock.getTick() - startNanos);
+    }
+
+    /**
+     * Records the duration in nanoseconds. Negative durations are ignored.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos >= 0) {
+            recordingReservoir.update(nanos);
+            meter.mark();
+        }
+    }
+
+    /**
+     * Times and records the duration of task.
+     *
+     * @param task the task to execute and measure
+     */
+    public void time(Runnable task) {
+        long startNanos = start();
+        try {
+            task.run();
+        } finally {
+            stop(startNanos);
+        }
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        long startNanos = start();
+        try {
+            return event.call();
+        } finally {
+            stop(startNanos);
+        }
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return snapshotReservoir.getSnapshot();
+    }
+
+    @Override
+    public long getCount() {
+        return meter.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return meter.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return meter.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate() {
+        return meter.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return meter.getOneMinuteRate();
+    }
+
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(snapshotReservoir).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer target) {
+        Checkpointable.of(snapshotReservoir).writeCheckpoint(target);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer source) {
+        Checkpointable.of(snapshotReservoir).restoreFromCheckpoint(source);
+    }
+
+    @Override
+    public String toString() {
+        return "HdrTimer{" +
+                "reservoir=" + snapshotReservoir +
+                '}';
+    }
+
+}
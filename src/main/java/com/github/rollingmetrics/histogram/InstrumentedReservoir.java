@@ -0,0 +1,72 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
+
+import java.nio.ByteBuffer;
+
+class InstrumentedReservoir implements Reservoir, Checkpointable {
+
+    private final Reservoir target;
+    private final InstrumentationListener listener;
+
+    InstrumentedReservoir(Reservoir target, InstrumentationListener listener) {
+        this.target = target;
+        this.listener = listener;
+    }
+
+    @Override
+    public int size() {
+        return target.size();
+    }
+
+    @Override
+    public void update(long value) {
+        target.update(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        long startNanos = System.nanoTime();
+        try {
+            return target.getSnapshot();
+        } finally {
+            listener.onSnapshot(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(target).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).writeCheckpoint(buffer);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).restoreFromCheckpoint(buffer);
+    }
+
+}
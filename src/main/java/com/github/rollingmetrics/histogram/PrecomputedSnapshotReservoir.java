@@ -0,0 +1,140 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorator which computes snapshots by periodic task of scheduler and publishes them through volatile field,
+ * so reader never pays for merging of chunks and calculation of percentiles except very first invocation of {@link #getSnapshot()}.
+ *
+ * <p>
+ * Recomputation does not depend on readers, the snapshot is recomputed each refresh period,
+ * so returned snapshot can be stale at most by refresh period plus time of recomputation.
+ * The periodic task references the decorator weakly and cancels itself when decorator becomes unreachable.
+ * Failed recomputation keeps previously published snapshot and is reported to {@link InstrumentationListener#onBackgroundTaskFailure(Throwable)}.
+ * </p>
+ */
+class PrecomputedSnapshotReservoir implements Reservoir, Checkpointable {
+
+    private final Reservoir target;
+
+    private volatile Snapshot published;
+
+    PrecomputedSnapshotReservoir(Reservoir target) {
+        this.target = target;
+    }
+
+    static PrecomputedSnapshotReservoir startRefreshing(Reservoir target, long refreshPeriodMillis, ScheduledExecutorService scheduler,
+                                                        InstrumentationListener instrumentationListener) {
+        PrecomputedSnapshotReservoir reservoir = new PrecomputedSnapshotReservoir(target);
+        RefreshTask task = new RefreshTask(reservoir, instrumentationListener);
+        task.future = scheduler.scheduleAtFixedRate(task, refreshPeriodMillis, refreshPeriodMillis, TimeUnit.MILLISECONDS);
+        return reservoir;
+    }
+
+    @Override
+    public int size() {
+        throw new UnsupportedOperationException("You should not use this method https://github.com/dropwizard/metrics/issues/874");
+    }
+
+    @Override
+    public void update(long value) {
+        target.update(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        Snapshot current = published;
+        if (current == null) {
+            return computeFirstSnapshot();
+        }
+        return current;
+    }
+
+    private synchronized Snapshot computeFirstSnapshot() {
+        Snapshot current = published;
+        if (current == null) {
+            current = target.getSnapshot();
+            published = current;
+        }
+        return current;
+    }
+
+    void refresh() {
+        published = target.getSnapshot();
+    }
+
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(target).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).writeCheckpoint(buffer);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).restoreFromCheckpoint(buffer);
+    }
+
+    private static final class RefreshTask implements Runnable {
+
+        private final WeakReference<PrecomputedSnapshotReservoir> reservoirRef;
+        private final InstrumentationListener instrumentationListener;
+        private volatile ScheduledFuture<?> future;
+
+        RefreshTask(PrecomputedSnapshotReservoir reservoir, InstrumentationListener instrumentationListener) {
+            this.reservoirRef = new WeakReference<>(reservoir);
+            this.instrumentationListener = instrumentationListener;
+        }
+
+        @Override
+        public void run() {
+            PrecomputedSnapshotReservoir reservoir = reservoirRef.get();
+            if (reservoir == null) {
+                ScheduledFuture<?> future = this.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                reservoir.refresh();
+            } catch (RuntimeException e) {
+                // exception thrown from periodic task suppresses all subsequent executions,
+                // so previously published snapshot is kept and recomputation will be retried in next period
+                instrumentationListener.onBackgroundTaskFailure(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes {@link RichSnapshot} in the Prometheus text exposition format as cumulative histogram buckets.
+ *
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  // values are recorded in nanoseconds, but exported in seconds
+ *  long[] bounds = PrometheusHistogramExporter.exponentialBucketBounds(TimeUnit.MILLISECONDS.toNanos(1), 2.0, 12);
+ *  PrometheusHistogramExporter exporter = new PrometheusHistogramExporter("http_request_duration_seconds", bounds, 9);
+ *
+ *  ByteBuffer buffer = ByteBuffer.allocate(4096);
+ *  exporter.write((RichSnapshot) timer.getSnapshot(), buffer);
+ * }</pre>
+ * The code above writes following lines:
+ * <pre>
+ * # TYPE http_request_duration_seconds histogram
+ * http_request_duration_seconds_bucket{le="0.001"} 3
+ * ...
+ * http_request_duration_seconds_bucket{le="+Inf"} 42
+ * http_request_duration_seconds_sum 1.53
+ * http_request_duration_seconds_count 42
+ * </pre>
+ *
+ * <p>
+ * All text except numbers is prepared at construction time, and cumulative counts are calculated via {@link RichSnapshot#getCountsAtOrBelow(long[], long[])}
+ * into reusable array, so exporting does not allocate any object. As result the exporter is stateful, so writing is synchronized.
+ * The sum is calculated as {@code mean * count}, so it is precise as long as mean is.
+ */
+public class PrometheusHistogramExporter {
+
+    public static final int MAX_DECIMAL_SCALE = 18;
+
+    private static final Pattern METRIC_NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    private final long[] bucketUpperBounds;
+    private final int decimalScale;
+
+    private final String[] lines;
+    private final byte[][] encodedLines;
+
+    private final long[] cumulativeCounts;
+    private final byte[] digits = new byte[MAX_DECIMAL_SCALE + 22];
+    private int digitsStart;
+    private int digitsEnd;
+
+    /**
+     * Creates the exporter.
+     *
+     * @param metricName the name of metric in Prometheus
+     * @param bucketUpperBounds the upper inclusive bounds of buckets in the same units as values recorded to histogram, in strictly ascending order
+     * @param decimalScale the number of decimal digits by which recorded values are divided for export, for example {@code 9} converts nanoseconds to seconds
+     */
+    public PrometheusHistogramExporter(String metricName, long[] bucketUpperBounds, int decimalScale) {
+        if (metricName == null) {
+            throw new IllegalArgumentException("metricName should not be null");
+        }
+        if (!METRIC_NAME_PATTERN.matcher(metricName).matches()) {
+            throw new IllegalArgumentException("metricName " + metricName + " does not match " + METRIC_NAME_PATTERN);
+        }
+        if (bucketUpperBounds == null) {
+            throw new IllegalArgumentException("bucketUpperBounds should not be null");
+        }
+        if (bucketUpperBounds.length == 0) {
+            throw new IllegalArgumentException("bucketUpperBounds should not be empty");
+        }
+        for (int i = 0; i < bucketUpperBounds.length; i++) {
+            if (bucketUpperBounds[i] < 0) {
+                throw new IllegalArgumentException("bucketUpperBounds should not be negative");
+            }
+            if (i > 0 && bucketUpperBounds[i] <= bucketUpperBounds[i - 1]) {
+                throw new IllegalArgumentException("bucketUpperBounds should be sorted in strictly ascending order");
+            }
+        }
+        if (decimalScale < 0 || decimalScale > MAX_DECIMAL_SCALE) {
+            throw new IllegalArgumentException("decimalScale should be between 0 and " + MAX_DECIMAL_SCALE);
+        }
+        this.bucketUpperBounds = bucketUpperBounds.clone();
+        this.decimalScale = decimalScale;
+        this.cumulativeCounts = new long[bucketUpperBounds.length];
+
+        // one line prefix per bucket, then +Inf bucket, sum and count
+        int bucketCount = bucketUpperBounds.length;
+        this.lines = new String[bucketCount + 4];
+        lines[0] = "# TYPE " + metricName + " histogram\n";
+        for (int i = 0; i < bucketCount; i++) {
+            String bound = BigDecimal.valueOf(bucketUpperBounds[i], decimalScale).stripTrailingZeros().toPlainString();
+            lines[i + 1] = metricName + "_bucket{le=\"" + bound + "\"} ";
+        }
+        lines[bucketCount + 1] = metricName + "_bucket{le=\"+Inf\"} ";
+        lines[bucketCount + 2] = metricName + "_sum ";
+        lines[bucketCount + 3] = metricName + "_count ";
+        this.encodedLines = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            encodedLines[i] = lines[i].getBytes(UTF_8);
+        }
+    }
+
+    /**
+     * Creates bounds where each bound is {@code factor} times greater than previous.
+     *
+     * @param start the first bound
+     * @param factor the multiplier between neighbour bounds
+     * @param count the number of bounds
+     * @return bounds in strictly ascending order
+     */
+    public static long[] exponentialBucketBounds(long start, double factor, int count) {
+        if (start <= 0) {
+            throw new IllegalArgumentException("start should be positive");
+        }
+        if (factor <= 1.0) {
+            throw new IllegalArgumentException("factor should be > 1.0");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("count should be >= 1");
+        }
+        long[] bounds = new long[count];
+        double bound = start;
+        for (int i = 0; i < count; i++) {
+            if (bound >= Long.MAX_VALUE) {
+                throw new IllegalArgumentException("bound " + bound + " is out of long range");
+            }
+            // rounding of small bounds can produce duplicates, but bounds should be strictly ascending
+            bounds[i] = i == 0 ? start : Math.max(Math.round(bound), bounds[i - 1] + 1);
+            bound *= factor;
+        }
+        return bounds;
+    }
+
+    /**
+     * Writes snapshot into buffer.
+     *
+     * @param snapshot the snapshot to export
+     * @param target the buffer to write UTF-8 encoded text
+     *
+     * @throws java.nio.BufferOverflowException if there is not enough space in the buffer
+     */
+    public synchronized void write(RichSnapshot snapshot, ByteBuffer target) {
+        long count = snapshot.getCount();
+        snapshot.getCountsAtOrBelow(bucketUpperBounds, cumulativeCounts);
+
+        target.put(encodedLines[0]);
+        for (int i = 0; i < cumulativeCounts.length; i++) {
+            target.put(encodedLines[i + 1]);
+            putDecimal(target, cumulativeCounts[i], 0);
+        }
+        target.put(encodedLines[cumulativeCounts.length + 1]);
+        putDecimal(target, count, 0);
+        target.put(encodedLines[cumulativeCounts.length + 2]);
+        putDecimal(target, getSum(snapshot, count), decimalScale);
+        target.put(encodedLines[cumulativeCounts.length + 3]);
+        putDecimal(target, count, 0);
+    }
+
+    /**
+     * Writes snapshot into appendable.
+     *
+     * @param snapshot the snapshot to export
+     * @param target the appendable to write text
+     *
+     * @throws IOException if target throws it
+     */
+    public synchronized void write(RichSnapshot snapshot, Appendable target) throws IOException {
+        long count = snapshot.getCount();
+        snapshot.getCountsAtOrBelow(bucketUpperBounds, cumulativeCounts);
+
+        target.append(lines[0]);
+        for (int i = 0; i < cumulativeCounts.length; i++) {
+            target.append(lines[i + 1]);
+            appendDecimal(target, cumulativeCounts[i], 0);
+        }
+        target.append(lines[cumulativeCounts.length + 1]);
+        appendDecimal(target, count, 0);
+        target.append(lines[cumulativeCounts.length + 2]);
+        appendDecimal(target, getSum(snapshot, count), decimalScale);
+        target.append(lines[cumulativeCounts.length + 3]);
+        appendDecimal(target, count, 0);
+    }
+
+    private static long getSum(RichSnapshot snapshot, long count) {
+        return Math.round(snapshot.getMean() * count);
+    }
+
+    private void putDecimal(ByteBuffer target, long value, int scale) {
+        formatDecimal(value, scale);
+        target.put(digits, digitsStart, digitsEnd - digitsStart);
+        target.put((byte) '\n');
+    }
+
+    private void appendDecimal(Appendable target, long value, int scale) throws IOException {
+        formatDecimal(value, scale);
+        for (int i = digitsStart; i < digitsEnd; i++) {
+            target.append((char) digits[i]);
+        }
+        target.append('\n');
+    }
+
+    private void formatDecimal(long value, int scale) {
+        int position = digits.length;
+        boolean negative = value < 0;
+        // negative remaining is used in order to support Long.MIN_VALUE
+        long remaining = negative ? value : -value;
+        if (scale > 0) {
+            for (int i = 0; i < scale; i++) {
+                digits[--position] = (byte) ('0' - remaining % 10);
+                remaining /= 10;
+            }
+            digits[--position] = '.';
+        }
+        do {
+            digits[--position] = (byte) ('0' - remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            digits[--position] = '-';
+        }
+        digitsStart = position;
+
+        int end = digits.length;
+        if (scale > 0) {
+            // strip trailing zeros of fraction and the point itself when fraction is zero
+            while (digits[end - 1] == '0') {
+                end--;
+            }
+            if (digits[end - 1] == '.') {
+                end--;
+            }
+        }
+        digitsEnd = end;
+    }
+
+    @Override
+    public String toString() {
+        return "PrometheusHistogramExporter{" +
+                "lines=" + String.join("", lines) +
+                '}';
+    }
+
+}
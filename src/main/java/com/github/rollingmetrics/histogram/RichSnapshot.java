@@ -0,0 +1,127 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+
+/**
+ * The {@link Snapshot} which additionally answers rank queries like "how many requests were slower than X".
+ * Each snapshot returned by reservoirs, histograms and timers constructed by {@link HdrBuilder} is instance of this class:
+ * <pre><code>
+ *         RichSnapshot snapshot = (RichSnapshot) histogram.getSnapshot();
+ *         long slowRequests = snapshot.getCount() - snapshot.getCountAtOrBelow(TimeUnit.MILLISECONDS.toNanos(200));
+ *     </code>
+ * </pre>
+ * The queries are answered directly from bucket counts without allocation,
+ * so precision of answers is limited by precision of the histogram:
+ * all values which are equivalent to the queried value (fall into the same bucket) are treated as equal to it.
+ */
+public abstract class RichSnapshot extends Snapshot {
+
+    /**
+     * @return the total count of values in this snapshot
+     */
+    public abstract long getCount();
+
+    /**
+     * Returns the count of values which are less than or equivalent to {@code value}.
+     *
+     * @param value the value to compare with
+     * @return the count of values which are less than or equivalent to {@code value}
+     */
+    public abstract long getCountAtOrBelow(long value);
+
+    /**
+     * Returns the count of values which are between {@code lowValue} and {@code highValue} inclusive,
+     * the values which are equivalent to any bound are counted too.
+     *
+     * @param lowValue the lower bound
+     * @param highValue the higher bound
+     * @return the count of values between {@code lowValue} and {@code highValue}
+     *
+     * @throws IllegalArgumentException if {@code lowValue} is greater than {@code highValue}
+     */
+    public abstract long getCountBetween(long lowValue, long highValue);
+
+    /**
+     * Fills {@code counts} by counts of values which are less than or equivalent to correspondent element of {@code sortedValues},
+     * in other words it is batch version of {@link #getCountAtOrBelow(long)} which can be implemented by one pass over buckets.
+     *
+     * @param sortedValues the values in ascending order
+     * @param counts the array to fill, its length should be not less than length of {@code sortedValues}
+     */
+    public void getCountsAtOrBelow(long[] sortedValues, long[] counts) {
+        for (int i = 0; i < sortedValues.length; i++) {
+            counts[i] = getCountAtOrBelow(sortedValues[i]);
+        }
+    }
+
+    /**
+     * Passes each non-empty bucket to {@code consumer} in ascending order of values.
+     * This is the most compact lossless view of snapshot, which is useful for serialization and merging of snapshots.
+     *
+     * @param consumer the consumer of buckets
+     */
+    public abstract void forEachRecordedBucket(BucketConsumer consumer);
+
+    /**
+     * Returns the percentage of values which are less than or equivalent to {@code value}.
+     *
+     * @param value the value to compare with
+     * @return the percentile in range from 0.0 to 100.0, or 0.0 if snapshot is empty
+     */
+    public double getPercentileAtValue(long value) {
+        long count = getCount();
+        if (count == 0) {
+            return 0.0;
+        }
+        return 100.0 * getCountAtOrBelow(value) / count;
+    }
+
+    /**
+     * Creates the snapshot which is backed by {@code histogram}, the histogram should not be modified while snapshot is in use.
+     *
+     * @param histogram the source of snapshot
+     * @return the snapshot backed by {@code histogram}
+     */
+    public static RichSnapshot fromHistogram(Histogram histogram) {
+        return HdrReservoir.takeFullSnapshot(histogram);
+    }
+
+    static void checkBounds(long lowValue, long highValue) {
+        if (lowValue > highValue) {
+            throw new IllegalArgumentException("lowValue=" + lowValue + " should be <= highValue=" + highValue);
+        }
+    }
+
+    /**
+     * The consumer of buckets for {@link #forEachRecordedBucket(BucketConsumer)}.
+     */
+    @FunctionalInterface
+    public interface BucketConsumer {
+
+        /**
+         * @param highestEquivalentValue the highest value which falls into the bucket
+         * @param count the count of values in the bucket, always positive
+         */
+        void accept(long highestEquivalentValue, long count);
+
+    }
+
+}
@@ -21,12 +21,14 @@ import com.github.rollingmetrics.util.CachingSupplier;
 import com.github.rollingmetrics.util.Clock;
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
 import com.github.rollingmetrics.util.Clock;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-class SnapshotCachingReservoir implements Reservoir {
+class SnapshotCachingReservoir implements Reservoir, Checkpointable {
 
     private final CachingSupplier<Snapshot> cachingSupplier;
     private final Reservoir target;
@@ -51,4 +53,19 @@ class SnapshotCachingReservoir implements Reservoir {
         return cachingSupplier.get();
     }
 
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(target).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).writeCheckpoint(buffer);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).restoreFromCheckpoint(buffer);
+    }
+
 }
@@ -35,4 +35,14 @@ public interface Accumulator {
 
     int getEstimatedFootprintInBytes();
 
+    /**
+     * Creates the accumulator which shares recording with this accumulator, but has independent snapshot extraction.
+     * Accumulators which do not reset own state on snapshot can be shared between readers as is.
+     *
+     * @return accumulator for additional reader
+     */
+    default Accumulator newConsumer() {
+        return this;
+    }
+
 }
@@ -17,37 +17,65 @@
 
 package com.github.rollingmetrics.histogram.accumulator;
 
+import com.github.rollingmetrics.checkpoint.CheckpointFormat;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
 import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.histogram.util.OccupiedBucketsHistogram;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
 import com.github.rollingmetrics.util.ResilientExecutionUtil;
 import com.github.rollingmetrics.util.Clock;
 import com.codahale.metrics.Snapshot;
 import com.github.rollingmetrics.histogram.util.Printer;
-import com.github.rollingmetrics.histogram.util.HistogramUtil;
-import com.github.rollingmetrics.util.Clock;
 import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
 import org.HdrHistogram.Recorder;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-public class ResetByChunksAccumulator implements Accumulator {
+public class ResetByChunksAccumulator implements Accumulator, Checkpointable {
+
+    public static final Consumer<Histogram> IGNORE_COMPLETED_CHUNK = histogram -> {};
+
+    private static final int CHECKPOINT_CHUNK_HEADER_SIZE = 8 + 4;
 
     private final Executor backgroundExecutor;
+    private final InstrumentationListener instrumentationListener;
+    private final Consumer<Histogram> completedChunkConsumer;
     private final long intervalBetweenResettingMillis;
     private final long creationTimestamp;
     private final ArchivedHistogram[] archive;
     private final boolean historySupported;
     private final Clock clock;
-    private final Histogram temporarySnapshotHistogram;
+    private final OccupiedBucketsHistogram temporarySnapshotHistogram;
 
     private final Phase left;
     private final Phase right;
     private final Phase[] phases;
     private final AtomicReference<Phase> currentPhaseRef;
 
+    private volatile ArchivedHistogram[] restoredArchive = new ArchivedHistogram[0];
+
     public ResetByChunksAccumulator(Supplier<Recorder> recorderSupplier, int numberHistoryChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor) {
+        this(recorderSupplier, numberHistoryChunks, intervalBetweenResettingMillis, clock, backgroundExecutor, InstrumentationListener.NOOP, IGNORE_COMPLETED_CHUNK);
+    }
+
+    /**
+     * @param completedChunkConsumer receives each chunk when it is completed, the histogram has start and end timestamps of the chunk and it is reused after consumer returns,
+     *                               so the consumer should not keep the reference to histogram. The consumer is invoked from background executor
+     *                               while rotation holds the monitor of accumulator, so it should copy the histogram and return without doing I/O.
+     */
+    public ResetByChunksAccumulator(Supplier<Recorder> recorderSupplier, int numberHistoryChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor,
+                                    InstrumentationListener instrumentationListener, Consumer<Histogram> completedChunkConsumer) {
+        this.instrumentationListener = instrumentationListener;
+        this.completedChunkConsumer = completedChunkConsumer;
         this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
         this.clock = clock;
         this.creationTimestamp = clock.currentTimeMillis();
@@ -63,14 +91,14 @@ public class ResetByChunksAccumulator implements Accumulator {
         if (historySupported) {
             this.archive = new ArchivedHistogram[numberHistoryChunks];
             for (int i = 0; i < numberHistoryChunks; i++) {
-                Histogram archivedHistogram = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+                OccupiedBucketsHistogram archivedHistogram = HistogramUtil.createOccupiedBucketsCopy(left.intervalHistogram);
                 this.archive[i] = new ArchivedHistogram(archivedHistogram, Long.MIN_VALUE);
             }
         } else {
             this.archive = null;
         }
 
-        this.temporarySnapshotHistogram = HistogramUtil.createNonConcurrentCopy(left.intervalHistogram);
+        this.temporarySnapshotHistogram = HistogramUtil.createOccupiedBucketsCopy(left.intervalHistogram);
     }
 
     @Override
@@ -78,12 +106,12 @@ public class ResetByChunksAccumulator implements Accumulator {
         long currentTimeMillis = clock.currentTimeMillis();
         Phase currentPhase = currentPhaseRef.get();
         if (currentTimeMillis < currentPhase.proposedInvalidationTimestamp) {
-            currentPhase.recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+            HistogramUtil.recordValueWithExpectedInterval(currentPhase.recorder, temporarySnapshotHistogram, value, expectedIntervalBetweenValueSamples);
             return;
         }
 
         Phase nextPhase = currentPhase == left ? right : left;
-        nextPhase.recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+        HistogramUtil.recordValueWithExpectedInterval(nextPhase.recorder, temporarySnapshotHistogram, value, expectedIntervalBetweenValueSamples);
 
         if (!currentPhaseRef.compareAndSet(currentPhase, nextPhase)) {
             // another writer achieved progress and must submit rotation task to backgroundExecutor
@@ -93,27 +121,51 @@ public class ResetByChunksAccumulator implements Accumulator {
         // Current thread is responsible to rotate phases.
         Runnable phaseRotation = () -> rotate(currentTimeMillis, currentPhase, nextPhase);
         ResilientExecutionUtil.getInstance().execute(backgroundExecutor, phaseRotation);
+        if (instrumentationListener != InstrumentationListener.NOOP) {
+            int queueSize = ResilientExecutionUtil.getInstance().getQueueSize(backgroundExecutor);
+            if (queueSize >= 0) {
+                instrumentationListener.onBackgroundTaskQueued(queueSize);
+            }
+        }
     }
 
     private synchronized void rotate(long currentTimeMillis, Phase currentPhase, Phase nextPhase) {
+        // rotation happens once per chunk, so time can be measured unconditionally
+        long startNanos = System.nanoTime();
         try {
+            // restored chunks are dropped as soon as they expire, instead of keeping them until next restore
+            pruneExpiredRestoredHistograms(clock.currentTimeMillis());
             currentPhase.intervalHistogram = currentPhase.recorder.getIntervalHistogram(currentPhase.intervalHistogram);
             HistogramUtil.addSecondToFirst(currentPhase.totalsHistogram, currentPhase.intervalHistogram);
+            OccupiedBucketsHistogram completedChunk = currentPhase.totalsHistogram;
             if (historySupported) {
-                // move values from recorder to correspondent archived histogram
+                // move completed chunk to correspondent archived histogram without copying,
+                // the histogram released from archive is reused for accumulation of next chunk
                 long currentPhaseNumber = (currentPhase.proposedInvalidationTimestamp - creationTimestamp) / intervalBetweenResettingMillis;
                 int correspondentArchiveIndex = (int) (currentPhaseNumber - 1) % archive.length;
                 ArchivedHistogram correspondentArchivedHistogram = archive[correspondentArchiveIndex];
-                HistogramUtil.reset(correspondentArchivedHistogram.histogram);
-                HistogramUtil.addSecondToFirst(correspondentArchivedHistogram.histogram, currentPhase.totalsHistogram);
+                currentPhase.totalsHistogram = correspondentArchivedHistogram.histogram;
+                correspondentArchivedHistogram.histogram = completedChunk;
                 correspondentArchivedHistogram.proposedInvalidationTimestamp = currentPhase.proposedInvalidationTimestamp + archive.length * intervalBetweenResettingMillis;
+                HistogramUtil.resetAndAlignLayout(currentPhase.totalsHistogram, temporarySnapshotHistogram);
+            }
+            try {
+                if (completedChunkConsumer != IGNORE_COMPLETED_CHUNK) {
+                    completedChunk.setStartTimeStamp(currentPhase.proposedInvalidationTimestamp - intervalBetweenResettingMillis);
+                    completedChunk.setEndTimeStamp(currentPhase.proposedInvalidationTimestamp);
+                    completedChunkConsumer.accept(completedChunk);
+                }
+            } finally {
+                if (!historySupported) {
+                    HistogramUtil.resetAndAlignLayout(currentPhase.totalsHistogram, temporarySnapshotHistogram);
+                }
             }
-            HistogramUtil.reset(currentPhase.totalsHistogram);
         } finally {
             long millisSinceCreation = currentTimeMillis - creationTimestamp;
             long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
             currentPhase.proposedInvalidationTimestamp = Long.MAX_VALUE;
             nextPhase.proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * intervalBetweenResettingMillis;
+            instrumentationListener.onRotation(System.nanoTime() - startNanos);
         }
     }
 
@@ -136,10 +188,150 @@ public class ResetByChunksAccumulator implements Accumulator {
                 }
             }
         }
+        for (ArchivedHistogram restoredHistogram : restoredArchive) {
+            if (restoredHistogram.proposedInvalidationTimestamp > currentTimeMillis) {
+                HistogramUtil.addSecondToFirst(temporarySnapshotHistogram, restoredHistogram.histogram);
+            }
+        }
 
         return HistogramUtil.getSnapshot(temporarySnapshotHistogram, snapshotTaker);
     }
 
+    /**
+     * Discards all recorded values including archived and restored chunks, so accumulator can be reused for other source of values.
+     * Boundaries of chunks are not changed. Values which are recorded concurrently with reset can survive it.
+     */
+    public synchronized void reset() {
+        for (Phase phase : phases) {
+            phase.recorder.reset();
+            HistogramUtil.reset(phase.intervalHistogram);
+            HistogramUtil.reset(phase.totalsHistogram);
+        }
+        if (historySupported) {
+            for (ArchivedHistogram archivedHistogram : archive) {
+                HistogramUtil.reset(archivedHistogram.histogram);
+                archivedHistogram.proposedInvalidationTimestamp = Long.MIN_VALUE;
+            }
+        }
+        restoredArchive = new ArchivedHistogram[0];
+    }
+
+    @Override
+    public synchronized int getMaxCheckpointSizeInBytes() {
+        int size = CheckpointFormat.HEADER_SIZE;
+        for (Phase phase : phases) {
+            size += CHECKPOINT_CHUNK_HEADER_SIZE + Math.max(phase.totalsHistogram.getNeededByteBufferCapacity(), phase.intervalHistogram.getNeededByteBufferCapacity());
+        }
+        if (historySupported) {
+            for (ArchivedHistogram archivedHistogram : archive) {
+                size += CHECKPOINT_CHUNK_HEADER_SIZE + archivedHistogram.histogram.getNeededByteBufferCapacity();
+            }
+        }
+        for (ArchivedHistogram restoredHistogram : restoredArchive) {
+            size += CHECKPOINT_CHUNK_HEADER_SIZE + restoredHistogram.histogram.getNeededByteBufferCapacity();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void writeCheckpoint(ByteBuffer target) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int countPosition = CheckpointFormat.startChunks(target, CheckpointFormat.HISTOGRAM);
+        int chunkCount = 0;
+
+        for (Phase phase : phases) {
+            if (phase.isNeedToBeReportedToSnapshot(currentTimeMillis)) {
+                phase.intervalHistogram = phase.recorder.getIntervalHistogram(phase.intervalHistogram);
+                HistogramUtil.addSecondToFirst(phase.totalsHistogram, phase.intervalHistogram);
+                long proposedInvalidationTimestamp = phase.proposedInvalidationTimestamp;
+                if (proposedInvalidationTimestamp == Long.MAX_VALUE) {
+                    // phase is in the middle of rotation, so it is being written in the current chunk
+                    long intervalsSinceCreation = (currentTimeMillis - creationTimestamp) / intervalBetweenResettingMillis;
+                    proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * intervalBetweenResettingMillis;
+                }
+                if (historySupported) {
+                    // values will be visible until invalidation of correspondent archived chunk
+                    proposedInvalidationTimestamp += archive.length * intervalBetweenResettingMillis;
+                }
+                chunkCount += writeCheckpointChunk(target, phase.totalsHistogram, proposedInvalidationTimestamp, currentTimeMillis);
+            }
+        }
+        if (historySupported) {
+            for (ArchivedHistogram archivedHistogram : archive) {
+                chunkCount += writeCheckpointChunk(target, archivedHistogram.histogram, archivedHistogram.proposedInvalidationTimestamp, currentTimeMillis);
+            }
+        }
+        for (ArchivedHistogram restoredHistogram : restoredArchive) {
+            chunkCount += writeCheckpointChunk(target, restoredHistogram.histogram, restoredHistogram.proposedInvalidationTimestamp, currentTimeMillis);
+        }
+
+        CheckpointFormat.finishChunks(target, countPosition, chunkCount);
+    }
+
+    @Override
+    public synchronized void restoreFromCheckpoint(ByteBuffer source) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int chunkCount = CheckpointFormat.readChunkCount(source, CheckpointFormat.HISTOGRAM);
+        List<ArchivedHistogram> restoredHistograms = getNotExpiredRestoredHistograms(currentTimeMillis);
+
+        for (int i = 0; i < chunkCount; i++) {
+            long proposedInvalidationTimestamp = source.getLong();
+            int encodedSize = source.getInt();
+            ByteBuffer encodedHistogram = source.slice();
+            encodedHistogram.limit(encodedSize);
+            source.position(source.position() + encodedSize);
+            if (proposedInvalidationTimestamp <= currentTimeMillis) {
+                continue;
+            }
+
+            // values are copied one by one because saved histogram can have different layout or range
+            Histogram decodedHistogram = Histogram.decodeFromByteBuffer(encodedHistogram, 0);
+            OccupiedBucketsHistogram histogram = new OccupiedBucketsHistogram(temporarySnapshotHistogram);
+            long maxValue = histogram.isAutoResize() ? Long.MAX_VALUE : histogram.getHighestTrackableValue();
+            for (HistogramIterationValue value : decodedHistogram.recordedValues()) {
+                histogram.recordValueWithCount(Math.min(value.getValueIteratedTo(), maxValue), value.getCountAtValueIteratedTo());
+            }
+            restoredHistograms.add(new ArchivedHistogram(histogram, proposedInvalidationTimestamp));
+        }
+        this.restoredArchive = restoredHistograms.toArray(new ArchivedHistogram[restoredHistograms.size()]);
+    }
+
+    private List<ArchivedHistogram> getNotExpiredRestoredHistograms(long currentTimeMillis) {
+        List<ArchivedHistogram> restoredHistograms = new ArrayList<>();
+        for (ArchivedHistogram restoredHistogram : restoredArchive) {
+            if (restoredHistogram.proposedInvalidationTimestamp > currentTimeMillis) {
+                restoredHistograms.add(restoredHistogram);
+            }
+        }
+        return restoredHistograms;
+    }
+
+    private void pruneExpiredRestoredHistograms(long currentTimeMillis) {
+        if (restoredArchive.length == 0) {
+            return;
+        }
+        List<ArchivedHistogram> restoredHistograms = getNotExpiredRestoredHistograms(currentTimeMillis);
+        if (restoredHistograms.size() < restoredArchive.length) {
+            this.restoredArchive = restoredHistograms.toArray(new ArchivedHistogram[restoredHistograms.size()]);
+        }
+    }
+
+    private static int writeCheckpointChunk(ByteBuffer target, Histogram histogram, long proposedInvalidationTimestamp, long currentTimeMillis) {
+        if (proposedInvalidationTimestamp <= currentTimeMillis || histogram.getTotalCount() == 0) {
+            return 0;
+        }
+        if (target.remaining() < CHECKPOINT_CHUNK_HEADER_SIZE + histogram.getNeededByteBufferCapacity()) {
+            // histogram checks capacity instead of remaining, so overflow should be detected in advance
+            throw new BufferOverflowException();
+        }
+        target.putLong(proposedInvalidationTimestamp);
+        int sizePosition = target.position();
+        target.putInt(0);
+        histogram.encodeIntoByteBuffer(target);
+        target.putInt(sizePosition, target.position() - sizePosition - 4);
+        return 1;
+    }
+
     @Override
     public int getEstimatedFootprintInBytes() {
         // each histogram has equivalent pessimistic estimation
@@ -148,15 +340,15 @@ public class ResetByChunksAccumulator implements Accumulator {
         // 4 - two recorders with two histogram
         // 2 - two histogram for storing accumulated values from current phase
         // 1 - temporary histogram used for snapshot extracting
-        return oneHistogramPessimisticFootprint * ((archive != null? archive.length : 0) + 4 + 2 + 1);
+        return oneHistogramPessimisticFootprint * ((archive != null? archive.length : 0) + restoredArchive.length + 4 + 2 + 1);
     }
 
     private final class ArchivedHistogram {
 
-        private final Histogram histogram;
+        private OccupiedBucketsHistogram histogram;
         private volatile long proposedInvalidationTimestamp;
 
-        public ArchivedHistogram(Histogram histogram, long proposedInvalidationTimestamp) {
+        public ArchivedHistogram(OccupiedBucketsHistogram histogram, long proposedInvalidationTimestamp) {
             this.histogram = histogram;
             this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
         }
@@ -173,14 +365,14 @@ public class ResetByChunksAccumulator implements Accumulator {
     private final class Phase {
 
         final Recorder recorder;
-        final Histogram totalsHistogram;
+        OccupiedBucketsHistogram totalsHistogram;
         Histogram intervalHistogram;
         volatile long proposedInvalidationTimestamp;
 
         Phase(Supplier<Recorder> recorderSupplier, long proposedInvalidationTimestamp) {
             this.recorder = recorderSupplier.get();
             this.intervalHistogram = recorder.getIntervalHistogram();
-            this.totalsHistogram = intervalHistogram.copy();
+            this.totalsHistogram = HistogramUtil.createOccupiedBucketsCopy(intervalHistogram);
             this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
         }
 
@@ -24,38 +24,121 @@ import com.github.rollingmetrics.histogram.util.HistogramUtil;
 import org.HdrHistogram.Histogram;
 import org.HdrHistogram.Recorder;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 
 public class ResetOnSnapshotAccumulator implements Accumulator {
 
     private final Recorder recorder;
+    private final Histogram layoutHistogram;
     private Histogram intervalHistogram;
 
+    // is empty until first additional consumer is registered, so single reader does not pay for the cursors
+    private final List<Consumer> consumers = new ArrayList<>();
+
     public ResetOnSnapshotAccumulator(Recorder recorder) {
         this.recorder = recorder;
         this.intervalHistogram = recorder.getIntervalHistogram();
+        this.layoutHistogram = HistogramUtil.createLayoutCopy(intervalHistogram);
     }
 
     @Override
     public void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
-        recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+        HistogramUtil.recordValueWithExpectedInterval(recorder, layoutHistogram, value, expectedIntervalBetweenValueSamples);
     }
 
     @Override
     synchronized public final Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+        if (!consumers.isEmpty()) {
+            // the first consumer represents this accumulator itself
+            return consumers.get(0).takeSnapshot(snapshotTaker);
+        }
         intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
         return HistogramUtil.getSnapshot(intervalHistogram, snapshotTaker);
     }
 
     @Override
-    public int getEstimatedFootprintInBytes() {
-        return intervalHistogram.getEstimatedFootprintInBytes() * 2;
+    synchronized public int getEstimatedFootprintInBytes() {
+        // each consumer holds two histograms
+        return intervalHistogram.getEstimatedFootprintInBytes() * (2 + consumers.size() * 2);
+    }
+
+    /**
+     * Registers new reader which receives values recorded since its own previous snapshot,
+     * independently of snapshots taken by other readers. Values are recorded once into single recorder.
+     *
+     * @return accumulator for additional reader
+     */
+    @Override
+    synchronized public Accumulator newConsumer() {
+        if (consumers.isEmpty()) {
+            consumers.add(new Consumer());
+        }
+        // values recorded before registration belong to already registered consumers
+        moveIntervalToConsumers();
+        Consumer consumer = new Consumer();
+        consumers.add(consumer);
+        return consumer;
+    }
+
+    private void moveIntervalToConsumers() {
+        intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+        for (Consumer consumer : consumers) {
+            HistogramUtil.addSecondToFirst(consumer.pendingHistogram, intervalHistogram);
+        }
+    }
+
+    private final class Consumer implements Accumulator {
+
+        private Histogram pendingHistogram = HistogramUtil.createNonConcurrentCopy(intervalHistogram);
+        private Histogram reportedHistogram = HistogramUtil.createNonConcurrentCopy(intervalHistogram);
+
+        @Override
+        public void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
+            ResetOnSnapshotAccumulator.this.recordSingleValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+        }
+
+        @Override
+        public Snapshot getSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+            synchronized (ResetOnSnapshotAccumulator.this) {
+                return takeSnapshot(snapshotTaker);
+            }
+        }
+
+        @Override
+        public int getEstimatedFootprintInBytes() {
+            return ResetOnSnapshotAccumulator.this.getEstimatedFootprintInBytes();
+        }
+
+        @Override
+        public Accumulator newConsumer() {
+            return ResetOnSnapshotAccumulator.this.newConsumer();
+        }
+
+        Snapshot takeSnapshot(Function<Histogram, Snapshot> snapshotTaker) {
+            moveIntervalToConsumers();
+            // swap histograms instead of copying, reported histogram stays untouched until next snapshot of this consumer
+            Histogram histogramToReport = pendingHistogram;
+            pendingHistogram = reportedHistogram;
+            reportedHistogram = histogramToReport;
+            HistogramUtil.reset(pendingHistogram);
+            return HistogramUtil.getSnapshot(reportedHistogram, snapshotTaker);
+        }
+
+        @Override
+        public String toString() {
+            return "Consumer{" +
+                    "pendingHistogram=" + Printer.histogramToString(pendingHistogram) +
+                    '}';
+        }
     }
 
     @Override
     public String toString() {
         return "ResetOnSnapshotAccumulator{" +
                 "intervalHistogram=" + Printer.histogramToString(intervalHistogram) +
+                ", consumers=" + consumers +
                 '}';
     }
 }
@@ -41,7 +41,7 @@ public class UniformAccumulator implements Accumulator {
 
     @Override
     public void recordSingleValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) {
-        recorder.recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+        HistogramUtil.recordValueWithExpectedInterval(recorder, uniformHistogram, value, expectedIntervalBetweenValueSamples);
     }
 
     @Override
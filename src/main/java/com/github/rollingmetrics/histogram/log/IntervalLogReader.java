@@ -0,0 +1,134 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.log;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads the log written by {@link IntervalLogWriter} and rebuilds histograms for arbitrary time windows.
+ *
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  // rebuild one hour of history
+ *  Histogram lastHour = IntervalLogReader.readWindow(Paths.get("/var/log/my-app/my-timer.hlog"), nowMillis - 3600_000, nowMillis);
+ * }</pre>
+ */
+public class IntervalLogReader {
+
+    private IntervalLogReader() {
+        // util class
+    }
+
+    /**
+     * Reads all chunks from the log.
+     *
+     * @param file the log file
+     * @return chunks in order of writing, each histogram has start and end timestamps of the chunk
+     * @throws IOException if file can not be read
+     */
+    public static List<Histogram> readChunks(Path file) throws IOException {
+        return readChunks(file, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the chunks which completely fit into the window.
+     *
+     * @param file the log file
+     * @param windowStartMillis the start of window, inclusive
+     * @param windowEndMillis the end of window, inclusive
+     * @return chunks in order of writing, each histogram has start and end timestamps of the chunk
+     * @throws IOException if file can not be read
+     */
+    public static List<Histogram> readChunks(Path file, long windowStartMillis, long windowEndMillis) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file should not be null");
+        }
+        if (windowStartMillis > windowEndMillis) {
+            throw new IllegalArgumentException("windowStartMillis should be <= windowEndMillis");
+        }
+        List<Histogram> chunks = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#") || line.equals(IntervalLogWriter.LEGEND)) {
+                    continue;
+                }
+                Histogram chunk = parseChunk(line);
+                if (chunk.getStartTimeStamp() >= windowStartMillis && chunk.getEndTimeStamp() <= windowEndMillis) {
+                    chunks.add(chunk);
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static Histogram parseChunk(String line) throws IOException {
+        String[] columns = line.split(",");
+        if (columns.length != 4) {
+            throw new IOException("Unexpected line format: " + line);
+        }
+        try {
+            long startTimeMillis = Math.round(Double.parseDouble(columns[0]) * 1000.0);
+            long intervalLengthMillis = Math.round(Double.parseDouble(columns[1]) * 1000.0);
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(columns[3]));
+            Histogram chunk = Histogram.decodeFromCompressedByteBuffer(buffer, 0);
+            chunk.setStartTimeStamp(startTimeMillis);
+            chunk.setEndTimeStamp(startTimeMillis + intervalLengthMillis);
+            return chunk;
+        } catch (IllegalArgumentException | DataFormatException e) {
+            throw new IOException("Unexpected line format: " + line, e);
+        }
+    }
+
+    /**
+     * Merges the chunks which completely fit into the window.
+     *
+     * @param file the log file
+     * @param windowStartMillis the start of window, inclusive
+     * @param windowEndMillis the end of window, inclusive
+     * @return merged histogram, or empty histogram if there are no chunks in the window
+     * @throws IOException if file can not be read
+     */
+    public static Histogram readWindow(Path file, long windowStartMillis, long windowEndMillis) throws IOException {
+        List<Histogram> chunks = readChunks(file, windowStartMillis, windowEndMillis);
+        if (chunks.isEmpty()) {
+            return new Histogram(2);
+        }
+        Histogram window = chunks.get(0).copy();
+        for (int i = 1; i < chunks.size(); i++) {
+            window.add(chunks.get(i));
+        }
+        window.setStartTimeStamp(chunks.get(0).getStartTimeStamp());
+        window.setEndTimeStamp(chunks.get(chunks.size() - 1).getEndTimeStamp());
+        return window;
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.log;
+
+import com.github.rollingmetrics.util.DaemonThreadFactory;
+import com.github.rollingmetrics.util.ResilientExecutionUtil;
+import org.HdrHistogram.Histogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Appends completed chunks of rolling histogram to the file in the HdrHistogram interval log format,
+ * so the full-fidelity history of latencies can be analyzed offline via {@link IntervalLogReader} or any tool which understands HdrHistogram logs.
+ *
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  IntervalLogWriter logWriter = new IntervalLogWriter(Paths.get("/var/log/my-app/my-timer.hlog"));
+ *  Timer timer = new HdrBuilder()
+ *      .resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 6)
+ *      .withIntervalLogWriter(logWriter)
+ *      .buildAndRegisterTimer(registry, "my-timer");
+ * }</pre>
+ *
+ * <p>
+ * Histograms are handed to the writer during rotation of chunks, so recording threads never touch the file.
+ * Rotation itself does not touch the file too: {@link #accept(Histogram)} only copies the completed chunk into bounded queue,
+ * and the copies are encoded and written by the writing executor, which is the dedicated daemon thread by default.
+ * When the queue is full the chunk is dropped and counted by {@link #getDroppedChunkCount()},
+ * chunks which can not be written because of I/O failure are counted by {@link #getFailedChunkCount()}.
+ * Compressed histogram is written through buffer of bounded size and flushed to the channel after each chunk.
+ * The file is opened in append mode, the header is written only when file is empty.
+ * Timestamps are written as seconds since epoch, the values are written as is, the max value column is written in milliseconds assuming that values are nanoseconds.
+ * The format has no tags in HdrHistogram 2.1.8, so use separate file per histogram.
+ */
+public class IntervalLogWriter implements Consumer<Histogram>, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    static final String LOG_FORMAT_VERSION = "1.2";
+    static final String LEGEND = "\"StartTimestamp\",\"Interval_Length\",\"Interval_Max\",\"Interval_Compressed_Histogram\"";
+    private static final double MAX_VALUE_UNIT_RATIO = 1_000_000.0;
+
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer;
+    private ByteBuffer compressionBuffer;
+
+    private final BlockingQueue<Histogram> pendingChunks;
+    private final Executor writingExecutor;
+    private final ExecutorService ownedExecutor;
+    private final Runnable writingTask = this::flush;
+    private final LongAdder droppedChunks = new LongAdder();
+    private final LongAdder failedChunks = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Opens the log file with {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @param file the file to append histograms
+     * @throws IOException if file can not be opened
+     */
+    public IntervalLogWriter(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens the log file.
+     *
+     * @param file the file to append histograms
+     * @param bufferSize the size of buffer between encoder and file channel
+     * @throws IOException if file can not be opened
+     */
+    public IntervalLogWriter(Path file, int bufferSize) throws IOException {
+        this(file, bufferSize, DEFAULT_QUEUE_CAPACITY, null);
+    }
+
+    /**
+     * Opens the log file and writes chunks via provided executor instead of dedicated thread.
+     * The executor is not shut down by {@link #close()}.
+     *
+     * @param file the file to append histograms
+     * @param bufferSize the size of buffer between encoder and file channel
+     * @param queueCapacity the count of completed chunks which can wait for writing, the chunks above this limit are dropped
+     * @param writingExecutor the executor which encodes and writes completed chunks
+     * @throws IOException if file can not be opened
+     */
+    public IntervalLogWriter(Path file, int bufferSize, int queueCapacity, Executor writingExecutor) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file should not be null");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize should be positive");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity should be positive");
+        }
+        this.pendingChunks = new ArrayBlockingQueue<>(queueCapacity);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writeBuffer = ByteBuffer.allocate(bufferSize);
+        if (channel.size() == 0) {
+            long startTimeMillis = System.currentTimeMillis();
+            write("#[Histogram log format version " + LOG_FORMAT_VERSION + "]\n");
+            write(String.format(Locale.US, "#[StartTime: %.3f (seconds since epoch), %s]\n", startTimeMillis / 1000.0, new Date(startTimeMillis)));
+            write(LEGEND + "\n");
+            drain();
+        }
+        if (writingExecutor != null) {
+            this.writingExecutor = writingExecutor;
+            this.ownedExecutor = null;
+        } else {
+            this.ownedExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("rolling-metrics-interval-log-writer"));
+            this.writingExecutor = ownedExecutor;
+        }
+    }
+
+    /**
+     * Copies the completed chunk into queue of pending chunks and schedules writing,
+     * histogram is written using its start and end timestamps as interval bounds.
+     * The chunk is dropped when queue is full or writer is closed.
+     *
+     * @param histogram the completed chunk
+     */
+    @Override
+    public void accept(Histogram histogram) {
+        if (closed || pendingChunks.remainingCapacity() == 0 || !pendingChunks.offer(histogram.copy())) {
+            droppedChunks.increment();
+            return;
+        }
+        ResilientExecutionUtil.getInstance().execute(writingExecutor, writingTask);
+    }
+
+    /**
+     * Writes all pending chunks in the current thread.
+     */
+    public synchronized void flush() {
+        Histogram histogram;
+        while ((histogram = pendingChunks.poll()) != null) {
+            try {
+                write(histogram);
+            } catch (IOException | RuntimeException e) {
+                failedChunks.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the count of completed chunks which were dropped because queue of pending chunks was full or writer was closed
+     */
+    public long getDroppedChunkCount() {
+        return droppedChunks.sum();
+    }
+
+    /**
+     * @return the count of completed chunks which were not written because of failure
+     */
+    public long getFailedChunkCount() {
+        return failedChunks.sum();
+    }
+
+    private void write(Histogram histogram) throws IOException {
+        int neededCapacity = histogram.getNeededByteBufferCapacity();
+        if (compressionBuffer == null || compressionBuffer.capacity() < neededCapacity) {
+            compressionBuffer = ByteBuffer.allocate(neededCapacity);
+        }
+        compressionBuffer.clear();
+        histogram.encodeIntoCompressedByteBuffer(compressionBuffer);
+        compressionBuffer.flip();
+        String encodedHistogram = UTF_8.decode(Base64.getEncoder().encode(compressionBuffer)).toString();
+
+        double startTimeSec = histogram.getStartTimeStamp() / 1000.0;
+        double intervalLengthSec = (histogram.getEndTimeStamp() - histogram.getStartTimeStamp()) / 1000.0;
+        double maxValue = histogram.getMaxValueAsDouble() / MAX_VALUE_UNIT_RATIO;
+        write(String.format(Locale.US, "%.3f,%.3f,%.3f,", startTimeSec, intervalLengthSec, maxValue));
+        write(encodedHistogram);
+        write("\n");
+        drain();
+    }
+
+    /**
+     * Writes pending chunks, closes the file and stops the dedicated writing thread.
+     *
+     * @throws IOException if file can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        flush();
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+        if (channel.isOpen()) {
+            channel.close();
+        }
+    }
+
+    private void write(String text) throws IOException {
+        byte[] bytes = text.getBytes(UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!writeBuffer.hasRemaining()) {
+                drain();
+            }
+            int length = Math.min(bytes.length - offset, writeBuffer.remaining());
+            writeBuffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void drain() throws IOException {
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+        } finally {
+            writeBuffer.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IntervalLogWriter{" +
+                "channel=" + channel +
+                '}';
+    }
+
+}
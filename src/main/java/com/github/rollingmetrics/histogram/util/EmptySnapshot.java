@@ -17,11 +17,11 @@
 
 package com.github.rollingmetrics.histogram.util;
 
-import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.RichSnapshot;
 
 import java.io.OutputStream;
 
-public class EmptySnapshot extends Snapshot {
+public class EmptySnapshot extends RichSnapshot {
 
     public static final EmptySnapshot INSTANCE = new EmptySnapshot();
     private static final long[] VALUES = new long[0];
@@ -41,6 +41,29 @@ public class EmptySnapshot extends Snapshot {
         return 0;
     }
 
+    @Override
+    public long getCount() {
+        return 0;
+    }
+
+    @Override
+    public long getCountAtOrBelow(long value) {
+        return 0;
+    }
+
+    @Override
+    public long getCountBetween(long lowValue, long highValue) {
+        if (lowValue > highValue) {
+            throw new IllegalArgumentException("lowValue=" + lowValue + " should be <= highValue=" + highValue);
+        }
+        return 0;
+    }
+
+    @Override
+    public void forEachRecordedBucket(BucketConsumer consumer) {
+        // there are no buckets
+    }
+
     @Override
     public long getMax() {
         return 0;
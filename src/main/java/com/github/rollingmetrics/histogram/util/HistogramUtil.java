@@ -19,9 +19,11 @@ package com.github.rollingmetrics.histogram.util;
 
 
 import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.AbstractHistogram;
 import org.HdrHistogram.AtomicHistogram;
 import org.HdrHistogram.ConcurrentHistogram;
 import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 
 import java.util.function.Function;
 
@@ -33,12 +35,62 @@ public class HistogramUtil {
         }
     }
 
+    /**
+     * Resets histogram and grows it up to geometry of {@code layout} when histogram is auto-resizable and smaller than layout.
+     *
+     * <p>
+     * {@link Histogram#add(AbstractHistogram)} merges histograms with identical geometry through single pass over counts,
+     * but when bucket counts of auto-resizable histograms differ, each non-empty bucket is recorded separately, which is several times slower.
+     * So histograms which are regularly merged into {@code layout} should be reset by this method in order to keep geometries aligned.
+     * </p>
+     *
+     * @param histogram the histogram to reset
+     * @param layout the largest histogram with same lowestDiscernibleValue and numberOfSignificantValueDigits
+     */
+    public static void resetAndAlignLayout(Histogram histogram, Histogram layout) {
+        reset(histogram);
+        if (histogram.isAutoResize()
+                && histogram.getHighestTrackableValue() < layout.getHighestTrackableValue()
+                && histogram.getLowestDiscernibleValue() == layout.getLowestDiscernibleValue()
+                && histogram.getNumberOfSignificantValueDigits() == layout.getNumberOfSignificantValueDigits()) {
+            // zero count does not change counts, and max value affected by recording is cleared by reset
+            histogram.recordValueWithCount(layout.getHighestTrackableValue(), 0);
+            histogram.reset();
+        }
+    }
+
     public static void addSecondToFirst(Histogram first, Histogram second) {
         if (second.getTotalCount() > 0) {
             first.add(second);
         }
     }
 
+    /**
+     * Records value to recorder with the same semantic as {@link AbstractHistogram#recordValueWithExpectedInterval(long, long)},
+     * but instead of recording auto-generated values one by one, they are grouped by equivalent value ranges of {@code layout},
+     * and each group is recorded via single {@link Recorder#recordValueWithCount(long, long)}.
+     * So the cost of correction grows logarithmically with the value instead of linear growth,
+     * and the recorded counts are identical to counts which would be produced by per-value correction.
+     *
+     * @param recorder the recorder to write into
+     * @param layout any histogram with same lowestDiscernibleValue and numberOfSignificantValueDigits as recorder has
+     * @param value the value to record
+     * @param expectedIntervalBetweenValueSamples if larger than 0, auto-generated values will be recorded as appropriate if value is larger than expectedIntervalBetweenValueSamples
+     */
+    public static void recordValueWithExpectedInterval(Recorder recorder, AbstractHistogram layout, long value, long expectedIntervalBetweenValueSamples) {
+        recorder.recordValue(value);
+        if (expectedIntervalBetweenValueSamples <= 0) {
+            return;
+        }
+        long missingValue = value - expectedIntervalBetweenValueSamples;
+        while (missingValue >= expectedIntervalBetweenValueSamples) {
+            long rangeLowestValue = Math.max(layout.lowestEquivalentValue(missingValue), expectedIntervalBetweenValueSamples);
+            long count = (missingValue - rangeLowestValue) / expectedIntervalBetweenValueSamples + 1;
+            recorder.recordValueWithCount(missingValue, count);
+            missingValue -= count * expectedIntervalBetweenValueSamples;
+        }
+    }
+
     public static Snapshot getSnapshot(Histogram histogram, Function<Histogram, Snapshot> snapshotTaker) {
         if (histogram.getTotalCount() > 0) {
             return snapshotTaker.apply(histogram);
@@ -47,6 +99,38 @@ public class HistogramUtil {
         }
     }
 
+    /**
+     * Creates the smallest possible histogram which has the same equivalent value ranges as {@code source},
+     * the result is useful only for value range calculations and should not be used for recording.
+     *
+     * @param source the histogram to copy layout from
+     * @return histogram with the same layout as {@code source}
+     */
+    public static Histogram createLayoutCopy(Histogram source) {
+        long lowestDiscernibleValue = source.getLowestDiscernibleValue();
+        return new Histogram(lowestDiscernibleValue, lowestDiscernibleValue * 2, source.getNumberOfSignificantValueDigits());
+    }
+
+    /**
+     * Creates the same histogram as {@link #createNonConcurrentCopy(Histogram)}, but which keeps index of occupied buckets.
+     *
+     * @param source the histogram to copy range and precision from
+     * @return empty histogram with index of occupied buckets
+     */
+    public static OccupiedBucketsHistogram createOccupiedBucketsCopy(Histogram source) {
+        if (source instanceof ConcurrentHistogram) {
+            return new OccupiedBucketsHistogram(source.getNumberOfSignificantValueDigits());
+        } else if (source instanceof AtomicHistogram) {
+            return new OccupiedBucketsHistogram(
+                    source.getLowestDiscernibleValue(),
+                    source.getHighestTrackableValue(),
+                    source.getNumberOfSignificantValueDigits()
+            );
+        } else {
+            throw new IllegalArgumentException("Unsupported histogram class " + source.getClass());
+        }
+    }
+
     public static Histogram createNonConcurrentCopy(Histogram source) {
         if (source instanceof ConcurrentHistogram) {
             return new Histogram(source.getNumberOfSignificantValueDigits());
@@ -0,0 +1,197 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram.util;
+
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Arrays;
+
+/**
+ * Non-concurrent histogram which additionally keeps the index of its non-empty buckets,
+ * so merging of this histogram into another one and iteration over recorded values cost proportionally to the number of occupied buckets
+ * instead of length of counts array.
+ *
+ * <p>
+ * The index contains lowest equivalent value of each bucket which became non-empty since last reset, in order of occupation.
+ * It is maintained by {@link #recordValue(long)}, {@link #recordValueWithCount(long, long)} and {@link #add(AbstractHistogram)},
+ * operations which can not keep the index consistent, like subtraction and shifting, are not supported.
+ * When source of {@link #add(AbstractHistogram)} is not indexed, only the range between its minimum and maximum values is walked.
+ *
+ * <p>
+ * {@link #reset()} still clears counts array in bulk, because tracked minimum and maximum values of HdrHistogram can not be cleared by other way,
+ * use {@link HistogramUtil#reset(Histogram)} to skip it for histogram which has nothing recorded.
+ *
+ * <p>
+ * This class is intended to be used by accumulators for histograms which they own: totals of chunks, archived chunks and snapshot histogram.
+ */
+@SuppressWarnings("serial") // histograms owned by accumulators are never serialized
+public class OccupiedBucketsHistogram extends Histogram {
+
+    private static final int INITIAL_INDEX_CAPACITY = 64;
+
+    private long[] occupiedValues = new long[INITIAL_INDEX_CAPACITY];
+    private int occupiedCount;
+
+    /**
+     * Creates auto-resizable histogram.
+     *
+     * @param numberOfSignificantValueDigits the precision of histogram
+     */
+    public OccupiedBucketsHistogram(int numberOfSignificantValueDigits) {
+        super(numberOfSignificantValueDigits);
+    }
+
+    /**
+     * Creates histogram with fixed range.
+     *
+     * @param lowestDiscernibleValue the lowest value that can be discerned
+     * @param highestTrackableValue the highest value to be tracked
+     * @param numberOfSignificantValueDigits the precision of histogram
+     */
+    public OccupiedBucketsHistogram(long lowestDiscernibleValue, long highestTrackableValue, int numberOfSignificantValueDigits) {
+        super(lowestDiscernibleValue, highestTrackableValue, numberOfSignificantValueDigits);
+    }
+
+    /**
+     * Creates empty histogram with the same range, precision and auto-resize mode as {@code source}.
+     *
+     * @param source the histogram to copy layout from
+     */
+    public OccupiedBucketsHistogram(AbstractHistogram source) {
+        super(source);
+    }
+
+    /**
+     * @return number of buckets which became non-empty since last reset
+     */
+    public int getOccupiedBucketCount() {
+        return occupiedCount;
+    }
+
+    /**
+     * Returns lowest equivalent values of non-empty buckets in ascending order.
+     * Cost of this method is {@code O(k log k)} where {@code k} is number of occupied buckets.
+     *
+     * @return new array which contains lowest equivalent value of each non-empty bucket
+     */
+    public long[] getOccupiedValuesInAscendingOrder() {
+        // sorting in place is safe because the order of index does not matter for other operations
+        Arrays.sort(occupiedValues, 0, occupiedCount);
+        return Arrays.copyOf(occupiedValues, occupiedCount);
+    }
+
+    @Override
+    public void recordValue(long value) throws ArrayIndexOutOfBoundsException {
+        recordValueWithCount(value, 1);
+    }
+
+    @Override
+    public void recordValueWithCount(long value, long count) throws ArrayIndexOutOfBoundsException {
+        super.recordValueWithCount(value, count);
+        // count equals to recorded count only if bucket was empty before recording,
+        // the check is done after recording because bucket does not exist before auto-resizing
+        if (count > 0 && getCountAtValue(value) == count) {
+            addToIndex(lowestEquivalentValue(value));
+        }
+    }
+
+    @Override
+    public void recordValueWithExpectedInterval(long value, long expectedIntervalBetweenValueSamples) throws ArrayIndexOutOfBoundsException {
+        recordValueWithCount(value, 1);
+        if (expectedIntervalBetweenValueSamples <= 0) {
+            return;
+        }
+        for (long missingValue = value - expectedIntervalBetweenValueSamples; missingValue >= expectedIntervalBetweenValueSamples; missingValue -= expectedIntervalBetweenValueSamples) {
+            recordValueWithCount(missingValue, 1);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void recordValue(long value, long expectedIntervalBetweenValueSamples) throws ArrayIndexOutOfBoundsException {
+        recordValueWithExpectedInterval(value, expectedIntervalBetweenValueSamples);
+    }
+
+    @Override
+    public void add(AbstractHistogram otherHistogram) throws ArrayIndexOutOfBoundsException {
+        if (otherHistogram.getTotalCount() == 0) {
+            return;
+        }
+        if (otherHistogram instanceof OccupiedBucketsHistogram) {
+            OccupiedBucketsHistogram other = (OccupiedBucketsHistogram) otherHistogram;
+            long[] values = other.occupiedValues;
+            for (int i = 0; i < other.occupiedCount; i++) {
+                long value = values[i];
+                long count = other.getCountAtValue(value);
+                if (count > 0) {
+                    recordValueWithCount(value, count);
+                }
+            }
+        } else {
+            // walk through buckets between min and max only, stop at lowest value of last bucket in order to avoid overflow
+            long lastValue = otherHistogram.lowestEquivalentValue(otherHistogram.getMaxValue());
+            for (long value = otherHistogram.lowestEquivalentValue(otherHistogram.getMinValue()); ; value = otherHistogram.nextNonEquivalentValue(value)) {
+                long count = otherHistogram.getCountAtValue(value);
+                if (count > 0) {
+                    recordValueWithCount(value, count);
+                }
+                if (value >= lastValue) {
+                    break;
+                }
+            }
+        }
+        setStartTimeStamp(Math.min(getStartTimeStamp(), otherHistogram.getStartTimeStamp()));
+        setEndTimeStamp(Math.max(getEndTimeStamp(), otherHistogram.getEndTimeStamp()));
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        occupiedCount = 0;
+    }
+
+    @Override
+    public void subtract(AbstractHistogram otherHistogram) {
+        throw new UnsupportedOperationException("subtraction can not keep index of occupied buckets");
+    }
+
+    @Override
+    public void addWhileCorrectingForCoordinatedOmission(AbstractHistogram otherHistogram, long expectedIntervalBetweenValueSamples) {
+        throw new UnsupportedOperationException("use add of histogram which is already corrected");
+    }
+
+    @Override
+    public void shiftValuesLeft(int numberOfBinaryOrdersOfMagnitude) {
+        throw new UnsupportedOperationException("shifting can not keep index of occupied buckets");
+    }
+
+    @Override
+    public void shiftValuesRight(int numberOfBinaryOrdersOfMagnitude) {
+        throw new UnsupportedOperationException("shifting can not keep index of occupied buckets");
+    }
+
+    private void addToIndex(long value) {
+        if (occupiedCount == occupiedValues.length) {
+            occupiedValues = Arrays.copyOf(occupiedValues, occupiedCount * 2);
+        }
+        occupiedValues[occupiedCount++] = value;
+    }
+
+}
@@ -59,11 +59,11 @@ public class HitRatioUtil {
         }
     }
 
-    static int getHitFromCompositeRatio(long compositeRatio) {
+    public static int getHitFromCompositeRatio(long compositeRatio) {
         return (int) (compositeRatio >> 32);
     }
 
-    static int getTotalCountFromCompositeRatio(long compositeRatio) {
+    public static int getTotalCountFromCompositeRatio(long compositeRatio) {
         return (int) compositeRatio;
     }
 
@@ -17,11 +17,16 @@
 
 package com.github.rollingmetrics.hitratio;
 
+import com.github.rollingmetrics.checkpoint.CheckpointFormat;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
 import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.histogram.util.Printer;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -63,7 +68,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * @see ResetPeriodicallyHitRatio
  * @see UniformHitRatio
  */
-public class SmoothlyDecayingRollingHitRatio implements HitRatio {
+public class SmoothlyDecayingRollingHitRatio implements HitRatio, Checkpointable {
 
     // meaningful limits to disallow user to kill performance(or memory footprint) by mistake
     static final int MAX_CHUNKS = 100;
@@ -72,11 +77,14 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
     private static final int HIT_INDEX = 0;
     private static final int TOTAL_INDEX = 1;
 
+    private static final int CHECKPOINT_CHUNK_SIZE = 8 + 8;
+
     private final long intervalBetweenResettingMillis;
     private final Clock clock;
     private final long creationTimestamp;
 
     private final Chunk[] chunks;
+    private volatile Phase[] restoredPhases = new Phase[0];
 
     /**
      * Constructs the chunked hit-ratio divided by {@code numberChunks}.
@@ -155,9 +163,53 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
             Chunk chunk = chunks[i];
             chunk.addToSnapshot(snapshot, currentTimeMillis);
         }
+        for (Phase restoredPhase : restoredPhases) {
+            restoredPhase.addToSnapshot(snapshot, currentTimeMillis);
+        }
         return (double) snapshot[HIT_INDEX] / (double) snapshot[TOTAL_INDEX];
     }
 
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return CheckpointFormat.HEADER_SIZE + (chunks.length + restoredPhases.length) * CHECKPOINT_CHUNK_SIZE;
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer target) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int countPosition = CheckpointFormat.startChunks(target, CheckpointFormat.HIT_RATIO);
+        int chunkCount = 0;
+        for (Chunk chunk : chunks) {
+            chunkCount += chunk.currentPhaseRef.get().writeCheckpoint(target, currentTimeMillis);
+        }
+        for (Phase restoredPhase : restoredPhases) {
+            chunkCount += restoredPhase.writeCheckpoint(target, currentTimeMillis);
+        }
+        CheckpointFormat.finishChunks(target, countPosition, chunkCount);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer source) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int chunkCount = CheckpointFormat.readChunkCount(source, CheckpointFormat.HIT_RATIO);
+        List<Phase> phases = new ArrayList<>();
+        for (Phase restoredPhase : restoredPhases) {
+            if (restoredPhase.proposedInvalidationTimestamp > currentTimeMillis) {
+                phases.add(restoredPhase);
+            }
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            long proposedInvalidationTimestamp = source.getLong();
+            long compositeRatio = source.getLong();
+            if (proposedInvalidationTimestamp > currentTimeMillis) {
+                Phase phase = new Phase(proposedInvalidationTimestamp);
+                phase.ratio.set(compositeRatio);
+                phases.add(phase);
+            }
+        }
+        this.restoredPhases = phases.toArray(new Phase[phases.size()]);
+    }
+
     private final class Chunk {
 
         final Phase left;
@@ -255,6 +307,21 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
             snapshot[TOTAL_INDEX] += totalCount;
         }
 
+        int writeCheckpoint(ByteBuffer target, long currentTimeMillis) {
+            long proposedInvalidationTimestamp = this.proposedInvalidationTimestamp;
+            if (currentTimeMillis >= proposedInvalidationTimestamp || proposedInvalidationTimestamp == Long.MAX_VALUE) {
+                // the phase is expired or in the middle of rotation
+                return 0;
+            }
+            long compositeRatio = ratio.get();
+            if (HitRatioUtil.getTotalCountFromCompositeRatio(compositeRatio) == 0) {
+                return 0;
+            }
+            target.putLong(proposedInvalidationTimestamp);
+            target.putLong(compositeRatio);
+            return 1;
+        }
+
         @Override
         public String toString() {
             final StringBuilder sb = new StringBuilder("Phase{");
@@ -272,6 +339,7 @@ public class SmoothlyDecayingRollingHitRatio implements HitRatio {
                 ", clock=" + clock +
                 ", creationTimestamp=" + creationTimestamp +
                 ", chunks=" + Printer.printArray(chunks, "chunk") +
+                ", restoredPhases=" + Printer.printArray(restoredPhases, "phase") +
                 '}';
     }
 
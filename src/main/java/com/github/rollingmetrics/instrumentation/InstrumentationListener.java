@@ -0,0 +1,89 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.instrumentation;
+
+/**
+ * The listener which is notified about costs of internal operations performed by library itself,
+ * like rotation of chunks and snapshot extraction.
+ *
+ * <p>
+ * Listener is an optional part of configuration, it can be specified via
+ * {@link com.github.rollingmetrics.histogram.HdrBuilder#withInstrumentationListener(InstrumentationListener)} and
+ * {@link com.github.rollingmetrics.top.TopBuilder#withInstrumentationListener(InstrumentationListener)}.
+ * When listener is not specified, nothing is measured at all, so instrumentation does not cost anything.
+ * Configure separate listener per metric if you want to find the metrics whose snapshots are most expensive.
+ *
+ * <p>
+ * Implementation must be thread-safe and fast, because methods are invoked from the same threads which do the measured work:
+ * rotation is notified from background executor, snapshot is notified from thread which reads the metric.
+ *
+ * @see InstrumentationMetricSet
+ */
+public interface InstrumentationListener {
+
+    /**
+     * The listener which ignores everything, it is used when listener is not configured.
+     */
+    InstrumentationListener NOOP = new InstrumentationListener() {
+        @Override
+        public String toString() {
+            return "InstrumentationListener.NOOP";
+        }
+    };
+
+    /**
+     * Called when rotation of chunks has been completed.
+     * Rotations which failed, for example because of exception thrown by consumer of completed chunks, are reported too.
+     *
+     * @param durationNanos how long rotation took in nanoseconds
+     */
+    default void onRotation(long durationNanos) {
+        // do nothing
+    }
+
+    /**
+     * Called when snapshot has been taken from metric.
+     * If snapshot caching is enabled, then this method is called only when cached value is recomputed.
+     *
+     * @param durationNanos how long snapshot extraction took in nanoseconds
+     */
+    default void onSnapshot(long durationNanos) {
+        // do nothing
+    }
+
+    /**
+     * Called when rotation task has been queued to {@link com.github.rollingmetrics.util.SingleThreadExecutor}.
+     * This method is not called for custom executors specified by user.
+     *
+     * @param queueSize the number of tasks which wait for execution, including just queued task
+     */
+    default void onBackgroundTaskQueued(int queueSize) {
+        // do nothing
+    }
+
+    /**
+     * Called when periodic background task, like precomputation of snapshot, has failed.
+     * The task is retried in the next period, so repeated notifications mean that metric serves stale data.
+     *
+     * @param failure the exception thrown by task
+     */
+    default void onBackgroundTaskFailure(Throwable failure) {
+        // do nothing
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.instrumentation;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link InstrumentationListener} which stores costs of internal operations in rolling histograms,
+ * and exposes these histograms to {@link com.codahale.metrics.MetricRegistry}.
+ *
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  InstrumentationMetricSet instrumentation = new InstrumentationMetricSet("my-histogram.instrumentation");
+ *  registry.registerAll(instrumentation);
+ *
+ *  new HdrBuilder()
+ *      .resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 6)
+ *      .withInstrumentationListener(instrumentation)
+ *      .buildAndRegisterHistogram(registry, "my-histogram");
+ * }</pre>
+ * The code above creates 3 histograms and one counter with following names:
+ * <ul>
+ *   <li>my-histogram.instrumentation.rotationNanos</li>
+ *   <li>my-histogram.instrumentation.snapshotNanos</li>
+ *   <li>my-histogram.instrumentation.backgroundQueueSize</li>
+ *   <li>my-histogram.instrumentation.backgroundTaskFailures</li>
+ * </ul>
+ * Same instance can be shared between several metrics, in this case histograms will describe all of them together.
+ */
+public class InstrumentationMetricSet implements InstrumentationListener, MetricSet {
+
+    private final Histogram rotationHistogram;
+    private final Histogram snapshotHistogram;
+    private final Histogram backgroundQueueSizeHistogram;
+    private final Counter backgroundTaskFailures = new Counter();
+    private final Map<String, Metric> metrics;
+
+    /**
+     * Creates the listener which stores values in histograms rolling by one minute.
+     *
+     * @param name the name prefix for each histogram
+     */
+    public InstrumentationMetricSet(String name) {
+        this(name, new HdrBuilder().resetReservoirPeriodicallyByChunks(Duration.ofMinutes(1), 6));
+    }
+
+    /**
+     * Creates the listener which stores values in histograms constructed by {@code histogramBuilder}.
+     *
+     * @param name the name prefix for each histogram
+     * @param histogramBuilder the builder of histograms
+     */
+    public InstrumentationMetricSet(String name, HdrBuilder histogramBuilder) {
+        if (name == null) {
+            throw new IllegalArgumentException("name should not be null");
+        }
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("name should not be empty");
+        }
+        if (histogramBuilder == null) {
+            throw new IllegalArgumentException("histogramBuilder should not be null");
+        }
+        this.rotationHistogram = histogramBuilder.deepCopy().buildHistogram();
+        this.snapshotHistogram = histogramBuilder.deepCopy().buildHistogram();
+        this.backgroundQueueSizeHistogram = histogramBuilder.deepCopy().buildHistogram();
+
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put(name + ".rotationNanos", rotationHistogram);
+        metrics.put(name + ".snapshotNanos", snapshotHistogram);
+        metrics.put(name + ".backgroundQueueSize", backgroundQueueSizeHistogram);
+        metrics.put(name + ".backgroundTaskFailures", backgroundTaskFailures);
+        this.metrics = Collections.unmodifiableMap(metrics);
+    }
+
+    @Override
+    public void onRotation(long durationNanos) {
+        rotationHistogram.update(durationNanos);
+    }
+
+    @Override
+    public void onSnapshot(long durationNanos) {
+        snapshotHistogram.update(durationNanos);
+    }
+
+    @Override
+    public void onBackgroundTaskQueued(int queueSize) {
+        backgroundQueueSizeHistogram.update(queueSize);
+    }
+
+    @Override
+    public void onBackgroundTaskFailure(Throwable failure) {
+        backgroundTaskFailures.inc();
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentationMetricSet{" +
+                "metrics=" + metrics.keySet() +
+                '}';
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+
+/**
+ * Represents aggregated statistics of queries which have the same signature.
+ *
+ * <p>
+ * The statistics are counted since the moment when signature started to be monitored by {@link AggregatedTop},
+ * so values can be lesser than actual for signatures which were displaced from top by other signatures and returned back later.
+ */
+public class AggregatedPosition {
+
+    private final String signature;
+    private final long count;
+    private final long totalLatencyInNanoseconds;
+    private final Snapshot latencyDistribution;
+
+    public AggregatedPosition(String signature, long count, long totalLatencyInNanoseconds) {
+        this(signature, count, totalLatencyInNanoseconds, EmptySnapshot.INSTANCE);
+    }
+
+    public AggregatedPosition(String signature, long count, long totalLatencyInNanoseconds, Snapshot latencyDistribution) {
+        this.signature = signature;
+        this.count = count;
+        this.totalLatencyInNanoseconds = totalLatencyInNanoseconds;
+        this.latencyDistribution = latencyDistribution;
+    }
+
+    /**
+     * @return the signature by which queries were grouped, for example SQL without bound parameters.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return count of queries with this signature
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return summary latency of queries with this signature in nanoseconds
+     */
+    public long getTotalLatencyInNanoseconds() {
+        return totalLatencyInNanoseconds;
+    }
+
+    /**
+     * @return mean latency of queries with this signature in nanoseconds
+     */
+    public double getMeanLatencyInNanoseconds() {
+        return count == 0 ? 0.0 : (double) totalLatencyInNanoseconds / count;
+    }
+
+    /**
+     * Returns distribution of latencies in nanoseconds of queries with this signature, the distribution is tracked only when it is enabled by
+     * {@link AggregatedTopBuilder#withLatencyDistribution(int, java.time.Duration)}.
+     * In contrast to other statistics, the distribution is collected only since the moment when histogram was assigned to signature.
+     * Histograms are assigned to signatures which are present in the top at each rotation of chunks, which is performed in background,
+     * and at each reading of positions. So recording of latencies starts not later than at the first rotation after signature entered the top,
+     * even if nobody reads the top, and position which is returned for signature entered the top after last rotation has
+     * {@link com.github.rollingmetrics.histogram.util.EmptySnapshot empty distribution}.
+     *
+     * @return distribution of latencies in nanoseconds, or empty snapshot when distribution is not tracked
+     */
+    public Snapshot getLatencyDistribution() {
+        return latencyDistribution;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        AggregatedPosition position = (AggregatedPosition) o;
+
+        if (count != position.count) return false;
+        if (totalLatencyInNanoseconds != position.totalLatencyInNanoseconds) return false;
+        return signature.equals(position.signature);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = signature.hashCode();
+        result = 31 * result + (int) (count ^ (count >>> 32));
+        result = 31 * result + (int) (totalLatencyInNanoseconds ^ (totalLatencyInNanoseconds >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "AggregatedPosition{" +
+                "signature='" + signature + '\'' +
+                ", count=" + count +
+                ", totalLatencyInNanoseconds=" + totalLatencyInNanoseconds +
+                '}';
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The top of query signatures sorted by aggregated latency.
+ *
+ * <p>
+ * In contrast to {@link Top} which keeps the slowest individual executions, this top groups executions by caller-provided signature,
+ * so the queries which are moderately slow but executed very often can be detected.
+ * The positions can be ranked by total latency, by count of executions or by mean latency, see {@link AggregatedTopBuilder}.
+ * Memory consumption is bounded by count of monitored signatures and does not depend on count of distinct signatures.
+ */
+public interface AggregatedTop {
+
+    /**
+     * Creates new instance of {@link AggregatedTopBuilder}
+     *
+     * @param size maximum count of positions in the top
+     *
+     * @return new instance of {@link AggregatedTopBuilder}
+     */
+    static AggregatedTopBuilder builder(int size) {
+        return AggregatedTopBuilder.newBuilder(size);
+    }
+
+    /**
+     * Registers latency of query. Negative latencies are ignored.
+     *
+     * @param signature the signature by which queries are grouped, for example SQL without bound parameters
+     * @param latencyTime query duration
+     * @param latencyUnit resolution of latency time
+     */
+    void update(String signature, long latencyTime, TimeUnit latencyUnit);
+
+    /**
+     * Returns the top of signatures in descend order.
+     * The size of returned list can be less then {@link #getSize} if not enough count of signatures were recorded.
+     *
+     * @return the top of signatures in descend order.
+     */
+    List<AggregatedPosition> getPositionsInDescendingOrder();
+
+    /**
+     * @return the maximum count of positions in the top.
+     */
+    int getSize();
+
+}
@@ -0,0 +1,327 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import com.github.rollingmetrics.top.impl.aggregated.AggregationRanking;
+import com.github.rollingmetrics.top.impl.aggregated.LatencyDistributionPool;
+import com.github.rollingmetrics.top.impl.aggregated.ResetByChunksAggregatedTop;
+import com.github.rollingmetrics.top.impl.aggregated.SnapshotCachingAggregatedTop;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.ResilientExecutionUtil;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The builder for {@link AggregatedTop}.
+ *
+ * <p><br> Basic examples of usage:
+ * <pre> {@code
+ *
+ *  AggregatedTop top = AggregatedTop.builder(10)
+ *      .rankByTotalLatency()
+ *      .resetPositionsPeriodicallyByChunks(Duration.ofMinutes(1), 6)
+ *      .build();
+ *  MetricSet metricSet = new AggregatedTopMetricSet("my-aggregated-top", top, TimeUnit.MILLISECONDS, 3);
+ *  registry.registerAll(metricSet);
+ * }</pre>
+ *
+ * @see AggregatedTop
+ * @see AggregatedTopMetricSet
+ */
+public class AggregatedTopBuilder {
+
+    public static final int DEFAULT_MONITORED_SIGNATURES_PER_POSITION = 10;
+    public static final int MAX_MONITORED_SIGNATURES = 100_000;
+    public static final Duration DEFAULT_ROLLING_TIME_WINDOW = Duration.ofMinutes(1);
+    public static final int DEFAULT_NUMBER_OF_CHUNKS = 6;
+    public static final Duration DEFAULT_SNAPSHOT_CACHING_DURATION = Duration.ofSeconds(1);
+    public static final int MAX_LATENCY_DISTRIBUTION_SIGNIFICANT_DIGITS = 3;
+
+    private static final Executor DEFAULT_BACKGROUND_EXECUTOR = null;
+
+    private int size;
+    private int monitoredSignatures;
+    private AggregationRanking ranking;
+    private long intervalBetweenResettingMillis;
+    private int numberHistoryChunks;
+    private Duration snapshotCachingDuration;
+    private Clock clock;
+    private Executor backgroundExecutor;
+    private int latencyDistributionSignificantDigits;
+    private Duration highestTrackableLatency;
+
+    private AggregatedTopBuilder(int size) {
+        this.size = size;
+        this.monitoredSignatures = 0;
+        this.ranking = AggregationRanking.TOTAL_LATENCY;
+        this.intervalBetweenResettingMillis = DEFAULT_ROLLING_TIME_WINDOW.toMillis() / DEFAULT_NUMBER_OF_CHUNKS;
+        this.numberHistoryChunks = DEFAULT_NUMBER_OF_CHUNKS;
+        this.snapshotCachingDuration = DEFAULT_SNAPSHOT_CACHING_DURATION;
+        this.clock = Clock.defaultClock();
+        this.backgroundExecutor = DEFAULT_BACKGROUND_EXECUTOR;
+    }
+
+    /**
+     * Creates new builder instance.
+     *
+     * @param size the count of positions for tops which will be constructed by this builder
+     * @return this builder instance
+     */
+    public static AggregatedTopBuilder newBuilder(int size) {
+        validateSize(size);
+        return new AggregatedTopBuilder(size);
+    }
+
+    /**
+     * Constructs new {@link AggregatedTop} instance
+     *
+     * @return new {@link AggregatedTop} instance
+     */
+    public AggregatedTop build() {
+        int monitoredSignatures = this.monitoredSignatures > 0 ? this.monitoredSignatures : Math.min(size * DEFAULT_MONITORED_SIGNATURES_PER_POSITION, MAX_MONITORED_SIGNATURES);
+        if (monitoredSignatures < size) {
+            throw new IllegalArgumentException("monitoredSignatures=" + monitoredSignatures + " should be >= size=" + size);
+        }
+        Executor executor = backgroundExecutor != null ? backgroundExecutor : ResilientExecutionUtil.getInstance().getBackgroundExecutor();
+        LatencyDistributionPool latencyDistributionPool = null;
+        if (highestTrackableLatency != null) {
+            latencyDistributionPool = new LatencyDistributionPool(size, latencyDistributionSignificantDigits, highestTrackableLatency.toNanos(),
+                    numberHistoryChunks, intervalBetweenResettingMillis, clock, executor);
+        }
+        AggregatedTop top = new ResetByChunksAggregatedTop(size, monitoredSignatures, ranking, intervalBetweenResettingMillis, numberHistoryChunks, clock, executor, latencyDistributionPool);
+        if (!snapshotCachingDuration.isZero()) {
+            top = new SnapshotCachingAggregatedTop(top, snapshotCachingDuration.toMillis(), clock);
+        }
+        return top;
+    }
+
+    /**
+     * Configures how many signatures are monitored simultaneously.
+     * The signature which total weight is greater than {@code 1/monitoredSignatures} of weight of all queries is guaranteed to be monitored,
+     * so bigger value provides better accuracy for the price of memory.
+     *
+     * <p>
+     * The default value is {@code size * }{@link #DEFAULT_MONITORED_SIGNATURES_PER_POSITION}.
+     *
+     * @param monitoredSignatures count of monitored signatures, should not be lesser than size of top
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder withMonitoredSignatures(int monitoredSignatures) {
+        if (monitoredSignatures < size) {
+            throw new IllegalArgumentException("monitoredSignatures should be >= size");
+        }
+        if (monitoredSignatures > MAX_MONITORED_SIGNATURES) {
+            throw new IllegalArgumentException("monitoredSignatures should be <= " + MAX_MONITORED_SIGNATURES);
+        }
+        this.monitoredSignatures = monitoredSignatures;
+        return this;
+    }
+
+    /**
+     * Signatures will be ranked by summary latency of all queries, this is the best choice to find queries which consume most of time.
+     * This is default ranking.
+     *
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder rankByTotalLatency() {
+        this.ranking = AggregationRanking.TOTAL_LATENCY;
+        return this;
+    }
+
+    /**
+     * Signatures will be ranked by count of queries.
+     *
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder rankByCount() {
+        this.ranking = AggregationRanking.COUNT;
+        return this;
+    }
+
+    /**
+     * Signatures will be ranked by mean latency.
+     * Mean is not additive, so signatures are selected by total latency, and only then selected signatures are ranked by mean.
+     *
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder rankByMeanLatency() {
+        this.ranking = AggregationRanking.MEAN_LATENCY;
+        return this;
+    }
+
+    /**
+     * Top configured with this strategy will be cleared at all after each {@code intervalBetweenResetting} elapsed.
+     *
+     * @param intervalBetweenResetting specifies how often need to reset the top
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder resetAllPositionsPeriodically(Duration intervalBetweenResetting) {
+        if (intervalBetweenResetting == null) {
+            throw new IllegalArgumentException("intervalBetweenResetting should not be null");
+        }
+        if (intervalBetweenResetting.isNegative()) {
+            throw new IllegalArgumentException("intervalBetweenResetting should not be negative");
+        }
+        long intervalBetweenResettingMillis = intervalBetweenResetting.toMillis();
+        if (intervalBetweenResettingMillis < TopBuilder.MIN_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            String msg = "interval between resetting one chunk should be >= " + TopBuilder.MIN_CHUNK_RESETTING_INTERVAL_MILLIS + " millis";
+            throw new IllegalArgumentException(msg);
+        }
+        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
+        this.numberHistoryChunks = 0;
+        return this;
+    }
+
+    /**
+     * Top configured with this strategy will be divided to <tt>numberChunks</tt> parts,
+     * and one chunk will be cleared after each <tt>rollingTimeWindow / numberChunks</tt> elapsed.
+     * This is default strategy, the default window is {@link #DEFAULT_ROLLING_TIME_WINDOW} divided to {@link #DEFAULT_NUMBER_OF_CHUNKS} chunks.
+     *
+     * @param rollingTimeWindow the total rolling time window
+     * @param numberChunks specifies number of chunks by which the top will be slitted
+     * @return this builder instance
+     *
+     * @see TopBuilder#resetPositionsPeriodicallyByChunks(Duration, int)
+     */
+    public AggregatedTopBuilder resetPositionsPeriodicallyByChunks(Duration rollingTimeWindow, int numberChunks) {
+        if (numberChunks > TopBuilder.MAX_CHUNKS) {
+            throw new IllegalArgumentException("numberChunks should be <= " + TopBuilder.MAX_CHUNKS);
+        }
+        if (numberChunks < 2) {
+            throw new IllegalArgumentException("numberChunks should be >= 2");
+        }
+        if (rollingTimeWindow == null) {
+            throw new IllegalArgumentException("rollingTimeWindow should not be null");
+        }
+        if (rollingTimeWindow.isNegative()) {
+            throw new IllegalArgumentException("rollingTimeWindow should not be negative");
+        }
+
+        long intervalBetweenResettingMillis = rollingTimeWindow.toMillis() / numberChunks;
+        if (intervalBetweenResettingMillis < TopBuilder.MIN_CHUNK_RESETTING_INTERVAL_MILLIS) {
+            String msg = "interval between resetting one chunk should be >= " + TopBuilder.MIN_CHUNK_RESETTING_INTERVAL_MILLIS + " millis";
+            throw new IllegalArgumentException(msg);
+        }
+        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
+        this.numberHistoryChunks = numberChunks;
+        return this;
+    }
+
+    /**
+     * Enables tracking of latency distribution for signatures which are present in the top,
+     * so it is possible to distinguish the signature which is always slow from signature which occasionally spikes.
+     * The distribution is available via {@link AggregatedPosition#getLatencyDistribution()}.
+     *
+     * <p>
+     * Each signature in the top gets the rolling HDR histogram which is reset by the same chunks as the top,
+     * histograms are taken from pool when signature enters into the top and returned to pool when signature leaves it,
+     * so memory is bounded by {@code size} histograms. The distribution is collected since the moment when signature was detected in the top during snapshot,
+     * so it describes only recent part of queries which contributed to other statistics of position.
+     * </p>
+     *
+     * <p>
+     * By default distribution is not tracked.
+     * </p>
+     *
+     * @param numberOfSignificantValueDigits the precision of histograms, must be between 1 and {@link #MAX_LATENCY_DISTRIBUTION_SIGNIFICANT_DIGITS}
+     * @param highestTrackableLatency the latencies greater than this value are recorded as this value, must be at least one millisecond
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder withLatencyDistribution(int numberOfSignificantValueDigits, Duration highestTrackableLatency) {
+        if (numberOfSignificantValueDigits < 1 || numberOfSignificantValueDigits > MAX_LATENCY_DISTRIBUTION_SIGNIFICANT_DIGITS) {
+            throw new IllegalArgumentException("numberOfSignificantValueDigits must be between 1 and " + MAX_LATENCY_DISTRIBUTION_SIGNIFICANT_DIGITS);
+        }
+        if (highestTrackableLatency == null) {
+            throw new IllegalArgumentException("highestTrackableLatency should not be null");
+        }
+        if (highestTrackableLatency.compareTo(Duration.ofMillis(1)) < 0) {
+            throw new IllegalArgumentException("highestTrackableLatency should be >= 1 millisecond");
+        }
+        this.latencyDistributionSignificantDigits = numberOfSignificantValueDigits;
+        this.highestTrackableLatency = highestTrackableLatency;
+        return this;
+    }
+
+    /**
+     * Configures the duration for caching the results of invocation of {@link AggregatedTop#getPositionsInDescendingOrder()}.
+     * The default value is one second {@link #DEFAULT_SNAPSHOT_CACHING_DURATION}.
+     *
+     * @param snapshotCachingDuration
+     * @return this builder instance
+     *
+     * @see TopBuilder#withSnapshotCachingDuration(Duration)
+     */
+    public AggregatedTopBuilder withSnapshotCachingDuration(Duration snapshotCachingDuration) {
+        if (snapshotCachingDuration == null) {
+            throw new IllegalArgumentException("snapshotCachingDuration should not be null");
+        }
+        if (snapshotCachingDuration.isNegative()) {
+            throw new IllegalArgumentException("snapshotCachingDuration can not be negative");
+        }
+        this.snapshotCachingDuration = snapshotCachingDuration;
+        return this;
+    }
+
+    /**
+     * Replaces default clock.
+     * Most likely you should never use this method, because replacing time measuring has sense only for unit testing.
+     *
+     * @param clock the abstraction over time
+     *
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder withClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock should not be null");
+        }
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Configures the executor which will be used for rotation of chunks.
+     *
+     * <p>
+     * Normally you should not use this method because of default executor provided by {@link ResilientExecutionUtil#getBackgroundExecutor()} is quietly enough for mostly use cases.
+     * You can use this method for example inside JEE environments with enabled SecurityManager,
+     * in case of {@link ResilientExecutionUtil#setThreadFactory(ThreadFactory)} is not enough to meat security rules.
+     * </p>
+     *
+     * @return this builder instance
+     */
+    public AggregatedTopBuilder withBackgroundExecutor(Executor backgroundExecutor) {
+        if (backgroundExecutor == null) {
+            throw new IllegalArgumentException("backgroundExecutor should not be null");
+        }
+        this.backgroundExecutor = backgroundExecutor;
+        return this;
+    }
+
+    private static void validateSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size should be >=1");
+        }
+        if (size > TopBuilder.MAX_POSITION_COUNT) {
+            throw new IllegalArgumentException("size should be <= " + TopBuilder.MAX_POSITION_COUNT);
+        }
+    }
+
+}
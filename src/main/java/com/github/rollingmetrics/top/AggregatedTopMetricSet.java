@@ -0,0 +1,132 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.github.rollingmetrics.util.Clock;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The adapter to use {@link AggregatedTop} with {@link com.codahale.metrics.MetricRegistry}.
+ * <p>
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  AggregatedTop top = AggregatedTop.builder(2).build();
+ *  MetricSet metricSet = new AggregatedTopMetricSet("my-top", top, TimeUnit.MILLISECONDS, 3);
+ *  registry.registerAll(metricSet);
+ * }</pre>
+ * The code above creates 9 gauges with following names:
+ * <ul>
+ *   <li>my-top.latencyUnit</li>
+ *   <li>my-top.0.signature</li>
+ *   <li>my-top.0.count</li>
+ *   <li>my-top.0.totalLatency</li>
+ *   <li>my-top.0.meanLatency</li>
+ *   <li>my-top.1.signature</li>
+ *   <li>my-top.1.count</li>
+ *   <li>my-top.1.totalLatency</li>
+ *   <li>my-top.1.meanLatency</li>
+ * </ul>
+ * The "totalLatency" and "meanLatency" gauges have {@link BigDecimal} type, the "count" gauges have {@link Long} type,
+ * the "latencyUnit" and "signature" gauges have {@link String} type.
+ * The number in the gauge name represents position in the top in descending order.
+ * All gauges share the single snapshot of top during reporting cycle in the same way as gauges of {@link TopMetricSet}.
+ *
+ * @see TopMetricSet
+ */
+public class AggregatedTopMetricSet implements MetricSet {
+
+    private final BigDecimal zero;
+    private final Map<String, Metric> gauges;
+
+    /**
+     * Creates new collection of gauges which compatible with {@link com.codahale.metrics.MetricRegistry}.
+     *
+     * @param name the name prefix for each gauge
+     * @param top the target {@link AggregatedTop}
+     * @param latencyUnit the time unit to convert latency
+     * @param digitsAfterDecimalPoint the number of digits after decimal point
+     */
+    public AggregatedTopMetricSet(String name, AggregatedTop top, TimeUnit latencyUnit, int digitsAfterDecimalPoint) {
+        this(name, top, latencyUnit, digitsAfterDecimalPoint, Clock.defaultClock());
+    }
+
+    AggregatedTopMetricSet(String name, AggregatedTop top, TimeUnit latencyUnit, int digitsAfterDecimalPoint, Clock clock) {
+        if (name == null) {
+            throw new IllegalArgumentException("name should not be null");
+        }
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("name should not be empty");
+        }
+        if (top == null) {
+            throw new IllegalArgumentException("top should not be null");
+        }
+        if (latencyUnit == null) {
+            throw new IllegalArgumentException("latencyUnit should not be null");
+        }
+        if (digitsAfterDecimalPoint < 0) {
+            throw new IllegalArgumentException("digitsAfterDecimalPoint should not be negative");
+        }
+
+        gauges = new HashMap<>();
+        gauges.put(name + ".latencyUnit", (Gauge<String>) latencyUnit::toString);
+
+        zero = BigDecimal.ZERO.setScale(digitsAfterDecimalPoint, RoundingMode.CEILING);
+
+        ReportingSnapshot<AggregatedPosition> snapshot = new ReportingSnapshot<>(top::getPositionsInDescendingOrder, clock);
+        int size = top.getSize();
+        for (int i = 0; i < size; i++) {
+            String prefix = name + "." + i + ".";
+            gauges.put(prefix + "signature", createSignatureGauge(i, snapshot));
+            gauges.put(prefix + "count", createCountGauge(i, snapshot));
+            gauges.put(prefix + "totalLatency", new LatencyGauge<>(snapshot.createReader(), i, AggregatedPosition::getTotalLatencyInNanoseconds, latencyUnit, digitsAfterDecimalPoint, zero));
+            gauges.put(prefix + "meanLatency", new LatencyGauge<>(snapshot.createReader(), i, AggregatedPosition::getMeanLatencyInNanoseconds, latencyUnit, digitsAfterDecimalPoint, zero));
+        }
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return gauges;
+    }
+
+    private Gauge<Long> createCountGauge(int i, ReportingSnapshot<AggregatedPosition> snapshot) {
+        ReportingSnapshot<AggregatedPosition>.Reader reader = snapshot.createReader();
+        return () -> {
+            AggregatedPosition position = reader.getPosition(i);
+            return position == null ? 0L : position.getCount();
+        };
+    }
+
+    private Gauge<String> createSignatureGauge(int i, ReportingSnapshot<AggregatedPosition> snapshot) {
+        ReportingSnapshot<AggregatedPosition>.Reader reader = snapshot.createReader();
+        return () -> {
+            AggregatedPosition position = reader.getPosition(i);
+            return position == null ? "" : position.getSignature();
+        };
+    }
+
+}
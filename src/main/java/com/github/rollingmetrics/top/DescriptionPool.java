@@ -0,0 +1,106 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The bounded pool of canonical instances of query descriptions, which can be shared between several tops via {@link TopBuilder#withDescriptionPool(DescriptionPool)}.
+ *
+ * <p>
+ * The slowest queries are usually executed by the same few hundreds of statements,
+ * so positions which refer to the pool share single instance of each description instead of holding own copy,
+ * and copies which are built for positions being recorded become garbage immediately instead of being promoted together with the top.
+ * </p>
+ *
+ * <p>
+ * The pool is organized as two-way set-associative cache: each description can be stored in one of two cells chosen by its hash code,
+ * when both cells are occupied by other descriptions the least recently inserted one is evicted.
+ * Access to pool is lock-free, concurrent races can lead only to missed deduplication, so observed descriptions are always the same as without pool.
+ * </p>
+ */
+public final class DescriptionPool {
+
+    public static final int MAX_CAPACITY = 1 << 20;
+
+    private final AtomicReferenceArray<String> cells;
+    private final int mask;
+
+    /**
+     * Creates the pool.
+     *
+     * @param capacity the maximum count of descriptions stored in the pool, will be rounded up to the power of two
+     */
+    public DescriptionPool(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity should be >= 2");
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity should be <= " + MAX_CAPACITY);
+        }
+        int cellCount = Integer.highestOneBit(capacity - 1) << 1;
+        this.cells = new AtomicReferenceArray<>(cellCount);
+        this.mask = cellCount - 1;
+    }
+
+    /**
+     * Returns the canonical instance which equals to {@code description},
+     * if pool does not contain such instance then {@code description} becomes canonical.
+     *
+     * @param description the description to intern
+     *
+     * @return the instance of description which is stored in the pool
+     */
+    public String intern(String description) {
+        int hash = description.hashCode();
+        int primaryCell = (hash ^ (hash >>> 16)) & mask;
+        int secondaryCell = primaryCell ^ 1;
+
+        String primary = cells.get(primaryCell);
+        if (description.equals(primary)) {
+            return primary;
+        }
+        String secondary = cells.get(secondaryCell);
+        if (description.equals(secondary)) {
+            return secondary;
+        }
+
+        if (primary != null) {
+            // demote previous description to the second cell, so description stored in second cell is evicted
+            cells.lazySet(secondaryCell, primary);
+        }
+        cells.lazySet(primaryCell, description);
+        return description;
+    }
+
+    /**
+     * @return the maximum count of descriptions stored in the pool
+     */
+    public int getCapacity() {
+        return cells.length();
+    }
+
+    @Override
+    public String toString() {
+        return "DescriptionPool{" +
+                "capacity=" + cells.length() +
+                '}';
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import com.codahale.metrics.Gauge;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Is not a part of public API, this class is used by metric sets to expose latency of position.
+ * The {@link BigDecimal} is allocated only when latency differs from latency returned previous time,
+ * because positions at the top are changed rarely in comparison with reporting frequency.
+ *
+ * @param <T> type of position
+ */
+final class LatencyGauge<T> implements Gauge<BigDecimal> {
+
+    private final ReportingSnapshot<T>.Reader reader;
+    private final int index;
+    private final ToDoubleFunction<T> latencyNanosFunction;
+    private final double nanosInLatencyUnit;
+    private final int digitsAfterDecimalPoint;
+    private final BigDecimal zero;
+
+    private double cachedLatencyNanos = Double.NaN;
+    private BigDecimal cachedValue;
+
+    LatencyGauge(ReportingSnapshot<T>.Reader reader, int index, ToDoubleFunction<T> latencyNanosFunction, TimeUnit latencyUnit, int digitsAfterDecimalPoint, BigDecimal zero) {
+        this.reader = reader;
+        this.index = index;
+        this.latencyNanosFunction = latencyNanosFunction;
+        this.nanosInLatencyUnit = latencyUnit.toNanos(1);
+        this.digitsAfterDecimalPoint = digitsAfterDecimalPoint;
+        this.zero = zero;
+    }
+
+    @Override
+    public synchronized BigDecimal getValue() {
+        T position = reader.getPosition(index);
+        if (position == null) {
+            return zero;
+        }
+        double latencyNanos = latencyNanosFunction.applyAsDouble(position);
+        if (latencyNanos != cachedLatencyNanos) {
+            cachedValue = new BigDecimal(latencyNanos / nanosInLatencyUnit).setScale(digitsAfterDecimalPoint, RoundingMode.CEILING);
+            cachedLatencyNanos = latencyNanos;
+        }
+        return cachedValue;
+    }
+
+}
@@ -18,6 +18,7 @@
 package com.github.rollingmetrics.top;
 
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -27,12 +28,75 @@ public class Position implements Comparable<Position> {
 
     private final long latencyTime;
     private final TimeUnit latencyUnit;
-    private final String description;
     private final long timestamp;
     private long latencyInNanoseconds;
 
+    // String is immutable, so racy read of already materialized description is safe
+    private String description;
+
+    // not null only until description is materialized
+    private Object descriptionContext;
+    private Function<Object, String> descriptionFormatter;
+    private int maxDescriptionLength;
+    private DescriptionPool descriptionPool;
+
     public Position(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier, int maxDescriptionLengt) {
-        this(timestamp, latencyTime, latencyUnit, combineDescriptionWithLatency(latencyTime, latencyUnit, descriptionSupplier, maxDescriptionLengt));
+        this(timestamp, latencyTime, latencyUnit, descriptionSupplier, maxDescriptionLengt, null);
+    }
+
+    /**
+     * Creates position which description is replaced by canonical instance from {@code descriptionPool}.
+     *
+     * @param timestamp timestamp in milliseconds when latency taken
+     * @param latencyTime query duration
+     * @param latencyUnit resolution of latency time
+     * @param descriptionSupplier the supplier of description
+     * @param maxDescriptionLength the description will be truncated to this length
+     * @param descriptionPool the pool of descriptions, null means that description should not be interned
+     */
+    public Position(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier, int maxDescriptionLength, DescriptionPool descriptionPool) {
+        this(timestamp, latencyTime, latencyUnit, combineDescriptionWithLatency(latencyTime, latencyUnit, descriptionSupplier, maxDescriptionLength, descriptionPool));
+    }
+
+    /**
+     * Creates position which description is built by {@code descriptionFormatter} at first access to {@link #getQueryDescription()}
+     * or any other method which requires description, so formatting is never done for positions which are displaced from top before reading.
+     * The context is referenced by position until description is built, so it should not be mutated after passing to this constructor.
+     *
+     * @param timestamp timestamp in milliseconds when latency taken
+     * @param latencyTime query duration
+     * @param latencyUnit resolution of latency time
+     * @param descriptionContext the context from which description will be built, for example SQL with bound parameters
+     * @param descriptionFormatter the function which builds description from context
+     * @param maxDescriptionLength the description will be truncated to this length
+     * @param <T> type of context
+     */
+    public <T> Position(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter, int maxDescriptionLength) {
+        this(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter, maxDescriptionLength, null);
+    }
+
+    /**
+     * Creates position with deferred description which is replaced by canonical instance from {@code descriptionPool} when built.
+     *
+     * @param timestamp timestamp in milliseconds when latency taken
+     * @param latencyTime query duration
+     * @param latencyUnit resolution of latency time
+     * @param descriptionContext the context from which description will be built, for example SQL with bound parameters
+     * @param descriptionFormatter the function which builds description from context
+     * @param maxDescriptionLength the description will be truncated to this length
+     * @param descriptionPool the pool of descriptions, null means that description should not be interned
+     * @param <T> type of context
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Position(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter, int maxDescriptionLength, DescriptionPool descriptionPool) {
+        this.latencyTime = latencyTime;
+        this.latencyUnit = latencyUnit;
+        this.timestamp = timestamp;
+        this.latencyInNanoseconds = latencyUnit.toNanos(latencyTime);
+        this.descriptionContext = descriptionContext;
+        this.descriptionFormatter = (Function<Object, String>) descriptionFormatter;
+        this.maxDescriptionLength = maxDescriptionLength;
+        this.descriptionPool = descriptionPool;
     }
 
     public Position(long timestamp, long latencyTime, TimeUnit latencyUnit, String description) {
@@ -47,6 +111,23 @@ public class Position implements Comparable<Position> {
      * @return user friendly query description. For example SQL or HTTP URL.
      */
     public String getQueryDescription() {
+        String materializedDescription = description;
+        if (materializedDescription != null) {
+            return materializedDescription;
+        }
+        return materializeDescription();
+    }
+
+    private synchronized String materializeDescription() {
+        if (description == null) {
+            Object context = descriptionContext;
+            Function<Object, String> formatter = descriptionFormatter;
+            description = combineDescriptionWithLatency(latencyTime, latencyUnit, () -> formatDescription(formatter, context), maxDescriptionLength, descriptionPool);
+            // allow context to be garbage collected
+            descriptionContext = null;
+            descriptionFormatter = null;
+            descriptionPool = null;
+        }
         return description;
     }
 
@@ -88,7 +169,7 @@ public class Position implements Comparable<Position> {
         if (timestamp != other.timestamp) {
             return Long.compare(timestamp, other.timestamp);
         }
-        return description.compareTo(other.description);
+        return getQueryDescription().compareTo(other.getQueryDescription());
     }
 
     @Override
@@ -100,13 +181,13 @@ public class Position implements Comparable<Position> {
 
         if (timestamp != position.timestamp) return false;
         if (latencyInNanoseconds != position.latencyInNanoseconds) return false;
-        return description.equals(position.description);
+        return getQueryDescription().equals(position.getQueryDescription());
 
     }
 
     @Override
     public int hashCode() {
-        int result = description.hashCode();
+        int result = getQueryDescription().hashCode();
         result = 31 * result + (int) (timestamp ^ (timestamp >>> 32));
         result = 31 * result + (int) (latencyInNanoseconds ^ (latencyInNanoseconds >>> 32));
         return result;
@@ -117,13 +198,23 @@ public class Position implements Comparable<Position> {
         return "Position{" +
                 "latencyTime=" + latencyTime +
                 ", latencyUnit=" + latencyUnit +
-                ", description='" + description + '\'' +
+                ", description='" + getQueryDescription() + '\'' +
                 ", timestamp=" + timestamp +
                 ", latencyInNanoseconds=" + latencyInNanoseconds +
                 '}';
     }
 
-    private static String combineDescriptionWithLatency(long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier, int maxDescriptionLength) {
+    private static String formatDescription(Function<Object, String> formatter, Object context) {
+        // formatter is called by reader or by background rotation, so its failure is stored as description instead of breaking the top
+        try {
+            String formattedDescription = formatter.apply(context);
+            return formattedDescription != null ? formattedDescription : "<description formatter returned null>";
+        } catch (RuntimeException e) {
+            return "<description formatter failed: " + e + ">";
+        }
+    }
+
+    private static String combineDescriptionWithLatency(long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier, int maxDescriptionLength, DescriptionPool descriptionPool) {
         String queryDescription = descriptionSupplier.get();
         if (queryDescription == null) {
             throw new IllegalArgumentException("Query queryDescription should not be null");
@@ -131,6 +222,9 @@ public class Position implements Comparable<Position> {
         if (queryDescription.length() > maxDescriptionLength) {
             queryDescription = queryDescription.substring(0, maxDescriptionLength);
         }
+        if (descriptionPool != null) {
+            queryDescription = descriptionPool.intern(queryDescription);
+        }
         return queryDescription;
     }
 
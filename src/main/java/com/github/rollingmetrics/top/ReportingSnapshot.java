@@ -0,0 +1,83 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import com.github.rollingmetrics.util.Clock;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Is not a part of public API, this class is used by metric sets to share one snapshot of top between all gauges during reporting cycle.
+ *
+ * <p>
+ * Reporting cycle is not visible to gauges, so it is detected by gauges themselves:
+ * each gauge reads the position through its own {@link Reader}, and the snapshot is refreshed when some reader tries to read the same snapshot second time,
+ * which means that new reporting cycle is started. To avoid exposing of stale data to gauges which are read rarely, the snapshot is also refreshed when it is older than {@link #MAX_SNAPSHOT_AGE_MILLIS}.
+ * </p>
+ *
+ * @param <T> type of position
+ */
+class ReportingSnapshot<T> {
+
+    static final long MAX_SNAPSHOT_AGE_MILLIS = 1000;
+
+    private final Supplier<List<T>> snapshotSupplier;
+    private final Clock clock;
+
+    private List<T> snapshot;
+    private long snapshotVersion;
+    private long snapshotTimestamp;
+
+    ReportingSnapshot(Supplier<List<T>> snapshotSupplier, Clock clock) {
+        this.snapshotSupplier = snapshotSupplier;
+        this.clock = clock;
+    }
+
+    Reader createReader() {
+        return new Reader();
+    }
+
+    private synchronized T getPosition(int index, Reader reader) {
+        long nowMillis = clock.currentTimeMillis();
+        if (snapshot == null || reader.consumedVersion == snapshotVersion || nowMillis - snapshotTimestamp >= MAX_SNAPSHOT_AGE_MILLIS) {
+            snapshot = snapshotSupplier.get();
+            snapshotVersion++;
+            snapshotTimestamp = nowMillis;
+        }
+        reader.consumedVersion = snapshotVersion;
+        return index < snapshot.size() ? snapshot.get(index) : null;
+    }
+
+    final class Reader {
+
+        // guarded by ReportingSnapshot.this
+        private long consumedVersion = -1;
+
+        /**
+         * @param index the index of position
+         * @return the position from snapshot of current reporting cycle, or null if there are no position with such index
+         */
+        T getPosition(int index) {
+            return ReportingSnapshot.this.getPosition(index, this);
+        }
+
+    }
+
+}
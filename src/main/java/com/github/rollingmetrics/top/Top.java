@@ -20,6 +20,7 @@ package com.github.rollingmetrics.top;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -51,6 +52,46 @@ public interface Top {
      */
     void update(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier);
 
+    /**
+     * Registers latency of query. In contrast to {@link #update(long, long, TimeUnit, Supplier)} the description is not built at the moment of registration,
+     * the {@code descriptionFormatter} is applied to {@code descriptionContext} only for positions which are still present in the top when positions are read
+     * (or when the positions are archived by top which resets by chunks), so expensive formatting, for example binding of SQL parameters,
+     * is never performed for queries which were displaced from the top by longer queries.
+     *
+     * <p>
+     * The context is referenced by top until description is built, so context should not be mutated after passing to this method,
+     * and formatter can be called from thread which differs from thread which registered the latency.
+     * By the same reason failures of formatter are never propagated to the caller of this method,
+     * they happen in reader or background thread, and position gets the description which contains the exception
+     * (or notice about {@code null} returned by formatter) instead of formatted description.
+     *
+     * @param timestamp timestamp in milliseconds when latency taken
+     * @param latencyTime query duration
+     * @param latencyUnit resolution of latency time
+     * @param descriptionContext the context from which description will be built
+     * @param descriptionFormatter the function which builds description from context
+     * @param <T> type of context
+     */
+    default <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        update(timestamp, latencyTime, latencyUnit, () -> descriptionFormatter.apply(descriptionContext));
+    }
+
+    /**
+     * Registers latency of query measured in nanoseconds. This is the cheapest way to register latency:
+     * there is no time unit conversion, and when {@code descriptionFormatter} is a static method reference or non-capturing lambda
+     * nothing is allocated at call site, so the top can be updated on each query without producing garbage.
+     * Description is built lazily by the same rules as described in {@link #update(long, long, TimeUnit, Object, Function)}.
+     *
+     * @param timestampMillis timestamp in milliseconds when latency taken
+     * @param latencyNanos query duration in nanoseconds
+     * @param descriptionContext the context from which description will be built
+     * @param descriptionFormatter the function which builds description from context
+     * @param <T> type of context
+     */
+    default <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        update(timestampMillis, latencyNanos, TimeUnit.NANOSECONDS, descriptionContext, descriptionFormatter);
+    }
+
     /**
      * Returns the top of queries in descend order, slowest query will be at first place.
      * The size of returned list can be less then {@link #getSize} if not enough count of quires were recorded.
@@ -17,6 +17,8 @@
 
 package com.github.rollingmetrics.top;
 
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
+import com.github.rollingmetrics.top.impl.InstrumentedTop;
 import com.github.rollingmetrics.top.impl.ResetByChunksTop;
 import com.github.rollingmetrics.top.impl.ResetOnSnapshotConcurrentTop;
 import com.github.rollingmetrics.top.impl.SnapshotCachingTop;
@@ -51,7 +53,7 @@ import java.util.concurrent.ThreadFactory;
  */
 public class TopBuilder {
 
-    public static final int MAX_POSITION_COUNT = 1000;
+    public static final int MAX_POSITION_COUNT = 10_000;
     public static final long MIN_CHUNK_RESETTING_INTERVAL_MILLIS = 1000;
     public static final int MAX_CHUNKS = 25;
     public static final int MIN_LENGTH_OF_QUERY_DESCRIPTION = 10;
@@ -70,8 +72,10 @@ public class TopBuilder {
     private Clock clock;
     private Executor backgroundExecutor;
     private TopFactory factory;
+    private InstrumentationListener instrumentationListener;
+    private DescriptionPool descriptionPool;
 
-    private TopBuilder(int size, Duration latencyThreshold, Duration snapshotCachingDuration, int maxDescriptionLength, Clock clock, Executor backgroundExecutor, TopFactory factory) {
+    private TopBuilder(int size, Duration latencyThreshold, Duration snapshotCachingDuration, int maxDescriptionLength, Clock clock, Executor backgroundExecutor, TopFactory factory, InstrumentationListener instrumentationListener) {
         this.size = size;
         this.latencyThreshold = latencyThreshold;
         this.snapshotCachingDuration = snapshotCachingDuration;
@@ -79,6 +83,7 @@ public class TopBuilder {
         this.clock = clock;
         this.backgroundExecutor = backgroundExecutor;
         this.factory = factory;
+        this.instrumentationListener = instrumentationListener;
     }
 
     /**
@@ -87,7 +92,10 @@ public class TopBuilder {
      * @return new {@link Top} instance
      */
     public Top build() {
-        Top top = factory.create(size, latencyThreshold, maxDescriptionLength, clock);
+        Top top = factory.create(size, latencyThreshold, maxDescriptionLength, descriptionPool, clock);
+        if (instrumentationListener != InstrumentationListener.NOOP) {
+            top = new InstrumentedTop(top, instrumentationListener);
+        }
         if (!snapshotCachingDuration.isZero()) {
             top = new SnapshotCachingTop(top, snapshotCachingDuration.toMillis(), clock);
         }
@@ -102,7 +110,7 @@ public class TopBuilder {
      */
     public static TopBuilder newBuilder(int size) {
         validateSize(size);
-        return new TopBuilder(size, DEFAULT_LATENCY_THRESHOLD, DEFAULT_SNAPSHOT_CACHING_DURATION, DEFAULT_MAX_LENGTH_OF_QUERY_DESCRIPTION, Clock.defaultClock(), DEFAULT_BACKGROUND_EXECUTOR, DEFAULT_TOP_FACTORY);
+        return new TopBuilder(size, DEFAULT_LATENCY_THRESHOLD, DEFAULT_SNAPSHOT_CACHING_DURATION, DEFAULT_MAX_LENGTH_OF_QUERY_DESCRIPTION, Clock.defaultClock(), DEFAULT_BACKGROUND_EXECUTOR, DEFAULT_TOP_FACTORY, InstrumentationListener.NOOP);
     }
 
     /**
@@ -180,6 +188,27 @@ public class TopBuilder {
         return this;
     }
 
+    /**
+     * Configures the pool from which positions of top take canonical instances of descriptions,
+     * so positions of the same query share single instance of description instead of holding own copy.
+     *
+     * <p>
+     * By default descriptions are not interned. The interning makes sense when the slowest queries are represented by limited set of distinct descriptions,
+     * for example when description is SQL without bound parameters. The same pool can be shared between several tops.
+     * </p>
+     *
+     * @param descriptionPool the pool of descriptions
+     *
+     * @return this builder instance
+     */
+    public TopBuilder withDescriptionPool(DescriptionPool descriptionPool) {
+        if (descriptionPool == null) {
+            throw new IllegalArgumentException("descriptionPool should not be null");
+        }
+        this.descriptionPool = descriptionPool;
+        return this;
+    }
+
     /**
      * Replaces default clock.
      * Most likely you should never use this method, because replacing time measuring has sense only for unit testing.
@@ -218,6 +247,25 @@ public class TopBuilder {
         return this;
     }
 
+    /**
+     * Configures the listener which will be notified about how long snapshot extraction and rotation of chunks take.
+     *
+     * <p>
+     * By default nothing is measured. When snapshot caching is enabled, the listener is notified only about recomputation of cached snapshot.
+     * </p>
+     *
+     * @param instrumentationListener the listener, for example {@link com.github.rollingmetrics.instrumentation.InstrumentationMetricSet}
+     *
+     * @return this builder instance
+     */
+    public TopBuilder withInstrumentationListener(InstrumentationListener instrumentationListener) {
+        if (instrumentationListener == null) {
+            throw new IllegalArgumentException("instrumentationListener should not be null");
+        }
+        this.instrumentationListener = instrumentationListener;
+        return this;
+    }
+
     /**
      * Top configured with this strategy will store all values since the top was created.
      *
@@ -330,19 +378,19 @@ public class TopBuilder {
 
     private interface TopFactory {
 
-        Top create(int size, Duration latencyThreshold, int maxDescriptionLength, Clock clock);
+        Top create(int size, Duration latencyThreshold, int maxDescriptionLength, DescriptionPool descriptionPool, Clock clock);
 
         TopFactory UNIFORM = new TopFactory() {
             @Override
-            public Top create(int size, Duration latencyThreshold, int maxDescriptionLength, Clock clock) {
-                return new UniformTop(size, latencyThreshold.toNanos(), maxDescriptionLength);
+            public Top create(int size, Duration latencyThreshold, int maxDescriptionLength, DescriptionPool descriptionPool, Clock clock) {
+                return new UniformTop(size, latencyThreshold.toNanos(), maxDescriptionLength, descriptionPool);
             }
         };
 
         TopFactory RESET_ON_SNAPSHOT = new TopFactory() {
             @Override
-            public Top create(int size, Duration latencyThreshold, int maxDescriptionLength, Clock clock) {
-                return new ResetOnSnapshotConcurrentTop(size, latencyThreshold.toNanos(), maxDescriptionLength);
+            public Top create(int size, Duration latencyThreshold, int maxDescriptionLength, DescriptionPool descriptionPool, Clock clock) {
+                return new ResetOnSnapshotConcurrentTop(size, latencyThreshold.toNanos(), maxDescriptionLength, descriptionPool);
             }
         };
 
@@ -360,8 +408,8 @@ public class TopBuilder {
     private TopFactory resetByChunks(final long intervalBetweenResettingMillis, int numberOfHistoryChunks) {
         return new TopFactory() {
             @Override
-            public Top create(int size, Duration latencyThreshold, int maxDescriptionLength, Clock clock) {
-                return new ResetByChunksTop(size, latencyThreshold.toNanos(), maxDescriptionLength, intervalBetweenResettingMillis, numberOfHistoryChunks, clock, getExecutor());
+            public Top create(int size, Duration latencyThreshold, int maxDescriptionLength, DescriptionPool descriptionPool, Clock clock) {
+                return new ResetByChunksTop(size, latencyThreshold.toNanos(), maxDescriptionLength, descriptionPool, intervalBetweenResettingMillis, numberOfHistoryChunks, clock, getExecutor(), instrumentationListener);
             }
         };
     }
@@ -20,11 +20,11 @@ package com.github.rollingmetrics.top;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricSet;
+import com.github.rollingmetrics.util.Clock;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -51,6 +51,10 @@ import java.util.concurrent.TimeUnit;
  * The "latency" gauges have {@link BigDecimal} type, the "latencyUnit" and "description" gauges have {@link String} type.
  * The number in the gauge name represents position in the top in descending order, the "0" is the slowest query.
  *
+ * <p>
+ * All gauges of one metric set share the single snapshot of top during reporting cycle,
+ * so reporter which reads all gauges takes the snapshot of top only once, and the values of all gauges are consistent with each other.
+ *
  */
 public class TopMetricSet implements MetricSet {
 
@@ -66,6 +70,10 @@ public class TopMetricSet implements MetricSet {
      * @param digitsAfterDecimalPoint the number of digits after decimal point
      */
     public TopMetricSet(String name, Top top, TimeUnit latencyUnit, int digitsAfterDecimalPoint) {
+        this(name, top, latencyUnit, digitsAfterDecimalPoint, Clock.defaultClock());
+    }
+
+    TopMetricSet(String name, Top top, TimeUnit latencyUnit, int digitsAfterDecimalPoint, Clock clock) {
         if (name == null) {
             throw new IllegalArgumentException("name should not be null");
         }
@@ -87,14 +95,15 @@ public class TopMetricSet implements MetricSet {
 
         zero = BigDecimal.ZERO.setScale(digitsAfterDecimalPoint, RoundingMode.CEILING);
 
+        ReportingSnapshot<Position> snapshot = new ReportingSnapshot<>(top::getPositionsInDescendingOrder, clock);
         int size = top.getSize();
         for (int i = 0; i < size; i++) {
             String latencyName = name + "." + i + "." + "latency";
-            Gauge<BigDecimal> latencyGauge = createLatencyGauge(i, top, latencyUnit, digitsAfterDecimalPoint);
+            Gauge<BigDecimal> latencyGauge = new LatencyGauge<>(snapshot.createReader(), i, Position::getLatencyInNanoseconds, latencyUnit, digitsAfterDecimalPoint, zero);
             gauges.put(latencyName, latencyGauge);
 
             String descriptionName = name + "." + i + "." + "description";
-            Gauge<String> descriptionGauge = createDescriptionGauge(i, top);
+            Gauge<String> descriptionGauge = createDescriptionGauge(i, snapshot);
             gauges.put(descriptionName, descriptionGauge);
         }
     }
@@ -104,27 +113,11 @@ public class TopMetricSet implements MetricSet {
         return gauges;
     }
 
-    private Gauge<BigDecimal> createLatencyGauge(int i, Top top, TimeUnit latencyUnit, int digitsAfterDecimalPoint) {
-        return () -> {
-            List<Position> positions = top.getPositionsInDescendingOrder();
-            if (positions.size() <= i) {
-                return zero;
-            }
-            double latencyNanos = positions.get(i).getLatencyInNanoseconds();
-            long scale = latencyUnit.toNanos(1);
-            double result = latencyNanos/scale;
-
-            return new BigDecimal(result).setScale(digitsAfterDecimalPoint, RoundingMode.CEILING);
-        };
-    }
-
-    private Gauge<String> createDescriptionGauge(int i, Top top) {
+    private Gauge<String> createDescriptionGauge(int i, ReportingSnapshot<Position> snapshot) {
+        ReportingSnapshot<Position>.Reader reader = snapshot.createReader();
         return () -> {
-            List<Position> positions = top.getPositionsInDescendingOrder();
-            if (positions.size() <= i) {
-                return "";
-            }
-            return positions.get(i).getQueryDescription();
+            Position position = reader.getPosition(i);
+            return position == null ? "" : position.getQueryDescription();
         };
     }
 
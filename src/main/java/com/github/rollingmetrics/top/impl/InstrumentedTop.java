@@ -0,0 +1,94 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.top.impl;
+
+import com.github.rollingmetrics.checkpoint.Checkpointable;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
+import com.github.rollingmetrics.top.Position;
+import com.github.rollingmetrics.top.Top;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class InstrumentedTop implements Top, Checkpointable {
+
+    private final Top target;
+    private final InstrumentationListener listener;
+
+    public InstrumentedTop(Top target, InstrumentationListener listener) {
+        this.target = target;
+        this.listener = listener;
+    }
+
+    @Override
+    public void update(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier) {
+        target.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
+    }
+
+    @Override
+    public <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        target.update(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
+    }
+
+    @Override
+    public <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        target.update(timestampMillis, latencyNanos, descriptionContext, descriptionFormatter);
+    }
+
+    @Override
+    public List<Position> getPositionsInDescendingOrder() {
+        long startNanos = System.nanoTime();
+        try {
+            return target.getPositionsInDescendingOrder();
+        } finally {
+            listener.onSnapshot(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return target.getSize();
+    }
+
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(target).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).writeCheckpoint(buffer);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).restoreFromCheckpoint(buffer);
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedTop{" +
+                "target=" + target +
+                ", listener=" + listener +
+                '}';
+    }
+
+}
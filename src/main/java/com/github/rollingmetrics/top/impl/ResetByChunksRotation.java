@@ -0,0 +1,261 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl;
+
+import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.ResilientExecutionUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Is not a part of public API, this class just used as building block for tops which reset positions by chunks.
+ *
+ * <p>
+ * Holds two phases which are switched by writers when chunk is expired, and the ring of archived chunks.
+ * The expired phase is moved to correspondent archived chunk by background executor,
+ * the content of phases and chunks is specific for each top, so values are moved by provided {@link Archiver}.
+ * </p>
+ *
+ * Rotation is performed under monitor of {@code lock}, so the owner should read the phases and chunks under the same monitor.
+ *
+ * @param <P> type of phase content
+ * @param <A> type of archived chunk content
+ */
+public class ResetByChunksRotation<P, A> {
+
+    public interface Archiver<P, A> {
+
+        /**
+         * Moves values of expired phase to archived chunk and clears the phase.
+         *
+         * @param phase the content of expired phase
+         * @param archivedChunk the content of archived chunk which should be replaced by values of phase, or null if history is not supported
+         */
+        void archive(P phase, A archivedChunk);
+
+    }
+
+    private final long intervalBetweenResettingMillis;
+    private final long creationTimestamp;
+    private final Clock clock;
+    private final Executor backgroundExecutor;
+    private final InstrumentationListener instrumentationListener;
+    private final Object lock;
+    private final Archiver<P, A> archiver;
+
+    private final Phase left;
+    private final Phase right;
+    private final List<Phase> phases;
+    private final AtomicReference<Phase> currentPhaseRef;
+    private final List<ArchivedChunk> archive;
+
+    public ResetByChunksRotation(long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor,
+                                 InstrumentationListener instrumentationListener, Object lock,
+                                 Supplier<P> phaseFactory, Supplier<A> archivedChunkFactory, Archiver<P, A> archiver) {
+        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
+        this.clock = clock;
+        this.creationTimestamp = clock.currentTimeMillis();
+        this.backgroundExecutor = backgroundExecutor;
+        this.instrumentationListener = instrumentationListener;
+        this.lock = lock;
+        this.archiver = archiver;
+
+        this.left = new Phase(phaseFactory.get(), creationTimestamp + intervalBetweenResettingMillis);
+        this.right = new Phase(phaseFactory.get(), Long.MAX_VALUE);
+        this.phases = Collections.unmodifiableList(Arrays.asList(left, right));
+        this.currentPhaseRef = new AtomicReference<>(left);
+
+        List<ArchivedChunk> archive = new ArrayList<>(numberHistoryChunks);
+        for (int i = 0; i < numberHistoryChunks; i++) {
+            archive.add(new ArchivedChunk(archivedChunkFactory.get()));
+        }
+        this.archive = Collections.unmodifiableList(archive);
+    }
+
+    /**
+     * Returns the content of phase to which writer should record, switches the phases and submits rotation when current phase is expired.
+     *
+     * @return the content of phase for update
+     */
+    public P getPhaseForUpdate() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        Phase currentPhase = currentPhaseRef.get();
+        if (currentTimeMillis < currentPhase.proposedInvalidationTimestamp) {
+            return currentPhase.content;
+        }
+
+        Phase nextPhase = currentPhase == left ? right : left;
+        switchPhase(currentTimeMillis, currentPhase, nextPhase);
+        return nextPhase.content;
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * @return archived chunks, empty list if history is not supported
+     */
+    public List<ArchivedChunk> getArchive() {
+        return archive;
+    }
+
+    public boolean isHistorySupported() {
+        return !archive.isEmpty();
+    }
+
+    public long getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
+    public long getIntervalBetweenResettingMillis() {
+        return intervalBetweenResettingMillis;
+    }
+
+    private void switchPhase(long currentTimeMillis, Phase currentPhase, Phase nextPhase) {
+        if (!currentPhaseRef.compareAndSet(currentPhase, nextPhase)) {
+            // another writer achieved progress and must submit rotation task to backgroundExecutor
+            return;
+        }
+
+        // Current thread is responsible to rotate phases.
+        Runnable phaseRotation = () -> rotate(currentTimeMillis, currentPhase, nextPhase);
+        ResilientExecutionUtil.getInstance().execute(backgroundExecutor, phaseRotation);
+        if (instrumentationListener != InstrumentationListener.NOOP) {
+            int queueSize = ResilientExecutionUtil.getInstance().getQueueSize(backgroundExecutor);
+            if (queueSize >= 0) {
+                instrumentationListener.onBackgroundTaskQueued(queueSize);
+            }
+        }
+    }
+
+    private void rotate(long currentTimeMillis, Phase currentPhase, Phase nextPhase) {
+        synchronized (lock) {
+            // rotation happens once per chunk, so time can be measured unconditionally
+            long startNanos = System.nanoTime();
+            try {
+                A archivedChunkContent = null;
+                if (isHistorySupported()) {
+                    long currentPhaseNumber = (currentPhase.proposedInvalidationTimestamp - creationTimestamp) / intervalBetweenResettingMillis;
+                    int correspondentArchiveIndex = (int) (currentPhaseNumber - 1) % archive.size();
+                    ArchivedChunk correspondentChunk = archive.get(correspondentArchiveIndex);
+                    correspondentChunk.proposedInvalidationTimestamp = currentPhase.proposedInvalidationTimestamp + archive.size() * intervalBetweenResettingMillis;
+                    archivedChunkContent = correspondentChunk.content;
+                }
+                archiver.archive(currentPhase.content, archivedChunkContent);
+            } finally {
+                long millisSinceCreation = currentTimeMillis - creationTimestamp;
+                long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
+                currentPhase.proposedInvalidationTimestamp = Long.MAX_VALUE;
+                nextPhase.proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * intervalBetweenResettingMillis;
+                instrumentationListener.onRotation(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    public final class Phase {
+
+        private final P content;
+        private volatile long proposedInvalidationTimestamp;
+
+        Phase(P content, long proposedInvalidationTimestamp) {
+            this.content = content;
+            this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
+        }
+
+        public P getContent() {
+            return content;
+        }
+
+        /**
+         * @return the moment when phase expires, or {@link Long#MAX_VALUE} if phase is not current and is waiting for next switching
+         */
+        public long getProposedInvalidationTimestamp() {
+            return proposedInvalidationTimestamp;
+        }
+
+        public boolean isNeedToBeReportedToSnapshot(long currentTimeMillis) {
+            long proposedInvalidationTimestampLocal = proposedInvalidationTimestamp;
+            if (proposedInvalidationTimestampLocal > currentTimeMillis) {
+                return true;
+            }
+            if (!isHistorySupported()) {
+                return false;
+            }
+            long correspondentChunkProposedInvalidationTimestamp = proposedInvalidationTimestampLocal + archive.size() * intervalBetweenResettingMillis;
+            return correspondentChunkProposedInvalidationTimestamp > currentTimeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Phase{" +
+                    "\n, proposedInvalidationTimestamp=" + proposedInvalidationTimestamp +
+                    "\n, content=" + content +
+                    "\n}";
+        }
+    }
+
+    public final class ArchivedChunk {
+
+        private final A content;
+        private volatile long proposedInvalidationTimestamp = Long.MIN_VALUE;
+
+        ArchivedChunk(A content) {
+            this.content = content;
+        }
+
+        public A getContent() {
+            return content;
+        }
+
+        public long getProposedInvalidationTimestamp() {
+            return proposedInvalidationTimestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "ArchivedChunk{" +
+                    "\n, proposedInvalidationTimestamp=" + proposedInvalidationTimestamp +
+                    "\n, content=" + content +
+                    "\n}";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResetByChunksRotation{" +
+                "\nintervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
+                ",\n creationTimestamp=" + creationTimestamp +
+                (!isHistorySupported() ? "" : ",\n archive=" + Printer.printArray(archive.toArray(), "chunk")) +
+                ",\n clock=" + clock +
+                ",\n left=" + left +
+                ",\n right=" + right +
+                ",\n currentPhase=" + (currentPhaseRef.get() == left ? "left" : "right") +
+                '}';
+    }
+
+}
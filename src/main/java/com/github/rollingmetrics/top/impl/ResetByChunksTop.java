@@ -18,15 +18,16 @@
 package com.github.rollingmetrics.top.impl;
 
 
-import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.checkpoint.CheckpointFormat;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
+import com.github.rollingmetrics.top.DescriptionPool;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
 import com.github.rollingmetrics.top.impl.recorder.PositionRecorder;
 import com.github.rollingmetrics.top.impl.recorder.TwoPhasePositionRecorder;
 import com.github.rollingmetrics.util.Clock;
-import com.github.rollingmetrics.util.ResilientExecutionUtil;
-import com.github.rollingmetrics.histogram.util.Printer;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
@@ -34,73 +35,72 @@ import com.github.rollingmetrics.top.impl.recorder.PositionRecorder;
 import com.github.rollingmetrics.top.impl.recorder.TwoPhasePositionRecorder;
 import com.github.rollingmetrics.util.Clock;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 
-public class ResetByChunksTop implements Top {
 
-    private final Executor backgroundExecutor;
-    private final long intervalBetweenResettingMillis;
-    private final long creationTimestamp;
-    private final ArchivedTop[] archive;
-    private final boolean historySupported;
+public class ResetByChunksTop implements Top, Checkpointable {
+
+    private static final int CHECKPOINT_CHUNK_HEADER_SIZE = 8 + 4;
+    private static final int CHECKPOINT_POSITION_HEADER_SIZE = 8 + 8 + 1 + 4;
+    private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+    private static final TimeUnit[] TIME_UNITS = TimeUnit.values();
+
+    private final int size;
+    private final int maxDescriptionLength;
+    private final DescriptionPool descriptionPool;
     private final Clock clock;
+    private final ResetByChunksRotation<Phase, PositionCollector> rotation;
     private final PositionCollector temporarySnapshotCollector;
 
-    private final Phase left;
-    private final Phase right;
-    private final Phase[] phases;
-    private final AtomicReference<Phase> currentPhaseRef;
+    // precomputed union of archived and restored chunks, which is rebuilt only when set of chunks is changed
+    private final PositionCollector mergedArchiveCollector;
+    private long mergedArchiveInvalidationTimestamp = Long.MIN_VALUE;
+
+    private volatile ArchivedTop[] restoredArchive = new ArchivedTop[0];
 
     public ResetByChunksTop(int size, long latencyThresholdNanos, int maxDescriptionLength, long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor) {
-        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
-        this.clock = clock;
-        this.creationTimestamp = clock.currentTimeMillis();
-        this.backgroundExecutor = backgroundExecutor;
+        this(size, latencyThresholdNanos, maxDescriptionLength, null, intervalBetweenResettingMillis, numberHistoryChunks, clock, backgroundExecutor, InstrumentationListener.NOOP);
+    }
 
-        Supplier<TwoPhasePositionRecorder> recorderSupplier = () -> new TwoPhasePositionRecorder(size, latencyThresholdNanos, maxDescriptionLength);
-        this.left = new Phase(recorderSupplier.get(), creationTimestamp + intervalBetweenResettingMillis);
-        this.right = new Phase(recorderSupplier.get(), Long.MAX_VALUE);
-        this.phases = new Phase[] {left, right};
-        this.currentPhaseRef = new AtomicReference<>(left);
+    public ResetByChunksTop(int size, long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool, long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor, InstrumentationListener instrumentationListener) {
+        this.size = size;
+        this.maxDescriptionLength = maxDescriptionLength;
+        this.descriptionPool = descriptionPool;
+        this.clock = clock;
 
         Supplier<PositionCollector> collectorSupplier = () -> PositionCollector.createCollector(size);
-        this.historySupported = numberHistoryChunks > 0;
-        if (historySupported) {
-            this.archive = new ArchivedTop[numberHistoryChunks];
-            for (int i = 0; i < numberHistoryChunks; i++) {
-                this.archive[i] = new ArchivedTop(collectorSupplier.get(), Long.MIN_VALUE);
-            }
-        } else {
-            archive = null;
-        }
+        Supplier<Phase> phaseSupplier = () -> new Phase(new TwoPhasePositionRecorder(size, latencyThresholdNanos, maxDescriptionLength, descriptionPool), collectorSupplier.get());
+        this.rotation = new ResetByChunksRotation<>(intervalBetweenResettingMillis, numberHistoryChunks, clock, backgroundExecutor, instrumentationListener, this,
+                phaseSupplier, collectorSupplier, this::archive);
         this.temporarySnapshotCollector = collectorSupplier.get();
+        this.mergedArchiveCollector = collectorSupplier.get();
     }
 
     @Override
     public void update(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier) {
-        long currentTimeMillis = clock.currentTimeMillis();
-        Phase currentPhase = currentPhaseRef.get();
-        if (currentTimeMillis < currentPhase.proposedInvalidationTimestamp) {
-            currentPhase.recorder.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
-            return;
-        }
+        getPhaseForUpdate().recorder.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
+    }
 
-        Phase nextPhase = currentPhase == left ? right : left;
-        nextPhase.recorder.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
+    @Override
+    public <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        getPhaseForUpdate().recorder.update(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
+    }
 
-        if (!currentPhaseRef.compareAndSet(currentPhase, nextPhase)) {
-            // another writer achieved progress and must submit rotation task to backgroundExecutor
-            return;
-        }
+    @Override
+    public <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        getPhaseForUpdate().recorder.update(timestampMillis, latencyNanos, descriptionContext, descriptionFormatter);
+    }
 
-        // Current thread is responsible to rotate phases.
-        Runnable phaseRotation = () -> rotate(currentTimeMillis, currentPhase, nextPhase);
-        ResilientExecutionUtil.getInstance().execute(backgroundExecutor, phaseRotation);
+    private Phase getPhaseForUpdate() {
+        return rotation.getPhaseForUpdate();
     }
 
     @Override
@@ -108,50 +108,193 @@ public class ResetByChunksTop implements Top {
         temporarySnapshotCollector.reset();
         long currentTimeMillis = clock.currentTimeMillis();
 
-        for (Phase phase : phases) {
-            if (phase.isNeedToBeReportedToSnapshot(currentTimeMillis)) {
+        if (currentTimeMillis >= mergedArchiveInvalidationTimestamp) {
+            // one of merged chunks is expired
+            rebuildMergedArchive(currentTimeMillis);
+        }
+        mergedArchiveCollector.addInto(temporarySnapshotCollector);
+
+        for (ResetByChunksRotation<Phase, PositionCollector>.Phase rotatedPhase : rotation.getPhases()) {
+            if (rotatedPhase.isNeedToBeReportedToSnapshot(currentTimeMillis)) {
+                Phase phase = rotatedPhase.getContent();
                 phase.intervalRecorder = phase.recorder.getIntervalRecorder(phase.intervalRecorder);
                 phase.intervalRecorder.addInto(phase.totalsCollector);
                 phase.totalsCollector.addInto(temporarySnapshotCollector);
             }
         }
 
-        if (historySupported) {
-            for (ArchivedTop archivedTop : archive) {
-                if (archivedTop.proposedInvalidationTimestamp > currentTimeMillis) {
-                    archivedTop.collector.addInto(temporarySnapshotCollector);
+        return temporarySnapshotCollector.getPositionsInDescendingOrder();
+    }
+
+    private void rebuildMergedArchive(long currentTimeMillis) {
+        mergedArchiveCollector.reset();
+        long earliestInvalidationTimestamp = Long.MAX_VALUE;
+        for (ResetByChunksRotation<Phase, PositionCollector>.ArchivedChunk archivedChunk : rotation.getArchive()) {
+            long proposedInvalidationTimestamp = archivedChunk.getProposedInvalidationTimestamp();
+            if (proposedInvalidationTimestamp > currentTimeMillis) {
+                archivedChunk.getContent().addInto(mergedArchiveCollector);
+                earliestInvalidationTimestamp = Math.min(earliestInvalidationTimestamp, proposedInvalidationTimestamp);
+            }
+        }
+        for (ArchivedTop restoredTop : restoredArchive) {
+            long proposedInvalidationTimestamp = restoredTop.proposedInvalidationTimestamp;
+            if (proposedInvalidationTimestamp > currentTimeMillis) {
+                restoredTop.collector.addInto(mergedArchiveCollector);
+                earliestInvalidationTimestamp = Math.min(earliestInvalidationTimestamp, proposedInvalidationTimestamp);
+            }
+        }
+        mergedArchiveInvalidationTimestamp = earliestInvalidationTimestamp;
+    }
+
+    @Override
+    public synchronized int getMaxCheckpointSizeInBytes() {
+        // estimation is based on actual occupancy, because size * maxDescriptionLength reaches hundreds of megabytes for large tops,
+        // positions which are not moved from recorders yet are not counted, CheckpointFile extends mapping when estimation is exceeded
+        long estimation = CheckpointFormat.HEADER_SIZE;
+        for (ResetByChunksRotation<Phase, PositionCollector>.Phase rotatedPhase : rotation.getPhases()) {
+            estimation += estimateCheckpointChunkSize(rotatedPhase.getContent().totalsCollector);
+        }
+        for (ResetByChunksRotation<Phase, PositionCollector>.ArchivedChunk archivedChunk : rotation.getArchive()) {
+            estimation += estimateCheckpointChunkSize(archivedChunk.getContent());
+        }
+        for (ArchivedTop restoredTop : restoredArchive) {
+            estimation += estimateCheckpointChunkSize(restoredTop.collector);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, estimation);
+    }
+
+    private static long estimateCheckpointChunkSize(PositionCollector collector) {
+        long estimation = CHECKPOINT_CHUNK_HEADER_SIZE;
+        for (Position position : collector.getPositionsInDescendingOrder()) {
+            estimation += CHECKPOINT_POSITION_HEADER_SIZE + (long) position.getQueryDescription().length() * MAX_UTF8_BYTES_PER_CHAR;
+        }
+        return estimation;
+    }
+
+    @Override
+    public synchronized void writeCheckpoint(ByteBuffer target) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int countPosition = CheckpointFormat.startChunks(target, CheckpointFormat.TOP);
+        int chunkCount = 0;
+
+        long creationTimestamp = rotation.getCreationTimestamp();
+        long intervalBetweenResettingMillis = rotation.getIntervalBetweenResettingMillis();
+        for (ResetByChunksRotation<Phase, PositionCollector>.Phase rotatedPhase : rotation.getPhases()) {
+            if (rotatedPhase.isNeedToBeReportedToSnapshot(currentTimeMillis)) {
+                Phase phase = rotatedPhase.getContent();
+                phase.intervalRecorder = phase.recorder.getIntervalRecorder(phase.intervalRecorder);
+                phase.intervalRecorder.addInto(phase.totalsCollector);
+                long proposedInvalidationTimestamp = rotatedPhase.getProposedInvalidationTimestamp();
+                if (proposedInvalidationTimestamp == Long.MAX_VALUE) {
+                    // phase is in the middle of rotation, so it is being written in the current chunk
+                    long intervalsSinceCreation = (currentTimeMillis - creationTimestamp) / intervalBetweenResettingMillis;
+                    proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * intervalBetweenResettingMillis;
                 }
+                // positions will be visible until invalidation of correspondent archived chunk
+                proposedInvalidationTimestamp += rotation.getArchive().size() * intervalBetweenResettingMillis;
+                chunkCount += writeCheckpointChunk(target, phase.totalsCollector, proposedInvalidationTimestamp, currentTimeMillis);
             }
         }
+        for (ResetByChunksRotation<Phase, PositionCollector>.ArchivedChunk archivedChunk : rotation.getArchive()) {
+            chunkCount += writeCheckpointChunk(target, archivedChunk.getContent(), archivedChunk.getProposedInvalidationTimestamp(), currentTimeMillis);
+        }
+        for (ArchivedTop restoredTop : restoredArchive) {
+            chunkCount += writeCheckpointChunk(target, restoredTop.collector, restoredTop.proposedInvalidationTimestamp, currentTimeMillis);
+        }
 
-        return temporarySnapshotCollector.getPositionsInDescendingOrder();
+        CheckpointFormat.finishChunks(target, countPosition, chunkCount);
+    }
+
+    @Override
+    public synchronized void restoreFromCheckpoint(ByteBuffer source) {
+        long currentTimeMillis = clock.currentTimeMillis();
+        int chunkCount = CheckpointFormat.readChunkCount(source, CheckpointFormat.TOP);
+        List<ArchivedTop> restoredTops = getNotExpiredRestoredTops(currentTimeMillis);
+
+        for (int i = 0; i < chunkCount; i++) {
+            long proposedInvalidationTimestamp = source.getLong();
+            int positionCount = source.getInt();
+            PositionCollector collector = PositionCollector.createCollector(getSize());
+            for (int j = 0; j < positionCount; j++) {
+                long timestamp = source.getLong();
+                long latencyTime = source.getLong();
+                TimeUnit latencyUnit = TIME_UNITS[source.get()];
+                byte[] descriptionBytes = new byte[source.getInt()];
+                source.get(descriptionBytes);
+                String description = new String(descriptionBytes, UTF_8);
+                collector.add(new Position(timestamp, latencyTime, latencyUnit, () -> description, maxDescriptionLength, descriptionPool));
+            }
+            if (proposedInvalidationTimestamp > currentTimeMillis) {
+                restoredTops.add(new ArchivedTop(collector, proposedInvalidationTimestamp));
+            }
+        }
+        this.restoredArchive = restoredTops.toArray(new ArchivedTop[restoredTops.size()]);
+        this.mergedArchiveInvalidationTimestamp = Long.MIN_VALUE;
+    }
+
+    private List<ArchivedTop> getNotExpiredRestoredTops(long currentTimeMillis) {
+        List<ArchivedTop> restoredTops = new ArrayList<>();
+        for (ArchivedTop restoredTop : restoredArchive) {
+            if (restoredTop.proposedInvalidationTimestamp > currentTimeMillis) {
+                restoredTops.add(restoredTop);
+            }
+        }
+        return restoredTops;
+    }
+
+    private void pruneExpiredRestoredTops(long currentTimeMillis) {
+        if (restoredArchive.length == 0) {
+            return;
+        }
+        List<ArchivedTop> restoredTops = getNotExpiredRestoredTops(currentTimeMillis);
+        if (restoredTops.size() < restoredArchive.length) {
+            this.restoredArchive = restoredTops.toArray(new ArchivedTop[restoredTops.size()]);
+        }
+    }
+
+    private static int writeCheckpointChunk(ByteBuffer target, PositionCollector collector, long proposedInvalidationTimestamp, long currentTimeMillis) {
+        if (proposedInvalidationTimestamp <= currentTimeMillis) {
+            return 0;
+        }
+        List<Position> positions = collector.getPositionsInDescendingOrder();
+        if (positions.isEmpty()) {
+            return 0;
+        }
+        target.putLong(proposedInvalidationTimestamp);
+        target.putInt(positions.size());
+        for (Position position : positions) {
+            target.putLong(position.getTimestamp());
+            target.putLong(position.getLatencyTime());
+            target.put((byte) position.getLatencyUnit().ordinal());
+            byte[] descriptionBytes = position.getQueryDescription().getBytes(UTF_8);
+            target.putInt(descriptionBytes.length);
+            target.put(descriptionBytes);
+        }
+        return 1;
     }
 
     @Override
     public int getSize() {
-        return left.intervalRecorder.getSize();
-    }
-
-    private synchronized void rotate(long currentTimeMillis, Phase currentPhase, Phase nextPhase) {
-        try {
-            currentPhase.intervalRecorder = currentPhase.recorder.getIntervalRecorder(currentPhase.intervalRecorder);
-            currentPhase.intervalRecorder.addInto(currentPhase.totalsCollector);
-            if (historySupported) {
-                // move values from recorder to correspondent archived collector
-                long currentPhaseNumber = (currentPhase.proposedInvalidationTimestamp - creationTimestamp) / intervalBetweenResettingMillis;
-                int correspondentArchiveIndex = (int) (currentPhaseNumber - 1) % archive.length;
-                ArchivedTop correspondentArchivedTop = archive[correspondentArchiveIndex];
-                correspondentArchivedTop.collector.reset();
-                currentPhase.totalsCollector.addInto(correspondentArchivedTop.collector);
-                correspondentArchivedTop.proposedInvalidationTimestamp = currentPhase.proposedInvalidationTimestamp + archive.length * intervalBetweenResettingMillis;
+        return size;
+    }
+
+    private void archive(Phase phase, PositionCollector archivedCollector) {
+        // restored chunks are dropped as soon as they expire, instead of keeping them until next restore
+        pruneExpiredRestoredTops(clock.currentTimeMillis());
+        phase.intervalRecorder = phase.recorder.getIntervalRecorder(phase.intervalRecorder);
+        phase.intervalRecorder.addInto(phase.totalsCollector);
+        if (archivedCollector != null) {
+            // move values from recorder to correspondent archived collector
+            archivedCollector.reset();
+            phase.totalsCollector.addInto(archivedCollector);
+            // build deferred descriptions in background thread, so contexts of archived positions are not retained until chunk invalidation
+            for (Position position : archivedCollector.getPositionsInDescendingOrder()) {
+                position.getQueryDescription();
             }
-            currentPhase.totalsCollector.reset();
-        } finally {
-            long millisSinceCreation = currentTimeMillis - creationTimestamp;
-            long intervalsSinceCreation = millisSinceCreation / intervalBetweenResettingMillis;
-            currentPhase.proposedInvalidationTimestamp = Long.MAX_VALUE;
-            nextPhase.proposedInvalidationTimestamp = creationTimestamp + (intervalsSinceCreation + 1) * intervalBetweenResettingMillis;
+            // merged view is rebuilt here in background thread instead of reader thread
+            rebuildMergedArchive(clock.currentTimeMillis());
         }
+        phase.totalsCollector.reset();
     }
 
     private final class ArchivedTop {
@@ -173,52 +316,31 @@ public class ResetByChunksTop implements Top {
         }
     }
 
-    private final class Phase {
+    private static final class Phase {
 
         final TwoPhasePositionRecorder recorder;
         final PositionCollector totalsCollector;
         PositionRecorder intervalRecorder;
-        volatile long proposedInvalidationTimestamp;
 
-        Phase(TwoPhasePositionRecorder recorder, long proposedInvalidationTimestamp) {
+        Phase(TwoPhasePositionRecorder recorder, PositionCollector totalsCollector) {
             this.recorder = recorder;
             this.intervalRecorder = recorder.getIntervalRecorder();
-            this.totalsCollector = PositionCollector.createCollector(intervalRecorder.getSize());
-            this.proposedInvalidationTimestamp = proposedInvalidationTimestamp;
+            this.totalsCollector = totalsCollector;
         }
 
         @Override
         public String toString() {
             return "Phase{" +
-                    "\n, proposedInvalidationTimestamp=" + proposedInvalidationTimestamp +
                     "\n, totalsCollector=" + totalsCollector +
                     "\n, intervalRecorder=" + intervalRecorder +
                     "\n}";
         }
-
-        boolean isNeedToBeReportedToSnapshot(long currentTimeMillis) {
-            long proposedInvalidationTimestampLocal = proposedInvalidationTimestamp;
-            if (proposedInvalidationTimestampLocal > currentTimeMillis) {
-                return true;
-            }
-            if (!historySupported) {
-                return false;
-            }
-            long correspondentChunkProposedInvalidationTimestamp = proposedInvalidationTimestampLocal + archive.length * intervalBetweenResettingMillis;
-            return correspondentChunkProposedInvalidationTimestamp > currentTimeMillis;
-        }
     }
 
     @Override
     public String toString() {
-        return "ResetByChunksAccumulator{" +
-                "\nintervalBetweenResettingMillis=" + intervalBetweenResettingMillis +
-                ",\n creationTimestamp=" + creationTimestamp +
-                (!historySupported ? "" : ",\n archive=" + Printer.printArray(archive, "chunk")) +
-                ",\n clock=" + clock +
-                ",\n left=" + left +
-                ",\n right=" + right +
-                ",\n currentPhase=" + (currentPhaseRef.get() == left? "left": "right") +
+        return "ResetByChunksTop{" +
+                "\nrotation=" + rotation +
                 ",\n temporarySnapshotCollector=" + temporarySnapshotCollector  +
                 '}';
     }
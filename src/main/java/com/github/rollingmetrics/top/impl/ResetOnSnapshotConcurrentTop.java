@@ -18,6 +18,7 @@
 package com.github.rollingmetrics.top.impl;
 
 
+import com.github.rollingmetrics.top.DescriptionPool;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
 import com.github.rollingmetrics.top.impl.recorder.PositionRecorder;
@@ -25,6 +26,7 @@ import com.github.rollingmetrics.top.impl.recorder.TwoPhasePositionRecorder;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class ResetOnSnapshotConcurrentTop implements Top {
@@ -32,8 +34,8 @@ public class ResetOnSnapshotConcurrentTop implements Top {
     private final TwoPhasePositionRecorder recorder;
     private PositionRecorder intervalRecorder;
 
-    public ResetOnSnapshotConcurrentTop(int size, long latencyThresholdNanos, int maxDescriptionLength) {
-        this.recorder = new TwoPhasePositionRecorder(size, latencyThresholdNanos, maxDescriptionLength);
+    public ResetOnSnapshotConcurrentTop(int size, long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool) {
+        this.recorder = new TwoPhasePositionRecorder(size, latencyThresholdNanos, maxDescriptionLength, descriptionPool);
         this.intervalRecorder = recorder.getIntervalRecorder();
     }
 
@@ -42,6 +44,16 @@ public class ResetOnSnapshotConcurrentTop implements Top {
         recorder.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
     }
 
+    @Override
+    public <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        recorder.update(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
+    }
+
+    @Override
+    public <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        recorder.update(timestampMillis, latencyNanos, descriptionContext, descriptionFormatter);
+    }
+
     @Override
     synchronized public List<Position> getPositionsInDescendingOrder() {
         intervalRecorder = recorder.getIntervalRecorder(intervalRecorder);
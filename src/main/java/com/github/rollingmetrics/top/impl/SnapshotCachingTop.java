@@ -18,17 +18,20 @@
 package com.github.rollingmetrics.top.impl;
 
 
+import com.github.rollingmetrics.checkpoint.Checkpointable;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
 import com.github.rollingmetrics.util.CachingSupplier;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.top.Top;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
-public class SnapshotCachingTop implements Top {
+public class SnapshotCachingTop implements Top, Checkpointable {
 
     private final Top target;
     private final CachingSupplier<List<Position>> cache;
@@ -43,6 +46,16 @@ public class SnapshotCachingTop implements Top {
         target.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
     }
 
+    @Override
+    public <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        target.update(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
+    }
+
+    @Override
+    public <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        target.update(timestampMillis, latencyNanos, descriptionContext, descriptionFormatter);
+    }
+
     @Override
     public List<Position> getPositionsInDescendingOrder() {
         return cache.get();
@@ -53,6 +66,21 @@ public class SnapshotCachingTop implements Top {
         return target.getSize();
     }
 
+    @Override
+    public int getMaxCheckpointSizeInBytes() {
+        return Checkpointable.of(target).getMaxCheckpointSizeInBytes();
+    }
+
+    @Override
+    public void writeCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).writeCheckpoint(buffer);
+    }
+
+    @Override
+    public void restoreFromCheckpoint(ByteBuffer buffer) {
+        Checkpointable.of(target).restoreFromCheckpoint(buffer);
+    }
+
     @Override
     public String toString() {
         return "SnapshotCachingTop{" +
@@ -17,6 +17,7 @@
 
 package com.github.rollingmetrics.top.impl;
 
+import com.github.rollingmetrics.top.DescriptionPool;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
@@ -27,6 +28,7 @@ import com.github.rollingmetrics.top.impl.recorder.TwoPhasePositionRecorder;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 
@@ -36,8 +38,8 @@ public class UniformTop implements Top {
     private final PositionCollector uniformCollector;
     private PositionRecorder intervalRecorder;
 
-    public UniformTop(int size, long latencyThresholdNanos, int maxDescriptionLength) {
-        this.phasedRecorder = new TwoPhasePositionRecorder(size, latencyThresholdNanos, maxDescriptionLength);
+    public UniformTop(int size, long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool) {
+        this.phasedRecorder = new TwoPhasePositionRecorder(size, latencyThresholdNanos, maxDescriptionLength, descriptionPool);
         intervalRecorder = phasedRecorder.getIntervalRecorder();
         this.uniformCollector = PositionCollector.createCollector(size);
     }
@@ -47,6 +49,16 @@ public class UniformTop implements Top {
         phasedRecorder.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
     }
 
+    @Override
+    public <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        phasedRecorder.update(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
+    }
+
+    @Override
+    public <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        phasedRecorder.update(timestampMillis, latencyNanos, descriptionContext, descriptionFormatter);
+    }
+
     @Override
     synchronized public List<Position> getPositionsInDescendingOrder() {
         intervalRecorder = phasedRecorder.getIntervalRecorder(intervalRecorder);
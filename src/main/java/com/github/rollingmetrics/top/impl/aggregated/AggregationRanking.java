@@ -0,0 +1,78 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import com.github.rollingmetrics.top.AggregatedPosition;
+
+/**
+ * Is not a part of public API, this class just used as building block for AggregatedTop implementations.
+ *
+ * <p>
+ * The ranking which is used for selection of aggregated positions.
+ * Eviction of signatures from {@link SpaceSavingSummary} is always driven by {@link #getWeight(long)},
+ * and positions which survived eviction are sorted by {@link #getRank(AggregatedPosition)}.
+ * </p>
+ */
+public enum AggregationRanking {
+
+    TOTAL_LATENCY {
+        @Override
+        long getWeight(long latencyNanos) {
+            return latencyNanos;
+        }
+
+        @Override
+        double getRank(AggregatedPosition position) {
+            return position.getTotalLatencyInNanoseconds();
+        }
+    },
+
+    COUNT {
+        @Override
+        long getWeight(long latencyNanos) {
+            return 1;
+        }
+
+        @Override
+        double getRank(AggregatedPosition position) {
+            return position.getCount();
+        }
+    },
+
+    /**
+     * Mean is not additive, so signatures are monitored by total latency, and monitored signatures are sorted by mean latency.
+     * Signature which is rare and slow can be evicted by signatures which frequent and fast.
+     */
+    MEAN_LATENCY {
+        @Override
+        long getWeight(long latencyNanos) {
+            return latencyNanos;
+        }
+
+        @Override
+        double getRank(AggregatedPosition position) {
+            return position.getMeanLatencyInNanoseconds();
+        }
+    };
+
+    abstract long getWeight(long latencyNanos);
+
+    abstract double getRank(AggregatedPosition position);
+
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import com.github.rollingmetrics.histogram.accumulator.ResetByChunksAccumulator;
+import com.github.rollingmetrics.util.Clock;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Is not a part of public API, this class just used as building block for {@link ResetByChunksAggregatedTop}.
+ *
+ * <p>
+ * The pool of rolling latency histograms for signatures which are currently present in the aggregated top.
+ * Histograms are rotated by the same chunks as the top itself, and they are recycled when signature leaves the top,
+ * so no more than {@code size} histograms are allocated during whole life of the top.
+ * </p>
+ *
+ * Borrowing and releasing of histograms should be synchronized outside, only {@link #record(ResetByChunksAccumulator, long)} can be called concurrently.
+ * Histogram must be released only when no writer can record to it anymore, otherwise values of different signatures will be mixed after reuse.
+ */
+public class LatencyDistributionPool {
+
+    public static final long LOWEST_DISCERNIBLE_LATENCY_NANOS = 1_000;
+
+    private final int size;
+    private final int numberOfSignificantValueDigits;
+    private final long highestTrackableLatencyNanos;
+    private final int numberHistoryChunks;
+    private final long intervalBetweenResettingMillis;
+    private final Clock clock;
+    private final Executor backgroundExecutor;
+
+    private final ArrayDeque<ResetByChunksAccumulator> released = new ArrayDeque<>();
+    private int allocated;
+
+    public LatencyDistributionPool(int size, int numberOfSignificantValueDigits, long highestTrackableLatencyNanos,
+                                   int numberHistoryChunks, long intervalBetweenResettingMillis, Clock clock, Executor backgroundExecutor) {
+        this.size = size;
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+        this.highestTrackableLatencyNanos = highestTrackableLatencyNanos;
+        this.numberHistoryChunks = numberHistoryChunks;
+        this.intervalBetweenResettingMillis = intervalBetweenResettingMillis;
+        this.clock = clock;
+        this.backgroundExecutor = backgroundExecutor;
+    }
+
+    /**
+     * Returns empty histogram, previously released histogram is reused when possible.
+     */
+    ResetByChunksAccumulator borrow() {
+        ResetByChunksAccumulator distribution = released.poll();
+        if (distribution != null) {
+            // the top guarantees that nobody records to released histogram, so values of previous signature are discarded here
+            distribution.reset();
+            return distribution;
+        }
+        if (allocated == size) {
+            throw new IllegalStateException("All " + size + " histograms are in use");
+        }
+        allocated++;
+        return new ResetByChunksAccumulator(this::createRecorder, numberHistoryChunks, intervalBetweenResettingMillis, clock, backgroundExecutor);
+    }
+
+    void release(ResetByChunksAccumulator distribution) {
+        released.push(distribution);
+    }
+
+    void record(ResetByChunksAccumulator distribution, long latencyNanos) {
+        distribution.recordSingleValueWithExpectedInterval(Math.min(latencyNanos, highestTrackableLatencyNanos), 0);
+    }
+
+    int getAllocatedCount() {
+        return allocated;
+    }
+
+    private Recorder createRecorder() {
+        return new Recorder(LOWEST_DISCERNIBLE_LATENCY_NANOS, highestTrackableLatencyNanos, numberOfSignificantValueDigits);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyDistributionPool{" +
+                "size=" + size +
+                ", numberOfSignificantValueDigits=" + numberOfSignificantValueDigits +
+                ", highestTrackableLatencyNanos=" + highestTrackableLatencyNanos +
+                ", allocated=" + allocated +
+                ", released=" + released.size() +
+                '}';
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import com.github.rollingmetrics.histogram.accumulator.ResetByChunksAccumulator;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
+import com.github.rollingmetrics.top.AggregatedPosition;
+import com.github.rollingmetrics.top.AggregatedTop;
+import com.github.rollingmetrics.top.impl.ResetByChunksRotation;
+import com.github.rollingmetrics.util.Clock;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.WriterReaderPhaser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The aggregated top which is organized in the same way as {@link com.github.rollingmetrics.top.impl.ResetByChunksTop}:
+ * two phases are switched by writers when chunk is expired, and the expired phase is moved to archive by background executor,
+ * both tops share this logic through {@link ResetByChunksRotation}.
+ */
+public class ResetByChunksAggregatedTop implements AggregatedTop {
+
+    // histogram of accumulator is reused for next snapshot, so snapshot which outlives the call should be backed by copy
+    private static final Function<Histogram, Snapshot> COPYING_SNAPSHOT_TAKER = histogram -> RichSnapshot.fromHistogram(histogram.copy());
+
+    private final int size;
+    private final Clock clock;
+    private final ResetByChunksRotation<Phase, SpaceSavingSummary> rotation;
+    private final SpaceSavingSummary temporarySnapshotSummary;
+
+    // null when latency distributions are not tracked
+    private final LatencyDistributionPool latencyDistributionPool;
+    // signatures from last snapshot, replaced entirely when snapshot is taken, so writers never observe map in the middle of modification
+    private volatile Map<String, ResetByChunksAccumulator> latencyDistributions = Collections.emptyMap();
+    // allows reader to wait until writers stop recording to histograms of signatures which left the top, before histograms are recycled
+    private final WriterReaderPhaser distributionsPhaser = new WriterReaderPhaser();
+
+    public ResetByChunksAggregatedTop(int size, int monitoredSignatures, AggregationRanking ranking, long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor) {
+        this(size, monitoredSignatures, ranking, intervalBetweenResettingMillis, numberHistoryChunks, clock, backgroundExecutor, null);
+    }
+
+    public ResetByChunksAggregatedTop(int size, int monitoredSignatures, AggregationRanking ranking, long intervalBetweenResettingMillis, int numberHistoryChunks, Clock clock, Executor backgroundExecutor,
+                                      LatencyDistributionPool latencyDistributionPool) {
+        this.size = size;
+        this.latencyDistributionPool = latencyDistributionPool;
+        this.clock = clock;
+
+        Supplier<SpaceSavingSummary> summarySupplier = () -> new SpaceSavingSummary(monitoredSignatures, ranking);
+        Supplier<Phase> phaseSupplier = () -> new Phase(new TwoPhaseSummaryRecorder(monitoredSignatures, ranking), summarySupplier.get());
+        this.rotation = new ResetByChunksRotation<>(intervalBetweenResettingMillis, numberHistoryChunks, clock, backgroundExecutor, InstrumentationListener.NOOP, this,
+                phaseSupplier, summarySupplier, this::archive);
+        this.temporarySnapshotSummary = summarySupplier.get();
+    }
+
+    @Override
+    public void update(String signature, long latencyTime, TimeUnit latencyUnit) {
+        if (latencyTime < 0) {
+            return;
+        }
+        long latencyNanos = latencyUnit.toNanos(latencyTime);
+        if (latencyDistributionPool != null) {
+            long criticalValueAtEnter = distributionsPhaser.writerCriticalSectionEnter();
+            try {
+                ResetByChunksAccumulator distribution = latencyDistributions.get(signature);
+                if (distribution != null) {
+                    latencyDistributionPool.record(distribution, latencyNanos);
+                }
+            } finally {
+                distributionsPhaser.writerCriticalSectionExit(criticalValueAtEnter);
+            }
+        }
+
+        rotation.getPhaseForUpdate().recorder.update(signature, latencyNanos);
+    }
+
+    @Override
+    synchronized public List<AggregatedPosition> getPositionsInDescendingOrder() {
+        List<AggregatedPosition> positions = collectPositions(clock.currentTimeMillis());
+        if (latencyDistributionPool == null) {
+            return positions;
+        }
+        return attachLatencyDistributions(positions);
+    }
+
+    private List<AggregatedPosition> collectPositions(long currentTimeMillis) {
+        temporarySnapshotSummary.reset();
+
+        for (ResetByChunksRotation<Phase, SpaceSavingSummary>.Phase rotatedPhase : rotation.getPhases()) {
+            if (rotatedPhase.isNeedToBeReportedToSnapshot(currentTimeMillis)) {
+                Phase phase = rotatedPhase.getContent();
+                phase.intervalRecorder = phase.recorder.getIntervalRecorder(phase.intervalRecorder);
+                phase.intervalRecorder.addInto(phase.totalsSummary);
+                phase.totalsSummary.addInto(temporarySnapshotSummary);
+            }
+        }
+
+        for (ResetByChunksRotation<Phase, SpaceSavingSummary>.ArchivedChunk archivedChunk : rotation.getArchive()) {
+            if (archivedChunk.getProposedInvalidationTimestamp() > currentTimeMillis) {
+                archivedChunk.getContent().addInto(temporarySnapshotSummary);
+            }
+        }
+
+        return temporarySnapshotSummary.getPositionsInDescendingOrder(size);
+    }
+
+    private List<AggregatedPosition> attachLatencyDistributions(List<AggregatedPosition> positions) {
+        Map<String, ResetByChunksAccumulator> previousDistributions = latencyDistributions;
+        Map<String, ResetByChunksAccumulator> distributions = assignLatencyDistributions(positions);
+
+        List<AggregatedPosition> result = new ArrayList<>(positions.size());
+        for (AggregatedPosition position : positions) {
+            Snapshot distributionSnapshot;
+            if (!previousDistributions.containsKey(position.getSignature())) {
+                // histogram has been just borrowed, so nothing is recorded to it yet
+                distributionSnapshot = EmptySnapshot.INSTANCE;
+            } else {
+                distributionSnapshot = distributions.get(position.getSignature()).getSnapshot(COPYING_SNAPSHOT_TAKER);
+            }
+            result.add(new AggregatedPosition(position.getSignature(), position.getCount(), position.getTotalLatencyInNanoseconds(), distributionSnapshot));
+        }
+        return result;
+    }
+
+    private Map<String, ResetByChunksAccumulator> assignLatencyDistributions(List<AggregatedPosition> positions) {
+        Map<String, ResetByChunksAccumulator> previousDistributions = latencyDistributions;
+        Map<String, ResetByChunksAccumulator> distributions = new HashMap<>(positions.size() * 2);
+        for (AggregatedPosition position : positions) {
+            ResetByChunksAccumulator distribution = previousDistributions.get(position.getSignature());
+            if (distribution != null) {
+                distributions.put(position.getSignature(), distribution);
+            }
+        }
+        if (distributions.size() < previousDistributions.size()) {
+            // writers which started after publication do not see histograms of signatures which left the top,
+            // and flip waits for writers which could see them, so histograms can be recycled without mixing of values of different signatures
+            latencyDistributions = distributions;
+            try {
+                distributionsPhaser.readerLock();
+                distributionsPhaser.flipPhase();
+            } finally {
+                distributionsPhaser.readerUnlock();
+            }
+            distributions = new HashMap<>(distributions);
+        }
+        // histograms of signatures which left the top should be released before borrowing, so pool never exceeds size of top
+        for (Map.Entry<String, ResetByChunksAccumulator> entry : previousDistributions.entrySet()) {
+            if (!distributions.containsKey(entry.getKey())) {
+                latencyDistributionPool.release(entry.getValue());
+            }
+        }
+        for (AggregatedPosition position : positions) {
+            if (!distributions.containsKey(position.getSignature())) {
+                distributions.put(position.getSignature(), latencyDistributionPool.borrow());
+            }
+        }
+        latencyDistributions = distributions;
+        return distributions;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    private void archive(Phase phase, SpaceSavingSummary archivedSummary) {
+        moveToArchive(phase, archivedSummary);
+        if (latencyDistributionPool != null) {
+            // rotation is performed in background under monitor of this top, so it is the right moment to recompute the set of signatures in the top,
+            // histograms are assigned to signatures which entered the top since previous rotation even if nobody reads positions
+            assignLatencyDistributions(collectPositions(clock.currentTimeMillis()));
+        }
+    }
+
+    private static void moveToArchive(Phase phase, SpaceSavingSummary archivedSummary) {
+        phase.intervalRecorder = phase.recorder.getIntervalRecorder(phase.intervalRecorder);
+        phase.intervalRecorder.addInto(phase.totalsSummary);
+        if (archivedSummary != null) {
+            // move values from recorder to correspondent archived summary
+            archivedSummary.reset();
+            phase.totalsSummary.addInto(archivedSummary);
+        }
+        phase.totalsSummary.reset();
+    }
+
+    private static final class Phase {
+
+        final TwoPhaseSummaryRecorder recorder;
+        final SpaceSavingSummary totalsSummary;
+        SummaryRecorder intervalRecorder;
+
+        Phase(TwoPhaseSummaryRecorder recorder, SpaceSavingSummary totalsSummary) {
+            this.recorder = recorder;
+            this.intervalRecorder = recorder.getIntervalRecorder();
+            this.totalsSummary = totalsSummary;
+        }
+
+        @Override
+        public String toString() {
+            return "Phase{" +
+                    "\n, totalsSummary=" + totalsSummary +
+                    "\n, intervalRecorder=" + intervalRecorder +
+                    "\n}";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResetByChunksAggregatedTop{" +
+                "\nrotation=" + rotation +
+                ",\n temporarySnapshotSummary=" + temporarySnapshotSummary  +
+                (latencyDistributionPool == null ? "" : ",\n latencyDistributionPool=" + latencyDistributionPool) +
+                '}';
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import com.github.rollingmetrics.top.AggregatedPosition;
+import com.github.rollingmetrics.top.AggregatedTop;
+import com.github.rollingmetrics.util.CachingSupplier;
+import com.github.rollingmetrics.util.Clock;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SnapshotCachingAggregatedTop implements AggregatedTop {
+
+    private final AggregatedTop target;
+    private final CachingSupplier<List<AggregatedPosition>> cache;
+
+    public SnapshotCachingAggregatedTop(AggregatedTop target, long cachingDurationMillis, Clock clock) {
+        this.target = target;
+        this.cache = new CachingSupplier<>(cachingDurationMillis, clock, target::getPositionsInDescendingOrder);
+    }
+
+    @Override
+    public void update(String signature, long latencyTime, TimeUnit latencyUnit) {
+        target.update(signature, latencyTime, latencyUnit);
+    }
+
+    @Override
+    public List<AggregatedPosition> getPositionsInDescendingOrder() {
+        return cache.get();
+    }
+
+    @Override
+    public int getSize() {
+        return target.getSize();
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotCachingAggregatedTop{" +
+                "target=" + target +
+                ", cache=" + cache +
+                '}';
+    }
+
+}
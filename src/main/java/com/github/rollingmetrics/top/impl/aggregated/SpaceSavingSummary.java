@@ -0,0 +1,208 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import com.github.rollingmetrics.top.AggregatedPosition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Is not a part of public API, this class just used as building block for AggregatedTop implementations.
+ *
+ * <p>
+ * Bounded summary of signatures based on Space-Saving algorithm:
+ * no more than {@code capacity} signatures are monitored, when new signature arrives to full summary it displaces the signature with least weight
+ * and inherits its weight as estimation error. So memory consumption does not depend on count of distinct signatures,
+ * and each signature which weight is greater than {@code totalWeight / capacity} is guaranteed to be monitored.
+ * </p>
+ *
+ * This implementation does not support concurrent access at all, synchronization aspects should be managed outside.
+ */
+public class SpaceSavingSummary {
+
+    static final int INITIAL_HEAP_CAPACITY = 16;
+
+    private final int capacity;
+    private final AggregationRanking ranking;
+    private final HashMap<String, Counter> counters;
+    // min-heap by estimated weight, grows on demand up to capacity, so per-thread summaries which see a few signatures stay small
+    private Counter[] heap;
+    private int count;
+
+    public SpaceSavingSummary(int capacity, AggregationRanking ranking) {
+        this.capacity = capacity;
+        this.ranking = ranking;
+        this.counters = new HashMap<>();
+        this.heap = new Counter[Math.min(capacity, INITIAL_HEAP_CAPACITY)];
+    }
+
+    public void update(String signature, long latencyNanos) {
+        add(signature, 1, latencyNanos, ranking.getWeight(latencyNanos));
+    }
+
+    public void addInto(SpaceSavingSummary other) {
+        for (int i = 0; i < count; i++) {
+            Counter counter = heap[i];
+            other.add(counter.signature, counter.count, counter.totalLatencyNanos, counter.estimatedWeight);
+        }
+    }
+
+    public void reset() {
+        counters.clear();
+        count = 0;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public List<AggregatedPosition> getPositionsInDescendingOrder(int size) {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<AggregatedPosition> positions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Counter counter = heap[i];
+            positions.add(new AggregatedPosition(counter.signature, counter.count, counter.totalLatencyNanos));
+        }
+        Comparator<AggregatedPosition> byRank = Comparator.comparingDouble(ranking::getRank);
+        positions.sort(byRank.thenComparing(AggregatedPosition::getSignature, Comparator.reverseOrder()).reversed());
+        return positions.size() > size ? new ArrayList<>(positions.subList(0, size)) : positions;
+    }
+
+    private void add(String signature, long count, long totalLatencyNanos, long weight) {
+        Counter counter = counters.get(signature);
+        if (counter != null) {
+            counter.count += count;
+            counter.totalLatencyNanos += totalLatencyNanos;
+            counter.estimatedWeight += weight;
+            siftDown(counter.index);
+            return;
+        }
+
+        if (this.count < capacity) {
+            if (this.count == heap.length) {
+                heap = Arrays.copyOf(heap, Math.min(capacity, heap.length * 2));
+            }
+            counter = heap[this.count];
+            if (counter == null) {
+                // counters are reused after reset
+                counter = new Counter();
+                heap[this.count] = counter;
+            }
+            counter.index = this.count++;
+            counter.estimatedWeight = weight;
+            siftUpAndPut(counter, signature, count, totalLatencyNanos);
+            return;
+        }
+
+        // displace the signature with least weight, new signature inherits its weight as error
+        counter = heap[0];
+        counters.remove(counter.signature);
+        counter.estimatedWeight += weight;
+        counter.signature = signature;
+        counter.count = count;
+        counter.totalLatencyNanos = totalLatencyNanos;
+        counters.put(signature, counter);
+        siftDown(0);
+    }
+
+    private void siftUpAndPut(Counter counter, String signature, long count, long totalLatencyNanos) {
+        counter.signature = signature;
+        counter.count = count;
+        counter.totalLatencyNanos = totalLatencyNanos;
+        counters.put(signature, counter);
+
+        int index = counter.index;
+        while (index > 0) {
+            int parentIndex = (index - 1) >>> 1;
+            Counter parent = heap[parentIndex];
+            if (parent.estimatedWeight <= counter.estimatedWeight) {
+                break;
+            }
+            place(parent, index);
+            index = parentIndex;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        int half = count >>> 1;
+        while (index < half) {
+            int childIndex = (index << 1) + 1;
+            Counter child = heap[childIndex];
+            int rightIndex = childIndex + 1;
+            if (rightIndex < count && heap[rightIndex].estimatedWeight < child.estimatedWeight) {
+                childIndex = rightIndex;
+                child = heap[rightIndex];
+            }
+            if (counter.estimatedWeight <= child.estimatedWeight) {
+                break;
+            }
+            place(child, index);
+            index = childIndex;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("SpaceSavingSummary{capacity=").append(capacity)
+                .append(", ranking=").append(ranking)
+                .append(", counters=[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(heap[i]);
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static final class Counter {
+
+        String signature;
+        long count;
+        long totalLatencyNanos;
+        long estimatedWeight;
+        int index;
+
+        @Override
+        public String toString() {
+            return "Counter{" +
+                    "signature='" + signature + '\'' +
+                    ", count=" + count +
+                    ", totalLatencyNanos=" + totalLatencyNanos +
+                    ", estimatedWeight=" + estimatedWeight +
+                    '}';
+        }
+    }
+
+}
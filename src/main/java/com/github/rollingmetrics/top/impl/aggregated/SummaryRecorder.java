@@ -0,0 +1,103 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Is not a part of public API, this class just used as building block for AggregatedTop implementations.
+ *
+ * <p>
+ * Each writer thread maintains its own {@link SpaceSavingSummary}, so update does not touch memory shared with other threads.
+ * Summaries of all threads are merged when recorder is read. Memory is proportional to count of writer threads multiplied by capacity in the worst case,
+ * but summary of thread grows on demand, so threads which see a few distinct signatures stay small.
+ * </p>
+ *
+ * This implementation supports concurrent updates, but reading must not be concurrent with writing,
+ * {@link TwoPhaseSummaryRecorder} provides required synchronization between reader and writers.
+ */
+class SummaryRecorder {
+
+    private final int capacity;
+    private final AggregationRanking ranking;
+    private final ThreadLocal<ThreadSummary> threadSummaries = ThreadLocal.withInitial(this::registerThreadSummary);
+    private final List<ThreadSummary> registeredThreadSummaries = new CopyOnWriteArrayList<>();
+
+    SummaryRecorder(int capacity, AggregationRanking ranking) {
+        this.capacity = capacity;
+        this.ranking = ranking;
+    }
+
+    void update(String signature, long latencyNanos) {
+        threadSummaries.get().summary.update(signature, latencyNanos);
+    }
+
+    void addInto(SpaceSavingSummary other) {
+        for (ThreadSummary threadSummary : registeredThreadSummaries) {
+            threadSummary.summary.addInto(other);
+        }
+    }
+
+    void reset() {
+        for (ThreadSummary threadSummary : registeredThreadSummaries) {
+            if (threadSummary.isOwnerTerminated()) {
+                // nobody will write to this summary anymore
+                registeredThreadSummaries.remove(threadSummary);
+            } else {
+                threadSummary.summary.reset();
+            }
+        }
+    }
+
+    SummaryRecorder createEmptyCopy() {
+        return new SummaryRecorder(capacity, ranking);
+    }
+
+    private ThreadSummary registerThreadSummary() {
+        ThreadSummary threadSummary = new ThreadSummary(new SpaceSavingSummary(capacity, ranking), Thread.currentThread());
+        registeredThreadSummaries.add(threadSummary);
+        return threadSummary;
+    }
+
+    @Override
+    public String toString() {
+        return "SummaryRecorder{" +
+                "threads=" + registeredThreadSummaries.size() +
+                '}';
+    }
+
+    private static final class ThreadSummary {
+
+        final SpaceSavingSummary summary;
+        final WeakReference<Thread> owner;
+
+        ThreadSummary(SpaceSavingSummary summary, Thread owner) {
+            this.summary = summary;
+            this.owner = new WeakReference<>(owner);
+        }
+
+        boolean isOwnerTerminated() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+}
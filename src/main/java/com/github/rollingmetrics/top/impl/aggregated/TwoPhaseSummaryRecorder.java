@@ -0,0 +1,81 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+/**
+ * Is not a part of public API, this class just used as building block for AggregatedTop implementations.
+ */
+class TwoPhaseSummaryRecorder {
+
+    private final WriterReaderPhaser recordingPhaser = new WriterReaderPhaser();
+
+    private volatile SummaryRecorder active;
+    private SummaryRecorder inactive;
+
+    TwoPhaseSummaryRecorder(int capacity, AggregationRanking ranking) {
+        this.active = new SummaryRecorder(capacity, ranking);
+        this.inactive = null;
+    }
+
+    void update(String signature, long latencyNanos) {
+        long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
+        try {
+            active.update(signature, latencyNanos);
+        } finally {
+            recordingPhaser.writerCriticalSectionExit(criticalValueAtEnter);
+        }
+    }
+
+    synchronized SummaryRecorder getIntervalRecorder() {
+        return getIntervalRecorder(null);
+    }
+
+    synchronized SummaryRecorder getIntervalRecorder(SummaryRecorder recorderToRecycle) {
+        inactive = recorderToRecycle;
+        performIntervalSample();
+        SummaryRecorder sampledRecorder = inactive;
+        inactive = null; // Once we expose the sample, we can't reuse it internally until it is recycled
+        return sampledRecorder;
+    }
+
+    private void performIntervalSample() {
+        try {
+            recordingPhaser.readerLock();
+
+            // Make sure we have an inactive version to flip in:
+            if (inactive == null) {
+                inactive = active.createEmptyCopy();
+            } else {
+                inactive.reset();
+            }
+
+            // Swap active and inactive recorders:
+            final SummaryRecorder temp = inactive;
+            inactive = active;
+            active = temp;
+
+            recordingPhaser.flipPhase();
+        } finally {
+            recordingPhaser.readerUnlock();
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.collector;
+
+import com.github.rollingmetrics.top.Position;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Is not a part of public API, this class just used as building block for high-level Top implementations.
+ *
+ * <p>
+ * Collector for tops with large count of positions. Positions are stored in slots of flat arrays,
+ * the slots are organized into binary min-heap of slot indexes ordered by latency and timestamp,
+ * so admission of new position costs O(log size) comparisons of primitives and does not allocate memory.
+ * Equal positions are detected through open-addressing index of slots by latency and timestamp.
+ * The descending order required by {@link #addInto(PositionCollector)} and {@link #getPositionsInDescendingOrder()}
+ * is computed lazily and reused until collector is modified, so archived collectors are sorted only once.
+ * </p>
+ *
+ * This implementation does not support concurrent access at all, synchronization aspects should be managed outside.
+ */
+class FlatPositionCollector implements PositionCollector {
+
+    private final int maxSize;
+
+    // slot storage
+    private final long[] latencies;
+    private final long[] timestamps;
+    private final Position[] positions;
+
+    // min-heap of slots
+    private final int[] heap;
+    private int count;
+
+    // slot index plus one, zero means empty cell
+    private final int[] index;
+    private final int indexMask;
+
+    private Position[] descendingPositions;
+
+    FlatPositionCollector(int maxSize) {
+        this.maxSize = maxSize;
+        this.latencies = new long[maxSize];
+        this.timestamps = new long[maxSize];
+        this.positions = new Position[maxSize];
+        this.heap = new int[maxSize];
+        int indexSize = Integer.highestOneBit(maxSize * 2 - 1) << 1;
+        this.index = new int[indexSize];
+        this.indexMask = indexSize - 1;
+    }
+
+    @Override
+    public boolean add(Position position) {
+        long latency = position.getLatencyInNanoseconds();
+        long timestamp = position.getTimestamp();
+        if (count < maxSize) {
+            if (contains(position, latency, timestamp)) {
+                return true;
+            }
+            // slots are occupied sequentially until collector is full
+            int slot = count;
+            store(slot, position, latency, timestamp);
+            heap[count] = slot;
+            siftUp(count++);
+            descendingPositions = null;
+            return true;
+        }
+
+        int minimumSlot = heap[0];
+        if (!isNeedToAdd(latency, timestamp, minimumSlot)) {
+            return false;
+        }
+        if (contains(position, latency, timestamp)) {
+            return false;
+        }
+        removeFromIndex(minimumSlot);
+        store(minimumSlot, position, latency, timestamp);
+        siftDown(0);
+        descendingPositions = null;
+        return true;
+    }
+
+    @Override
+    public void addInto(PositionCollector other) {
+        for (Position position : getDescendingPositions()) {
+            if (!other.add(position)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(positions, 0, count, null);
+        Arrays.fill(index, 0);
+        count = 0;
+        descendingPositions = null;
+    }
+
+    @Override
+    public List<Position> getPositionsInDescendingOrder() {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(Arrays.asList(getDescendingPositions()));
+    }
+
+    private Position[] getDescendingPositions() {
+        if (descendingPositions == null) {
+            // heapsort of copy of min-heap places slots in descending order, comparing only primitives
+            int[] slots = Arrays.copyOf(heap, count);
+            for (int length = count - 1; length > 0; length--) {
+                int minimumSlot = slots[0];
+                slots[0] = slots[length];
+                slots[length] = minimumSlot;
+                siftDown(slots, 0, length);
+            }
+            Position[] sorted = new Position[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = positions[slots[i]];
+            }
+            sortPositionsWithEqualLatencyAndTimestamp(sorted, slots);
+            descendingPositions = sorted;
+        }
+        return descendingPositions;
+    }
+
+    private void sortPositionsWithEqualLatencyAndTimestamp(Position[] sorted, int[] slots) {
+        int runStart = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i < count && latencies[slots[i]] == latencies[slots[runStart]] && timestamps[slots[i]] == timestamps[slots[runStart]]) {
+                continue;
+            }
+            if (i - runStart > 1) {
+                Arrays.sort(sorted, runStart, i, Collections.reverseOrder());
+            }
+            runStart = i;
+        }
+    }
+
+    private boolean isNeedToAdd(long latency, long timestamp, int minimumSlot) {
+        long minimumLatency = latencies[minimumSlot];
+        if (latency != minimumLatency) {
+            return latency > minimumLatency;
+        }
+        return timestamp > timestamps[minimumSlot];
+    }
+
+    private void store(int slot, Position position, long latency, long timestamp) {
+        positions[slot] = position;
+        latencies[slot] = latency;
+        timestamps[slot] = timestamp;
+        int cell = hash(latency, timestamp) & indexMask;
+        while (index[cell] != 0) {
+            cell = (cell + 1) & indexMask;
+        }
+        index[cell] = slot + 1;
+    }
+
+    private boolean contains(Position position, long latency, long timestamp) {
+        int cell = hash(latency, timestamp) & indexMask;
+        while (true) {
+            int entry = index[cell];
+            if (entry == 0) {
+                return false;
+            }
+            int slot = entry - 1;
+            if (latencies[slot] == latency && timestamps[slot] == timestamp && positions[slot].equals(position)) {
+                return true;
+            }
+            cell = (cell + 1) & indexMask;
+        }
+    }
+
+    private void removeFromIndex(int slot) {
+        int cell = hash(latencies[slot], timestamps[slot]) & indexMask;
+        while (index[cell] != slot + 1) {
+            cell = (cell + 1) & indexMask;
+        }
+        // backward shift deletion keeps probe sequences unbroken without tombstones
+        int next = cell;
+        while (true) {
+            next = (next + 1) & indexMask;
+            int entry = index[next];
+            if (entry == 0) {
+                break;
+            }
+            int home = hash(latencies[entry - 1], timestamps[entry - 1]) & indexMask;
+            boolean canBeShifted = cell <= next ? (home <= cell || home > next) : (home <= cell && home > next);
+            if (canBeShifted) {
+                index[cell] = entry;
+                cell = next;
+            }
+        }
+        index[cell] = 0;
+    }
+
+    private boolean less(int slot1, int slot2) {
+        long latency1 = latencies[slot1];
+        long latency2 = latencies[slot2];
+        if (latency1 != latency2) {
+            return latency1 < latency2;
+        }
+        return timestamps[slot1] < timestamps[slot2];
+    }
+
+    private void siftUp(int heapIndex) {
+        int slot = heap[heapIndex];
+        while (heapIndex > 0) {
+            int parentIndex = (heapIndex - 1) >>> 1;
+            int parentSlot = heap[parentIndex];
+            if (!less(slot, parentSlot)) {
+                break;
+            }
+            heap[heapIndex] = parentSlot;
+            heapIndex = parentIndex;
+        }
+        heap[heapIndex] = slot;
+    }
+
+    private void siftDown(int heapIndex) {
+        siftDown(heap, heapIndex, count);
+    }
+
+    private void siftDown(int[] heap, int heapIndex, int length) {
+        int slot = heap[heapIndex];
+        int half = length >>> 1;
+        while (heapIndex < half) {
+            int childIndex = 2 * heapIndex + 1;
+            int childSlot = heap[childIndex];
+            int rightIndex = childIndex + 1;
+            if (rightIndex < length && less(heap[rightIndex], childSlot)) {
+                childIndex = rightIndex;
+                childSlot = heap[rightIndex];
+            }
+            if (!less(childSlot, slot)) {
+                break;
+            }
+            heap[heapIndex] = childSlot;
+            heapIndex = childIndex;
+        }
+        heap[heapIndex] = slot;
+    }
+
+    private static int hash(long latency, long timestamp) {
+        long hash = latency * 0x9E3779B97F4A7C15L + timestamp;
+        hash ^= hash >>> 32;
+        hash *= 0xD6E8FEB86659FD93L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "FlatPositionCollector{" +
+                "positions=" + Arrays.toString(getDescendingPositions()) +
+                ", maxSize=" + maxSize +
+                '}';
+    }
+
+}
@@ -34,11 +34,18 @@ public interface PositionCollector {
 
     List<Position> getPositionsInDescendingOrder();
 
+    /**
+     * Tops which are greater than this size use {@link FlatPositionCollector}, because {@link MultiPositionCollector} is too expensive for them.
+     */
+    int MIN_SIZE_OF_FLAT_COLLECTOR = 128;
+
     static PositionCollector createCollector(int size) {
         if (size == 1) {
             return new SinglePositionCollector();
-        } else {
+        } else if (size < MIN_SIZE_OF_FLAT_COLLECTOR) {
             return new MultiPositionCollector(size);
+        } else {
+            return new FlatPositionCollector(size);
         }
     }
 
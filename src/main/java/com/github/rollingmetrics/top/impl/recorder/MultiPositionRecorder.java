@@ -16,149 +16,283 @@
  */
 
 package com.github.rollingmetrics.top.impl.recorder;
-import com.github.rollingmetrics.top.Position;
-import com.github.rollingmetrics.top.impl.collector.PositionCollector;
+
+import com.github.rollingmetrics.top.DescriptionPool;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 /**
  * Is not a part of public API, this class just used as building block for other QueryTop implementations.
  *
- * This implementation supports concurrent updates, but top calculation is weakly consistent(inherited from {@link ConcurrentSkipListMap}),
- * so if weakly consistency is not enough then clients of this class should provide synchronization between reader and writers by itself.
+ * <p>
+ * Each writer thread maintains its own bounded min-heap of positions, so candidate which does not beat the minimum of thread
+ * is rejected by single comparison without allocation and without touching memory shared with other threads,
+ * accepted candidate costs O(log size). Heaps of all threads are merged when recorder is read.
+ * </p>
  *
+ * This implementation supports concurrent updates, but reading must not be concurrent with writing,
+ * {@link TwoPhasePositionRecorder} provides required synchronization between reader and writers.
  */
 class MultiPositionRecorder extends PositionRecorder {
 
-    private final ConcurrentSkipListMap<PositionKey, Position> positions;
-    private final AtomicLong phaseSequence = new AtomicLong();
+    private final ThreadLocal<ThreadTop> threadTops = ThreadLocal.withInitial(this::registerThreadTop);
+    private final List<ThreadTop> registeredThreadTops = new CopyOnWriteArrayList<>();
 
-    MultiPositionRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength) {
-        super(size, latencyThresholdNanos, maxDescriptionLength);
-        this.positions = new ConcurrentSkipListMap<>();
-
-        // init by fake values
-        long phase = phaseSequence.get();
-        for (int i = 1; i <= size; i++) {
-            Position fake = new Position(0, -i, TimeUnit.NANOSECONDS, "");
-            positions.put(new PositionKey(phase, fake), fake);
-        }
+    MultiPositionRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool) {
+        super(size, latencyThresholdNanos, maxDescriptionLength, descriptionPool);
     }
 
     @Override
-    protected void updateConcurrently(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier, long latencyNanos) {
-        Map.Entry<PositionKey, Position> firstEntry = positions.firstEntry();
-        PositionKey firstKey = firstEntry.getKey();
-        Position firstPosition = firstEntry.getValue();
-        long currentPhase = phaseSequence.get();
-        if (!isNeedToAdd(timestamp, latencyNanos, firstPosition, firstKey, currentPhase)) {
+    protected <T> void updateConcurrently(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter, long latencyNanos) {
+        ThreadTop top = threadTops.get();
+        if (top.count == size && !isNeedToAdd(timestamp, latencyNanos, top.heap[0])) {
             return;
         }
-        Position position = new Position(timestamp, latencyTime, latencyUnit, descriptionSupplier, maxDescriptionLength);
-        if (positions.putIfAbsent(new PositionKey(currentPhase, position), position) == null) {
-            positions.pollFirstEntry();
+
+        // the same position can be already recorded, description is materialized before comparison only if latency and timestamp are equal
+        Position position = createPosition(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
+        if (top.containsKey(latencyNanos, timestamp) && top.contains(position)) {
+            return;
+        }
+        top.add(position);
+        if (top.count == size) {
+            // the merged top contains at least size positions which are not lesser than minimum of this thread
+            raiseAdmissionFloor(top.heap[0].getLatencyInNanoseconds());
         }
     }
 
     @Override
     public List<Position> getPositionsInDescendingOrder() {
-        List<Position> descendingTop = null;
-        long currentPhase = phaseSequence.get();
-
-        for (Map.Entry<PositionKey, Position> entry : positions.descendingMap().entrySet()) {
-            Position position = entry.getValue();
-            if (currentPhase != entry.getKey().phase) {
-                return notNullList(descendingTop);
-            }
-            if (isFake(position)) {
-                return notNullList(descendingTop);
-            }
-            if (descendingTop == null) {
-                descendingTop = new ArrayList<>(size);
-            }
-            descendingTop.add(position);
-        }
-        return notNullList(descendingTop);
+        List<Position> merged = mergeThreadTops();
+        return merged.isEmpty() ? Collections.emptyList() : merged;
     }
 
     @Override
     public void reset() {
-        // increasing phase will invalidate all recorded values for rating calculation,
-        // so touching ConcurrentSkipListMap is not needed
-        phaseSequence.incrementAndGet();
+        resetAdmissionFloor();
+        for (ThreadTop top : registeredThreadTops) {
+            if (top.isOwnerTerminated()) {
+                // nobody will write to this heap anymore
+                registeredThreadTops.remove(top);
+            } else {
+                top.reset();
+            }
+        }
     }
 
     @Override
     public void addInto(PositionCollector collector) {
-        long currentPhase = this.phaseSequence.get();
-        for(Map.Entry<PositionKey, Position> positionEntry: positions.descendingMap().entrySet()) {
-            PositionKey key = positionEntry.getKey();
-            if (key.phase != currentPhase) {
-                return;
-            }
-            Position position = positionEntry.getValue();
-            if (isFake(position)) {
-                return;
-            }
+        for (Position position : mergeThreadTops()) {
             if (!collector.add(position)) {
                 return;
             }
         }
     }
 
-    private boolean isNeedToAdd(long newTimestamp, long newLatencyNanos, Position firstPosition, PositionKey firstKey, long currentPhase) {
-        if (firstKey.phase != currentPhase) {
-            return true;
+    private List<Position> mergeThreadTops() {
+        List<Position> merged = new ArrayList<>();
+        for (ThreadTop top : registeredThreadTops) {
+            for (int i = 0; i < top.count; i++) {
+                Position position = top.heap[i];
+                // null can be observed only by toString racing with writer
+                if (position != null) {
+                    merged.add(position);
+                }
+            }
         }
-        return super.isNeedToAdd(newTimestamp, newLatencyNanos, firstPosition);
-    }
+        if (merged.isEmpty()) {
+            return merged;
+        }
+        merged.sort(Collections.reverseOrder());
 
-    private boolean isFake(Position position) {
-        return position.getLatencyInNanoseconds() < 0;
+        // remove positions recorded by several threads and truncate to size
+        List<Position> result = new ArrayList<>(Math.min(size, merged.size()));
+        Position previous = null;
+        for (Position position : merged) {
+            if (result.size() == size) {
+                break;
+            }
+            if (!position.equals(previous)) {
+                result.add(position);
+                previous = position;
+            }
+        }
+        return result;
     }
 
-    private List<Position> notNullList(List<Position> list) {
-        return list == null? Collections.emptyList(): list;
+    private ThreadTop registerThreadTop() {
+        ThreadTop top = new ThreadTop(size, Thread.currentThread());
+        registeredThreadTops.add(top);
+        return top;
     }
 
-    private final class PositionKey implements Comparable<PositionKey> {
-        final long phase;
-        final Position position;
+    private static final class ThreadTop {
+
+        static final int INITIAL_HEAP_CAPACITY = 16;
 
-        public PositionKey(long phase, Position position) {
-            this.phase = phase;
-            this.position = position;
+        final int size;
+        final WeakReference<Thread> owner;
+        // grows on demand up to size, so threads which record a few positions do not pay for large tops
+        Position[] heap;
+        int count;
+        // open addressing table of positions hashed by latency and timestamp, at most half full,
+        // so search of duplicate does not depend on size of top
+        Position[] hashIndex;
+
+        ThreadTop(int size, Thread owner) {
+            this.size = size;
+            this.heap = new Position[Math.min(size, INITIAL_HEAP_CAPACITY)];
+            this.hashIndex = new Position[hashIndexCapacity(heap.length)];
+            this.owner = new WeakReference<>(owner);
+        }
+
+        void add(Position position) {
+            if (count < size) {
+                if (count == heap.length) {
+                    heap = Arrays.copyOf(heap, Math.min(size, heap.length * 2));
+                    rebuildIndex(hashIndexCapacity(heap.length));
+                }
+                heap[count] = position;
+                siftUp(count++);
+            } else {
+                removeFromIndex(heap[0]);
+                heap[0] = position;
+                siftDown(0);
+            }
+            addToIndex(position);
         }
 
-        @Override
-        public int compareTo(PositionKey other) {
-            if (phase != other.phase) {
-                // To compare two phase values f1 and f2 we should use f2 - f1 > 0, not f2 > f1,
-                // because of the possibility of numerical overflow of AtomicLong.
-                if (phase - other.phase > 0) {
-                    return 1;
-                } else {
-                    return -1;
+        boolean containsKey(long latencyNanos, long timestamp) {
+            int mask = hashIndex.length - 1;
+            for (int i = hash(latencyNanos, timestamp) & mask; hashIndex[i] != null; i = (i + 1) & mask) {
+                Position recorded = hashIndex[i];
+                if (recorded.getLatencyInNanoseconds() == latencyNanos && recorded.getTimestamp() == timestamp) {
+                    return true;
                 }
             }
-            return position.compareTo(other.position);
+            return false;
         }
+
+        boolean contains(Position position) {
+            int mask = hashIndex.length - 1;
+            for (int i = hash(position) & mask; hashIndex[i] != null; i = (i + 1) & mask) {
+                if (hashIndex[i].equals(position)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void reset() {
+            for (int i = 0; i < count; i++) {
+                heap[i] = null;
+            }
+            if (count > 0) {
+                Arrays.fill(hashIndex, null);
+            }
+            count = 0;
+        }
+
+        boolean isOwnerTerminated() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        private void addToIndex(Position position) {
+            int mask = hashIndex.length - 1;
+            int i = hash(position) & mask;
+            while (hashIndex[i] != null) {
+                i = (i + 1) & mask;
+            }
+            hashIndex[i] = position;
+        }
+
+        private void removeFromIndex(Position position) {
+            int mask = hashIndex.length - 1;
+            int hole = hash(position) & mask;
+            while (hashIndex[hole] != position) {
+                hole = (hole + 1) & mask;
+            }
+            // backward shift deletion keeps probe sequences unbroken without tombstones
+            for (int i = (hole + 1) & mask; hashIndex[i] != null; i = (i + 1) & mask) {
+                int home = hash(hashIndex[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    hashIndex[hole] = hashIndex[i];
+                    hole = i;
+                }
+            }
+            hashIndex[hole] = null;
+        }
+
+        private void rebuildIndex(int capacity) {
+            hashIndex = new Position[capacity];
+            for (int i = 0; i < count; i++) {
+                addToIndex(heap[i]);
+            }
+        }
+
+        private static int hashIndexCapacity(int heapCapacity) {
+            return Integer.highestOneBit(heapCapacity * 2 - 1) << 1;
+        }
+
+        private static int hash(Position position) {
+            return hash(position.getLatencyInNanoseconds(), position.getTimestamp());
+        }
+
+        private static int hash(long latencyNanos, long timestamp) {
+            long hash = latencyNanos * 0x9E3779B97F4A7C15L + timestamp;
+            hash ^= hash >>> 32;
+            hash *= 0xD6E8FEB86659FD93L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        private void siftUp(int index) {
+            Position position = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent].compareTo(position) <= 0) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = position;
+        }
+
+        private void siftDown(int index) {
+            Position position = heap[index];
+            int half = count >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                int right = child + 1;
+                if (right < count && heap[right].compareTo(heap[child]) < 0) {
+                    child = right;
+                }
+                if (position.compareTo(heap[child]) <= 0) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = position;
+        }
+
     }
 
     @Override
     public String toString() {
         return "MultiPositionRecorder{" +
-                "positions=" + positions +
-                ", phaseSequence=" + phaseSequence +
+                "positions=" + mergeThreadTops() +
+                ", threads=" + registeredThreadTops.size() +
                 '}';
     }
 
@@ -17,12 +17,14 @@
 
 package com.github.rollingmetrics.top.impl.recorder;
 
+import com.github.rollingmetrics.top.DescriptionPool;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -30,39 +32,84 @@ import java.util.function.Supplier;
  */
 public abstract class PositionRecorder {
 
+    private static final Function<Supplier<String>, String> SUPPLIER_INVOKER = Supplier::get;
+
     protected final int size;
     protected final long latencyThresholdNanos;
     protected final int maxDescriptionLength;
+    protected final DescriptionPool descriptionPool;
+
+    private volatile long admissionFloorNanos;
 
-    protected PositionRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength) {
+    protected PositionRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool) {
         this.latencyThresholdNanos = latencyThresholdNanos;
         this.size = size;
         this.maxDescriptionLength = maxDescriptionLength;
+        this.descriptionPool = descriptionPool;
+        this.admissionFloorNanos = latencyThresholdNanos;
     }
 
     public void update(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier) {
+        update(timestamp, latencyTime, latencyUnit, descriptionSupplier, SUPPLIER_INVOKER);
+    }
+
+    public <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
         long latencyNanos = latencyUnit.toNanos(latencyTime);
-        if (latencyNanos < latencyThresholdNanos) {
-            // the measure should be skipped because it is lesser then threshold
+        if (latencyNanos < admissionFloorNanos) {
+            // the measure should be skipped because it is lesser then threshold or lesser then all recorded positions
             return;
         }
-        updateConcurrently(timestamp, latencyTime, latencyUnit, descriptionSupplier, latencyNanos);
+        updateConcurrently(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter, latencyNanos);
+    }
+
+    public <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        if (latencyNanos < admissionFloorNanos) {
+            return;
+        }
+        updateConcurrently(timestampMillis, latencyNanos, TimeUnit.NANOSECONDS, descriptionContext, descriptionFormatter, latencyNanos);
     }
 
     public int getSize() {
         return size;
     }
 
-    public static PositionRecorder createRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength) {
+    /**
+     * Returns the latency below which nothing can be admitted to this recorder until reset,
+     * it is never lesser than latencyThresholdNanos and never greater than latency of the least position in the top.
+     *
+     * @return the latency in nanoseconds below which update can be rejected without any synchronization
+     */
+    public long getAdmissionFloorNanos() {
+        return admissionFloorNanos;
+    }
+
+    /**
+     * Raises admission floor, should be called by implementation when there are at least {@link #size} positions with latency greater than or equal to {@code latencyNanos}.
+     * Concurrent raising can lose the greatest value, it is harmless because floor only becomes more conservative.
+     */
+    protected void raiseAdmissionFloor(long latencyNanos) {
+        if (latencyNanos > admissionFloorNanos) {
+            admissionFloorNanos = latencyNanos;
+        }
+    }
+
+    /**
+     * Should be called by implementation of {@link #reset()}.
+     */
+    protected void resetAdmissionFloor() {
+        admissionFloorNanos = latencyThresholdNanos;
+    }
+
+    public static PositionRecorder createRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool) {
         if (size == 1) {
-            return new SinglePositionRecorder(latencyThresholdNanos, maxDescriptionLength);
+            return new SinglePositionRecorder(latencyThresholdNanos, maxDescriptionLength, descriptionPool);
         } else {
-            return new MultiPositionRecorder(size, latencyThresholdNanos, maxDescriptionLength);
+            return new MultiPositionRecorder(size, latencyThresholdNanos, maxDescriptionLength, descriptionPool);
         }
     }
 
     public PositionRecorder createEmptyCopy() {
-        return createRecorder(size, latencyThresholdNanos, maxDescriptionLength);
+        return createRecorder(size, latencyThresholdNanos, maxDescriptionLength, descriptionPool);
     }
 
     protected boolean isNeedToAdd(long newTimestamp, long newLatency, Position currentMinimum) {
@@ -78,7 +125,16 @@ public abstract class PositionRecorder {
         return false;
     }
 
-    protected abstract void updateConcurrently(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier, long latencyNanos);
+    @SuppressWarnings("unchecked")
+    protected <T> Position createPosition(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        if (descriptionFormatter == SUPPLIER_INVOKER) {
+            // supplier can capture mutable state of caller, so it must be called before returning control to caller
+            return new Position(timestamp, latencyTime, latencyUnit, (Supplier<String>) descriptionContext, maxDescriptionLength, descriptionPool);
+        }
+        return new Position(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter, maxDescriptionLength, descriptionPool);
+    }
+
+    protected abstract <T> void updateConcurrently(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter, long latencyNanos);
 
     public abstract void reset();
 
@@ -17,6 +17,7 @@
 
 package com.github.rollingmetrics.top.impl.recorder;
 
+import com.github.rollingmetrics.top.DescriptionPool;
 import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
 
@@ -24,7 +25,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 /**
  * Is not a part of public API, this class just used as building block for other QueryTop implementations.
@@ -36,13 +37,13 @@ class SinglePositionRecorder extends PositionRecorder {
 
     private final AtomicReference<Position> max;
 
-    SinglePositionRecorder(long latencyThresholdNanos, int maxDescriptionLength) {
-        super(1, latencyThresholdNanos, maxDescriptionLength);
+    SinglePositionRecorder(long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool) {
+        super(1, latencyThresholdNanos, maxDescriptionLength, descriptionPool);
         this.max = new AtomicReference<>(null);
     }
 
     @Override
-    protected void updateConcurrently(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier, long latencyNanos) {
+    protected <T> void updateConcurrently(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter, long latencyNanos) {
         Position newMax = null;
         while (true) {
             Position previousMax = max.get();
@@ -50,9 +51,10 @@ class SinglePositionRecorder extends PositionRecorder {
                 return;
             }
             if (newMax == null) {
-                newMax = new Position(timestamp, latencyTime, latencyUnit, descriptionSupplier, super.maxDescriptionLength);
+                newMax = createPosition(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
             }
             if (max.compareAndSet(previousMax, newMax)) {
+                raiseAdmissionFloor(latencyNanos);
                 return;
             }
         }
@@ -70,6 +72,7 @@ class SinglePositionRecorder extends PositionRecorder {
 
     @Override
     public void reset() {
+        resetAdmissionFloor();
         max.set(null);
     }
 
@@ -16,8 +16,11 @@
  */
 
 package com.github.rollingmetrics.top.impl.recorder;
+
+import com.github.rollingmetrics.top.DescriptionPool;
 import org.HdrHistogram.WriterReaderPhaser;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -30,12 +33,17 @@ public class TwoPhasePositionRecorder {
     private volatile PositionRecorder active;
     private PositionRecorder inactive;
 
-    public TwoPhasePositionRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength) {
-        this.active = PositionRecorder.createRecorder(size, latencyThresholdNanos, maxDescriptionLength);
+    public TwoPhasePositionRecorder(int size, long latencyThresholdNanos, int maxDescriptionLength, DescriptionPool descriptionPool) {
+        this.active = PositionRecorder.createRecorder(size, latencyThresholdNanos, maxDescriptionLength, descriptionPool);
         this.inactive = null;
     }
 
     public void update(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier) {
+        if (latencyUnit.toNanos(latencyTime) < active.getAdmissionFloorNanos()) {
+            // most of queries are rejected here without entering into critical section which writes to memory shared between writers,
+            // if recorder is swapped concurrently then rejection is linearized before swapping
+            return;
+        }
         long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
         try {
             active.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
@@ -44,6 +52,30 @@ public class TwoPhasePositionRecorder {
         }
     }
 
+    public <T> void update(long timestamp, long latencyTime, TimeUnit latencyUnit, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        if (latencyUnit.toNanos(latencyTime) < active.getAdmissionFloorNanos()) {
+            return;
+        }
+        long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
+        try {
+            active.update(timestamp, latencyTime, latencyUnit, descriptionContext, descriptionFormatter);
+        } finally {
+            recordingPhaser.writerCriticalSectionExit(criticalValueAtEnter);
+        }
+    }
+
+    public <T> void update(long timestampMillis, long latencyNanos, T descriptionContext, Function<? super T, String> descriptionFormatter) {
+        if (latencyNanos < active.getAdmissionFloorNanos()) {
+            return;
+        }
+        long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
+        try {
+            active.update(timestampMillis, latencyNanos, descriptionContext, descriptionFormatter);
+        } finally {
+            recordingPhaser.writerCriticalSectionExit(criticalValueAtEnter);
+        }
+    }
+
     public synchronized PositionRecorder getIntervalRecorder() {
         return getIntervalRecorder(null);
     }
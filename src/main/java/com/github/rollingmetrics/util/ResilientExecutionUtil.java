@@ -38,6 +38,7 @@ public final class ResilientExecutionUtil {
     private static final ResilientExecutionUtil INSTANCE = new ResilientExecutionUtil();
 
     private volatile SingleThreadExecutor executorInstance;
+    private volatile ScheduledExecutorService schedulerInstance;
     private ThreadFactory threadFactory = DEFAULT_THREAD_FACTORY;
 
     /**
@@ -85,6 +86,19 @@ public final class ResilientExecutionUtil {
         }
     }
 
+    /**
+     * Returns the number of tasks queued to executor but not started yet.
+     *
+     * @param executor
+     * @return size of queue, or {@code -1} if executor is not instance of {@link SingleThreadExecutor}
+     */
+    public int getQueueSize(Executor executor) {
+        if (executor instanceof SingleThreadExecutor) {
+            return ((SingleThreadExecutor) executor).getQueueSize();
+        }
+        return -1;
+    }
+
     /**
      * @return instance of {@link SingleThreadExecutor}
      */
@@ -93,12 +107,38 @@ public final class ResilientExecutionUtil {
     }
 
     /**
-     * If the {@link #getBackgroundExecutor} was called before, the this method perform shutdown of background execution thread.
+     * Returns the scheduler which is used for periodic tasks(like background precomputation of snapshots).
+     * The scheduler has single daemon thread which is created by the same thread factory as thread of {@link #getBackgroundExecutor()}.
+     *
+     * @return the shared scheduler
+     */
+    public ScheduledExecutorService getBackgroundScheduler() {
+        ScheduledExecutorService schedulerInstance = this.schedulerInstance;
+        if (schedulerInstance == null) {
+            synchronized (this) {
+                schedulerInstance = this.schedulerInstance;
+                if (schedulerInstance == null) {
+                    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+                    // tasks of garbage collected owners are cancelled, so they should not occupy the queue
+                    scheduler.setRemoveOnCancelPolicy(true);
+                    schedulerInstance = scheduler;
+                    this.schedulerInstance = schedulerInstance;
+                }
+            }
+        }
+        return schedulerInstance;
+    }
+
+    /**
+     * If the {@link #getBackgroundExecutor} or {@link #getBackgroundScheduler()} was called before, the this method perform shutdown of background execution threads.
      */
     public synchronized void shutdownBackgroundExecutor() {
         if (executorInstance != null) {
             executorInstance.stopExecutionThread();
         }
+        if (schedulerInstance != null) {
+            schedulerInstance.shutdownNow();
+        }
     }
 
     /**
@@ -117,7 +157,7 @@ public final class ResilientExecutionUtil {
      * @throws IllegalStateException if executor already created
      */
     public synchronized void setThreadFactory(ThreadFactory threadFactory) {
-        if (executorInstance != null) {
+        if (executorInstance != null || schedulerInstance != null) {
             String msg = "The executor instance already created with " + threadFactory +
                     ", so it is impossible to replace threadFactory." +
                     " You should call setThreadFactory strongly before first invocation of getBackgroundExecutor";
@@ -20,6 +20,7 @@ package com.github.rollingmetrics.util;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.StampedLock;
 import java.util.logging.Level;
@@ -40,6 +41,8 @@ public class SingleThreadExecutor implements Executor {
 
     private final StampedLock stampedLock = new StampedLock();
     private final ConcurrentLinkedQueue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue#size is linear, so size of queue is tracked separately
+    private final AtomicInteger queueSize = new AtomicInteger();
     private final Thread workerThread;
 
     SingleThreadExecutor(ThreadFactory factory) {
@@ -66,6 +69,7 @@ public class SingleThreadExecutor implements Executor {
             return;
         }
         try {
+            queueSize.incrementAndGet();
             taskQueue.add(task);
             LockSupport.unpark(workerThread);
         } finally {
@@ -93,6 +97,13 @@ public class SingleThreadExecutor implements Executor {
         LockSupport.unpark(workerThread);
     }
 
+    /**
+     * @return the number of tasks which are queued but not started yet
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
     private void doLifeCycle() {
         while (true) {
             Thread.interrupted();
@@ -108,6 +119,7 @@ public class SingleThreadExecutor implements Executor {
                 }
             }
             if (task != null) {
+                queueSize.decrementAndGet();
                 executeAndLogErrors(task);
             } else {
                 taskQueue.add(PARK);
@@ -0,0 +1,276 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import com.github.rollingmetrics.util.Clock;
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Merges large amount of serialized snapshots in parallel by tree reduction on {@link ForkJoinPool}.
+ *
+ * <p>
+ * The list of messages is split into batches, each batch is decoded into scratch histogram by separate task,
+ * then partial results are added pairwise up to the root of tree, so merging scales with count of cores instead of being bound to single thread.
+ * The scratch histograms and counters are returned to the pool after each merging and reused by subsequent mergings,
+ * so after warm-up the periodic aggregation does not allocate histograms except the copy which backs the resulted snapshot,
+ * only small objects like tasks and nodes of the pool queue are allocated on each merging.
+ *
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  FleetAggregator aggregator = new FleetAggregator(2);
+ *
+ *  // each 10 seconds
+ *  List<ByteBuffer> messages = receiveHistogramsFromAllNodes(); // written by WireWriter#writeHistogram
+ *  RichSnapshot fleetLatency = aggregator.mergeHistograms(messages);
+ * }</pre>
+ *
+ * <p>
+ * Each message is read from its current position as {@link MergedHistogram#merge(ByteBuffer)} does,
+ * so the position of each buffer is moved to the end of message. The buffers should not be shared between concurrent mergings.
+ */
+public class FleetAggregator {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final ScratchPool<Histogram> scratchHistograms;
+    // counters are bound to clock of target, so pool is recreated only when clock of target changes
+    private volatile CounterScratchPool scratchCounters;
+
+    /**
+     * Creates the aggregator which uses {@link ForkJoinPool#commonPool()} and {@link #DEFAULT_BATCH_SIZE}.
+     *
+     * @param numberOfSignificantValueDigits the precision of merged histograms, should be in range [0, 5]
+     */
+    public FleetAggregator(int numberOfSignificantValueDigits) {
+        this(numberOfSignificantValueDigits, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param numberOfSignificantValueDigits the precision of merged histograms, should be in range [0, 5]
+     * @param pool the pool which executes merging
+     * @param batchSize the count of messages which are decoded sequentially by one task
+     */
+    public FleetAggregator(int numberOfSignificantValueDigits, ForkJoinPool pool, int batchSize) {
+        if (numberOfSignificantValueDigits < 0 || numberOfSignificantValueDigits > 5) {
+            throw new IllegalArgumentException("numberOfSignificantValueDigits should be in range [0, 5]");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize should be >= 1");
+        }
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.scratchHistograms = new ScratchPool<Histogram>(() -> new Histogram(numberOfSignificantValueDigits)) {
+            @Override
+            void reset(Histogram histogram) {
+                HistogramUtil.reset(histogram);
+            }
+
+            @Override
+            void decode(ByteBuffer message, Histogram histogram) {
+                MergedHistogram.mergeInto(message, histogram);
+            }
+
+            @Override
+            void combine(Histogram first, Histogram second) {
+                HistogramUtil.addSecondToFirst(first, second);
+            }
+        };
+    }
+
+    /**
+     * Merges the histograms which were serialized by {@link WireWriter#writeHistogram(RichSnapshot, ByteBuffer)}.
+     *
+     * @param messages the serialized histograms
+     * @return the snapshot of merged histogram
+     *
+     * @throws IllegalArgumentException if any message has unknown version or was written for another kind of metric
+     */
+    public RichSnapshot mergeHistograms(List<ByteBuffer> messages) {
+        Histogram merged = pool.invoke(new MergeTask<>(scratchHistograms, messages, 0, messages.size()));
+        try {
+            if (merged.getTotalCount() == 0) {
+                return EmptySnapshot.INSTANCE;
+            }
+            return RichSnapshot.fromHistogram(merged.copy());
+        } finally {
+            scratchHistograms.release(merged);
+        }
+    }
+
+    /**
+     * Merges the counters which were serialized by {@link WireWriter#writeCounter} into {@code target}.
+     *
+     * @param messages the serialized counters
+     * @param target the counter to merge into
+     *
+     * @throws IllegalArgumentException if any message has unknown version or was written for another kind of metric
+     */
+    public void mergeCounters(List<ByteBuffer> messages, MergedCounter target) {
+        CounterScratchPool scratchCounters = this.scratchCounters;
+        if (scratchCounters == null || scratchCounters.clock != target.getClock()) {
+            scratchCounters = new CounterScratchPool(target.getClock());
+            this.scratchCounters = scratchCounters;
+        }
+        MergedCounter merged = pool.invoke(new MergeTask<>(scratchCounters, messages, 0, messages.size()));
+        try {
+            target.merge(merged);
+        } finally {
+            scratchCounters.release(merged);
+        }
+    }
+
+    @SuppressWarnings("serial") // tasks are never serialized
+
+    private final class MergeTask<T> extends RecursiveTask<T> {
+
+        private final ScratchPool<T> scratchPool;
+        private final List<ByteBuffer> messages;
+        private final int fromIndex;
+        private final int toIndex;
+
+        MergeTask(ScratchPool<T> scratchPool, List<ByteBuffer> messages, int fromIndex, int toIndex) {
+            this.scratchPool = scratchPool;
+            this.messages = messages;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        protected T compute() {
+            if (toIndex - fromIndex <= batchSize) {
+                T scratch = scratchPool.acquire();
+                try {
+                    for (int i = fromIndex; i < toIndex; i++) {
+                        scratchPool.decode(messages.get(i), scratch);
+                    }
+                } catch (RuntimeException e) {
+                    scratchPool.release(scratch);
+                    throw e;
+                }
+                return scratch;
+            }
+
+            int middleIndex = (fromIndex + toIndex) >>> 1;
+            MergeTask<T> leftTask = new MergeTask<>(scratchPool, messages, fromIndex, middleIndex);
+            MergeTask<T> rightTask = new MergeTask<>(scratchPool, messages, middleIndex, toIndex);
+            leftTask.fork();
+            T right = null;
+            T left = null;
+            boolean combined = false;
+            try {
+                right = rightTask.compute();
+                left = leftTask.join();
+                scratchPool.combine(left, right);
+                combined = true;
+                return left;
+            } finally {
+                if (right != null) {
+                    scratchPool.release(right);
+                }
+                if (!combined) {
+                    if (left != null) {
+                        scratchPool.release(left);
+                    } else if (right == null) {
+                        // right subtree failed, but left subtree still can hold scratch which should be returned to pool
+                        releaseResultOf(leftTask);
+                    }
+                }
+            }
+        }
+
+        private void releaseResultOf(MergeTask<T> task) {
+            T result;
+            try {
+                result = task.join();
+            } catch (RuntimeException e) {
+                // failed task has already released own scratch, the failure of sibling is propagated instead
+                return;
+            }
+            scratchPool.release(result);
+        }
+    }
+
+    private static final class CounterScratchPool extends ScratchPool<MergedCounter> {
+
+        private final Clock clock;
+
+        CounterScratchPool(Clock clock) {
+            super(() -> new MergedCounter(clock));
+            this.clock = clock;
+        }
+
+        @Override
+        void reset(MergedCounter counter) {
+            counter.reset();
+        }
+
+        @Override
+        void decode(ByteBuffer message, MergedCounter counter) {
+            counter.merge(message);
+        }
+
+        @Override
+        void combine(MergedCounter first, MergedCounter second) {
+            first.merge(second);
+        }
+
+    }
+
+    private static abstract class ScratchPool<T> {
+
+        private final Queue<T> free = new ConcurrentLinkedQueue<>();
+        private final Supplier<T> factory;
+
+        ScratchPool(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T acquire() {
+            T scratch = free.poll();
+            return scratch != null ? scratch : factory.get();
+        }
+
+        void release(T scratch) {
+            reset(scratch);
+            free.offer(scratch);
+        }
+
+        abstract void reset(T scratch);
+
+        abstract void decode(ByteBuffer message, T scratch);
+
+        abstract void combine(T first, T second);
+
+    }
+
+}
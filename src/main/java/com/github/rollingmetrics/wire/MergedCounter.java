@@ -0,0 +1,139 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.github.rollingmetrics.util.Clock;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Accumulates chunks of counters which were serialized by {@link WireWriter#writeCounter} on different nodes.
+ * The sum of merged counter decays over time in the same way as sum of {@link com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter} does,
+ * so merged counter can be read many times without re-merging.
+ *
+ * @see WireWriter
+ */
+public class MergedCounter {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Clock clock;
+
+    private long[] invalidationTimestamps = new long[INITIAL_CAPACITY];
+    private long[] intervals = new long[INITIAL_CAPACITY];
+    private long[] sums = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public MergedCounter() {
+        this(Clock.defaultClock());
+    }
+
+    public MergedCounter(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Reads the serialized counter from the current position of {@code source} and adds its chunks to this counter,
+     * the chunks which already invalidated are skipped.
+     *
+     * @param source the buffer with serialized counter
+     *
+     * @throws IllegalArgumentException if message has unknown version or was written for another kind of metric
+     */
+    public synchronized void merge(ByteBuffer source) {
+        WireFormat.readHeader(source, WireFormat.COUNTER);
+        long currentTimeMillis = clock.currentTimeMillis();
+        long intervalBetweenResettingMillis = WireFormat.getVarLong(source);
+        long chunkCount = WireFormat.getVarLong(source);
+        long invalidationTimestamp = 0;
+        for (long i = 0; i < chunkCount; i++) {
+            invalidationTimestamp += WireFormat.getZigZag(source);
+            long sum = WireFormat.getZigZag(source);
+            if (invalidationTimestamp > currentTimeMillis) {
+                addChunk(invalidationTimestamp, intervalBetweenResettingMillis, sum);
+            }
+        }
+    }
+
+    /**
+     * @return the sum of all merged counters at current time
+     */
+    public synchronized long getSum() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            long beforeInvalidateMillis = invalidationTimestamps[i] - currentTimeMillis;
+            if (beforeInvalidateMillis <= 0) {
+                continue;
+            }
+            long sum = sums[i];
+            // oldest chunk of source counter is decaying smoothly
+            if (beforeInvalidateMillis < intervals[i]) {
+                double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervals[i];
+                sum = (long) ((double) sum * decayingCoefficient);
+            }
+            result += sum;
+        }
+        return result;
+    }
+
+    /**
+     * Adds all chunks of {@code other} counter to this counter.
+     */
+    synchronized void merge(MergedCounter other) {
+        synchronized (other) {
+            for (int i = 0; i < other.size; i++) {
+                addChunk(other.invalidationTimestamps[i], other.intervals[i], other.sums[i]);
+            }
+        }
+    }
+
+    Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Removes all merged chunks.
+     */
+    public synchronized void reset() {
+        size = 0;
+    }
+
+    private void addChunk(long invalidationTimestamp, long intervalBetweenResettingMillis, long sum) {
+        if (size == sums.length) {
+            invalidationTimestamps = Arrays.copyOf(invalidationTimestamps, size * 2);
+            intervals = Arrays.copyOf(intervals, size * 2);
+            sums = Arrays.copyOf(sums, size * 2);
+        }
+        invalidationTimestamps[size] = invalidationTimestamp;
+        intervals[size] = intervalBetweenResettingMillis;
+        sums[size] = sum;
+        size++;
+    }
+
+    @Override
+    public String toString() {
+        return "MergedCounter{" +
+                "chunks=" + size +
+                ", clock=" + clock +
+                '}';
+    }
+
+}
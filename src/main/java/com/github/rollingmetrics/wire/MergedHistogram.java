@@ -0,0 +1,94 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Accumulates snapshots of histograms which were serialized by {@link WireWriter#writeHistogram(RichSnapshot, ByteBuffer)} on different nodes.
+ * The buckets are merged instead of percentiles, so percentiles of merged snapshot are as precise as percentiles of each source snapshot.
+ *
+ * <p>
+ * The values are accumulated in auto-resizing histogram with configured precision,
+ * use the same number of significant digits as source histograms have to avoid loss of precision.
+ *
+ * @see WireWriter
+ */
+public class MergedHistogram {
+
+    private final Histogram histogram;
+
+    /**
+     * @param numberOfSignificantValueDigits the precision of merged histogram, should be in range [0, 5]
+     */
+    public MergedHistogram(int numberOfSignificantValueDigits) {
+        this.histogram = new Histogram(numberOfSignificantValueDigits);
+    }
+
+    /**
+     * Reads the serialized snapshot from the current position of {@code source} and adds its buckets to this histogram.
+     *
+     * @param source the buffer with serialized snapshot
+     *
+     * @throws IllegalArgumentException if message has unknown version or was written for another kind of metric
+     */
+    public synchronized void merge(ByteBuffer source) {
+        mergeInto(source, histogram);
+    }
+
+    /**
+     * Returns snapshot of values merged so far, the snapshot is independent from subsequent merges.
+     *
+     * @return the snapshot of merged values
+     */
+    public synchronized RichSnapshot getSnapshot() {
+        return RichSnapshot.fromHistogram(histogram.copy());
+    }
+
+    /**
+     * Removes all merged values.
+     */
+    public synchronized void reset() {
+        histogram.reset();
+    }
+
+    static void mergeInto(ByteBuffer source, Histogram target) {
+        WireFormat.readHeader(source, WireFormat.HISTOGRAM);
+        long value = 0;
+        while (true) {
+            long count = WireFormat.getVarLong(source);
+            if (count == 0) {
+                return;
+            }
+            value += WireFormat.getZigZag(source);
+            target.recordValueWithCount(value, count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MergedHistogram{" +
+                "totalCount=" + histogram.getTotalCount() +
+                '}';
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.github.rollingmetrics.util.Clock;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Accumulates chunks of hit-ratios which were serialized by {@link WireWriter#writeHitRatio} on different nodes.
+ * The hit and total counts are merged instead of ratios, so the nodes with bigger traffic have proportionally bigger weight in the merged ratio.
+ * Merged chunks decay over time in the same way as chunks of {@link com.github.rollingmetrics.hitratio.SmoothlyDecayingRollingHitRatio} do.
+ *
+ * @see WireWriter
+ */
+public class MergedHitRatio {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Clock clock;
+
+    private long[] invalidationTimestamps = new long[INITIAL_CAPACITY];
+    private long[] intervals = new long[INITIAL_CAPACITY];
+    private int[] hitCounts = new int[INITIAL_CAPACITY];
+    private int[] totalCounts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public MergedHitRatio() {
+        this(Clock.defaultClock());
+    }
+
+    public MergedHitRatio(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Reads the serialized hit-ratio from the current position of {@code source} and adds its chunks to this hit-ratio,
+     * the chunks which already invalidated are skipped.
+     *
+     * @param source the buffer with serialized hit-ratio
+     *
+     * @throws IllegalArgumentException if message has unknown version or was written for another kind of metric
+     */
+    public synchronized void merge(ByteBuffer source) {
+        WireFormat.readHeader(source, WireFormat.HIT_RATIO);
+        long currentTimeMillis = clock.currentTimeMillis();
+        long intervalBetweenResettingMillis = WireFormat.getVarLong(source);
+        long chunkCount = WireFormat.getVarLong(source);
+        long invalidationTimestamp = 0;
+        for (long i = 0; i < chunkCount; i++) {
+            invalidationTimestamp += WireFormat.getZigZag(source);
+            int hitCount = (int) WireFormat.getVarLong(source);
+            int totalCount = (int) WireFormat.getVarLong(source);
+            if (invalidationTimestamp <= currentTimeMillis) {
+                continue;
+            }
+            if (size == hitCounts.length) {
+                invalidationTimestamps = Arrays.copyOf(invalidationTimestamps, size * 2);
+                intervals = Arrays.copyOf(intervals, size * 2);
+                hitCounts = Arrays.copyOf(hitCounts, size * 2);
+                totalCounts = Arrays.copyOf(totalCounts, size * 2);
+            }
+            invalidationTimestamps[size] = invalidationTimestamp;
+            intervals[size] = intervalBetweenResettingMillis;
+            hitCounts[size] = hitCount;
+            totalCounts[size] = totalCount;
+            size++;
+        }
+    }
+
+    /**
+     * @return the ratio of hits to total count of all merged hit-ratios at current time, or {@code NaN} if nothing was merged
+     */
+    public synchronized double getHitRatio() {
+        long currentTimeMillis = clock.currentTimeMillis();
+        long hitCount = 0;
+        long totalCount = 0;
+        for (int i = 0; i < size; i++) {
+            long beforeInvalidateMillis = invalidationTimestamps[i] - currentTimeMillis;
+            if (beforeInvalidateMillis <= 0) {
+                continue;
+            }
+            int chunkHitCount = hitCounts[i];
+            int chunkTotalCount = totalCounts[i];
+            // oldest chunk of source hit-ratio is decaying smoothly
+            if (beforeInvalidateMillis < intervals[i]) {
+                double decayingCoefficient = (double) beforeInvalidateMillis / (double) intervals[i];
+                chunkHitCount = (int) (chunkHitCount * decayingCoefficient);
+                chunkTotalCount = (int) (chunkTotalCount * decayingCoefficient);
+            }
+            hitCount += chunkHitCount;
+            totalCount += chunkTotalCount;
+        }
+        return (double) hitCount / (double) totalCount;
+    }
+
+    /**
+     * Removes all merged chunks.
+     */
+    public synchronized void reset() {
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "MergedHitRatio{" +
+                "chunks=" + size +
+                ", clock=" + clock +
+                '}';
+    }
+
+}
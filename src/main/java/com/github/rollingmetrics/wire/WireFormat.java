@@ -0,0 +1,102 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and primitives of compact wire format which is used to transfer state of metrics between nodes for aggregation.
+ *
+ * <p>
+ * Each message starts from the version of format and the kind of metric, the rest of message depends from kind:
+ * <ul>
+ *     <li>{@link #HISTOGRAM} - the pairs of count and zigzag encoded delta between highest equivalent values of neighbour buckets,
+ *     the buckets are ordered by values and terminated by zero count.</li>
+ *     <li>{@link #COUNTER} - the interval between chunk resetting in milliseconds and count of chunks,
+ *     then zigzag encoded delta between invalidation timestamps of neighbour chunks and zigzag encoded sum for each chunk.</li>
+ *     <li>{@link #HIT_RATIO} - the same as counter, but hit count and total count are written instead of sum.</li>
+ * </ul>
+ * All numbers are written as unsigned LEB128 variable-length integers, signed numbers are zigzag encoded before.
+ *
+ * This is not part of public API.
+ *
+ * @see WireWriter
+ * @see MergedHistogram
+ * @see MergedCounter
+ * @see MergedHitRatio
+ */
+public class WireFormat {
+
+    public static final byte VERSION = 1;
+
+    public static final byte HISTOGRAM = 1;
+    public static final byte COUNTER = 2;
+    public static final byte HIT_RATIO = 3;
+
+    public static void putVarLong(ByteBuffer target, long value) {
+        while ((value & ~0x7FL) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer source) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = source.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer");
+    }
+
+    public static void putZigZag(ByteBuffer target, long value) {
+        putVarLong(target, (value << 1) ^ (value >> 63));
+    }
+
+    public static long getZigZag(ByteBuffer source) {
+        long value = getVarLong(source);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void putHeader(ByteBuffer target, byte kind) {
+        target.put(VERSION);
+        target.put(kind);
+    }
+
+    /**
+     * Reads the header and checks that message has expected kind.
+     *
+     * @throws IllegalArgumentException if message has unknown version or unexpected kind
+     */
+    public static void readHeader(ByteBuffer source, byte expectedKind) {
+        byte version = source.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported version of wire format " + version);
+        }
+        byte kind = source.get();
+        if (kind != expectedKind) {
+            throw new IllegalArgumentException("Message of kind " + kind + " can not be merged to metric of kind " + expectedKind);
+        }
+    }
+
+}
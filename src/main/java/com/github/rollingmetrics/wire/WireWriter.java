@@ -0,0 +1,163 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.github.rollingmetrics.checkpoint.CheckpointFormat;
+import com.github.rollingmetrics.checkpoint.Checkpointable;
+import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import com.github.rollingmetrics.hitratio.HitRatioUtil;
+import com.github.rollingmetrics.hitratio.SmoothlyDecayingRollingHitRatio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes state of metrics to {@link WireFormat}, the serialized state can be merged with states from other nodes
+ * by {@link MergedHistogram}, {@link MergedCounter} and {@link MergedHitRatio}.
+ *
+ * <p><b>Sample Usage:</b>
+ * <pre> {@code
+ *
+ *  // on each node
+ *  WireWriter writer = new WireWriter();
+ *  ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+ *  writer.writeHistogram((RichSnapshot) timer.getSnapshot(), buffer);
+ *  writer.writeCounter(requestCounter, buffer);
+ *  buffer.flip();
+ *  send(buffer);
+ *
+ *  // on aggregator
+ *  MergedHistogram fleetLatency = new MergedHistogram(2);
+ *  MergedCounter fleetRequests = new MergedCounter();
+ *  for (ByteBuffer message : receivedMessages) {
+ *      fleetLatency.merge(message);
+ *      fleetRequests.merge(message);
+ *  }
+ *  double fleetP99 = fleetLatency.getSnapshot().get99thPercentile();
+ * }</pre>
+ *
+ * <p>
+ * The writer is reusable and does not allocate memory on writing except growing of internal buffer for chunks of counters and hit-ratios,
+ * the writer is not thread-safe, so use separate writer per thread.
+ * The writers of counters and hit-ratios transfer each chunk with its invalidation timestamp,
+ * so merged values decay in the same way as values in the source metrics.
+ */
+public class WireWriter {
+
+    private static final int INITIAL_CHECKPOINT_BUFFER_SIZE = 1024;
+
+    private final BucketEncoder bucketEncoder = new BucketEncoder();
+    private ByteBuffer checkpointBuffer = ByteBuffer.allocate(INITIAL_CHECKPOINT_BUFFER_SIZE);
+
+    /**
+     * Writes non-empty buckets of snapshot to the current position of {@code target}.
+     *
+     * @param snapshot the snapshot of histogram
+     * @param target the buffer to write
+     *
+     * @throws java.nio.BufferOverflowException if remaining space in buffer is not enough
+     */
+    public void writeHistogram(RichSnapshot snapshot, ByteBuffer target) {
+        WireFormat.putHeader(target, WireFormat.HISTOGRAM);
+        bucketEncoder.target = target;
+        bucketEncoder.previousValue = 0;
+        try {
+            snapshot.forEachRecordedBucket(bucketEncoder);
+        } finally {
+            bucketEncoder.target = null;
+        }
+        WireFormat.putVarLong(target, 0);
+    }
+
+    /**
+     * Writes the chunks of counter which are not invalidated yet to the current position of {@code target}.
+     *
+     * @param counter the counter
+     * @param target the buffer to write
+     *
+     * @throws java.nio.BufferOverflowException if remaining space in buffer is not enough
+     */
+    public void writeCounter(SmoothlyDecayingRollingCounter counter, ByteBuffer target) {
+        ByteBuffer checkpoint = takeCheckpoint(counter);
+        int chunkCount = CheckpointFormat.readChunkCount(checkpoint, CheckpointFormat.COUNTER);
+
+        WireFormat.putHeader(target, WireFormat.COUNTER);
+        WireFormat.putVarLong(target, counter.getRollingWindow().toMillis() / counter.getChunkCount());
+        WireFormat.putVarLong(target, chunkCount);
+        long previousTimestamp = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            long invalidationTimestamp = checkpoint.getLong();
+            WireFormat.putZigZag(target, invalidationTimestamp - previousTimestamp);
+            WireFormat.putZigZag(target, checkpoint.getLong());
+            previousTimestamp = invalidationTimestamp;
+        }
+    }
+
+    /**
+     * Writes the chunks of hit-ratio which are not invalidated yet to the current position of {@code target}.
+     *
+     * @param hitRatio the hit-ratio
+     * @param target the buffer to write
+     *
+     * @throws java.nio.BufferOverflowException if remaining space in buffer is not enough
+     */
+    public void writeHitRatio(SmoothlyDecayingRollingHitRatio hitRatio, ByteBuffer target) {
+        ByteBuffer checkpoint = takeCheckpoint(hitRatio);
+        int chunkCount = CheckpointFormat.readChunkCount(checkpoint, CheckpointFormat.HIT_RATIO);
+
+        WireFormat.putHeader(target, WireFormat.HIT_RATIO);
+        WireFormat.putVarLong(target, hitRatio.getRollingWindow().toMillis() / hitRatio.getChunkCount());
+        WireFormat.putVarLong(target, chunkCount);
+        long previousTimestamp = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            long invalidationTimestamp = checkpoint.getLong();
+            long compositeRatio = checkpoint.getLong();
+            WireFormat.putZigZag(target, invalidationTimestamp - previousTimestamp);
+            WireFormat.putVarLong(target, HitRatioUtil.getHitFromCompositeRatio(compositeRatio));
+            WireFormat.putVarLong(target, HitRatioUtil.getTotalCountFromCompositeRatio(compositeRatio));
+            previousTimestamp = invalidationTimestamp;
+        }
+    }
+
+    private ByteBuffer takeCheckpoint(Checkpointable metric) {
+        int requiredCapacity = metric.getMaxCheckpointSizeInBytes();
+        if (checkpointBuffer.capacity() < requiredCapacity) {
+            checkpointBuffer = ByteBuffer.allocate(Math.max(requiredCapacity, checkpointBuffer.capacity() * 2));
+        }
+        checkpointBuffer.clear();
+        metric.writeCheckpoint(checkpointBuffer);
+        checkpointBuffer.flip();
+        return checkpointBuffer;
+    }
+
+    private static final class BucketEncoder implements RichSnapshot.BucketConsumer {
+
+        ByteBuffer target;
+        long previousValue;
+
+        @Override
+        public void accept(long highestEquivalentValue, long count) {
+            WireFormat.putVarLong(target, count);
+            WireFormat.putZigZag(target, highestEquivalentValue - previousValue);
+            previousValue = highestEquivalentValue;
+        }
+
+    }
+
+}
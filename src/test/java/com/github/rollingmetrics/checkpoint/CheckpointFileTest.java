@@ -0,0 +1,388 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.checkpoint;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.HdrTimer;
+import com.github.rollingmetrics.histogram.OverflowResolver;
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import com.github.rollingmetrics.hitratio.SmoothlyDecayingRollingHitRatio;
+import com.github.rollingmetrics.top.Top;
+import com.github.rollingmetrics.top.TopBuilder;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointFileTest {
+
+    private static final long[] OBSERVATION_TIMES = {2000, 2500, 3100, 3700, 4200, 4900, 5600, 6500, 20000};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+
+    @Test
+    public void restoredCounterShouldDecayAsOriginal() throws IOException {
+        SmoothlyDecayingRollingCounter original = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        original.add(100);
+        time.set(1100);
+        original.add(20);
+        time.set(1900);
+        original.add(3);
+
+        SmoothlyDecayingRollingCounter restored = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        writeAndRestore(original, restored);
+
+        for (long observationTime : OBSERVATION_TIMES) {
+            time.set(observationTime);
+            assertEquals("at " + observationTime, original.getSum(), restored.getSum());
+        }
+        assertEquals(0, restored.getSum());
+    }
+
+    @Test
+    public void restoredCounterShouldAccumulateNewValues() throws IOException {
+        SmoothlyDecayingRollingCounter original = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        original.add(100);
+        time.set(500);
+        SmoothlyDecayingRollingCounter restored = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        writeAndRestore(original, restored);
+
+        restored.add(5);
+        assertEquals(105, restored.getSum());
+
+        // checkpoint of restored counter contains both restored and new values
+        SmoothlyDecayingRollingCounter restoredTwice = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        writeAndRestore(restored, restoredTwice);
+        assertEquals(105, restoredTwice.getSum());
+    }
+
+    @Test
+    public void restoredHitRatioShouldDecayAsOriginal() throws IOException {
+        SmoothlyDecayingRollingHitRatio original = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(3), 3, clock);
+        original.update(10, 10);
+        time.set(1100);
+        original.update(0, 30);
+
+        SmoothlyDecayingRollingHitRatio restored = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(3), 3, clock);
+        writeAndRestore(original, restored);
+
+        for (long observationTime : OBSERVATION_TIMES) {
+            time.set(observationTime);
+            assertEquals("at " + observationTime, original.getHitRatio(), restored.getHitRatio(), 0.0);
+        }
+    }
+
+    @Test
+    public void restoredReservoirShouldInvalidateChunksAsOriginal() throws IOException {
+        HdrBuilder builder = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE);
+        Reservoir original = builder.buildReservoir();
+        original.update(10);
+        time.set(1100);
+        original.update(20);
+        time.set(2100);
+        original.update(30);
+
+        Reservoir restored = builder.buildReservoir();
+        writeAndRestore(Checkpointable.of(original), Checkpointable.of(restored));
+        assertEquals(3, getCount(restored));
+
+        for (long observationTime : OBSERVATION_TIMES) {
+            time.set(observationTime);
+            assertEquals("at " + observationTime, getCount(original), getCount(restored));
+            assertEquals("at " + observationTime, original.getSnapshot().getMax(), restored.getSnapshot().getMax());
+        }
+    }
+
+    @Test
+    public void shouldClipRestoredValuesToHighestTrackableValue() throws IOException {
+        Reservoir original = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .buildReservoir();
+        original.update(1_000_000);
+
+        Reservoir restored = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withHighestTrackableValue(1000, OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .buildReservoir();
+        writeAndRestore(Checkpointable.of(original), Checkpointable.of(restored));
+
+        assertEquals(1, getCount(restored));
+        assertEquals(1000, restored.getSnapshot().getMax(), 1000 * 0.01);
+    }
+
+    @Test
+    public void restoredTopShouldInvalidateChunksAsOriginal() throws IOException {
+        TopBuilder builder = TopBuilder.newBuilder(2)
+                .withClock(clock)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withSnapshotCachingDuration(Duration.ZERO);
+        Top original = builder.build();
+        original.update(0, 30, TimeUnit.MILLISECONDS, () -> "SELECT * FROM users");
+        time.set(1100);
+        original.update(1100, 20, TimeUnit.MILLISECONDS, () -> "запрос");
+        time.set(2100);
+        original.update(2100, 10, TimeUnit.MICROSECONDS, () -> "SELECT 1");
+
+        Top restored = builder.build();
+        writeAndRestore(Checkpointable.of(original), Checkpointable.of(restored));
+        assertEquals(2, restored.getPositionsInDescendingOrder().size());
+
+        for (long observationTime : OBSERVATION_TIMES) {
+            time.set(observationTime);
+            assertEquals("at " + observationTime, original.getPositionsInDescendingOrder(), restored.getPositionsInDescendingOrder());
+        }
+    }
+
+    @Test
+    public void expiredRestoredChunksOfReservoirShouldBeDroppedOnRotation() throws IOException {
+        HdrBuilder builder = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE);
+        Reservoir original = builder.buildReservoir();
+        original.update(TimeUnit.HOURS.toNanos(1));
+
+        Reservoir restored = builder.buildReservoir();
+        Reservoir notRestored = builder.buildReservoir();
+        writeAndRestore(Checkpointable.of(original), Checkpointable.of(restored));
+        assertTrue(Checkpointable.of(restored).getMaxCheckpointSizeInBytes() > Checkpointable.of(notRestored).getMaxCheckpointSizeInBytes());
+
+        time.set(20000);
+        restored.update(10);
+        notRestored.update(10);
+        assertEquals(Checkpointable.of(notRestored).getMaxCheckpointSizeInBytes(), Checkpointable.of(restored).getMaxCheckpointSizeInBytes());
+    }
+
+    @Test
+    public void expiredRestoredChunksOfTopShouldBeDroppedOnRotation() throws IOException {
+        TopBuilder builder = TopBuilder.newBuilder(2)
+                .withClock(clock)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withSnapshotCachingDuration(Duration.ZERO);
+        Top original = builder.build();
+        original.update(0, 30, TimeUnit.MILLISECONDS, () -> "SELECT * FROM users");
+
+        Top restored = builder.build();
+        Top notRestored = builder.build();
+        writeAndRestore(Checkpointable.of(original), Checkpointable.of(restored));
+        assertTrue(Checkpointable.of(restored).getMaxCheckpointSizeInBytes() > Checkpointable.of(notRestored).getMaxCheckpointSizeInBytes());
+
+        time.set(20000);
+        restored.update(20000, 10, TimeUnit.MILLISECONDS, () -> "SELECT 1");
+        notRestored.update(20000, 10, TimeUnit.MILLISECONDS, () -> "SELECT 1");
+        assertEquals(Checkpointable.of(notRestored).getMaxCheckpointSizeInBytes(), Checkpointable.of(restored).getMaxCheckpointSizeInBytes());
+    }
+
+    @Test
+    public void histogramsAndTimersBuiltByBuilderShouldBeCheckpointable() throws IOException {
+        HdrBuilder builder = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE);
+        MetricRegistry registry = new MetricRegistry();
+
+        Histogram histogram = builder.buildAndRegisterHistogram(registry, "histogram");
+        histogram.update(10);
+        Histogram restoredHistogram = builder.buildHistogram();
+        writeAndRestore(Checkpointable.required(histogram), Checkpointable.required(restoredHistogram));
+        assertEquals(1, ((RichSnapshot) restoredHistogram.getSnapshot()).getCount());
+
+        Timer timer = builder.buildAndRegisterTimer(registry, "timer");
+        timer.update(10, TimeUnit.MILLISECONDS);
+        Timer restoredTimer = builder.buildTimer();
+        writeAndRestore(Checkpointable.required(timer), Checkpointable.required(restoredTimer));
+        assertEquals(1, ((RichSnapshot) restoredTimer.getSnapshot()).getCount());
+
+        HdrTimer hdrTimer = builder.buildAndRegisterHdrTimer(registry, "hdr-timer");
+        hdrTimer.record(10);
+        HdrTimer restoredHdrTimer = builder.buildHdrTimer();
+        writeAndRestore(Checkpointable.required(hdrTimer), Checkpointable.required(restoredHdrTimer));
+        assertEquals(1, ((RichSnapshot) restoredHdrTimer.getSnapshot()).getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiredShouldRejectMetricWithoutCheckpoints() {
+        Checkpointable.required(new Histogram(new UniformReservoir()));
+    }
+
+    @Test
+    public void largeTopShouldBeCheckpointedWithEstimationBasedOnOccupancy() throws IOException {
+        int size = TopBuilder.MAX_POSITION_COUNT;
+        TopBuilder builder = TopBuilder.newBuilder(size)
+                .withClock(clock)
+                .withLatencyThreshold(Duration.ZERO)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withSnapshotCachingDuration(Duration.ZERO);
+        Top original = builder.build();
+        for (int i = 1; i <= size * 2; i++) {
+            original.update(0, i, TimeUnit.MICROSECONDS, () -> "SELECT 1");
+        }
+        time.set(1100);
+        for (int i = 1; i <= size; i++) {
+            original.update(1100, i, TimeUnit.MILLISECONDS, () -> "SELECT 2");
+        }
+        // moves recorded positions to the archive
+        time.set(2100);
+        assertEquals(size, original.getPositionsInDescendingOrder().size());
+
+        int estimation = Checkpointable.of(original).getMaxCheckpointSizeInBytes();
+        int positionSize = 8 + 8 + 1 + 4 + "SELECT 1".length() * 3;
+        assertTrue(estimation > 0);
+        assertTrue("estimation " + estimation, estimation < 8 * size * positionSize);
+
+        Top restored = builder.build();
+        writeAndRestore(Checkpointable.of(original), Checkpointable.of(restored));
+        for (long observationTime : OBSERVATION_TIMES) {
+            time.set(observationTime);
+            assertEquals("at " + observationTime, original.getPositionsInDescendingOrder(), restored.getPositionsInDescendingOrder());
+        }
+    }
+
+    @Test
+    public void shouldIgnoreUnknownNamesAndMissingEntries() throws IOException {
+        SmoothlyDecayingRollingCounter original = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        original.add(42);
+        Path file = folder.getRoot().toPath().resolve("checkpoint");
+        CheckpointFile.write(file, Collections.singletonMap("original", original));
+
+        SmoothlyDecayingRollingCounter restored = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        SmoothlyDecayingRollingCounter absent = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        Map<String, Checkpointable> metrics = new HashMap<>();
+        metrics.put("original", restored);
+        metrics.put("absent", absent);
+        assertEquals(1, CheckpointFile.restore(file, metrics));
+        assertEquals(42, restored.getSum());
+        assertEquals(0, absent.getSum());
+    }
+
+    @Test
+    public void shouldReplaceFileAndRemoveTemporaryFile() throws IOException {
+        SmoothlyDecayingRollingCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        counter.add(1);
+        Path file = folder.getRoot().toPath().resolve("checkpoint");
+        CheckpointFile.write(file, Collections.singletonMap("counter", counter));
+        counter.add(2);
+        CheckpointFile.write(file, Collections.singletonMap("counter", counter));
+
+        SmoothlyDecayingRollingCounter restored = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        CheckpointFile.restore(file, Collections.singletonMap("counter", restored));
+        assertEquals(3, restored.getSum());
+        assertFalse(Files.exists(file.resolveSibling("checkpoint.tmp")));
+    }
+
+    @Test
+    public void shouldWriteCheckpointWhichIsBiggerThanEstimation() throws IOException {
+        byte[] payload = new byte[100_000];
+        payload[payload.length - 1] = 42;
+        Checkpointable underestimated = new Checkpointable() {
+            @Override
+            public int getMaxCheckpointSizeInBytes() {
+                return 1;
+            }
+
+            @Override
+            public void writeCheckpoint(ByteBuffer target) {
+                target.put(payload);
+            }
+
+            @Override
+            public void restoreFromCheckpoint(ByteBuffer source) {
+                assertEquals(payload.length, source.remaining());
+                assertEquals(42, source.get(payload.length - 1));
+            }
+        };
+        SmoothlyDecayingRollingCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        counter.add(7);
+        Map<String, Checkpointable> metrics = new HashMap<>();
+        metrics.put("underestimated", underestimated);
+        metrics.put("counter", counter);
+        Path file = folder.getRoot().toPath().resolve("checkpoint");
+        CheckpointFile.write(file, metrics);
+
+        SmoothlyDecayingRollingCounter restored = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        metrics.put("counter", restored);
+        assertEquals(2, CheckpointFile.restore(file, metrics));
+        assertEquals(7, restored.getSum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowRestoringToMetricOfDifferentKind() throws IOException {
+        SmoothlyDecayingRollingCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        SmoothlyDecayingRollingHitRatio hitRatio = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(3), 3, clock);
+        writeAndRestore(counter, hitRatio);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDetectWrongFile() throws IOException {
+        Path file = folder.newFile("garbage").toPath();
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        CheckpointFile.restore(file, Collections.emptyMap());
+    }
+
+    @Test
+    public void nonRollingMetricsShouldSaveNothing() throws IOException {
+        Reservoir uniform = new HdrBuilder(clock).neverResetReservoir().buildReservoir();
+        uniform.update(42);
+        Reservoir restored = new HdrBuilder(clock).neverResetReservoir().buildReservoir();
+        writeAndRestore(Checkpointable.of(uniform), Checkpointable.of(restored));
+        assertEquals(0, getCount(restored));
+    }
+
+    private static long getCount(Reservoir reservoir) {
+        return ((RichSnapshot) reservoir.getSnapshot()).getCount();
+    }
+
+    private void writeAndRestore(Checkpointable source, Checkpointable target) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("checkpoint");
+        CheckpointFile.write(file, Collections.singletonMap("metric", source));
+        assertEquals(1, CheckpointFile.restore(file, Collections.singletonMap("metric", target)));
+    }
+
+}
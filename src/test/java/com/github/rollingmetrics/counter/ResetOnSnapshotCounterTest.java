@@ -36,9 +36,28 @@ public class ResetOnSnapshotCounterTest {
         assertEquals(0, counter.getSum());
     }
 
+    @Test
+    public void consumersShouldNotStealDataFromEachOther() {
+        ResetOnSnapshotCounter counter = new ResetOnSnapshotCounter();
+        counter.add(1);
+        WindowCounter consumer = counter.newConsumer();
+
+        counter.add(2);
+        consumer.add(3);
+        assertEquals(6, counter.getSum());
+        assertEquals(5, consumer.getSum());
+
+        counter.add(4);
+        assertEquals(4, consumer.getSum());
+        assertEquals(0, consumer.getSum());
+        assertEquals(4, counter.getSum());
+        assertEquals(0, counter.getSum());
+    }
+
     @Test
     public void testToString() {
         System.out.println(new ResetOnSnapshotCounter());
+        System.out.println(new ResetOnSnapshotCounter().newConsumer());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+public class AsyncRecordingTest {
+
+    private final List<Runnable> submittedTasks = new ArrayList<>();
+    private final Executor executor = submittedTasks::add;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallBufferShouldBeDisallowed() {
+        new HdrBuilder().withAsynchronousRecording(1);
+    }
+
+    @Test
+    public void bufferSizeShouldBeRoundedUpToPowerOfTwo() {
+        assertEquals(2, new AsyncRecordingBuffer(2).getRingCapacity());
+        assertEquals(8, new AsyncRecordingBuffer(5).getRingCapacity());
+        assertEquals(1024, new AsyncRecordingBuffer(1024).getRingCapacity());
+    }
+
+    @Test
+    public void snapshotShouldContainAllWrittenValues() {
+        Reservoir reservoir = new HdrBuilder()
+                .withAsynchronousRecording(1024)
+                .withBackgroundExecutor(executor)
+                .buildReservoir();
+
+        reservoir.update(10);
+        reservoir.update(20);
+        RichSnapshot snapshot = (RichSnapshot) reservoir.getSnapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(0, submittedTasks.size());
+    }
+
+    @Test
+    public void drainingShouldBeScheduledWhenRingBecomesHalfFull() {
+        Reservoir reservoir = new HdrBuilder()
+                .neverResetReservoir()
+                .withAsynchronousRecording(8)
+                .withBackgroundExecutor(executor)
+                .buildReservoir();
+
+        for (int i = 1; i <= 3; i++) {
+            reservoir.update(i);
+        }
+        assertEquals(0, submittedTasks.size());
+        reservoir.update(4);
+        assertEquals(1, submittedTasks.size());
+
+        // draining is already scheduled
+        for (int i = 5; i <= 8; i++) {
+            reservoir.update(i);
+        }
+        assertEquals(1, submittedTasks.size());
+
+        submittedTasks.remove(0).run();
+        for (int i = 9; i <= 12; i++) {
+            reservoir.update(i);
+        }
+        assertEquals(12, ((RichSnapshot) reservoir.getSnapshot()).getCount());
+    }
+
+    @Test
+    public void valuesShouldBeDroppedAndCountedWhenRingIsFull() {
+        MetricRegistry registry = new MetricRegistry();
+        com.codahale.metrics.Histogram histogram = new HdrBuilder()
+                .neverResetReservoir()
+                .withAsynchronousRecording(4)
+                .withBackgroundExecutor(executor)
+                .buildAndRegisterHistogram(registry, "latency");
+
+        for (int i = 1; i <= 7; i++) {
+            histogram.update(i);
+        }
+        Gauge<Long> droppedValues = registry.getGauges().get("latency.asyncRecording.droppedValues");
+        assertEquals(3L, (long) droppedValues.getValue());
+        assertEquals(4, ((RichSnapshot) histogram.getSnapshot()).getCount());
+        assertEquals(4, histogram.getSnapshot().getMax());
+
+        histogram.update(100);
+        assertEquals(100, histogram.getSnapshot().getMax());
+        assertEquals(3L, (long) droppedValues.getValue());
+    }
+
+    @Test
+    public void valuesOfTerminatedThreadsShouldNotBeLost() throws InterruptedException {
+        Reservoir reservoir = new HdrBuilder()
+                .neverResetReservoir()
+                .withAsynchronousRecording(1024)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .buildReservoir();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 1; j <= 1000; j++) {
+                    reservoir.update(j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        RichSnapshot snapshot = (RichSnapshot) reservoir.getSnapshot();
+        assertEquals(4000, snapshot.getCount());
+        assertEquals(1, snapshot.getMin());
+    }
+
+    @Test
+    public void hdrTimerShouldRecordThroughRingBuffer() {
+        HdrTimer timer = new HdrBuilder()
+                .withAsynchronousRecording(16)
+                .withBackgroundExecutor(executor)
+                .buildHdrTimer();
+
+        timer.record(42);
+        assertEquals(42, timer.getSnapshot().getMax());
+    }
+
+    @Test
+    public void independentConsumersShouldShareRingBuffers() {
+        List<Reservoir> reservoirs = new HdrBuilder()
+                .resetReservoirOnSnapshot()
+                .withAsynchronousRecording(16)
+                .withBackgroundExecutor(executor)
+                .buildReservoirsForIndependentConsumers(2);
+
+        reservoirs.get(1).update(42);
+        assertEquals(42, reservoirs.get(0).getSnapshot().getMax());
+        assertEquals(42, reservoirs.get(1).getSnapshot().getMax());
+    }
+
+}
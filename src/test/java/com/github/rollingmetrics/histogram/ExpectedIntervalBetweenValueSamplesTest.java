@@ -17,11 +17,18 @@
 
 package com.github.rollingmetrics.histogram;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
 import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.util.HistogramUtil;
+import org.HdrHistogram.Recorder;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 
 
 public class ExpectedIntervalBetweenValueSamplesTest {
@@ -40,4 +47,58 @@ public class ExpectedIntervalBetweenValueSamplesTest {
         assertEquals(9855.0, histogram.getSnapshot().get99thPercentile());
     }
 
+    @Test
+    public void bulkCorrectionShouldProduceSameCountsAsPerValueCorrection() {
+        long[] values = {1, 99, 100, 101, 199, 200, 201, 10_000, 123_456, 30_000_000};
+        long[] intervals = {1, 3, 100, 1000};
+        for (int digits = 0; digits <= 3; digits++) {
+            for (long lowestDiscernibleValue : new long[] {1, 7, 1000}) {
+                for (long interval : intervals) {
+                    Recorder recorder = new Recorder(lowestDiscernibleValue, TimeUnit.HOURS.toNanos(1), digits);
+                    org.HdrHistogram.Histogram expected = new org.HdrHistogram.Histogram(lowestDiscernibleValue, TimeUnit.HOURS.toNanos(1), digits);
+                    org.HdrHistogram.Histogram layout = HistogramUtil.createLayoutCopy(expected);
+                    for (long value : values) {
+                        HistogramUtil.recordValueWithExpectedInterval(recorder, layout, value, interval);
+                        expected.recordValueWithExpectedInterval(value, interval);
+                    }
+                    org.HdrHistogram.Histogram actual = recorder.getIntervalHistogram();
+                    String msg = "digits=" + digits + ", lowestDiscernibleValue=" + lowestDiscernibleValue + ", interval=" + interval;
+                    assertEquals(msg, expected, actual);
+                    assertEquals(msg, expected.getTotalCount(), actual.getTotalCount());
+                    assertEquals(msg, expected.getMinValue(), actual.getMinValue());
+                    assertEquals(msg, expected.getMaxValue(), actual.getMaxValue());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldCountAppliedCorrection() {
+        HdrReservoir reservoir = (HdrReservoir) new HdrBuilder().withExpectedIntervalBetweenValueSamples(100).buildReservoir();
+        reservoir.update(50);
+        reservoir.update(199);
+        assertEquals(0, reservoir.getCorrectedSampleCount());
+        assertEquals(0, reservoir.getSyntheticValueCount());
+
+        reservoir.update(200);
+        reservoir.update(10_050);
+        assertEquals(2, reservoir.getCorrectedSampleCount());
+        assertEquals(1 + 99, reservoir.getSyntheticValueCount());
+    }
+
+    @Test
+    public void shouldRegisterCorrectionGaugesOnlyWhenCorrectionConfigured() {
+        MetricRegistry registry = new MetricRegistry();
+        Histogram histogram = new HdrBuilder().withExpectedIntervalBetweenValueSamples(100).buildAndRegisterHistogram(registry, "corrected");
+        new HdrBuilder().buildAndRegisterTimer(registry, "uncorrected");
+
+        histogram.update(1000);
+        Gauge correctedSamples = registry.getGauges().get("corrected.coordinatedOmission.correctedSamples");
+        Gauge syntheticValues = registry.getGauges().get("corrected.coordinatedOmission.syntheticValues");
+        assertEquals(1L, correctedSamples.getValue());
+        assertEquals(9L, syntheticValues.getValue());
+
+        assertFalse(registry.getGauges().containsKey("uncorrected.coordinatedOmission.correctedSamples"));
+    }
+
 }
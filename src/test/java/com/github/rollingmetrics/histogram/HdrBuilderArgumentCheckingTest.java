@@ -162,4 +162,9 @@ public class HdrBuilderArgumentCheckingTest {
         } catch (IllegalArgumentException e) {}
     }
 
-}
\ No newline at end of file
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowZeroConsumers() {
+        new HdrBuilder().buildReservoirsForIndependentConsumers(0);
+    }
+
+}
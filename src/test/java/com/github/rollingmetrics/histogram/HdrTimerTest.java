@@ -0,0 +1,112 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HdrTimerTest {
+
+    private final AtomicLong tick = new AtomicLong();
+    private final Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return tick.get();
+        }
+    };
+
+    private final Reservoir reservoir = new HdrBuilder().withSignificantDigits(3).neverResetReservoir().withoutSnapshotOptimization().buildReservoir();
+    private final HdrTimer timer = new HdrTimer(reservoir, reservoir, clock);
+
+    @Test
+    public void shouldRecordElapsedTimeBetweenStartAndStop() {
+        long start = timer.start();
+        tick.addAndGet(42);
+        timer.stop(start);
+
+        Snapshot snapshot = timer.getSnapshot();
+        assertEquals(42, snapshot.getMax());
+        assertEquals(1, timer.getCount());
+    }
+
+    @Test
+    public void shouldRecordRawNanos() {
+        timer.record(10);
+        timer.record(20);
+
+        Snapshot snapshot = timer.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(2, timer.getCount());
+    }
+
+    @Test
+    public void shouldIgnoreNegativeDuration() {
+        timer.record(-1);
+        timer.update(-1, TimeUnit.SECONDS);
+        assertEquals(0, timer.getCount());
+        assertEquals(0, timer.getSnapshot().getMax());
+    }
+
+    @Test
+    public void shouldTimeRunnable() {
+        Runnable task = () -> tick.addAndGet(100);
+        timer.time(task);
+        assertEquals(100, timer.getSnapshot().getMax());
+        assertEquals(1, timer.getCount());
+    }
+
+    @Test
+    public void shouldTimeCallable() throws Exception {
+        long result = timer.time(() -> tick.addAndGet(100));
+        assertEquals(100, result);
+        assertEquals(100, timer.getSnapshot().getMax());
+        assertEquals(1, timer.getCount());
+    }
+
+    @Test
+    public void standardTimerApiShouldWriteToSameReservoir() {
+        timer.update(2, TimeUnit.MICROSECONDS);
+        Timer.Context context = timer.time();
+        tick.addAndGet(5);
+        context.stop();
+
+        Snapshot snapshot = timer.getSnapshot();
+        assertEquals(5, snapshot.getMin());
+        assertEquals(2000, snapshot.getMax());
+        assertEquals(2, timer.getCount());
+    }
+
+    @Test
+    public void shouldBeRegisteredAsTimer() {
+        MetricRegistry registry = new MetricRegistry();
+        HdrTimer hdrTimer = new HdrBuilder().buildAndRegisterHdrTimer(registry, "my-timer");
+        assertSame(hdrTimer, registry.timer("my-timer"));
+    }
+
+}
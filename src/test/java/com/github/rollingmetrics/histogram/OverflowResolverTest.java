@@ -17,13 +17,17 @@
 
 package com.github.rollingmetrics.histogram;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
 import com.github.rollingmetrics.histogram.HdrBuilder;
 import com.github.rollingmetrics.histogram.OverflowResolver;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
 
 public class OverflowResolverTest {
 
@@ -77,4 +81,32 @@ public class OverflowResolverTest {
         assertEquals(101, snapshot.getMax());
     }
 
+    @Test
+    public void shouldCountOverflowedValues() {
+        HdrReservoir reservoir = (HdrReservoir) new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.SKIP).buildReservoir();
+        reservoir.update(100);
+        assertEquals(0, reservoir.getOverflowedValueCount());
+
+        reservoir.update(101);
+        reservoir.update(1000);
+        assertEquals(2, reservoir.getOverflowedValueCount());
+    }
+
+    @Test
+    public void shouldRegisterOverflowGaugeNamedByResolver() {
+        MetricRegistry registry = new MetricRegistry();
+        new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.SKIP)
+                .buildAndRegisterHistogram(registry, "skipping").update(100);
+        new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
+                .buildAndRegisterTimer(registry, "reducing").update(101, TimeUnit.NANOSECONDS);
+        new HdrBuilder().withHighestTrackableValue(100, OverflowResolver.PASS_THRU)
+                .buildAndRegisterHdrTimer(registry, "passing").record(101);
+        new HdrBuilder().buildAndRegisterHistogram(registry, "unlimited");
+
+        assertEquals(0L, registry.getGauges().get("skipping.overflow.skippedValues").getValue());
+        assertEquals(1L, registry.getGauges().get("reducing.overflow.reducedValues").getValue());
+        assertEquals(1L, registry.getGauges().get("passing.overflow.passedThruValues").getValue());
+        assertTrue(registry.getGauges().keySet().stream().noneMatch(name -> name.startsWith("unlimited")));
+    }
+
 }
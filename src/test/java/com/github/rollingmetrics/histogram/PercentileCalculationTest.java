@@ -21,11 +21,14 @@ package com.github.rollingmetrics.histogram;
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
 import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.util.OccupiedBucketsHistogram;
 import org.HdrHistogram.Histogram;
 import org.HdrHistogram.HistogramIterationValue;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static junit.framework.Assert.assertTrue;
@@ -124,4 +127,34 @@ public class PercentileCalculationTest {
         new HdrBuilder().buildReservoir().size();
     }
 
+    @Test
+    public void smartSnapshotOfSparseHistogramShouldBeEqualToHdrHistogramCalculation() {
+        double[] predefinedPercentiles = {0.0, 0.1, 0.5, 0.75, 0.9, 0.99, 0.999, 1.0};
+        Random random = new Random(42);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Histogram histogram = new Histogram(TimeUnit.HOURS.toNanos(1), 3);
+            int valueCount = 1 + random.nextInt(300);
+            for (int i = 0; i < valueCount; i++) {
+                histogram.recordValueWithCount(1 + (long) (Math.pow(random.nextDouble(), 4) * TimeUnit.SECONDS.toNanos(10)), 1 + random.nextInt(3));
+            }
+
+            Snapshot snapshot = HdrReservoir.takeSmartSnapshot(predefinedPercentiles, histogram);
+            assertEquals(histogram.getMean(), snapshot.getMean());
+            assertEquals(histogram.getStdDeviation(), snapshot.getStdDev());
+            assertEquals(histogram.getValueAtPercentile(50.0), (long) snapshot.getMedian());
+            for (double quantile : predefinedPercentiles) {
+                assertEquals(histogram.getValueAtPercentile(quantile * 100.0), (long) snapshot.getValue(quantile));
+            }
+
+            OccupiedBucketsHistogram indexedHistogram = new OccupiedBucketsHistogram(histogram);
+            indexedHistogram.add(histogram);
+            Snapshot indexedSnapshot = HdrReservoir.takeSmartSnapshot(predefinedPercentiles, indexedHistogram);
+            assertEquals(snapshot.getMin(), indexedSnapshot.getMin());
+            assertEquals(snapshot.getMax(), indexedSnapshot.getMax());
+            assertEquals(snapshot.getMean(), indexedSnapshot.getMean());
+            assertEquals(snapshot.getStdDev(), indexedSnapshot.getStdDev());
+            assertTrue(Arrays.equals(snapshot.getValues(), indexedSnapshot.getValues()));
+        }
+    }
+
 }
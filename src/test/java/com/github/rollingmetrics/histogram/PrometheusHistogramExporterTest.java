@@ -0,0 +1,123 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PrometheusHistogramExporterTest {
+
+    private static final String EXPECTED =
+            "# TYPE latency_seconds histogram\n" +
+            "latency_seconds_bucket{le=\"0.001\"} 1\n" +
+            "latency_seconds_bucket{le=\"0.01\"} 2\n" +
+            "latency_seconds_bucket{le=\"0.1\"} 2\n" +
+            "latency_seconds_bucket{le=\"+Inf\"} 3\n" +
+            "latency_seconds_sum 1.010577792\n" +
+            "latency_seconds_count 3\n";
+
+    private final PrometheusHistogramExporter exporter = new PrometheusHistogramExporter("latency_seconds", new long[] {1_000_000, 10_000_000, 100_000_000}, 9);
+
+    @Test
+    public void shouldWriteToAppendable() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        exporter.write(takeSnapshot(new HdrBuilder().withSignificantDigits(3)), builder);
+        assertEquals(EXPECTED, builder.toString());
+    }
+
+    @Test
+    public void shouldWriteToByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (int i = 0; i < 2; i++) {
+            buffer.clear();
+            exporter.write(takeSnapshot(new HdrBuilder().withSignificantDigits(3).withoutSnapshotOptimization()), buffer);
+            buffer.flip();
+            assertEquals(EXPECTED, UTF_8.decode(buffer).toString());
+        }
+    }
+
+    @Test
+    public void shouldWriteEmptySnapshot() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        exporter.write((RichSnapshot) new HdrBuilder().buildReservoir().getSnapshot(), builder);
+        assertEquals("# TYPE latency_seconds histogram\n" +
+                "latency_seconds_bucket{le=\"0.001\"} 0\n" +
+                "latency_seconds_bucket{le=\"0.01\"} 0\n" +
+                "latency_seconds_bucket{le=\"0.1\"} 0\n" +
+                "latency_seconds_bucket{le=\"+Inf\"} 0\n" +
+                "latency_seconds_sum 0\n" +
+                "latency_seconds_count 0\n", builder.toString());
+    }
+
+    @Test
+    public void batchCountsShouldBeSameAsSingleCounts() {
+        long[] bounds = PrometheusHistogramExporter.exponentialBucketBounds(1000, 1.5, 40);
+        for (HdrBuilder builder : new HdrBuilder[] {new HdrBuilder(), new HdrBuilder().withoutSnapshotOptimization()}) {
+            Reservoir reservoir = builder.buildReservoir();
+            for (int i = 0; i < 10_000; i++) {
+                reservoir.update(ThreadLocalRandom.current().nextLong(10_000_000));
+            }
+            RichSnapshot snapshot = (RichSnapshot) reservoir.getSnapshot();
+            long[] batchCounts = new long[bounds.length];
+            snapshot.getCountsAtOrBelow(bounds, batchCounts);
+            long[] singleCounts = new long[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                singleCounts[i] = snapshot.getCountAtOrBelow(bounds[i]);
+            }
+            assertArrayEquals(singleCounts, batchCounts);
+        }
+    }
+
+    @Test
+    public void shouldCreateExponentialBounds() {
+        assertArrayEquals(new long[] {1, 2, 4, 8}, PrometheusHistogramExporter.exponentialBucketBounds(1, 2.0, 4));
+        assertArrayEquals(new long[] {1, 2, 3, 4}, PrometheusHistogramExporter.exponentialBucketBounds(1, 1.1, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowUnsortedBounds() {
+        new PrometheusHistogramExporter("latency", new long[] {2, 1}, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowWrongName() {
+        new PrometheusHistogramExporter("latency-seconds", new long[] {1}, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowTooBigScale() {
+        new PrometheusHistogramExporter("latency", new long[] {1}, PrometheusHistogramExporter.MAX_DECIMAL_SCALE + 1);
+    }
+
+    private static RichSnapshot takeSnapshot(HdrBuilder builder) {
+        Reservoir reservoir = builder.buildReservoir();
+        reservoir.update(500_000);
+        reservoir.update(10_000_000);
+        reservoir.update(1_000_000_000);
+        return (RichSnapshot) reservoir.getSnapshot();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class RichSnapshotTest {
+
+    @Test
+    public void smartSnapshotShouldAnswerSameAsHistogram() {
+        checkAgainstHistogram(new HdrBuilder());
+    }
+
+    @Test
+    public void fullSnapshotShouldAnswerSameAsHistogram() {
+        checkAgainstHistogram(new HdrBuilder().withoutSnapshotOptimization());
+    }
+
+    @Test
+    public void shouldCountValuesAroundBounds() {
+        for (HdrBuilder builder : new HdrBuilder[] {new HdrBuilder(), new HdrBuilder().withoutSnapshotOptimization()}) {
+            Reservoir reservoir = builder.withSignificantDigits(3).buildReservoir();
+            reservoir.update(10);
+            reservoir.update(20);
+            reservoir.update(30);
+            RichSnapshot snapshot = (RichSnapshot) reservoir.getSnapshot();
+
+            assertEquals(3, snapshot.getCount());
+            assertEquals(0, snapshot.getCountAtOrBelow(-1));
+            assertEquals(0, snapshot.getCountAtOrBelow(9));
+            assertEquals(1, snapshot.getCountAtOrBelow(10));
+            assertEquals(2, snapshot.getCountAtOrBelow(29));
+            assertEquals(3, snapshot.getCountAtOrBelow(Long.MAX_VALUE));
+
+            assertEquals(1, snapshot.getCountBetween(20, 20));
+            assertEquals(2, snapshot.getCountBetween(11, 30));
+            assertEquals(3, snapshot.getCountBetween(Long.MIN_VALUE, Long.MAX_VALUE));
+            assertEquals(0, snapshot.getCountBetween(-10, -1));
+
+            assertEquals(100.0 * 2 / 3, snapshot.getPercentileAtValue(25), 0.0001);
+            assertEquals(100.0, snapshot.getPercentileAtValue(30), 0.0001);
+        }
+    }
+
+    @Test
+    public void emptySnapshotShouldBeRich() {
+        RichSnapshot snapshot = (RichSnapshot) new HdrBuilder().buildReservoir().getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getCountAtOrBelow(100));
+        assertEquals(0, snapshot.getCountBetween(1, 100));
+        assertEquals(0.0, snapshot.getPercentileAtValue(100), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowInvertedBounds() {
+        Reservoir reservoir = new HdrBuilder().buildReservoir();
+        reservoir.update(10);
+        ((RichSnapshot) reservoir.getSnapshot()).getCountBetween(20, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptySnapshotShouldDisallowInvertedBounds() {
+        EmptySnapshot.INSTANCE.getCountBetween(20, 10);
+    }
+
+    private void checkAgainstHistogram(HdrBuilder builder) {
+        Reservoir reservoir = builder.withHighestTrackableValue(3_600_000_000L, OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE).buildReservoir();
+        Histogram histogram = new Histogram(3_600_000_000L, 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong(100_000_000);
+            reservoir.update(value);
+            histogram.recordValue(value);
+        }
+
+        RichSnapshot snapshot = (RichSnapshot) reservoir.getSnapshot();
+        assertEquals(histogram.getTotalCount(), snapshot.getCount());
+        for (int i = 0; i < 1000; i++) {
+            long low = random.nextLong(100_000_000);
+            long high = low + random.nextLong(100_000_000);
+            assertEquals(histogram.getCountBetweenValues(0, low), snapshot.getCountAtOrBelow(low));
+            assertEquals(histogram.getCountBetweenValues(low, high), snapshot.getCountBetween(low, high));
+            assertEquals(histogram.getPercentileAtOrBelowValue(low), snapshot.getPercentileAtValue(low), 0.000001);
+        }
+    }
+
+}
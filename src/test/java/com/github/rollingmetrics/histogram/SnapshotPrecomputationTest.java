@@ -0,0 +1,176 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.instrumentation.InstrumentationListener;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SnapshotPrecomputationTest {
+
+    @Test
+    public void whenPrecomputationPeriodSpecifiedThenReservoirShouldBeDecoratedByProxy() {
+        Reservoir reservoir = new HdrBuilder().withBackgroundSnapshotPrecomputation(Duration.ofSeconds(5)).buildReservoir();
+        assertTrue(reservoir instanceof PrecomputedSnapshotReservoir);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void precomputationShouldNotBeCombinedWithCaching() {
+        new HdrBuilder()
+                .withSnapshotCachingDuration(Duration.ofSeconds(5))
+                .withBackgroundSnapshotPrecomputation(Duration.ofSeconds(5))
+                .buildReservoir();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void precomputationShouldNotBeCombinedWithResetOnSnapshot() {
+        new HdrBuilder()
+                .resetReservoirOnSnapshot()
+                .withBackgroundSnapshotPrecomputation(Duration.ofSeconds(5))
+                .buildReservoir();
+    }
+
+    @Test
+    public void zeroDurationShouldNotLeadToCreateDecorator() {
+        Reservoir reservoir = new HdrBuilder().withBackgroundSnapshotPrecomputation(Duration.ZERO).buildReservoir();
+        assertFalse(reservoir instanceof PrecomputedSnapshotReservoir);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDurationShouldBeDisallowed() {
+        new HdrBuilder().withBackgroundSnapshotPrecomputation(Duration.ofSeconds(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullSchedulerShouldBeDisallowed() {
+        new HdrBuilder().withBackgroundSnapshotPrecomputation(Duration.ofSeconds(1), null);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sizeMethodShouldBeUndefined() {
+        Reservoir reservoir = new HdrBuilder().withBackgroundSnapshotPrecomputation(Duration.ofSeconds(10)).buildReservoir();
+        reservoir.size();
+    }
+
+    @Test
+    public void shouldReturnPublishedSnapshotUntilRefresh() {
+        PrecomputedSnapshotReservoir reservoir = new PrecomputedSnapshotReservoir(new HdrBuilder().neverResetReservoir().buildReservoir());
+
+        reservoir.update(10);
+        Snapshot firstSnapshot = reservoir.getSnapshot();
+        assertEquals(10, firstSnapshot.getMax());
+
+        reservoir.update(20);
+        assertSame(firstSnapshot, reservoir.getSnapshot());
+
+        reservoir.refresh();
+        Snapshot secondSnapshot = reservoir.getSnapshot();
+        assertNotSame(firstSnapshot, secondSnapshot);
+        assertEquals(20, secondSnapshot.getMax());
+        assertSame(secondSnapshot, reservoir.getSnapshot());
+    }
+
+    @Test
+    public void publishedFullSnapshotShouldNotBeAffectedByRecomputation() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            PrecomputedSnapshotReservoir reservoir = (PrecomputedSnapshotReservoir) new HdrBuilder()
+                    .neverResetReservoir()
+                    .withoutSnapshotOptimization()
+                    .withBackgroundSnapshotPrecomputation(Duration.ofHours(1), scheduler)
+                    .buildReservoir();
+            reservoir.update(10);
+            Snapshot firstSnapshot = reservoir.getSnapshot();
+
+            reservoir.update(20);
+            reservoir.update(30);
+            reservoir.refresh();
+
+            assertEquals(1, firstSnapshot.size());
+            assertEquals(10, firstSnapshot.getMax());
+            assertEquals(10.0, firstSnapshot.getMedian(), 0.0);
+            assertEquals(3, reservoir.getSnapshot().size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failureOfRecomputationShouldBeReportedToListener() throws InterruptedException {
+        CountDownLatch failures = new CountDownLatch(2);
+        InstrumentationListener listener = new InstrumentationListener() {
+            @Override
+            public void onBackgroundTaskFailure(Throwable failure) {
+                failures.countDown();
+            }
+        };
+        Reservoir brokenTarget = new Reservoir() {
+            @Override
+            public int size() {
+                return 0;
+            }
+            @Override
+            public void update(long value) {
+            }
+            @Override
+            public Snapshot getSnapshot() {
+                throw new IllegalStateException("recomputation failed");
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            PrecomputedSnapshotReservoir reservoir = PrecomputedSnapshotReservoir.startRefreshing(brokenTarget, 5, scheduler, listener);
+            // second notification proves that failure does not suppress subsequent executions
+            failures.await();
+            reservoir.update(10);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void snapshotShouldBeRefreshedWithoutReaders() throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Reservoir reservoir = new HdrBuilder()
+                    .neverResetReservoir()
+                    .withBackgroundSnapshotPrecomputation(Duration.ofMillis(10), scheduler)
+                    .buildReservoir();
+            reservoir.update(10);
+            assertEquals(10, reservoir.getSnapshot().getMax());
+
+            reservoir.update(20);
+            while (reservoir.getSnapshot().getMax() != 20) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+}
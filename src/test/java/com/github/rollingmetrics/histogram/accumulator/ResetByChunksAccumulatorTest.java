@@ -21,7 +21,9 @@ import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.RichSnapshot;
 import com.github.rollingmetrics.util.MockExecutor;
+import org.HdrHistogram.Recorder;
 import org.junit.Test;
 
 import java.time.Duration;
@@ -105,6 +107,68 @@ public class ResetByChunksAccumulatorTest {
         assertEquals(0, snapshot.getMax());
     }
 
+    @Test
+    public void shouldKeepValuesOfChunksWithDifferentRanges() {
+        AtomicLong time = new AtomicLong(0);
+        Clock wallClock = Clock.mock(time);
+        Reservoir reservoir = new HdrBuilder(wallClock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofMillis(3000), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .buildReservoir();
+
+        long hour = TimeUnit.HOURS.toNanos(1);
+        reservoir.update(hour);
+        time.addAndGet(1000);
+        reservoir.update(10);
+        time.addAndGet(1000);
+        reservoir.update(20);
+        time.addAndGet(1000);
+        reservoir.update(30);
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(hour, snapshot.getMax(), hour / 100);
+        assertEquals(4, ((RichSnapshot) snapshot).getCount());
+
+        // chunk with huge value expires, the histogram released from archive is reused for small values
+        time.addAndGet(1000);
+        reservoir.update(40);
+        snapshot = reservoir.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(40, snapshot.getMax());
+        assertEquals(4, ((RichSnapshot) snapshot).getCount());
+
+        for (int i = 0; i < 10; i++) {
+            time.addAndGet(1000);
+            reservoir.update(100 + i);
+        }
+        snapshot = reservoir.getSnapshot();
+        assertEquals(106, snapshot.getMin());
+        assertEquals(109, snapshot.getMax());
+        assertEquals(4, ((RichSnapshot) snapshot).getCount());
+    }
+
+    @Test
+    public void resetShouldDiscardCurrentAndArchivedChunks() {
+        AtomicLong time = new AtomicLong(0);
+        ResetByChunksAccumulator accumulator = new ResetByChunksAccumulator(() -> new Recorder(2), 3, 1000, Clock.mock(time), MockExecutor.INSTANCE);
+
+        accumulator.recordSingleValueWithExpectedInterval(10, 0);
+        time.set(1500); // first chunk is moved to archive
+        accumulator.recordSingleValueWithExpectedInterval(20, 0);
+        assertEquals(2, accumulator.getSnapshot(RichSnapshot::fromHistogram).size());
+
+        accumulator.reset();
+        assertEquals(0, accumulator.getSnapshot(RichSnapshot::fromHistogram).size());
+
+        accumulator.recordSingleValueWithExpectedInterval(30, 0);
+        time.set(2500);
+        accumulator.recordSingleValueWithExpectedInterval(40, 0);
+        Snapshot snapshot = accumulator.getSnapshot(RichSnapshot::fromHistogram);
+        assertEquals(30, snapshot.getMin());
+        assertEquals(40, snapshot.getMax());
+    }
+
     @Test
     public void testToString() {
         new HdrBuilder().resetReservoirPeriodicallyByChunks(Duration.ofSeconds(60), 3)
@@ -19,15 +19,23 @@ package com.github.rollingmetrics.histogram.accumulator;
 
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
 import com.github.rollingmetrics.histogram.HdrBuilder;
 import com.github.rollingmetrics.histogram.HdrBuilder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.function.Function;
+
 import static junit.framework.TestCase.assertEquals;
 import static org.junit.Assert.assertNotSame;
 
 public class ResetOnSnapshotAccumulatorTest {
 
+    private static final Function<Histogram, Snapshot> MIN_MAX_SNAPSHOT = histogram -> new UniformSnapshot(new long[] {histogram.getMinValue(), histogram.getMaxValue()});
+
     @Test
     public void shouldCacheSnapshot() {
         Reservoir reservoir = new HdrBuilder().resetReservoirOnSnapshot().buildReservoir();
@@ -51,9 +59,51 @@ public class ResetOnSnapshotAccumulatorTest {
         assertEquals(60, thirdSnapshot.getMax());
     }
 
+    @Test
+    public void consumersShouldNotStealDataFromEachOther() {
+        List<Reservoir> reservoirs = new HdrBuilder().resetReservoirOnSnapshot().buildReservoirsForIndependentConsumers(2);
+        Reservoir first = reservoirs.get(0);
+        Reservoir second = reservoirs.get(1);
+
+        first.update(10);
+        second.update(20);
+        Snapshot snapshot = first.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+
+        first.update(30);
+        snapshot = second.getSnapshot();
+        assertEquals(10, snapshot.getMin());
+        assertEquals(30, snapshot.getMax());
+
+        snapshot = first.getSnapshot();
+        assertEquals(30, snapshot.getMin());
+        assertEquals(30, snapshot.getMax());
+
+        assertEquals(0, first.getSnapshot().getMax());
+        assertEquals(0, second.getSnapshot().getMax());
+    }
+
+    @Test
+    public void consumerShouldNotSeeValuesRecordedBeforeRegistration() {
+        ResetOnSnapshotAccumulator accumulator = new ResetOnSnapshotAccumulator(new Recorder(2));
+        accumulator.recordSingleValueWithExpectedInterval(10, 0);
+        Accumulator consumer = accumulator.newConsumer();
+        Accumulator thirdConsumer = consumer.newConsumer();
+        consumer.recordSingleValueWithExpectedInterval(20, 0);
+
+        Snapshot snapshot = accumulator.getSnapshot(MIN_MAX_SNAPSHOT);
+        assertEquals(10, snapshot.getMin());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(0, accumulator.getSnapshot(MIN_MAX_SNAPSHOT).getMax());
+        assertEquals(20, consumer.getSnapshot(MIN_MAX_SNAPSHOT).getMin());
+        assertEquals(20, thirdConsumer.getSnapshot(MIN_MAX_SNAPSHOT).getMin());
+    }
+
     @Test
     public void testToString() {
         new HdrBuilder().resetReservoirOnSnapshot().buildReservoir().toString();
+        new HdrBuilder().resetReservoirOnSnapshot().buildReservoirsForIndependentConsumers(2).toString();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.histogram.log;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.HdrHistogram.Histogram;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteCompletedChunksAndRebuildWindows() throws IOException {
+        Path file = folder.newFile("latency.hlog").toPath();
+        AtomicLong time = new AtomicLong(0);
+        Reservoir reservoir;
+        try (IntervalLogWriter writer = new IntervalLogWriter(file, 64)) {
+            reservoir = new HdrBuilder(Clock.mock(time))
+                    .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                    .withBackgroundExecutor(MockExecutor.INSTANCE)
+                    .withIntervalLogWriter(writer)
+                    .buildReservoir();
+
+            reservoir.update(10);
+            reservoir.update(20);
+            time.set(1000);
+            reservoir.update(30);
+            time.set(2000);
+            reservoir.update(40);
+            time.set(3000);
+            reservoir.update(50);
+        }
+
+        List<Histogram> chunks = IntervalLogReader.readChunks(file);
+        assertEquals(3, chunks.size());
+        assertEquals(2, chunks.get(0).getTotalCount());
+        assertEquals(0, chunks.get(0).getStartTimeStamp());
+        assertEquals(1000, chunks.get(0).getEndTimeStamp());
+        assertEquals(30, chunks.get(1).getMaxValue());
+        assertEquals(40, chunks.get(2).getMaxValue());
+        assertEquals(3000, chunks.get(2).getEndTimeStamp());
+
+        Histogram window = IntervalLogReader.readWindow(file, 0, 2000);
+        assertEquals(3, window.getTotalCount());
+        assertEquals(10, window.getMinValue());
+        assertEquals(30, window.getMaxValue());
+
+        assertEquals(0, IntervalLogReader.readWindow(file, 5000, 6000).getTotalCount());
+    }
+
+    @Test
+    public void shouldAppendToExistingLog() throws IOException {
+        Path file = folder.newFile("append.hlog").toPath();
+        for (int i = 1; i <= 2; i++) {
+            try (IntervalLogWriter writer = new IntervalLogWriter(file)) {
+                Histogram histogram = new Histogram(2);
+                histogram.recordValue(i);
+                histogram.setStartTimeStamp(i * 1000);
+                histogram.setEndTimeStamp(i * 1000 + 1000);
+                writer.accept(histogram);
+            }
+        }
+        List<Histogram> chunks = IntervalLogReader.readChunks(file);
+        assertEquals(2, chunks.size());
+        assertEquals(2, chunks.get(1).getMaxValue());
+
+        String content = new String(Files.readAllBytes(file), "UTF-8");
+        assertEquals(content.indexOf("#[StartTime"), content.lastIndexOf("#[StartTime"));
+    }
+
+    @Test
+    public void shouldHandOffCopiesOfChunksAndDropThemWhenQueueIsFull() throws IOException {
+        Path file = folder.newFile("queue.hlog").toPath();
+        List<Runnable> scheduledTasks = new ArrayList<>();
+        try (IntervalLogWriter writer = new IntervalLogWriter(file, 64, 2, scheduledTasks::add)) {
+            long headerSize = Files.size(file);
+            Histogram histogram = new Histogram(2);
+            for (int i = 1; i <= 3; i++) {
+                histogram.reset();
+                histogram.recordValue(i);
+                histogram.setStartTimeStamp(i * 1000);
+                histogram.setEndTimeStamp(i * 1000 + 1000);
+                writer.accept(histogram);
+            }
+            assertEquals(1, writer.getDroppedChunkCount());
+            assertEquals(2, scheduledTasks.size());
+            assertEquals(headerSize, Files.size(file));
+
+            scheduledTasks.forEach(Runnable::run);
+            assertEquals(0, writer.getFailedChunkCount());
+        }
+
+        List<Histogram> chunks = IntervalLogReader.readChunks(file);
+        assertEquals(2, chunks.size());
+        assertEquals(1, chunks.get(0).getMaxValue());
+        assertEquals(2, chunks.get(1).getMaxValue());
+    }
+
+    @Test
+    public void shouldDropChunksAfterClose() throws IOException {
+        Path file = folder.newFile("closed.hlog").toPath();
+        IntervalLogWriter writer = new IntervalLogWriter(file, 64, 2, MockExecutor.INSTANCE);
+        writer.close();
+        writer.accept(new Histogram(2));
+        assertEquals(1, writer.getDroppedChunkCount());
+        assertEquals(0, IntervalLogReader.readChunks(file).size());
+    }
+
+    @Test
+    public void shouldRegisterGaugesForDroppedAndFailedChunks() throws IOException {
+        Path file = folder.newFile("gauges.hlog").toPath();
+        MetricRegistry registry = new MetricRegistry();
+        try (IntervalLogWriter writer = new IntervalLogWriter(file)) {
+            new HdrBuilder()
+                    .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                    .withIntervalLogWriter(writer)
+                    .buildAndRegisterHistogram(registry, "latency");
+        }
+        assertTrue(registry.getGauges().containsKey("latency.intervalLog.droppedChunks"));
+        assertTrue(registry.getGauges().containsKey("latency.intervalLog.failedChunks"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNonPositiveQueueCapacity() throws IOException {
+        new IntervalLogWriter(folder.newFile("capacity.hlog").toPath(), 64, 0, MockExecutor.INSTANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNullWriter() {
+        new HdrBuilder().withIntervalLogWriter(null);
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram.util;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistogramLayoutAlignmentTest {
+
+    @Test
+    public void shouldGrowSmallerHistogramToGeometryOfLayout() {
+        Histogram layout = new Histogram(2);
+        layout.recordValue(TimeUnit.HOURS.toNanos(1));
+        Histogram histogram = new Histogram(2);
+        histogram.recordValue(42);
+
+        HistogramUtil.resetAndAlignLayout(histogram, layout);
+
+        assertEquals(layout.getHighestTrackableValue(), histogram.getHighestTrackableValue());
+        assertEquals(layout.getEstimatedFootprintInBytes(), histogram.getEstimatedFootprintInBytes());
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMaxValue());
+
+        histogram.recordValue(7);
+        assertEquals(7, histogram.getMinValue());
+        assertEquals(7, histogram.getMaxValue());
+        assertEquals(1, histogram.getTotalCount());
+    }
+
+    @Test
+    public void shouldNotShrinkLargerHistogram() {
+        Histogram layout = new Histogram(2);
+        Histogram histogram = new Histogram(2);
+        histogram.recordValue(TimeUnit.HOURS.toNanos(1));
+        long highestTrackableValue = histogram.getHighestTrackableValue();
+
+        HistogramUtil.resetAndAlignLayout(histogram, layout);
+
+        assertEquals(highestTrackableValue, histogram.getHighestTrackableValue());
+        assertEquals(0, histogram.getTotalCount());
+    }
+
+    @Test
+    public void shouldNotTouchHistogramWithFixedRange() {
+        Histogram layout = new Histogram(2);
+        layout.recordValue(TimeUnit.HOURS.toNanos(1));
+        Histogram histogram = new Histogram(TimeUnit.SECONDS.toNanos(1), 2);
+        histogram.recordValue(42);
+
+        HistogramUtil.resetAndAlignLayout(histogram, layout);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(1), histogram.getHighestTrackableValue());
+        assertEquals(0, histogram.getTotalCount());
+    }
+
+    @Test
+    public void shouldNotTouchHistogramWithDifferentPrecision() {
+        Histogram layout = new Histogram(3);
+        layout.recordValue(TimeUnit.HOURS.toNanos(1));
+        Histogram histogram = new Histogram(2);
+        long highestTrackableValue = histogram.getHighestTrackableValue();
+
+        HistogramUtil.resetAndAlignLayout(histogram, layout);
+
+        assertEquals(highestTrackableValue, histogram.getHighestTrackableValue());
+    }
+
+}
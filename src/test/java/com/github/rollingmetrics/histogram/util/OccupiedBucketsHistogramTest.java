@@ -0,0 +1,116 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.histogram.util;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OccupiedBucketsHistogramTest {
+
+    @Test
+    public void shouldIndexEachOccupiedBucketOnce() {
+        OccupiedBucketsHistogram histogram = new OccupiedBucketsHistogram(2);
+        histogram.recordValue(1000);
+        histogram.recordValue(1001);
+        histogram.recordValueWithCount(42, 3);
+        histogram.recordValue(TimeUnit.HOURS.toNanos(1));
+        histogram.recordValueWithCount(7, 0);
+
+        assertEquals(3, histogram.getOccupiedBucketCount());
+        assertArrayEquals(new long[] {
+                histogram.lowestEquivalentValue(42),
+                histogram.lowestEquivalentValue(1000),
+                histogram.lowestEquivalentValue(TimeUnit.HOURS.toNanos(1))
+        }, histogram.getOccupiedValuesInAscendingOrder());
+    }
+
+    @Test
+    public void resetShouldClearIndex() {
+        OccupiedBucketsHistogram histogram = new OccupiedBucketsHistogram(2);
+        histogram.recordValue(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getOccupiedBucketCount());
+        assertEquals(0, histogram.getMaxValue());
+
+        histogram.recordValue(7);
+        assertArrayEquals(new long[] {7}, histogram.getOccupiedValuesInAscendingOrder());
+        assertEquals(7, histogram.getMinValue());
+        assertEquals(7, histogram.getMaxValue());
+    }
+
+    @Test
+    public void mergeShouldBeEquivalentToMergeOfHdrHistogram() {
+        Random random = new Random(42);
+        for (int attempt = 0; attempt < 50; attempt++) {
+            Histogram expected = new Histogram(3);
+            OccupiedBucketsHistogram target = new OccupiedBucketsHistogram(3);
+            for (int source = 0; source < 3; source++) {
+                Histogram plainSource = new ConcurrentHistogram(3);
+                OccupiedBucketsHistogram indexedSource = new OccupiedBucketsHistogram(3);
+                int valueCount = random.nextInt(200);
+                for (int i = 0; i < valueCount; i++) {
+                    long value = (long) (Math.pow(random.nextDouble(), 4) * TimeUnit.SECONDS.toNanos(10));
+                    long count = 1 + random.nextInt(3);
+                    plainSource.recordValueWithCount(value, count);
+                    indexedSource.recordValueWithCount(value, count);
+                }
+                expected.add(plainSource);
+                expected.add(indexedSource);
+                target.add(plainSource);
+                target.add(indexedSource);
+            }
+            assertEquivalent(expected, target);
+        }
+    }
+
+    @Test
+    public void mergeShouldIndexBucketsOfSource() {
+        Histogram source = new Histogram(2);
+        source.recordValue(0);
+        source.recordValue(Long.MAX_VALUE / 4);
+        OccupiedBucketsHistogram target = new OccupiedBucketsHistogram(2);
+
+        target.add(source);
+
+        assertEquals(2, target.getOccupiedBucketCount());
+        assertEquivalent(source, target);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void subtractionShouldBeUnsupported() {
+        new OccupiedBucketsHistogram(2).subtract(new Histogram(2));
+    }
+
+    private static void assertEquivalent(Histogram expected, Histogram actual) {
+        assertEquals(expected.getTotalCount(), actual.getTotalCount());
+        assertEquals(expected.getMinValue(), actual.getMinValue());
+        assertEquals(expected.getMaxValue(), actual.getMaxValue());
+        assertEquals(expected.getMean(), actual.getMean(), 0.0);
+        for (double percentile : new double[] {0.0, 50.0, 90.0, 99.0, 99.9, 100.0}) {
+            assertEquals(expected.getValueAtPercentile(percentile), actual.getValueAtPercentile(percentile));
+        }
+    }
+
+}
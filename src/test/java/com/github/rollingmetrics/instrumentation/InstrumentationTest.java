@@ -0,0 +1,177 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.github.rollingmetrics.instrumentation;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.accumulator.ResetByChunksAccumulator;
+import com.github.rollingmetrics.top.Top;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.HdrHistogram.Recorder;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentationTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+    private final CountingListener listener = new CountingListener();
+
+    @Test
+    public void shouldNotifyAboutHistogramRotationAndSnapshot() {
+        Reservoir reservoir = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withoutSnapshotOptimization()
+                .withInstrumentationListener(listener)
+                .buildReservoir();
+
+        reservoir.update(10);
+        reservoir.getSnapshot();
+        assertEquals(0, listener.rotations.get());
+        assertEquals(1, listener.snapshots.get());
+
+        time.addAndGet(1000);
+        reservoir.update(20);
+        assertEquals(1, listener.rotations.get());
+        assertEquals(1, listener.snapshots.get());
+        // custom executor does not expose its queue
+        assertEquals(0, listener.queuedTasks.get());
+    }
+
+    @Test
+    public void shouldNotifyOnlyAboutRecomputationOfCachedSnapshot() {
+        Reservoir reservoir = new HdrBuilder(clock)
+                .withSnapshotCachingDuration(Duration.ofSeconds(1))
+                .withInstrumentationListener(listener)
+                .buildReservoir();
+
+        reservoir.update(10);
+        reservoir.getSnapshot();
+        reservoir.getSnapshot();
+        assertEquals(1, listener.snapshots.get());
+
+        time.addAndGet(1000);
+        reservoir.getSnapshot();
+        assertEquals(2, listener.snapshots.get());
+    }
+
+    @Test
+    public void shouldNotifyAboutTopRotationAndSnapshot() {
+        Top top = Top.builder(1)
+                .withClock(clock)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withInstrumentationListener(listener)
+                .build();
+
+        top.update(0, 10, TimeUnit.MILLISECONDS, () -> "SELECT 1");
+        top.getPositionsInDescendingOrder();
+        assertEquals(0, listener.rotations.get());
+        assertEquals(1, listener.snapshots.get());
+
+        time.addAndGet(1000);
+        top.update(0, 20, TimeUnit.MILLISECONDS, () -> "SELECT 2");
+        assertEquals(1, listener.rotations.get());
+    }
+
+    @Test
+    public void shouldNotifyAboutFailedRotation() {
+        ResetByChunksAccumulator accumulator = new ResetByChunksAccumulator(() -> new Recorder(2), 3, 1000, clock, MockExecutor.INSTANCE,
+                listener, completedChunk -> {throw new IllegalStateException("consumer failed");});
+
+        accumulator.recordSingleValueWithExpectedInterval(10, 0);
+        time.addAndGet(1000);
+        accumulator.recordSingleValueWithExpectedInterval(20, 0);
+        assertEquals(1, listener.rotations.get());
+    }
+
+    @Test
+    public void metricSetShouldStoreValuesInHistograms() {
+        MetricRegistry registry = new MetricRegistry();
+        InstrumentationMetricSet metricSet = new InstrumentationMetricSet("instrumentation", new HdrBuilder().neverResetReservoir());
+        registry.registerAll(metricSet);
+
+        Reservoir reservoir = new HdrBuilder(clock)
+                .resetReservoirPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .withInstrumentationListener(metricSet)
+                .buildReservoir();
+        reservoir.update(10);
+        time.addAndGet(1000);
+        reservoir.update(10);
+        reservoir.getSnapshot();
+        metricSet.onBackgroundTaskQueued(3);
+
+        Histogram rotation = registry.getHistograms().get("instrumentation.rotationNanos");
+        Histogram snapshot = registry.getHistograms().get("instrumentation.snapshotNanos");
+        Histogram queueSize = registry.getHistograms().get("instrumentation.backgroundQueueSize");
+        assertEquals(1, rotation.getCount());
+        assertTrue(snapshot.getCount() >= 1);
+        assertEquals(3, queueSize.getSnapshot().getMax());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNullListenerInHdrBuilder() {
+        new HdrBuilder().withInstrumentationListener(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNullListenerInTopBuilder() {
+        Top.builder(1).withInstrumentationListener(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowEmptyName() {
+        new InstrumentationMetricSet("");
+    }
+
+    private static final class CountingListener implements InstrumentationListener {
+
+        final AtomicInteger rotations = new AtomicInteger();
+        final AtomicInteger snapshots = new AtomicInteger();
+        final AtomicInteger queuedTasks = new AtomicInteger();
+
+        @Override
+        public void onRotation(long durationNanos) {
+            rotations.incrementAndGet();
+        }
+
+        @Override
+        public void onSnapshot(long durationNanos) {
+            snapshots.incrementAndGet();
+        }
+
+        @Override
+        public void onBackgroundTaskQueued(int queueSize) {
+            queuedTasks.incrementAndGet();
+        }
+    }
+
+}
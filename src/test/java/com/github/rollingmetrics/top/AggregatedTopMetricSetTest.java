@@ -0,0 +1,91 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class AggregatedTopMetricSetTest {
+
+    private final AggregatedTop top = AggregatedTop.builder(2).withSnapshotCachingDuration(Duration.ZERO).build();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNullName() {
+        new AggregatedTopMetricSet(null, top, TimeUnit.MILLISECONDS, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowEmptyName() {
+        new AggregatedTopMetricSet("", top, TimeUnit.MILLISECONDS, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNullTop() {
+        new AggregatedTopMetricSet("my-top", null, TimeUnit.MILLISECONDS, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowNegativeDigits() {
+        new AggregatedTopMetricSet("my-top", top, TimeUnit.MILLISECONDS, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowMonitoredSignaturesLesserThanSize() {
+        AggregatedTop.builder(10).withMonitoredSignatures(9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowSingleChunk() {
+        AggregatedTop.builder(10).resetPositionsPeriodicallyByChunks(Duration.ofMinutes(1), 1);
+    }
+
+    @Test
+    public void testGauges() {
+        Map<String, Metric> gauges = new AggregatedTopMetricSet("my-top", top, TimeUnit.MILLISECONDS, 3).getMetrics();
+        assertEquals(9, gauges.size());
+        assertEquals("MILLISECONDS", getValue(gauges, "my-top.latencyUnit"));
+        assertEquals("", getValue(gauges, "my-top.0.signature"));
+        assertEquals(0L, getValue(gauges, "my-top.0.count"));
+        assertEquals(new BigDecimal("0.000"), getValue(gauges, "my-top.0.totalLatency"));
+
+        top.update("select", 2, TimeUnit.MILLISECONDS);
+        top.update("select", 3, TimeUnit.MILLISECONDS);
+        top.update("insert", 1, TimeUnit.MILLISECONDS);
+
+        assertEquals("select", getValue(gauges, "my-top.0.signature"));
+        assertEquals(2L, getValue(gauges, "my-top.0.count"));
+        assertEquals(new BigDecimal("5.000"), getValue(gauges, "my-top.0.totalLatency"));
+        assertEquals(new BigDecimal("2.500"), getValue(gauges, "my-top.0.meanLatency"));
+        assertEquals("insert", getValue(gauges, "my-top.1.signature"));
+        assertEquals(new BigDecimal("1.000"), getValue(gauges, "my-top.1.meanLatency"));
+    }
+
+    private static Object getValue(Map<String, Metric> gauges, String name) {
+        return ((Gauge) gauges.get(name)).getValue();
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top;
+
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class DescriptionPoolTest {
+
+    private final DescriptionPool pool = new DescriptionPool(16);
+
+    @Test
+    public void shouldReturnCanonicalInstance() {
+        String canonical = pool.intern(new String("SELECT 1"));
+        String copy = new String("SELECT 1");
+
+        assertSame(canonical, pool.intern(copy));
+        assertSame(canonical, pool.intern(canonical));
+    }
+
+    @Test
+    public void capacityShouldBeRoundedUpToPowerOfTwo() {
+        assertEquals(16, pool.getCapacity());
+        assertEquals(32, new DescriptionPool(17).getCapacity());
+        assertEquals(2, new DescriptionPool(2).getCapacity());
+    }
+
+    @Test
+    public void shouldEvictDescriptionsWhenCapacityExceeded() {
+        String first = pool.intern(new String("query-0"));
+        for (int i = 1; i < 10_000; i++) {
+            pool.intern("query-" + i);
+        }
+
+        String copy = new String("query-0");
+        String interned = pool.intern(copy);
+        assertEquals(first, interned);
+        assertNotSame(first, interned);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallCapacityShouldBeDisallowed() {
+        new DescriptionPool(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLargeCapacityShouldBeDisallowed() {
+        new DescriptionPool(DescriptionPool.MAX_CAPACITY + 1);
+    }
+
+    @Test
+    public void positionsOfSameQueryShouldShareDescription() {
+        Top top = Top.builder(3)
+                .withDescriptionPool(pool)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .build();
+        top.update(1, 10, TimeUnit.MILLISECONDS, () -> new String("SELECT * FROM USERS"));
+        top.update(2, 20, TimeUnit.MILLISECONDS, new StringBuilder("SELECT * FROM USERS"), StringBuilder::toString);
+        top.update(3, TimeUnit.MILLISECONDS.toNanos(30), new StringBuilder("SELECT * FROM USERS"), StringBuilder::toString);
+
+        List<Position> positions = top.getPositionsInDescendingOrder();
+        assertEquals(3, positions.size());
+        for (Position position : positions) {
+            assertEquals("SELECT * FROM USERS", position.getQueryDescription());
+        }
+        assertSame(positions.get(0).getQueryDescription(), positions.get(1).getQueryDescription());
+        assertSame(positions.get(0).getQueryDescription(), positions.get(2).getQueryDescription());
+    }
+
+    @Test
+    public void archivedPositionsShouldShareDescription() {
+        AtomicLong currentTimeMillis = new AtomicLong();
+        Top top = Top.builder(2)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(6), 3)
+                .withDescriptionPool(pool)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(Runnable::run)
+                .build();
+
+        top.update(0, 10, TimeUnit.MILLISECONDS, new StringBuilder("SELECT * FROM USERS"), StringBuilder::toString);
+        currentTimeMillis.addAndGet(2000);
+        top.update(2000, 20, TimeUnit.MILLISECONDS, new StringBuilder("SELECT * FROM USERS"), StringBuilder::toString);
+        currentTimeMillis.addAndGet(2000);
+        top.update(4000, 5, TimeUnit.MILLISECONDS, () -> "rotate");
+
+        List<Position> positions = top.getPositionsInDescendingOrder();
+        assertEquals(2, positions.size());
+        assertEquals("SELECT * FROM USERS", positions.get(0).getQueryDescription());
+        assertSame(positions.get(0).getQueryDescription(), positions.get(1).getQueryDescription());
+    }
+
+    @Test
+    public void descriptionShouldBeInternedAfterTruncation() {
+        String canonical = pool.intern(new String("0123456789"));
+        Position position = new Position(1, 10, TimeUnit.MILLISECONDS, () -> "0123456789abcdef", 10, pool);
+        assertSame(canonical, position.getQueryDescription());
+
+        Position deferred = new Position(1, 10, TimeUnit.MILLISECONDS, "0123456789abcdef", String::toString, 10, pool);
+        assertSame(canonical, deferred.getQueryDescription());
+    }
+
+}
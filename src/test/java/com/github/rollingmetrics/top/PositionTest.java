@@ -20,6 +20,7 @@ package com.github.rollingmetrics.top;
 import org.junit.Test;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
@@ -59,4 +60,54 @@ public class PositionTest {
         System.out.println(position.toString());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldBuildDeferredDescriptionOnlyOnce() {
+        AtomicInteger formattingCount = new AtomicInteger();
+        Position position = new Position(System.currentTimeMillis(), 2, TimeUnit.MILLISECONDS, 42, id -> {
+            formattingCount.incrementAndGet();
+            return "SELECT * FROM T WHERE ID = " + id;
+        }, 1000);
+        assertEquals(0, formattingCount.get());
+        assertEquals(2_000_000L, position.getLatencyInNanoseconds());
+
+        assertEquals("SELECT * FROM T WHERE ID = 42", position.getQueryDescription());
+        assertEquals("SELECT * FROM T WHERE ID = 42", position.getQueryDescription());
+        assertEquals(1, formattingCount.get());
+    }
+
+    @Test
+    public void shouldReduceTooLongDeferredDescriptions() {
+        Position position = new Position(System.currentTimeMillis(), 22, TimeUnit.MILLISECONDS, 2000, TestData::generateString, 1000);
+        assertEquals(1000, position.getQueryDescription().length());
+    }
+
+    @Test
+    public void deferredAndEagerPositionsShouldBeEqual() {
+        long timestamp = System.currentTimeMillis();
+        Position deferred = new Position(timestamp, 2, TimeUnit.MILLISECONDS, "DUAL", table -> "SELECT * FROM " + table, 1000);
+        Position eager = new Position(timestamp, 2, TimeUnit.MILLISECONDS, "SELECT * FROM DUAL");
+        assertEquals(eager, deferred);
+        assertEquals(eager.hashCode(), deferred.hashCode());
+        assertEquals(0, eager.compareTo(deferred));
+    }
+
+    @Test
+    public void nullDeferredDescriptionShouldBeReplacedByNotice() {
+        Position position = new Position(System.currentTimeMillis(), 22, TimeUnit.MILLISECONDS, "context", context -> null, 1000);
+        assertEquals("<description formatter returned null>", position.getQueryDescription());
+    }
+
+    @Test
+    public void failureOfFormatterShouldBeStoredAsDescription() {
+        AtomicInteger formattingCount = new AtomicInteger();
+        Position position = new Position(System.currentTimeMillis(), 22, TimeUnit.MILLISECONDS, "context", context -> {
+            formattingCount.incrementAndGet();
+            throw new IllegalStateException("broken");
+        }, 1000);
+        String description = position.getQueryDescription();
+        assertTrue(description, description.contains("java.lang.IllegalStateException: broken"));
+        assertEquals(description, position.getQueryDescription());
+        assertEquals(1, formattingCount.get());
+    }
+
+}
@@ -54,6 +54,11 @@ public class TopBuilderTest {
         Top.builder(1).withPositionCount(0);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void nullDescriptionPoolShouldBeDisallowed() {
+        Top.builder(1).withDescriptionPool(null);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void nullSlowQueryThresholdShouldBeDisallowed() {
         Top.builder(1).withLatencyThreshold(null);
@@ -19,13 +19,18 @@ package com.github.rollingmetrics.top;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
+import com.github.rollingmetrics.util.Clock;
 import org.junit.Test;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import static com.github.rollingmetrics.top.TestData.first;
 import static com.github.rollingmetrics.top.TestData.second;
@@ -122,4 +127,61 @@ public class TopMetricSetTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void allGaugesShouldShareSingleSnapshotDuringReportingCycle() {
+        AtomicInteger snapshotCount = new AtomicInteger();
+        Top countingTop = new Top() {
+            @Override
+            public void update(long timestamp, long latencyTime, TimeUnit latencyUnit, Supplier<String> descriptionSupplier) {
+                top.update(timestamp, latencyTime, latencyUnit, descriptionSupplier);
+            }
+            @Override
+            public List<Position> getPositionsInDescendingOrder() {
+                snapshotCount.incrementAndGet();
+                return top.getPositionsInDescendingOrder();
+            }
+            @Override
+            public int getSize() {
+                return top.getSize();
+            }
+        };
+        AtomicLong currentTimeMillis = new AtomicLong();
+        TopMetricSet metricSet = new TopMetricSet("my-top", countingTop, TimeUnit.MILLISECONDS, 3, Clock.mock(currentTimeMillis));
+        update(top, first);
+
+        for (int cycle = 1; cycle <= 3; cycle++) {
+            for (Metric metric : metricSet.getMetrics().values()) {
+                ((Gauge) metric).getValue();
+            }
+            assertEquals(cycle, snapshotCount.get());
+        }
+
+        // new cycle is detected by second read of the same gauge
+        update(top, second);
+        ((Gauge) metricSet.getMetrics().get("my-top.0.latency")).getValue();
+        assertEquals(4, snapshotCount.get());
+
+        // gauge which did not read the current snapshot should not see too old snapshot
+        update(top, third);
+        currentTimeMillis.addAndGet(ReportingSnapshot.MAX_SNAPSHOT_AGE_MILLIS);
+        Gauge<String> description = (Gauge<String>) metricSet.getMetrics().get("my-top.1.description");
+        assertEquals(second.getQueryDescription(), description.getValue());
+        assertEquals(5, snapshotCount.get());
+    }
+
+    @Test
+    public void latencyGaugeShouldNotAllocateNewValueWhenLatencyIsNotChanged() {
+        TopMetricSet metricSet = new TopMetricSet("my-top", top, TimeUnit.MILLISECONDS, 3);
+        Gauge<BigDecimal> gauge = (Gauge<BigDecimal>) metricSet.getMetrics().get("my-top.0.latency");
+        assertSame(gauge.getValue(), gauge.getValue());
+
+        top.update(0, 13_345_456, TimeUnit.NANOSECONDS, () -> "SELECT * FROM USERS");
+        BigDecimal value = gauge.getValue();
+        assertEquals(new BigDecimal("13.346"), value);
+        assertSame(value, gauge.getValue());
+
+        top.update(0, 14_000_000, TimeUnit.NANOSECONDS, () -> "SELECT * FROM USERS");
+        assertEquals(new BigDecimal("14.000"), gauge.getValue());
+    }
+
+}
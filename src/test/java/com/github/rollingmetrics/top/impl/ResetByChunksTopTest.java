@@ -17,6 +17,7 @@
 
 package com.github.rollingmetrics.top.impl;
 
+import com.github.rollingmetrics.top.Position;
 import com.github.rollingmetrics.top.Top;
 import com.github.rollingmetrics.util.Clock;
 import com.github.rollingmetrics.util.MockExecutor;
@@ -24,9 +25,13 @@ import com.github.rollingmetrics.top.TestData;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 
 public class ResetByChunksTopTest {
 
@@ -191,6 +196,59 @@ public class ResetByChunksTopTest {
         TopTestUtil.assertEmpty(top);
     }
 
+    @Test
+    public void archivedChunksShouldExpireWithoutRotation() {
+        AtomicLong currentTimeMillis = new AtomicLong(0L);
+        Top top = Top.builder(2)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .build();
+
+        TopTestUtil.update(top, TestData.fifth);
+        currentTimeMillis.set(1500L);
+        // rotation moves first chunk to archive
+        TopTestUtil.update(top, TestData.first);
+        currentTimeMillis.set(2500L);
+        // rotation moves second chunk to archive
+        TopTestUtil.update(top, TestData.second);
+        TopTestUtil.checkOrder(top, TestData.fifth, TestData.second);
+
+        // there are no writes anymore, so chunks are expired only by time
+        currentTimeMillis.set(4000L);
+        TopTestUtil.checkOrder(top, TestData.second, TestData.first);
+        currentTimeMillis.set(5000L);
+        TopTestUtil.checkOrder(top, TestData.second);
+        currentTimeMillis.set(6000L);
+        TopTestUtil.assertEmpty(top);
+    }
+
+    @Test
+    public void failureOfFormatterShouldNotBreakRotation() {
+        AtomicLong currentTimeMillis = new AtomicLong(0L);
+        Top top = Top.builder(2)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .build();
+
+        top.update(0, 10, TimeUnit.SECONDS, "context", context -> {
+            throw new IllegalStateException("broken");
+        });
+        currentTimeMillis.set(1500L);
+        // rotation materializes description of archived position
+        TopTestUtil.update(top, TestData.first);
+        currentTimeMillis.set(2500L);
+        TopTestUtil.update(top, TestData.second);
+
+        List<Position> positions = top.getPositionsInDescendingOrder();
+        assertEquals(2, positions.size());
+        assertTrue(positions.get(0).getQueryDescription().contains("broken"));
+        assertEquals(TestData.second, positions.get(1));
+    }
+
     @Test
     public void testToString() {
         for (int i = 1; i <= 2; i++) {
@@ -31,12 +31,14 @@ import org.junit.Assert;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
@@ -50,6 +52,8 @@ public class TopTestUtil {
         negativeLatencyShouldBeIgnored(top);
         tooShortLatencyShouldBeIgnored(top, latencyThresholdNanos);
         tooLongDescriptionShouldBeReduced(top, latencyThresholdNanos, maxDescriptionLength);
+        displacedPositionsShouldNotBeFormatted(size, top, latencyThresholdNanos);
+        latencyInNanosecondsShouldBeRecorded(top, latencyThresholdNanos);
     }
 
     public static void update(Top top, Position position) {
@@ -119,4 +123,34 @@ public class TopTestUtil {
         assertEquals(maxDescriptionLength, position.getQueryDescription().length());
     }
 
+    private static void displacedPositionsShouldNotBeFormatted(int size, Top top, long latencyThresholdNanos) {
+        AtomicInteger formattingCount = new AtomicInteger();
+        long timestamp = System.currentTimeMillis();
+        for (int i = 1; i <= size + 2; i++) {
+            top.update(timestamp, latencyThresholdNanos + i * 1000, TimeUnit.NANOSECONDS, i, number -> {
+                formattingCount.incrementAndGet();
+                return "SELECT " + number;
+            });
+        }
+        assertEquals(0, formattingCount.get());
+
+        List<Position> positions = top.getPositionsInDescendingOrder();
+        assertEquals("SELECT " + (size + 2), positions.get(0).getQueryDescription());
+        for (Position position : positions) {
+            position.getQueryDescription();
+        }
+        assertEquals(size, formattingCount.get());
+    }
+
+    private static void latencyInNanosecondsShouldBeRecorded(Top top, long latencyThresholdNanos) {
+        long timestamp = System.currentTimeMillis();
+        long latencyNanos = latencyThresholdNanos + TimeUnit.SECONDS.toNanos(1);
+        top.update(timestamp, latencyNanos, "DUAL", table -> "SELECT * FROM " + table);
+        top.update(timestamp, latencyThresholdNanos - 1, "DUAL", table -> "SELECT * FROM " + table);
+
+        Position position = top.getPositionsInDescendingOrder().get(0);
+        assertEquals(new Position(timestamp, latencyNanos, TimeUnit.NANOSECONDS, "SELECT * FROM DUAL"), position);
+        assertEquals(latencyNanos, position.getLatencyInNanoseconds());
+    }
+
 }
@@ -0,0 +1,209 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import com.codahale.metrics.Snapshot;
+import com.github.rollingmetrics.top.AggregatedPosition;
+import com.github.rollingmetrics.top.AggregatedTop;
+import com.github.rollingmetrics.top.AggregatedTopBuilder;
+import com.github.rollingmetrics.util.Clock;
+import com.github.rollingmetrics.util.MockExecutor;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResetByChunksAggregatedTopTest {
+
+    private final AtomicLong currentTimeMillis = new AtomicLong(0L);
+
+    @Test
+    public void shouldEvictChunksWhenRollingWindowIsElapsed() {
+        AggregatedTop top = AggregatedTop.builder(2)
+                .resetPositionsPeriodicallyByChunks(Duration.ofSeconds(3), 3)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .build();
+        assertEquals(Collections.emptyList(), top.getPositionsInDescendingOrder());
+
+        top.update("a", 3, TimeUnit.MILLISECONDS);
+        top.update("b", 1, TimeUnit.MILLISECONDS);
+        top.update("b", 1, TimeUnit.MILLISECONDS);
+
+        currentTimeMillis.set(1500L);
+        top.update("b", 2, TimeUnit.MILLISECONDS);
+        top.update("c", 1, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(
+                new AggregatedPosition("b", 3, 4_000_000),
+                new AggregatedPosition("a", 1, 3_000_000)
+        ), top.getPositionsInDescendingOrder());
+
+        // first chunk is evicted after 4000, second chunk is evicted after 5000
+        currentTimeMillis.set(4500L);
+        assertEquals(Arrays.asList(
+                new AggregatedPosition("b", 1, 2_000_000),
+                new AggregatedPosition("c", 1, 1_000_000)
+        ), top.getPositionsInDescendingOrder());
+
+        currentTimeMillis.set(5500L);
+        assertEquals(Collections.emptyList(), top.getPositionsInDescendingOrder());
+    }
+
+    @Test
+    public void shouldResetAllPositionsPeriodically() {
+        AggregatedTop top = AggregatedTop.builder(2)
+                .rankByCount()
+                .resetAllPositionsPeriodically(Duration.ofSeconds(1))
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .build();
+
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        top.update("a", -1, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.singletonList(new AggregatedPosition("a", 1, 1_000_000)), top.getPositionsInDescendingOrder());
+
+        currentTimeMillis.set(1001L);
+        top.update("b", 1, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.singletonList(new AggregatedPosition("b", 1, 1_000_000)), top.getPositionsInDescendingOrder());
+    }
+
+    @Test
+    public void shouldAggregateUpdatesFromDifferentThreads() throws InterruptedException {
+        AggregatedTop top = AggregatedTop.builder(1)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .build();
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    top.update("select", 1, TimeUnit.MICROSECONDS);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.singletonList(new AggregatedPosition("select", 4000, 4_000_000)), top.getPositionsInDescendingOrder());
+    }
+
+    @Test
+    public void shouldTrackLatencyDistributionOfSignaturesInTop() {
+        AggregatedTop top = AggregatedTop.builder(2)
+                .withLatencyDistribution(2, Duration.ofMinutes(1))
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .build();
+
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        // signature is not known as member of top until snapshot is taken
+        List<AggregatedPosition> positions = top.getPositionsInDescendingOrder();
+        assertEquals(0, positions.get(0).getLatencyDistribution().size());
+
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        top.update("a", 100, TimeUnit.MILLISECONDS);
+        top.update("a", 2, TimeUnit.HOURS);
+        Snapshot distribution = top.getPositionsInDescendingOrder().get(0).getLatencyDistribution();
+        assertEquals(3, distribution.size());
+        assertEquals(1_000_000, distribution.getMin(), 10_000);
+        assertEquals(100_000_000, distribution.getMedian(), 1_000_000);
+        // latencies above highest trackable value are truncated
+        assertEquals(TimeUnit.MINUTES.toNanos(1), distribution.getMax(), TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void latencyDistributionsShouldBeRecycledWhenSignaturesLeaveTop() {
+        LatencyDistributionPool pool = new LatencyDistributionPool(1, 2, TimeUnit.MINUTES.toNanos(1), 3, 1000, Clock.mock(currentTimeMillis), MockExecutor.INSTANCE);
+        AggregatedTop top = new ResetByChunksAggregatedTop(1, 10, AggregationRanking.COUNT, 1000, 3, Clock.mock(currentTimeMillis), MockExecutor.INSTANCE, pool);
+
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        top.getPositionsInDescendingOrder();
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        assertEquals(1, top.getPositionsInDescendingOrder().get(0).getLatencyDistribution().size());
+
+        for (int i = 0; i < 3; i++) {
+            top.update("b", 5, TimeUnit.MILLISECONDS);
+        }
+        assertEquals("b", top.getPositionsInDescendingOrder().get(0).getSignature());
+        top.update("b", 5, TimeUnit.MILLISECONDS);
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+
+        // histogram released by "a" is reused by "b" without values recorded for "a"
+        AggregatedPosition position = top.getPositionsInDescendingOrder().get(0);
+        assertEquals("b", position.getSignature());
+        assertEquals(1, position.getLatencyDistribution().size());
+        assertEquals(5_000_000, position.getLatencyDistribution().getMin(), 50_000);
+        assertEquals(1, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void latencyDistributionsShouldBeAssignedAtRotationEvenIfNobodyReadsTop() {
+        LatencyDistributionPool pool = new LatencyDistributionPool(1, 2, TimeUnit.MINUTES.toNanos(1), 3, 1000, Clock.mock(currentTimeMillis), MockExecutor.INSTANCE);
+        AggregatedTop top = new ResetByChunksAggregatedTop(1, 10, AggregationRanking.COUNT, 1000, 3, Clock.mock(currentTimeMillis), MockExecutor.INSTANCE, pool);
+
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        assertEquals(0, pool.getAllocatedCount());
+
+        // this update switches the chunk, histogram is assigned by rotation, so update itself is not recorded to distribution
+        currentTimeMillis.set(1000);
+        top.update("a", 2, TimeUnit.MILLISECONDS);
+        assertEquals(1, pool.getAllocatedCount());
+        top.update("a", 3, TimeUnit.MILLISECONDS);
+
+        Snapshot distribution = top.getPositionsInDescendingOrder().get(0).getLatencyDistribution();
+        assertEquals(1, distribution.size());
+        assertEquals(3_000_000, distribution.getMin(), 30_000);
+    }
+
+    @Test
+    public void latencyDistributionShouldBeEmptyWhenNotTracked() {
+        AggregatedTop top = AggregatedTop.builder(1)
+                .withSnapshotCachingDuration(Duration.ZERO)
+                .withClock(Clock.mock(currentTimeMillis))
+                .withBackgroundExecutor(MockExecutor.INSTANCE)
+                .build();
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        top.getPositionsInDescendingOrder();
+        top.update("a", 1, TimeUnit.MILLISECONDS);
+        assertEquals(0, top.getPositionsInDescendingOrder().get(0).getLatencyDistribution().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManySignificantDigitsOfLatencyDistributionShouldBeDisallowed() {
+        AggregatedTop.builder(1).withLatencyDistribution(AggregatedTopBuilder.MAX_LATENCY_DISTRIBUTION_SIGNIFICANT_DIGITS + 1, Duration.ofMinutes(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallHighestTrackableLatencyShouldBeDisallowed() {
+        AggregatedTop.builder(1).withLatencyDistribution(2, Duration.ofNanos(1000));
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.aggregated;
+
+import com.github.rollingmetrics.top.AggregatedPosition;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpaceSavingSummaryTest {
+
+    @Test
+    public void shouldBeExactWhenSignaturesFitIntoCapacity() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(4, AggregationRanking.TOTAL_LATENCY);
+        assertEquals(Collections.emptyList(), summary.getPositionsInDescendingOrder(2));
+
+        summary.update("a", 10);
+        summary.update("b", 30);
+        summary.update("a", 15);
+        summary.update("c", 1);
+
+        assertEquals(Arrays.asList(
+                new AggregatedPosition("b", 1, 30),
+                new AggregatedPosition("a", 2, 25)
+        ), summary.getPositionsInDescendingOrder(2));
+    }
+
+    @Test
+    public void shouldGrowUpToCapacityAndThenDisplaceSignatures() {
+        int capacity = SpaceSavingSummary.INITIAL_HEAP_CAPACITY * 4 + 1;
+        SpaceSavingSummary summary = new SpaceSavingSummary(capacity, AggregationRanking.TOTAL_LATENCY);
+        for (int i = 1; i <= capacity; i++) {
+            summary.update("signature-" + i, i);
+        }
+        List<AggregatedPosition> positions = summary.getPositionsInDescendingOrder(capacity + 1);
+        assertEquals(capacity, positions.size());
+        assertEquals(new AggregatedPosition("signature-" + capacity, 1, capacity), positions.get(0));
+        assertEquals(new AggregatedPosition("signature-1", 1, 1), positions.get(capacity - 1));
+
+        // signature with least weight is displaced and new signature inherits its weight
+        summary.update("newcomer", 1);
+        positions = summary.getPositionsInDescendingOrder(capacity + 1);
+        assertEquals(capacity, positions.size());
+        assertEquals(0, positions.stream().filter(position -> position.getSignature().equals("signature-1")).count());
+    }
+
+    @Test
+    public void heavyHitterShouldSurviveManyRareSignatures() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(8, AggregationRanking.TOTAL_LATENCY);
+        for (int i = 0; i < 10_000; i++) {
+            summary.update("rare-" + i, 10);
+            if (i % 4 == 0) {
+                summary.update("frequent", 10);
+            }
+        }
+        AggregatedPosition first = summary.getPositionsInDescendingOrder(1).get(0);
+        assertEquals("frequent", first.getSignature());
+        assertEquals(2500, first.getCount());
+        assertEquals(25_000, first.getTotalLatencyInNanoseconds());
+    }
+
+    @Test
+    public void shouldRankByCount() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(4, AggregationRanking.COUNT);
+        summary.update("slow", 1000);
+        summary.update("fast", 1);
+        summary.update("fast", 1);
+
+        List<AggregatedPosition> positions = summary.getPositionsInDescendingOrder(2);
+        assertEquals("fast", positions.get(0).getSignature());
+        assertEquals("slow", positions.get(1).getSignature());
+    }
+
+    @Test
+    public void shouldRankByMean() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(4, AggregationRanking.MEAN_LATENCY);
+        for (int i = 0; i < 10; i++) {
+            summary.update("frequent", 10);
+        }
+        summary.update("slow", 50);
+
+        List<AggregatedPosition> positions = summary.getPositionsInDescendingOrder(2);
+        assertEquals("slow", positions.get(0).getSignature());
+        assertEquals(50.0, positions.get(0).getMeanLatencyInNanoseconds(), 0.0);
+        assertEquals("frequent", positions.get(1).getSignature());
+        assertEquals(10.0, positions.get(1).getMeanLatencyInNanoseconds(), 0.0);
+    }
+
+    @Test
+    public void shouldMergeSummaries() {
+        SpaceSavingSummary first = new SpaceSavingSummary(4, AggregationRanking.TOTAL_LATENCY);
+        first.update("a", 10);
+        first.update("b", 20);
+        SpaceSavingSummary second = new SpaceSavingSummary(4, AggregationRanking.TOTAL_LATENCY);
+        second.update("a", 15);
+        second.update("c", 5);
+
+        SpaceSavingSummary merged = new SpaceSavingSummary(4, AggregationRanking.TOTAL_LATENCY);
+        first.addInto(merged);
+        second.addInto(merged);
+        assertEquals(Arrays.asList(
+                new AggregatedPosition("a", 2, 25),
+                new AggregatedPosition("b", 1, 20),
+                new AggregatedPosition("c", 1, 5)
+        ), merged.getPositionsInDescendingOrder(10));
+    }
+
+    @Test
+    public void shouldReuseCountersAfterReset() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(2, AggregationRanking.TOTAL_LATENCY);
+        summary.update("a", 10);
+        summary.update("b", 20);
+        summary.reset();
+        assertEquals(Collections.emptyList(), summary.getPositionsInDescendingOrder(2));
+
+        summary.update("c", 5);
+        summary.update("a", 1);
+        assertEquals(Arrays.asList(
+                new AggregatedPosition("c", 1, 5),
+                new AggregatedPosition("a", 1, 1)
+        ), summary.getPositionsInDescendingOrder(2));
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.collector;
+
+import com.github.rollingmetrics.top.Position;
+import com.github.rollingmetrics.top.TestData;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertFalse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class FlatPositionCollectorTest {
+
+    private PositionCollector collector = new FlatPositionCollector(2);
+    private PositionCollector collector2 = new FlatPositionCollector(2);
+
+    @Test
+    public void test() {
+        PositionCollectorTestUtil.assertEmpty(collector);
+
+        assertTrue(collector.add(TestData.first));
+        assertTrue(collector.add(TestData.first));
+        PositionCollectorTestUtil.checkOrder(collector, TestData.first);
+
+        assertTrue(collector.add(TestData.second));
+        assertFalse(collector.add(TestData.second));
+        PositionCollectorTestUtil.checkOrder(collector, TestData.second, TestData.first);
+
+        assertTrue(collector.add(TestData.third));
+        assertFalse(collector.add(TestData.third));
+        PositionCollectorTestUtil.checkOrder(collector, TestData.third, TestData.second);
+
+        assertFalse(collector.add(TestData.first));
+        PositionCollectorTestUtil.checkOrder(collector, TestData.third, TestData.second);
+    }
+
+    @Test
+    public void testAddInto() {
+        collector.addInto(collector2);
+        PositionCollectorTestUtil.assertEmpty(collector2);
+
+        collector.add(TestData.first);
+        collector.addInto(collector2);
+        PositionCollectorTestUtil.checkOrder(collector2, TestData.first);
+
+        collector.add(TestData.second);
+        collector.addInto(collector2);
+        PositionCollectorTestUtil.checkOrder(collector2, TestData.second, TestData.first);
+
+        collector.add(TestData.third);
+        collector.addInto(collector2);
+        PositionCollectorTestUtil.checkOrder(collector2, TestData.third, TestData.second);
+    }
+
+    @Test
+    public void testReset() {
+        collector.add(TestData.first);
+
+        collector.reset();
+        PositionCollectorTestUtil.assertEmpty(collector);
+
+        collector.add(TestData.second);
+        PositionCollectorTestUtil.checkOrder(collector, TestData.second);
+    }
+
+    @Test
+    public void shouldBeChosenForLargeTops() {
+        assertTrue(PositionCollector.createCollector(PositionCollector.MIN_SIZE_OF_FLAT_COLLECTOR) instanceof FlatPositionCollector);
+        assertTrue(PositionCollector.createCollector(PositionCollector.MIN_SIZE_OF_FLAT_COLLECTOR - 1) instanceof MultiPositionCollector);
+    }
+
+    @Test
+    public void shouldCollectSamePositionsAsTreeBasedCollector() {
+        int size = 10_000;
+        Random random = new Random(42);
+        PositionCollector flat = new FlatPositionCollector(size);
+        PositionCollector tree = new MultiPositionCollector(size);
+        PositionCollector flatMerged = new FlatPositionCollector(size);
+        PositionCollector treeMerged = new MultiPositionCollector(size);
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50_000; i++) {
+                // narrow ranges produce a lot of equal positions and equal latencies
+                long latency = random.nextInt(20_000);
+                long timestamp = random.nextInt(10);
+                Position position = new Position(timestamp, latency, TimeUnit.NANOSECONDS, latency + ":" + timestamp);
+                assertEquals(tree.add(position), flat.add(position));
+            }
+            assertEquals(tree.getPositionsInDescendingOrder(), flat.getPositionsInDescendingOrder());
+
+            flat.addInto(flatMerged);
+            tree.addInto(treeMerged);
+            assertEquals(treeMerged.getPositionsInDescendingOrder(), flatMerged.getPositionsInDescendingOrder());
+
+            flat.reset();
+            tree.reset();
+            PositionCollectorTestUtil.assertEmpty(flat);
+        }
+    }
+
+}
@@ -21,12 +21,18 @@ import com.github.rollingmetrics.top.TestData;
 import com.github.rollingmetrics.top.impl.collector.PositionCollector;
 import com.github.rollingmetrics.top.impl.collector.PositionCollectorTestUtil;
 import com.github.rollingmetrics.top.TestData;
+import com.github.rollingmetrics.top.Position;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
 
 public class MultiPositionRecorderTest {
 
-    private PositionRecorder recorder = new MultiPositionRecorder(2, TestData.THRESHOLD_NANOS, 1000);
+    private PositionRecorder recorder = new MultiPositionRecorder(2, TestData.THRESHOLD_NANOS, 1000, null);
     private PositionCollector collector = PositionCollector.createCollector(2);
 
     @Test
@@ -71,4 +77,97 @@ public class MultiPositionRecorderTest {
         PositionRecorderTestUtil.assertEmpty(recorder);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldMergePositionsRecordedByDifferentThreads() throws InterruptedException {
+        runInSeparatedThread(() -> {
+            PositionRecorderTestUtil.update(recorder, TestData.first);
+            PositionRecorderTestUtil.update(recorder, TestData.third);
+        });
+        runInSeparatedThread(() -> {
+            PositionRecorderTestUtil.update(recorder, TestData.third);
+            PositionRecorderTestUtil.update(recorder, TestData.second);
+        });
+        PositionRecorderTestUtil.checkOrder(recorder, TestData.third, TestData.second);
+
+        recorder.addInto(collector);
+        PositionCollectorTestUtil.checkOrder(collector, TestData.third, TestData.second);
+
+        // heaps of terminated threads should be forgotten
+        recorder.reset();
+        PositionRecorderTestUtil.assertEmpty(recorder);
+        PositionRecorderTestUtil.update(recorder, TestData.first);
+        PositionRecorderTestUtil.checkOrder(recorder, TestData.first);
+    }
+
+    @Test
+    public void shouldKeepLargestPositionsWhenManyCandidatesAreRecorded() {
+        PositionRecorder recorder = new MultiPositionRecorder(3, 0, 1000, null);
+        for (int i = 1; i <= 100; i++) {
+            recorder.update(i, (i * 37) % 101, TimeUnit.MILLISECONDS, () -> "SELECT 1");
+        }
+        List<Position> positions = recorder.getPositionsInDescendingOrder();
+        assertEquals(3, positions.size());
+        assertEquals(100, positions.get(0).getLatencyTime());
+        assertEquals(99, positions.get(1).getLatencyTime());
+        assertEquals(98, positions.get(2).getLatencyTime());
+    }
+
+    private static void runInSeparatedThread(Runnable runnable) throws InterruptedException {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+
+    @Test
+    public void admissionFloorShouldBeRaisedOnlyWhenTopIsFull() {
+        assertEquals(TestData.THRESHOLD_NANOS, recorder.getAdmissionFloorNanos());
+
+        PositionRecorderTestUtil.update(recorder, TestData.second);
+        assertEquals(TestData.THRESHOLD_NANOS, recorder.getAdmissionFloorNanos());
+
+        PositionRecorderTestUtil.update(recorder, TestData.first);
+        assertEquals(TestData.first.getLatencyInNanoseconds(), recorder.getAdmissionFloorNanos());
+
+        PositionRecorderTestUtil.update(recorder, TestData.fourth);
+        assertEquals(TestData.second.getLatencyInNanoseconds(), recorder.getAdmissionFloorNanos());
+
+        // position with same latency but newer timestamp should still be admitted
+        PositionRecorderTestUtil.update(recorder, TestData.third);
+        PositionRecorderTestUtil.checkOrder(recorder, TestData.fourth, TestData.third);
+
+        recorder.reset();
+        assertEquals(TestData.THRESHOLD_NANOS, recorder.getAdmissionFloorNanos());
+    }
+
+    @Test
+    public void threadHeapShouldGrowUpToSizeOfTop() {
+        int size = 1000;
+        PositionRecorder largeRecorder = new MultiPositionRecorder(size, TestData.THRESHOLD_NANOS, 1000, null);
+        for (int i = 1; i <= size * 2; i++) {
+            largeRecorder.update(i, TestData.THRESHOLD_NANOS + i, TimeUnit.NANOSECONDS, () -> "query");
+        }
+
+        List<Position> positions = largeRecorder.getPositionsInDescendingOrder();
+        assertEquals(size, positions.size());
+        assertEquals(TestData.THRESHOLD_NANOS + size * 2, positions.get(0).getLatencyInNanoseconds());
+        assertEquals(TestData.THRESHOLD_NANOS + size + 1, positions.get(size - 1).getLatencyInNanoseconds());
+    }
+
+    @Test
+    public void duplicatesShouldBeDetectedInLargeTopAfterGrowthAndEviction() {
+        int size = 500;
+        PositionRecorder largeRecorder = new MultiPositionRecorder(size, TestData.THRESHOLD_NANOS, 1000, null);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 1; i <= size * 2; i++) {
+                largeRecorder.update(i, TestData.THRESHOLD_NANOS + i, TimeUnit.NANOSECONDS, () -> "query");
+            }
+        }
+
+        List<Position> positions = largeRecorder.getPositionsInDescendingOrder();
+        assertEquals(size, positions.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(TestData.THRESHOLD_NANOS + size * 2 - i, positions.get(i).getLatencyInNanoseconds());
+        }
+    }
+
+}
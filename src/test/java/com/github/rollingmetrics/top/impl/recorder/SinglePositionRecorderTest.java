@@ -28,11 +28,12 @@ import org.junit.Test;
 import static com.github.rollingmetrics.top.TestData.first;
 import static com.github.rollingmetrics.top.TestData.second;
 import static com.github.rollingmetrics.top.TestData.third;
+import static org.junit.Assert.assertEquals;
 
 
 public class SinglePositionRecorderTest {
 
-    private PositionRecorder recorder = new SinglePositionRecorder(TestData.THRESHOLD_NANOS, 1000);
+    private PositionRecorder recorder = new SinglePositionRecorder(TestData.THRESHOLD_NANOS, 1000, null);
     private PositionCollector collector = PositionCollector.createCollector(1);
 
     @Test
@@ -70,4 +71,18 @@ public class SinglePositionRecorderTest {
         PositionRecorderTestUtil.assertEmpty(recorder);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void admissionFloorShouldFollowMaximum() {
+        assertEquals(TestData.THRESHOLD_NANOS, recorder.getAdmissionFloorNanos());
+
+        PositionRecorderTestUtil.update(recorder, TestData.first);
+        assertEquals(TestData.first.getLatencyInNanoseconds(), recorder.getAdmissionFloorNanos());
+
+        PositionRecorderTestUtil.update(recorder, TestData.second);
+        assertEquals(TestData.second.getLatencyInNanoseconds(), recorder.getAdmissionFloorNanos());
+
+        recorder.reset();
+        assertEquals(TestData.THRESHOLD_NANOS, recorder.getAdmissionFloorNanos());
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.top.impl.recorder;
+
+import com.github.rollingmetrics.top.TestData;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class TwoPhasePositionRecorderTest {
+
+    private TwoPhasePositionRecorder recorder = new TwoPhasePositionRecorder(1, TestData.THRESHOLD_NANOS, 1000, null);
+
+    @Test
+    public void shouldRejectQueriesFasterThanAdmissionFloorWithoutTouchingDescription() {
+        recorder.update(0, 10, TimeUnit.MILLISECONDS, () -> "slow");
+        recorder.update(1, 5, TimeUnit.MILLISECONDS, () -> {
+            throw new AssertionError("description of rejected query should not be requested");
+        });
+
+        PositionRecorder interval = recorder.getIntervalRecorder();
+        assertEquals(1, interval.getPositionsInDescendingOrder().size());
+        assertEquals("slow", interval.getPositionsInDescendingOrder().get(0).getQueryDescription());
+    }
+
+    @Test
+    public void admissionFloorShouldNotSurviveIntervalSample() {
+        recorder.update(0, 10, TimeUnit.MILLISECONDS, () -> "slow");
+        PositionRecorder interval = recorder.getIntervalRecorder();
+
+        recorder.update(1, 5, TimeUnit.MILLISECONDS, () -> "faster");
+        interval = recorder.getIntervalRecorder(interval);
+        assertEquals("faster", interval.getPositionsInDescendingOrder().get(0).getQueryDescription());
+
+        // recycled recorder should start from threshold
+        recorder.update(2, 1, TimeUnit.MILLISECONDS, () -> "fastest");
+        interval = recorder.getIntervalRecorder(interval);
+        assertEquals("fastest", interval.getPositionsInDescendingOrder().get(0).getQueryDescription());
+    }
+
+}
@@ -22,6 +22,7 @@ import org.junit.Test;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertSame;
 
 public class SingleThreadExecutorTest {
@@ -44,6 +45,31 @@ public class SingleThreadExecutorTest {
         latch.await();
     }
 
+    @Test(timeout = 10000)
+    public void shouldTrackQueueSize() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await();
+        assertEquals(0, executor.getQueueSize());
+
+        CountDownLatch completed = new CountDownLatch(2);
+        executor.execute(completed::countDown);
+        executor.execute(completed::countDown);
+        assertEquals(2, executor.getQueueSize());
+
+        release.countDown();
+        completed.await();
+        assertEquals(0, executor.getQueueSize());
+    }
+
     @Test(timeout = 10000)
     public void shouldAllowToStopMultipleTimes() throws InterruptedException {
         executor.stopExecutionThread();
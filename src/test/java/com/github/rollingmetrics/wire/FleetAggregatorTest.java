@@ -0,0 +1,174 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import com.github.rollingmetrics.util.Clock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FleetAggregatorTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final FleetAggregator aggregator = new FleetAggregator(2, pool, 16);
+    private final WireWriter writer = new WireWriter();
+
+    @After
+    public void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void shouldMergeHistogramsAsSequentialMerging() {
+        List<ByteBuffer> messages = createHistogramMessages(1000);
+        MergedHistogram sequential = new MergedHistogram(2);
+        for (ByteBuffer message : messages) {
+            sequential.merge(message);
+            message.rewind();
+        }
+        RichSnapshot expected = sequential.getSnapshot();
+
+        // second round checks that reused scratch histograms do not keep values from previous round
+        for (int round = 0; round < 2; round++) {
+            RichSnapshot merged = aggregator.mergeHistograms(messages);
+            assertEquals(expected.getCount(), merged.getCount());
+            assertEquals(expected.getMin(), merged.getMin());
+            assertEquals(expected.getMax(), merged.getMax());
+            assertEquals(expected.get99thPercentile(), merged.get99thPercentile(), 0.0);
+            assertEquals(expected.getMedian(), merged.getMedian(), 0.0);
+            messages.forEach(ByteBuffer::rewind);
+        }
+    }
+
+    @Test
+    public void shouldReturnEmptySnapshotForEmptyList() {
+        assertEquals(0, aggregator.mergeHistograms(Collections.emptyList()).getCount());
+    }
+
+    @Test
+    public void shouldMergeCounters() {
+        AtomicLong time = new AtomicLong();
+        Clock clock = Clock.mock(time);
+        List<ByteBuffer> messages = new ArrayList<>();
+        List<SmoothlyDecayingRollingCounter> counters = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            SmoothlyDecayingRollingCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+            counter.add(i);
+            counters.add(counter);
+            ByteBuffer message = ByteBuffer.allocate(256);
+            writer.writeCounter(counter, message);
+            message.flip();
+            messages.add(message);
+        }
+
+        MergedCounter merged = new MergedCounter(clock);
+        aggregator.mergeCounters(messages, merged);
+        assertEquals(99 * 100 / 2, merged.getSum());
+        time.set(3500);
+        assertEquals(counters.stream().mapToLong(SmoothlyDecayingRollingCounter::getSum).sum(), merged.getSum());
+    }
+
+    @Test
+    public void failedMergingShouldNotAffectSubsequentMergings() {
+        List<ByteBuffer> messages = createHistogramMessages(100);
+        RichSnapshot expected = aggregator.mergeHistograms(messages);
+        messages.forEach(ByteBuffer::rewind);
+
+        List<ByteBuffer> corruptedMessages = new ArrayList<>(messages);
+        ByteBuffer counterMessage = ByteBuffer.allocate(256);
+        writer.writeCounter(new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3), counterMessage);
+        counterMessage.flip();
+        corruptedMessages.add(counterMessage);
+        try {
+            aggregator.mergeHistograms(corruptedMessages);
+            fail("histogram should not be merged with counter");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        messages.forEach(ByteBuffer::rewind);
+
+        RichSnapshot merged = aggregator.mergeHistograms(messages);
+        assertEquals(expected.getCount(), merged.getCount());
+        assertEquals(expected.getMax(), merged.getMax());
+    }
+
+    @Test
+    public void reusedScratchCountersShouldNotKeepValuesFromPreviousMerging() {
+        AtomicLong time = new AtomicLong();
+        Clock clock = Clock.mock(time);
+        List<ByteBuffer> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            SmoothlyDecayingRollingCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+            counter.add(1);
+            ByteBuffer message = ByteBuffer.allocate(256);
+            writer.writeCounter(counter, message);
+            message.flip();
+            messages.add(message);
+        }
+
+        for (int round = 0; round < 2; round++) {
+            MergedCounter merged = new MergedCounter(clock);
+            aggregator.mergeCounters(messages, merged);
+            assertEquals(100, merged.getSum());
+            messages.forEach(ByteBuffer::rewind);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldCheckBatchSize() {
+        new FleetAggregator(2, pool, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldCheckSignificantDigits() {
+        new FleetAggregator(6);
+    }
+
+    private List<ByteBuffer> createHistogramMessages(int count) {
+        Random random = new Random(42);
+        List<ByteBuffer> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Reservoir reservoir = new HdrBuilder().withoutSnapshotOptimization().buildReservoir();
+            for (int j = 0; j < 100; j++) {
+                reservoir.update(1 + random.nextInt(1_000_000));
+            }
+            ByteBuffer message = ByteBuffer.allocate(4096);
+            writer.writeHistogram((RichSnapshot) reservoir.getSnapshot(), message);
+            message.flip();
+            messages.add(message);
+        }
+        return messages;
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ *
+ *  Copyright 2016 Vladimir Bukhtoyarov
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.github.rollingmetrics.wire;
+
+import com.codahale.metrics.Reservoir;
+import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
+import com.github.rollingmetrics.histogram.HdrBuilder;
+import com.github.rollingmetrics.histogram.RichSnapshot;
+import com.github.rollingmetrics.histogram.util.EmptySnapshot;
+import com.github.rollingmetrics.hitratio.SmoothlyDecayingRollingHitRatio;
+import com.github.rollingmetrics.util.Clock;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class WireFormatTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final Clock clock = Clock.mock(time);
+    private final WireWriter writer = new WireWriter();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    @Test
+    public void shouldEncodeVariableLengthIntegers() {
+        long[] values = {0, 1, -1, 63, -64, 64, 127, 128, 300, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            WireFormat.putZigZag(buffer, value);
+            WireFormat.putVarLong(buffer, value);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, WireFormat.getZigZag(buffer));
+            assertEquals(value, WireFormat.getVarLong(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void smallNumbersShouldTakeOneByte() {
+        WireFormat.putZigZag(buffer, -64);
+        WireFormat.putZigZag(buffer, 63);
+        WireFormat.putVarLong(buffer, 127);
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void mergedFullSnapshotsShouldBeEqualToSnapshotOfAllValues() {
+        checkHistogramMerging(new HdrBuilder().withoutSnapshotOptimization());
+    }
+
+    @Test
+    public void mergedSmartSnapshotsShouldBeEqualToSnapshotOfAllValues() {
+        checkHistogramMerging(new HdrBuilder());
+    }
+
+    private void checkHistogramMerging(HdrBuilder builder) {
+        Reservoir first = builder.buildReservoir();
+        Reservoir second = builder.buildReservoir();
+        Reservoir all = new HdrBuilder().withoutSnapshotOptimization().buildReservoir();
+        for (int i = 1; i <= 1000; i++) {
+            first.update(i);
+            second.update(i * 1000);
+            all.update(i);
+            all.update(i * 1000);
+        }
+
+        writer.writeHistogram((RichSnapshot) first.getSnapshot(), buffer);
+        writer.writeHistogram((RichSnapshot) second.getSnapshot(), buffer);
+        buffer.flip();
+        MergedHistogram merged = new MergedHistogram(2);
+        merged.merge(buffer);
+        merged.merge(buffer);
+        assertEquals(0, buffer.remaining());
+
+        RichSnapshot mergedSnapshot = merged.getSnapshot();
+        RichSnapshot expectedSnapshot = (RichSnapshot) all.getSnapshot();
+        assertEquals(2000, mergedSnapshot.getCount());
+        assertEquals(expectedSnapshot.getMin(), mergedSnapshot.getMin());
+        assertEquals(expectedSnapshot.getMax(), mergedSnapshot.getMax());
+        for (double quantile : new double[] {0.1, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+            assertEquals(expectedSnapshot.getValue(quantile), mergedSnapshot.getValue(quantile), 0.0);
+        }
+        assertEquals(expectedSnapshot.getCountAtOrBelow(5000), mergedSnapshot.getCountAtOrBelow(5000));
+    }
+
+    @Test
+    public void shouldMergeEmptySnapshot() {
+        writer.writeHistogram(EmptySnapshot.INSTANCE, buffer);
+        assertEquals(3, buffer.position());
+        buffer.flip();
+
+        MergedHistogram merged = new MergedHistogram(2);
+        merged.merge(buffer);
+        assertEquals(0, merged.getSnapshot().getCount());
+    }
+
+    @Test
+    public void mergedSnapshotShouldNotBeAffectedBySubsequentMerging() {
+        Reservoir reservoir = new HdrBuilder().buildReservoir();
+        reservoir.update(42);
+        writer.writeHistogram((RichSnapshot) reservoir.getSnapshot(), buffer);
+        writer.writeHistogram((RichSnapshot) reservoir.getSnapshot(), buffer);
+        buffer.flip();
+
+        MergedHistogram merged = new MergedHistogram(2);
+        merged.merge(buffer);
+        RichSnapshot snapshot = merged.getSnapshot();
+        merged.merge(buffer);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(2, merged.getSnapshot().getCount());
+
+        merged.reset();
+        assertEquals(0, merged.getSnapshot().getCount());
+    }
+
+    @Test
+    public void mergedCounterShouldDecayAsSourceCounters() {
+        SmoothlyDecayingRollingCounter first = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        first.add(100);
+        time.set(700);
+        SmoothlyDecayingRollingCounter second = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        second.add(-10);
+        time.set(1500);
+        first.add(20);
+        second.add(3);
+
+        writer.writeCounter(first, buffer);
+        writer.writeCounter(second, buffer);
+        buffer.flip();
+        MergedCounter merged = new MergedCounter(clock);
+        merged.merge(buffer);
+        merged.merge(buffer);
+
+        assertEquals(113, merged.getSum());
+        for (long observationTime = 1500; observationTime < 6000; observationTime += 100) {
+            time.set(observationTime);
+            assertEquals("at " + observationTime, first.getSum() + second.getSum(), merged.getSum());
+        }
+        assertEquals(0, merged.getSum());
+    }
+
+    @Test
+    public void mergedHitRatioShouldBeWeightedByTotalCount() {
+        SmoothlyDecayingRollingHitRatio busy = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(3), 3, clock);
+        busy.update(90, 100);
+        SmoothlyDecayingRollingHitRatio idle = new SmoothlyDecayingRollingHitRatio(Duration.ofSeconds(3), 3, clock);
+        idle.update(0, 10);
+
+        writer.writeHitRatio(busy, buffer);
+        writer.writeHitRatio(idle, buffer);
+        buffer.flip();
+        MergedHitRatio merged = new MergedHitRatio(clock);
+        merged.merge(buffer);
+        merged.merge(buffer);
+
+        assertEquals(90.0 / 110.0, merged.getHitRatio(), 0.0);
+        // both chunks are half decayed
+        time.set(3500);
+        assertEquals(45.0 / 55.0, merged.getHitRatio(), 0.0);
+        time.set(10000);
+        assertEquals(Double.NaN, merged.getHitRatio(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDisallowMergingOfDifferentKind() {
+        SmoothlyDecayingRollingCounter counter = new SmoothlyDecayingRollingCounter(Duration.ofSeconds(3), 3, clock);
+        writer.writeCounter(counter, buffer);
+        buffer.flip();
+        new MergedHistogram(2).merge(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDetectUnknownVersion() {
+        buffer.put((byte) 42).put(WireFormat.HISTOGRAM).put((byte) 0);
+        buffer.flip();
+        new MergedHistogram(2).merge(buffer);
+    }
+
+}